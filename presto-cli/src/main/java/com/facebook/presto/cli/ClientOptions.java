@@ -40,6 +40,12 @@ public class ClientOptions
     @Option(name = "--debug", title = "debug", description = "Enable debug information")
     public boolean debug;
 
+    @Option(name = "--binary-results", title = "binary-results", description = "Fetch results in the binary encoding rather than JSON")
+    public boolean binaryResults;
+
+    @Option(name = "--prefetch-results", title = "prefetch-results", description = "Number of results to fetch ahead of the output (default: 2)")
+    public int prefetchResults = 2;
+
     @Option(name = "--execute", title = "execute", description = "Execute specified statements and exit")
     public String execute;
 
@@ -58,7 +64,7 @@ public class ClientOptions
 
     public ClientSession toClientSession()
     {
-        return new ClientSession(parseServer(server), user, "presto-cli", catalog, schema, debug);
+        return new ClientSession(parseServer(server), user, "presto-cli", catalog, schema, debug, binaryResults, prefetchResults);
     }
 
     private static URI parseServer(String s)
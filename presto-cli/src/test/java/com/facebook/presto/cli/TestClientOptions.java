@@ -17,6 +17,8 @@ import com.facebook.presto.client.ClientSession;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestClientOptions
 {
@@ -25,6 +27,26 @@ public class TestClientOptions
     {
         ClientSession session = new ClientOptions().toClientSession();
         assertEquals(session.getServer().toString(), "http://localhost:8080");
+        assertFalse(session.isBinaryResults());
+        assertEquals(session.getPrefetchedResults(), 2);
+    }
+
+    @Test
+    public void testBinaryResults()
+    {
+        ClientOptions options = new ClientOptions();
+        options.binaryResults = true;
+        ClientSession session = options.toClientSession();
+        assertTrue(session.isBinaryResults());
+    }
+
+    @Test
+    public void testPrefetchResults()
+    {
+        ClientOptions options = new ClientOptions();
+        options.prefetchResults = 0;
+        ClientSession session = options.toClientSession();
+        assertEquals(session.getPrefetchedResults(), 0);
     }
 
     @Test
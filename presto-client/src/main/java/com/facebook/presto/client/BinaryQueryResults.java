@@ -0,0 +1,352 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.LittleEndianDataInputStream;
+import com.google.common.io.LittleEndianDataOutputStream;
+import io.airlift.json.JsonCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Binary encoding of {@link QueryResults}, which clients can request instead of JSON
+ * to avoid formatting and parsing every value of large results.  All numbers are
+ * little-endian.  The encoding is:
+ * <ul>
+ * <li>the length of the header and the header, which is the JSON of the results without the data</li>
+ * <li>a boolean, which is true if the results have data</li>
+ * <li>if the results have data, chunks of rows, ending with a chunk of zero rows</li>
+ * </ul>
+ * A chunk is the number of rows followed by the values of each column.  Each value is
+ * a boolean, which is true if the value is null, followed by the value if it is not
+ * null: a long for bigint, a double for double, a boolean for boolean, and the length
+ * of the UTF-8 bytes and the bytes for varchar.
+ */
+public final class BinaryQueryResults
+{
+    public static final String MEDIA_TYPE = "application/X-presto-query-results";
+
+    private BinaryQueryResults()
+    {
+    }
+
+    public static void writeHeader(LittleEndianDataOutputStream output, JsonCodec<QueryResults> codec, QueryResults results)
+            throws IOException
+    {
+        QueryResults header = new QueryResults(
+                results.getId(),
+                results.getInfoUri(),
+                results.getPartialCancelUri(),
+                results.getNextUri(),
+                results.getColumns(),
+                (Iterable<List<Object>>) null,
+                results.getStats(),
+                results.getError());
+
+        byte[] bytes = codec.toJson(header).getBytes(Charsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        output.writeBoolean(results.getData() != null);
+    }
+
+    /**
+     * Writes the rows as a single chunk.
+     */
+    public static void writeRows(LittleEndianDataOutputStream output, List<Column> columns, Iterable<List<Object>> rows)
+            throws IOException
+    {
+        List<List<Object>> chunk = ImmutableList.copyOf(rows);
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        output.writeInt(chunk.size());
+        for (int column = 0; column < columns.size(); column++) {
+            String type = columns.get(column).getType();
+            for (List<Object> row : chunk) {
+                Object value = row.get(column);
+                output.writeBoolean(value == null);
+                if (value != null) {
+                    writeValue(output, type, value);
+                }
+            }
+        }
+    }
+
+    public static void writeEnd(LittleEndianDataOutputStream output)
+            throws IOException
+    {
+        output.writeInt(0);
+    }
+
+    public static QueryResults read(InputStream input, JsonCodec<QueryResults> codec)
+            throws IOException
+    {
+        checkNotNull(input, "input is null");
+        checkNotNull(codec, "codec is null");
+
+        LittleEndianDataInputStream in = new LittleEndianDataInputStream(input);
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        QueryResults header = codec.fromJson(new String(bytes, Charsets.UTF_8));
+        if (!in.readBoolean()) {
+            return header;
+        }
+
+        List<Column> columns = checkNotNull(header.getColumns(), "results with data have no columns");
+        ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+        while (true) {
+            int rowCount = in.readInt();
+            if (rowCount == 0) {
+                break;
+            }
+            chunks.add(readChunk(in, columns, rowCount));
+        }
+
+        return new QueryResults(
+                header.getId(),
+                header.getInfoUri(),
+                header.getPartialCancelUri(),
+                header.getNextUri(),
+                columns,
+                new ChunkRows(chunks.build()),
+                header.getStats(),
+                header.getError());
+    }
+
+    private static void writeValue(LittleEndianDataOutputStream output, String type, Object value)
+            throws IOException
+    {
+        switch (type) {
+            case "bigint":
+                output.writeLong(((Number) value).longValue());
+                return;
+            case "double":
+                output.writeDouble(((Number) value).doubleValue());
+                return;
+            case "boolean":
+                output.writeBoolean((Boolean) value);
+                return;
+            case "varchar":
+                byte[] bytes = ((String) value).getBytes(Charsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+                return;
+        }
+        throw new AssertionError("unimplemented type: " + type);
+    }
+
+    private static Chunk readChunk(LittleEndianDataInputStream in, List<Column> columns, int rowCount)
+            throws IOException
+    {
+        checkArgument(rowCount > 0, "rowCount is negative");
+
+        ColumnValues[] values = new ColumnValues[columns.size()];
+        for (int column = 0; column < values.length; column++) {
+            String type = columns.get(column).getType();
+            switch (type) {
+                case "bigint":
+                    values[column] = readLongs(in, rowCount);
+                    break;
+                case "double":
+                    values[column] = readDoubles(in, rowCount);
+                    break;
+                case "boolean":
+                    values[column] = readBooleans(in, rowCount);
+                    break;
+                case "varchar":
+                    values[column] = readStrings(in, rowCount);
+                    break;
+                default:
+                    throw new AssertionError("unimplemented type: " + type);
+            }
+        }
+        return new Chunk(rowCount, values);
+    }
+
+    private static ColumnValues readLongs(LittleEndianDataInputStream in, int rowCount)
+            throws IOException
+    {
+        final boolean[] nulls = new boolean[rowCount];
+        final long[] values = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            nulls[row] = in.readBoolean();
+            if (!nulls[row]) {
+                values[row] = in.readLong();
+            }
+        }
+        return new ColumnValues()
+        {
+            @Override
+            public Object get(int row)
+            {
+                return nulls[row] ? null : values[row];
+            }
+        };
+    }
+
+    private static ColumnValues readDoubles(LittleEndianDataInputStream in, int rowCount)
+            throws IOException
+    {
+        final boolean[] nulls = new boolean[rowCount];
+        final double[] values = new double[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            nulls[row] = in.readBoolean();
+            if (!nulls[row]) {
+                values[row] = in.readDouble();
+            }
+        }
+        return new ColumnValues()
+        {
+            @Override
+            public Object get(int row)
+            {
+                return nulls[row] ? null : values[row];
+            }
+        };
+    }
+
+    private static ColumnValues readBooleans(LittleEndianDataInputStream in, int rowCount)
+            throws IOException
+    {
+        final boolean[] nulls = new boolean[rowCount];
+        final boolean[] values = new boolean[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            nulls[row] = in.readBoolean();
+            if (!nulls[row]) {
+                values[row] = in.readBoolean();
+            }
+        }
+        return new ColumnValues()
+        {
+            @Override
+            public Object get(int row)
+            {
+                return nulls[row] ? null : values[row];
+            }
+        };
+    }
+
+    private static ColumnValues readStrings(LittleEndianDataInputStream in, int rowCount)
+            throws IOException
+    {
+        final String[] values = new String[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            if (!in.readBoolean()) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                values[row] = new String(bytes, Charsets.UTF_8);
+            }
+        }
+        return new ColumnValues()
+        {
+            @Override
+            public Object get(int row)
+            {
+                return values[row];
+            }
+        };
+    }
+
+    private interface ColumnValues
+    {
+        Object get(int row);
+    }
+
+    private static class Chunk
+    {
+        private final int rowCount;
+        private final ColumnValues[] columns;
+
+        private Chunk(int rowCount, ColumnValues[] columns)
+        {
+            this.rowCount = rowCount;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * Rows of the decoded chunks.  The values are kept in primitive arrays and only boxed
+     * when they are read.
+     */
+    private static class ChunkRows
+            implements Iterable<List<Object>>
+    {
+        private final List<Chunk> chunks;
+
+        private ChunkRows(List<Chunk> chunks)
+        {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public Iterator<List<Object>> iterator()
+        {
+            final Iterator<Chunk> chunkIterator = chunks.iterator();
+            return new AbstractIterator<List<Object>>()
+            {
+                private Chunk chunk;
+                private int row;
+
+                @Override
+                protected List<Object> computeNext()
+                {
+                    while (chunk == null || row == chunk.rowCount) {
+                        if (!chunkIterator.hasNext()) {
+                            return endOfData();
+                        }
+                        chunk = chunkIterator.next();
+                        row = 0;
+                    }
+                    return new Row(chunk, row++);
+                }
+            };
+        }
+    }
+
+    private static class Row
+            extends AbstractList<Object>
+    {
+        private final Chunk chunk;
+        private final int row;
+
+        private Row(Chunk chunk, int row)
+        {
+            this.chunk = chunk;
+            this.row = row;
+        }
+
+        @Override
+        public Object get(int index)
+        {
+            return chunk.columns[index].get(row);
+        }
+
+        @Override
+        public int size()
+        {
+            return chunk.columns.length;
+        }
+    }
+}
@@ -17,6 +17,7 @@ import com.google.common.base.Objects;
 
 import java.net.URI;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class ClientSession
@@ -27,15 +28,30 @@ public class ClientSession
     private final String catalog;
     private final String schema;
     private final boolean debug;
+    private final boolean binaryResults;
+    private final int prefetchedResults;
 
     public ClientSession(URI server, String user, String source, String catalog, String schema, boolean debug)
     {
+        this(server, user, source, catalog, schema, debug, false);
+    }
+
+    public ClientSession(URI server, String user, String source, String catalog, String schema, boolean debug, boolean binaryResults)
+    {
+        this(server, user, source, catalog, schema, debug, binaryResults, 0);
+    }
+
+    public ClientSession(URI server, String user, String source, String catalog, String schema, boolean debug, boolean binaryResults, int prefetchedResults)
+    {
+        checkArgument(prefetchedResults >= 0, "prefetchedResults is negative");
         this.server = checkNotNull(server, "server is null");
         this.user = user;
         this.source = source;
         this.catalog = catalog;
         this.schema = schema;
         this.debug = debug;
+        this.binaryResults = binaryResults;
+        this.prefetchedResults = prefetchedResults;
     }
 
     public URI getServer()
@@ -68,6 +84,23 @@ public class ClientSession
         return debug;
     }
 
+    /**
+     * Returns true if results should be requested in the binary encoding rather than JSON.
+     */
+    public boolean isBinaryResults()
+    {
+        return binaryResults;
+    }
+
+    /**
+     * Returns the number of results to fetch ahead of the consumer, or zero to only fetch
+     * results when the client advances.
+     */
+    public int getPrefetchedResults()
+    {
+        return prefetchedResults;
+    }
+
     @Override
     public String toString()
     {
@@ -77,6 +110,8 @@ public class ClientSession
                 .add("catalog", catalog)
                 .add("schema", schema)
                 .add("debug", debug)
+                .add("binaryResults", binaryResults)
+                .add("prefetchedResults", prefetchedResults)
                 .toString();
     }
 }
@@ -15,21 +15,36 @@ package com.facebook.presto.client;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Objects;
+import com.google.common.collect.Iterables;
+import com.google.common.io.CountingInputStream;
+import com.google.common.net.MediaType;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.airlift.http.client.AsyncHttpClient;
 import io.airlift.http.client.FullJsonResponseHandler;
 import io.airlift.http.client.HttpStatus;
 import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.ResponseHandler;
 import io.airlift.json.JsonCodec;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.net.HttpHeaders.ACCEPT;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 import static com.google.common.net.HttpHeaders.USER_AGENT;
 import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
 import static io.airlift.http.client.FullJsonResponseHandler.JsonResponse;
@@ -55,14 +70,33 @@ public class StatementClient
             "/" +
             Objects.firstNonNull(StatementClient.class.getPackage().getImplementationVersion(), "unknown");
 
+    private static final MediaType BINARY_TYPE = MediaType.parse(BinaryQueryResults.MEDIA_TYPE);
+    private static final String BINARY_ACCEPT_VALUE = BinaryQueryResults.MEDIA_TYPE + ", " + MediaType.JSON_UTF_8.withoutParameters();
+
+    /**
+     * Memory budget of the results fetched ahead of the consumer.
+     */
+    private static final long MAX_PREFETCHED_BYTES = 64 * 1024 * 1024;
+    private static final long ROW_OVERHEAD_BYTES = 32;
+    private static final long VALUE_BYTES = 16;
+    // a string of 16 characters
+    private static final long VARCHAR_VALUE_BYTES = 40 + (16 * 2);
+
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("statement-client-prefetch-%s")
+            .setDaemon(true)
+            .build());
+
     private final AsyncHttpClient httpClient;
-    private final FullJsonResponseHandler<QueryResults> responseHandler;
+    private final QueryResultsResponseHandler responseHandler;
     private final boolean debug;
+    private final boolean binaryResults;
     private final String query;
     private final AtomicReference<QueryResults> currentResults = new AtomicReference<>();
     private final AtomicBoolean closed = new AtomicBoolean();
     private final AtomicBoolean gone = new AtomicBoolean();
     private final AtomicBoolean valid = new AtomicBoolean(true);
+    private final Prefetcher prefetcher;
 
     public StatementClient(AsyncHttpClient httpClient, JsonCodec<QueryResults> queryResultsCodec, ClientSession session, String query)
     {
@@ -72,12 +106,21 @@ public class StatementClient
         checkNotNull(query, "query is null");
 
         this.httpClient = httpClient;
-        this.responseHandler = createFullJsonResponseHandler(queryResultsCodec);
+        this.responseHandler = new QueryResultsResponseHandler(queryResultsCodec);
         this.debug = session.isDebug();
+        this.binaryResults = session.isBinaryResults();
         this.query = query;
 
         Request request = buildQueryRequest(session, query);
         currentResults.set(httpClient.execute(request, responseHandler).getValue());
+
+        if (session.getPrefetchedResults() > 0) {
+            prefetcher = new Prefetcher(currentResults.get(), session.getPrefetchedResults(), MAX_PREFETCHED_BYTES);
+            PREFETCH_EXECUTOR.execute(prefetcher);
+        }
+        else {
+            prefetcher = null;
+        }
     }
 
     private static Request buildQueryRequest(ClientSession session, String query)
@@ -98,6 +141,9 @@ public class StatementClient
         if (session.getSchema() != null) {
             builder.setHeader(PrestoHeaders.PRESTO_SCHEMA, session.getSchema());
         }
+        if (session.isBinaryResults()) {
+            builder.setHeader(ACCEPT, BINARY_ACCEPT_VALUE);
+        }
         builder.setHeader(USER_AGENT, USER_AGENT_VALUE);
 
         return builder.build();
@@ -152,10 +198,33 @@ public class StatementClient
             return false;
         }
 
-        Request request = prepareGet()
+        QueryResults results;
+        try {
+            results = (prefetcher != null) ? prefetcher.next() : fetchResults(current().getNextUri()).getValue();
+        }
+        catch (RuntimeException e) {
+            gone.set(true);
+            throw e;
+        }
+
+        if (results == null) {
+            // closed while waiting for prefetched results
+            valid.set(false);
+            return false;
+        }
+        currentResults.set(results);
+        return true;
+    }
+
+    private QueryResultsResponse fetchResults(URI uri)
+    {
+        Request.Builder builder = prepareGet()
                 .setHeader(USER_AGENT, USER_AGENT_VALUE)
-                .setUri(current().getNextUri())
-                .build();
+                .setUri(uri);
+        if (binaryResults) {
+            builder.setHeader(ACCEPT, BINARY_ACCEPT_VALUE);
+        }
+        Request request = builder.build();
 
         Exception cause = null;
         long start = System.nanoTime();
@@ -168,7 +237,7 @@ public class StatementClient
             }
             attempts++;
 
-            JsonResponse<QueryResults> response;
+            QueryResultsResponse response;
             try {
                 response = httpClient.execute(request, responseHandler);
             }
@@ -178,12 +247,10 @@ public class StatementClient
             }
 
             if (response.getStatusCode() == HttpStatus.OK.code() && response.hasValue()) {
-                currentResults.set(response.getValue());
-                return true;
+                return response;
             }
 
             if (response.getStatusCode() != HttpStatus.SERVICE_UNAVAILABLE.code()) {
-                gone.set(true);
                 throw new RuntimeException(format("Error fetching next at %s returned %s: %s",
                         request.getUri(),
                         response.getStatusCode(),
@@ -192,7 +259,6 @@ public class StatementClient
         }
         while ((System.nanoTime() - start) < MINUTES.toNanos(2));
 
-        gone.set(true);
         throw new RuntimeException("Error fetching next", cause);
     }
 
@@ -217,14 +283,252 @@ public class StatementClient
     public void close()
     {
         if (!closed.getAndSet(true)) {
-            URI uri = currentResults.get().getNextUri();
-            if (uri != null) {
-                Request request = prepareDelete()
-                        .setHeader(USER_AGENT, USER_AGENT_VALUE)
-                        .setUri(uri)
-                        .build();
-                httpClient.executeAsync(request, createStatusResponseHandler());
+            URI uri = (prefetcher != null) ? prefetcher.close() : currentResults.get().getNextUri();
+            deleteResults(uri);
+        }
+    }
+
+    private void deleteResults(URI uri)
+    {
+        if (uri != null) {
+            Request request = prepareDelete()
+                    .setHeader(USER_AGENT, USER_AGENT_VALUE)
+                    .setUri(uri)
+                    .build();
+            httpClient.executeAsync(request, createStatusResponseHandler());
+        }
+    }
+
+    /**
+     * Estimates the memory used by the data of JSON results from the number of rows and
+     * the types of the columns, without looking at the values.
+     */
+    private static long estimateDataSize(QueryResults results)
+    {
+        if (results.getData() == null) {
+            return 0;
+        }
+
+        long rowSize = ROW_OVERHEAD_BYTES;
+        for (Column column : results.getColumns()) {
+            rowSize += column.getType().equals("varchar") ? VARCHAR_VALUE_BYTES : VALUE_BYTES;
+        }
+        return Iterables.size(results.getData()) * rowSize;
+    }
+
+    /**
+     * Fetches the next results in the background while the current results are consumed, so
+     * the consumer does not wait for a request to the server every time it advances.  Results
+     * are only fetched ahead while fewer than the maximum number of results and bytes are
+     * waiting to be consumed.
+     */
+    private class Prefetcher
+            implements Runnable
+    {
+        private final int maxResults;
+        private final long maxBytes;
+
+        @GuardedBy("this")
+        private final Queue<QueryResults> results = new ArrayDeque<>();
+        @GuardedBy("this")
+        private final Queue<Long> resultSizes = new ArrayDeque<>();
+        @GuardedBy("this")
+        private long bufferedBytes;
+        @GuardedBy("this")
+        private QueryResults lastFetched;
+        @GuardedBy("this")
+        private RuntimeException failure;
+        @GuardedBy("this")
+        private boolean closed;
+
+        private Prefetcher(QueryResults initialResults, int maxResults, long maxBytes)
+        {
+            checkArgument(maxResults > 0, "maxResults must be at least 1");
+            checkArgument(maxBytes > 0, "maxBytes must be positive");
+            this.lastFetched = initialResults;
+            this.maxResults = maxResults;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void run()
+        {
+            while (true) {
+                URI uri;
+                synchronized (this) {
+                    while (!closed && (results.size() >= maxResults || bufferedBytes >= maxBytes)) {
+                        try {
+                            wait();
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            failure = new RuntimeException("Interrupted while prefetching results", e);
+                            notifyAll();
+                            return;
+                        }
+                    }
+                    uri = lastFetched.getNextUri();
+                    if (closed || uri == null) {
+                        return;
+                    }
+                }
+
+                QueryResultsResponse response;
+                try {
+                    response = fetchResults(uri);
+                }
+                catch (RuntimeException e) {
+                    synchronized (this) {
+                        failure = e;
+                        notifyAll();
+                    }
+                    return;
+                }
+
+                QueryResults next = response.getValue();
+                long size = response.getDataSize();
+                synchronized (this) {
+                    if (closed) {
+                        // the query was canceled when the client was closed
+                        return;
+                    }
+                    results.add(next);
+                    resultSizes.add(size);
+                    bufferedBytes += size;
+                    lastFetched = next;
+                    notifyAll();
+                }
             }
         }
+
+        /**
+         * Returns the next results, waiting for them to be fetched, or null if the prefetcher is closed.
+         */
+        public synchronized QueryResults next()
+        {
+            while (results.isEmpty() && failure == null && !closed) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for results", e);
+                }
+            }
+
+            if (!results.isEmpty()) {
+                bufferedBytes -= resultSizes.remove();
+                notifyAll();
+                return results.remove();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+
+        /**
+         * Stops fetching results and returns the next results location after the last results fetched.
+         */
+        public synchronized URI close()
+        {
+            closed = true;
+            results.clear();
+            resultSizes.clear();
+            bufferedBytes = 0;
+            notifyAll();
+            return lastFetched.getNextUri();
+        }
+    }
+
+    /**
+     * Reads the results in the binary encoding if the server sent them, and as JSON otherwise.
+     */
+    private static class QueryResultsResponseHandler
+            implements ResponseHandler<QueryResultsResponse, RuntimeException>
+    {
+        private final JsonCodec<QueryResults> codec;
+        private final FullJsonResponseHandler<QueryResults> jsonResponseHandler;
+
+        private QueryResultsResponseHandler(JsonCodec<QueryResults> codec)
+        {
+            this.codec = codec;
+            this.jsonResponseHandler = createFullJsonResponseHandler(codec);
+        }
+
+        @Override
+        public RuntimeException handleException(Request request, Exception exception)
+        {
+            return jsonResponseHandler.handleException(request, exception);
+        }
+
+        @Override
+        public QueryResultsResponse handle(Request request, Response response)
+        {
+            String contentType = response.getHeader(CONTENT_TYPE);
+            if (response.getStatusCode() == HttpStatus.OK.code() && contentType != null && MediaType.parse(contentType).is(BINARY_TYPE)) {
+                try {
+                    // the decoded values take about as much memory as their encoding
+                    CountingInputStream input = new CountingInputStream(response.getInputStream());
+                    QueryResults results = BinaryQueryResults.read(input, codec);
+                    return new QueryResultsResponse(response.getStatusCode(), response.getStatusMessage(), results, input.getCount());
+                }
+                catch (IOException e) {
+                    throw new RuntimeException("Error reading binary query results from " + request.getUri(), e);
+                }
+            }
+
+            JsonResponse<QueryResults> jsonResponse = jsonResponseHandler.handle(request, response);
+            if (!jsonResponse.hasValue()) {
+                return new QueryResultsResponse(jsonResponse.getStatusCode(), jsonResponse.getStatusMessage(), null, 0);
+            }
+            QueryResults results = jsonResponse.getValue();
+            return new QueryResultsResponse(jsonResponse.getStatusCode(), jsonResponse.getStatusMessage(), results, estimateDataSize(results));
+        }
+    }
+
+    private static class QueryResultsResponse
+    {
+        private final int statusCode;
+        private final String statusMessage;
+        private final QueryResults value;
+        private final long dataSize;
+
+        private QueryResultsResponse(int statusCode, String statusMessage, QueryResults value, long dataSize)
+        {
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+            this.value = value;
+            this.dataSize = dataSize;
+        }
+
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        public String getStatusMessage()
+        {
+            return statusMessage;
+        }
+
+        public boolean hasValue()
+        {
+            return value != null;
+        }
+
+        public QueryResults getValue()
+        {
+            checkState(value != null, "Response %s %s does not contain query results", statusCode, statusMessage);
+            return value;
+        }
+
+        /**
+         * Returns the estimated memory used by the data of the results.
+         */
+        public long getDataSize()
+        {
+            return dataSize;
+        }
     }
 }
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.LittleEndianDataOutputStream;
+import io.airlift.json.JsonCodec;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TestBinaryQueryResults
+{
+    private final JsonCodec<QueryResults> codec = JsonCodec.jsonCodec(QueryResults.class);
+
+    @Test
+    public void testRoundTrip()
+            throws Exception
+    {
+        List<Column> columns = ImmutableList.of(
+                new Column("a", "bigint"),
+                new Column("b", "double"),
+                new Column("c", "boolean"),
+                new Column("d", "varchar"));
+        List<List<Object>> rows = ImmutableList.of(
+                Arrays.<Object>asList(1L, 2.5, true, "hello"),
+                Arrays.<Object>asList(null, null, null, null),
+                Arrays.<Object>asList(-3L, Double.NaN, false, "\u00fcnicode"));
+
+        QueryResults actual = roundTrip(createResults(columns, rows), ImmutableList.of(rows.subList(0, 2), rows.subList(2, 3)));
+
+        assertEquals(actual.getId(), "query");
+        assertEquals(actual.getNextUri(), URI.create("http://localhost/v1/statement/query/2"));
+        assertEquals(actual.getStats().getState(), "RUNNING");
+        assertEquals(actual.getColumns().size(), 4);
+        assertEquals(ImmutableList.copyOf(actual.getData()), rows);
+    }
+
+    @Test
+    public void testNoData()
+            throws Exception
+    {
+        QueryResults actual = roundTrip(createResults(null, null), ImmutableList.<List<List<Object>>>of());
+
+        assertEquals(actual.getId(), "query");
+        assertNull(actual.getColumns());
+        assertNull(actual.getData());
+    }
+
+    private QueryResults roundTrip(QueryResults results, List<List<List<Object>>> chunks)
+            throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LittleEndianDataOutputStream output = new LittleEndianDataOutputStream(bytes);
+        BinaryQueryResults.writeHeader(output, codec, results);
+        if (results.getData() != null) {
+            for (List<List<Object>> chunk : chunks) {
+                BinaryQueryResults.writeRows(output, results.getColumns(), chunk);
+            }
+            BinaryQueryResults.writeEnd(output);
+        }
+        output.flush();
+
+        return BinaryQueryResults.read(new ByteArrayInputStream(bytes.toByteArray()), codec);
+    }
+
+    private static QueryResults createResults(List<Column> columns, List<List<Object>> data)
+    {
+        return new QueryResults(
+                "query",
+                URI.create("http://localhost/v1/query/query"),
+                null,
+                URI.create("http://localhost/v1/statement/query/2"),
+                columns,
+                (Iterable<List<Object>>) data,
+                StatementStats.builder().setState("RUNNING").build(),
+                null);
+    }
+}
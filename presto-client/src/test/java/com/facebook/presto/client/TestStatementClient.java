@@ -0,0 +1,233 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.client;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableListMultimap;
+import io.airlift.http.client.HttpStatus;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.testing.TestingHttpClient;
+import io.airlift.http.client.testing.TestingResponse;
+import io.airlift.json.JsonCodec;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static com.google.common.net.MediaType.JSON_UTF_8;
+import static io.airlift.json.JsonCodec.jsonCodec;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestStatementClient
+{
+    private static final URI SERVER = URI.create("http://localhost:8080");
+    private static final JsonCodec<QueryResults> QUERY_RESULTS_CODEC = jsonCodec(QueryResults.class);
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        executor = newCachedThreadPool();
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Test
+    public void testPrefetchLimit()
+            throws Exception
+    {
+        MockStatementResource resource = new MockStatementResource(10, -1);
+        try (StatementClient client = createClient(resource, 2)) {
+            // only the configured number of results are fetched ahead of the consumer
+            assertFetchedResults(resource, 2);
+
+            for (int consumed = 1; consumed <= 10; consumed++) {
+                assertTrue(client.advance());
+                assertEquals(client.current().getNextUri(), (consumed < 10) ? resultsUri(consumed + 1) : null);
+                assertFetchedResults(resource, Math.min(consumed + 2, 10));
+            }
+            assertFalse(client.advance());
+        }
+    }
+
+    @Test
+    public void testFetchFailure()
+            throws Exception
+    {
+        MockStatementResource resource = new MockStatementResource(10, 2);
+        try (StatementClient client = createClient(resource, 2)) {
+            assertTrue(client.advance());
+            try {
+                client.advance();
+                fail("expected exception");
+            }
+            catch (RuntimeException e) {
+                assertTrue(e.getMessage().startsWith("Error fetching next at " + resultsUri(2)), e.getMessage());
+            }
+            assertTrue(client.isGone());
+        }
+    }
+
+    @Test
+    public void testCloseCancelsPrefetch()
+            throws Exception
+    {
+        MockStatementResource resource = new MockStatementResource(10, -1);
+        StatementClient client = createClient(resource, 2);
+        assertFetchedResults(resource, 2);
+        assertTrue(isPrefetching());
+
+        client.close();
+
+        // the query is deleted at the next results after the last results fetched, not the current results
+        assertEquals(resource.getDeletedUris().poll(10, SECONDS), resultsUri(3));
+        assertFalse(client.advance());
+
+        long start = System.nanoTime();
+        while (isPrefetching()) {
+            assertTrue(System.nanoTime() - start < SECONDS.toNanos(10), "prefetch thread did not stop");
+            MILLISECONDS.sleep(10);
+        }
+        assertEquals(resource.getFetchedResults(), 2);
+        assertTrue(resource.getDeletedUris().isEmpty());
+    }
+
+    private StatementClient createClient(MockStatementResource resource, int prefetchedResults)
+    {
+        ClientSession session = new ClientSession(SERVER, "user", "source", "catalog", "schema", false, false, prefetchedResults);
+        return new StatementClient(new TestingHttpClient(resource, executor), QUERY_RESULTS_CODEC, session, "SELECT 1");
+    }
+
+    private static void assertFetchedResults(MockStatementResource resource, int expected)
+            throws InterruptedException
+    {
+        long start = System.nanoTime();
+        while (resource.getFetchedResults() < expected) {
+            assertTrue(System.nanoTime() - start < SECONDS.toNanos(10), "results were not prefetched");
+            MILLISECONDS.sleep(10);
+        }
+
+        // give the prefetcher a chance to fetch more than it is allowed to
+        MILLISECONDS.sleep(50);
+        assertEquals(resource.getFetchedResults(), expected);
+    }
+
+    private static boolean isPrefetching()
+    {
+        for (StackTraceElement[] stackTrace : Thread.getAllStackTraces().values()) {
+            for (StackTraceElement element : stackTrace) {
+                if (element.getClassName().startsWith(StatementClient.class.getName() + "$Prefetcher") && element.getMethodName().equals("run")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static URI resultsUri(int sequence)
+    {
+        return SERVER.resolve("/v1/statement/query/" + sequence);
+    }
+
+    /**
+     * Serves a query with the specified number of results after the initial results,
+     * and fails the request for the results with the failing sequence.
+     */
+    private static class MockStatementResource
+            implements Function<Request, Response>
+    {
+        private final int resultCount;
+        private final int failingSequence;
+        private final AtomicInteger fetchedResults = new AtomicInteger();
+        private final BlockingQueue<URI> deletedUris = new LinkedBlockingQueue<>();
+
+        private MockStatementResource(int resultCount, int failingSequence)
+        {
+            this.resultCount = resultCount;
+            this.failingSequence = failingSequence;
+        }
+
+        public int getFetchedResults()
+        {
+            return fetchedResults.get();
+        }
+
+        public BlockingQueue<URI> getDeletedUris()
+        {
+            return deletedUris;
+        }
+
+        @Override
+        public Response apply(Request request)
+        {
+            switch (request.getMethod()) {
+                case "POST":
+                    return createResponse(0);
+                case "GET":
+                    String path = request.getUri().getPath();
+                    int sequence = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                    if (sequence == failingSequence) {
+                        return new TestingResponse(HttpStatus.INTERNAL_SERVER_ERROR, ImmutableListMultimap.<String, String>of(), new byte[0]);
+                    }
+                    fetchedResults.incrementAndGet();
+                    return createResponse(sequence);
+                case "DELETE":
+                    deletedUris.add(request.getUri());
+                    return new TestingResponse(HttpStatus.NO_CONTENT, ImmutableListMultimap.<String, String>of(), new byte[0]);
+                default:
+                    throw new IllegalArgumentException("Unexpected request: " + request);
+            }
+        }
+
+        private Response createResponse(int sequence)
+        {
+            QueryResults results = new QueryResults(
+                    "query",
+                    SERVER.resolve("/v1/query/query"),
+                    null,
+                    (sequence < resultCount) ? resultsUri(sequence + 1) : null,
+                    null,
+                    (Iterable<List<Object>>) null,
+                    StatementStats.builder().setState("RUNNING").build(),
+                    null);
+            return new TestingResponse(
+                    HttpStatus.OK,
+                    ImmutableListMultimap.of(CONTENT_TYPE, JSON_UTF_8.toString()),
+                    QUERY_RESULTS_CODEC.toJson(results).getBytes(UTF_8));
+        }
+    }
+}
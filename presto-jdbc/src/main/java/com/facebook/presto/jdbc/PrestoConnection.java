@@ -56,14 +56,18 @@ public class PrestoConnection
     private final URI uri;
     private final HostAndPort address;
     private final String user;
+    private final boolean binaryResults;
+    private final int prefetchResults;
     private final Map<String, String> clientInfo = new ConcurrentHashMap<>();
     private final QueryExecutor queryExecutor;
 
-    PrestoConnection(URI uri, String user, QueryExecutor queryExecutor)
+    PrestoConnection(URI uri, String user, boolean binaryResults, int prefetchResults, QueryExecutor queryExecutor)
     {
         this.uri = checkNotNull(uri, "uri is null");
         this.address = HostAndPort.fromParts(uri.getHost(), uri.getPort());
         this.user = checkNotNull(user, "user is null");
+        this.binaryResults = binaryResults;
+        this.prefetchResults = prefetchResults;
         this.queryExecutor = checkNotNull(queryExecutor, "queryExecutor is null");
         catalog.set("default");
         schema.set("default");
@@ -502,7 +506,7 @@ public class PrestoConnection
         URI uri = createHttpUri(address);
 
         String source = Objects.firstNonNull(clientInfo.get("ApplicationName"), "presto-jdbc");
-        ClientSession session = new ClientSession(uri, user, source, catalog.get(), schema.get(), false);
+        ClientSession session = new ClientSession(uri, user, source, catalog.get(), schema.get(), false, binaryResults, prefetchResults);
         return queryExecutor.startQuery(session, sql);
     }
 
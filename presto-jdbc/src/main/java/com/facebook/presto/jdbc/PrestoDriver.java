@@ -48,6 +48,11 @@ public class PrestoDriver
     private static final String DRIVER_URL_START = "jdbc:presto:";
 
     private static final String USER_PROPERTY = "user";
+    private static final String BINARY_RESULTS_PROPERTY = "binaryResults";
+    private static final String PREFETCH_RESULTS_PROPERTY = "prefetchResults";
+    // applications may drop result sets without closing them, which would leave a
+    // prefetch thread and its results waiting for a consumer that never comes
+    private static final int DEFAULT_PREFETCH_RESULTS = 0;
 
     private final QueryExecutor queryExecutor;
 
@@ -84,7 +89,23 @@ public class PrestoDriver
             throw new SQLException(format("Username property (%s) must be set", USER_PROPERTY));
         }
 
-        return new PrestoConnection(parseDriverUrl(url), user, queryExecutor);
+        boolean binaryResults = Boolean.parseBoolean(info.getProperty(BINARY_RESULTS_PROPERTY));
+
+        int prefetchResults = DEFAULT_PREFETCH_RESULTS;
+        String prefetchProperty = info.getProperty(PREFETCH_RESULTS_PROPERTY);
+        if (!isNullOrEmpty(prefetchProperty)) {
+            try {
+                prefetchResults = Integer.parseInt(prefetchProperty);
+            }
+            catch (NumberFormatException e) {
+                throw new SQLException(format("Invalid %s property: %s", PREFETCH_RESULTS_PROPERTY, prefetchProperty));
+            }
+            if (prefetchResults < 0) {
+                throw new SQLException(format("%s property must not be negative", PREFETCH_RESULTS_PROPERTY));
+            }
+        }
+
+        return new PrestoConnection(parseDriverUrl(url), user, binaryResults, prefetchResults, queryExecutor);
     }
 
     @Override
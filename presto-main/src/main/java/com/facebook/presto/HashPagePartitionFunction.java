@@ -0,0 +1,217 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.block.BlockBuilder;
+import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.block.uncompressed.UncompressedBlock;
+import com.facebook.presto.operator.Page;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+
+import java.util.List;
+
+import static com.facebook.presto.block.BlockBuilder.DEFAULT_MAX_BLOCK_SIZE;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+public final class HashPagePartitionFunction
+        implements PagePartitionFunction
+{
+    private final int partition;
+    private final int partitionCount;
+    private final List<Integer> partitioningChannels;
+
+    @JsonCreator
+    public HashPagePartitionFunction(
+            @JsonProperty("partition") int partition,
+            @JsonProperty("partitionCount") int partitionCount,
+            @JsonProperty("partitioningChannels") List<Integer> partitioningChannels)
+    {
+        checkArgument(partitionCount > 0, "partitionCount must be at least 1");
+        checkArgument(partition >= 0 && partition < partitionCount, "partition must be between 0 and partitionCount - 1");
+        checkNotNull(partitioningChannels, "partitioningChannels is null");
+        checkArgument(!partitioningChannels.isEmpty(), "partitioningChannels is empty");
+
+        this.partition = partition;
+        this.partitionCount = partitionCount;
+        this.partitioningChannels = ImmutableList.copyOf(partitioningChannels);
+    }
+
+    @JsonProperty
+    public int getPartition()
+    {
+        return partition;
+    }
+
+    @JsonProperty
+    public int getPartitionCount()
+    {
+        return partitionCount;
+    }
+
+    @JsonProperty
+    public List<Integer> getPartitioningChannels()
+    {
+        return partitioningChannels;
+    }
+
+    @Override
+    public List<Page> partition(List<Page> pages)
+    {
+        ImmutableList.Builder<Page> partitionedPages = ImmutableList.builder();
+        for (Page page : pages) {
+            partitionedPages.add(partitionPage(page));
+        }
+        return partitionedPages.build();
+    }
+
+    private Page partitionPage(Page page)
+    {
+        Block[] blocks = page.getBlocks();
+        BlockCursor[] cursors = new BlockCursor[blocks.length];
+        BlockBuilder[] blockBuilders = new BlockBuilder[blocks.length];
+        for (int channel = 0; channel < blocks.length; channel++) {
+            cursors[channel] = blocks[channel].cursor();
+            blockBuilders[channel] = new BlockBuilder(blocks[channel].getTupleInfo());
+        }
+
+        int positionCount = 0;
+        for (int position = 0; position < page.getPositionCount(); position++) {
+            for (BlockCursor cursor : cursors) {
+                checkArgument(cursor.advanceNextPosition(), "page is truncated");
+            }
+
+            if (getPartition(cursors) != partition) {
+                continue;
+            }
+
+            for (int channel = 0; channel < cursors.length; channel++) {
+                cursors[channel].appendTupleTo(blockBuilders[channel]);
+            }
+            positionCount++;
+        }
+
+        // always produce a page, so the sequence ids of the consumer match the shared buffer
+        Block[] partitionedBlocks = new Block[blocks.length];
+        for (int channel = 0; channel < blocks.length; channel++) {
+            if (positionCount == 0) {
+                partitionedBlocks[channel] = new UncompressedBlock(0, blocks[channel].getTupleInfo(), Slices.EMPTY_SLICE);
+            }
+            else {
+                partitionedBlocks[channel] = blockBuilders[channel].build();
+            }
+        }
+        return new Page(positionCount, partitionedBlocks);
+    }
+
+    /**
+     * Splits the page into one page for each partition, ordered by partition.  The
+     * pages of partitions without rows have no positions.
+     */
+    public List<Page> splitPage(Page page)
+    {
+        Block[] blocks = page.getBlocks();
+        BlockCursor[] cursors = new BlockCursor[blocks.length];
+        BlockBuilder[][] blockBuilders = new BlockBuilder[partitionCount][blocks.length];
+        for (int channel = 0; channel < blocks.length; channel++) {
+            cursors[channel] = blocks[channel].cursor();
+
+            // size the builders for evenly distributed rows instead of the default block size
+            int expectedSize = Ints.checkedCast(blocks[channel].getDataSize().toBytes() / partitionCount);
+            for (int partition = 0; partition < partitionCount; partition++) {
+                blockBuilders[partition][channel] = new BlockBuilder(blocks[channel].getTupleInfo(), (int) DEFAULT_MAX_BLOCK_SIZE.toBytes(), new DynamicSliceOutput(expectedSize + 16));
+            }
+        }
+
+        int[] positionCounts = new int[partitionCount];
+        for (int position = 0; position < page.getPositionCount(); position++) {
+            for (BlockCursor cursor : cursors) {
+                checkArgument(cursor.advanceNextPosition(), "page is truncated");
+            }
+
+            int partition = getPartition(cursors);
+            for (int channel = 0; channel < cursors.length; channel++) {
+                cursors[channel].appendTupleTo(blockBuilders[partition][channel]);
+            }
+            positionCounts[partition]++;
+        }
+
+        ImmutableList.Builder<Page> pages = ImmutableList.builder();
+        for (int partition = 0; partition < partitionCount; partition++) {
+            Block[] partitionedBlocks = new Block[blocks.length];
+            for (int channel = 0; channel < blocks.length; channel++) {
+                if (positionCounts[partition] == 0) {
+                    partitionedBlocks[channel] = new UncompressedBlock(0, blocks[channel].getTupleInfo(), Slices.EMPTY_SLICE);
+                }
+                else {
+                    partitionedBlocks[channel] = blockBuilders[partition][channel].build();
+                }
+            }
+            pages.add(new Page(positionCounts[partition], partitionedBlocks));
+        }
+        return pages.build();
+    }
+
+    private int getPartition(BlockCursor[] cursors)
+    {
+        int result = 0;
+        for (int channel : partitioningChannels) {
+            BlockCursor cursor = cursors[channel];
+            Slice slice = cursor.getRawSlice();
+            int offset = cursor.getRawOffset();
+            int length = cursor.getTupleInfo().size(slice, offset);
+            result = 31 * result + slice.hashCode(offset, length);
+        }
+        return (result & Integer.MAX_VALUE) % partitionCount;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hashCode(partition, partitionCount, partitioningChannels);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        HashPagePartitionFunction other = (HashPagePartitionFunction) obj;
+        return Objects.equal(this.partition, other.partition) &&
+                Objects.equal(this.partitionCount, other.partitionCount) &&
+                Objects.equal(this.partitioningChannels, other.partitioningChannels);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("partition", partition)
+                .add("partitionCount", partitionCount)
+                .add("partitioningChannels", partitioningChannels)
+                .toString();
+    }
+}
@@ -16,30 +16,30 @@ package com.facebook.presto;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableMap;
 
-import java.util.Set;
+import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class OutputBuffers
 {
-    private final Set<String> bufferIds;
+    private final Map<String, PagePartitionFunction> buffers;
     private final boolean noMoreBufferIds;
 
     @JsonCreator
     public OutputBuffers(
-            @JsonProperty("bufferIds") Set<String> bufferIds,
+            @JsonProperty("buffers") Map<String, PagePartitionFunction> buffers,
             @JsonProperty("noMoreBufferIds") boolean noMoreBufferIds)
     {
-        this.bufferIds = ImmutableSet.copyOf(checkNotNull(bufferIds, "bufferIds is null"));
+        this.buffers = ImmutableMap.copyOf(checkNotNull(buffers, "buffers is null"));
         this.noMoreBufferIds = noMoreBufferIds;
     }
 
     @JsonProperty
-    public Set<String> getBufferIds()
+    public Map<String, PagePartitionFunction> getBuffers()
     {
-        return bufferIds;
+        return buffers;
     }
 
     @JsonProperty
@@ -52,7 +52,7 @@ public class OutputBuffers
     public String toString()
     {
         return Objects.toStringHelper(this)
-                .add("bufferIds", bufferIds)
+                .add("buffers", buffers)
                 .add("noMoreBufferIds", noMoreBufferIds)
                 .toString();
     }
@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto;
+
+import com.facebook.presto.operator.Page;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.util.List;
+
+/**
+ * Selects the rows of a page that belong to a single output buffer.
+ * <p/>
+ * Implementations must return exactly one page for each input page (possibly
+ * with no positions) so page sequence ids stay aligned with the shared buffer.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = UnpartitionedPagePartitionFunction.class, name = "unpartitioned"),
+        @JsonSubTypes.Type(value = HashPagePartitionFunction.class, name = "hash")})
+public interface PagePartitionFunction
+{
+    List<Page> partition(List<Page> pages);
+}
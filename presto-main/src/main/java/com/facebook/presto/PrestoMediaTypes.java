@@ -20,6 +20,12 @@ public final class PrestoMediaTypes
     public static final String PRESTO_PAGES = "application/X-presto-pages";
     public static final MediaType PRESTO_PAGES_TYPE = MediaType.create("application", "X-presto-pages");
 
+    /**
+     * Pages compressed with Snappy, which are only sent to clients that accept them.
+     */
+    public static final String PRESTO_PAGES_SNAPPY = "application/X-presto-pages-snappy";
+    public static final MediaType PRESTO_PAGES_SNAPPY_TYPE = MediaType.create("application", "X-presto-pages-snappy");
+
     private PrestoMediaTypes()
     {
     }
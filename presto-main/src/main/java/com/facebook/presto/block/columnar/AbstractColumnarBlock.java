@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.block.columnar;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.serde.ColumnarBlockEncoding;
+import io.airlift.slice.Slice;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * Base class for blocks that store the values of a single field tuple in primitive
+ * arrays, with a parallel array of null flags.  Positions are relative to the
+ * position offset of the block, so regions share the arrays of the block they
+ * were created from.
+ * <p/>
+ * Code that processes many positions should read the arrays directly, for example:
+ * <pre>{@code
+ *  long[] values = block.getValues();
+ *  boolean[] nulls = block.getNulls();
+ *  int end = block.getPositionOffset() + block.getPositionCount();
+ *  for (int i = block.getPositionOffset(); i < end; i++) {
+ *     if (!nulls[i]) {
+ *         sum += values[i];
+ *     }
+ *  }
+ * }</pre>
+ */
+public abstract class AbstractColumnarBlock
+        implements Block
+{
+    protected final int positionOffset;
+    protected final int positionCount;
+    protected final boolean[] nulls;
+
+    protected AbstractColumnarBlock(int positionOffset, int positionCount, boolean[] nulls)
+    {
+        checkArgument(positionOffset >= 0, "positionOffset is negative");
+        checkArgument(positionCount >= 0, "positionCount is negative");
+        checkNotNull(nulls, "nulls is null");
+        checkPositionIndexes(positionOffset, positionOffset + positionCount, nulls.length);
+
+        this.positionOffset = positionOffset;
+        this.positionCount = positionCount;
+        this.nulls = nulls;
+    }
+
+    @Override
+    public int getPositionCount()
+    {
+        return positionCount;
+    }
+
+    /**
+     * Gets the index of the first position of this block in the arrays.
+     */
+    public int getPositionOffset()
+    {
+        return positionOffset;
+    }
+
+    public boolean[] getNulls()
+    {
+        return nulls;
+    }
+
+    public final boolean isNull(int position)
+    {
+        return nulls[positionOffset + position];
+    }
+
+    public boolean getBoolean(int position)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public long getLong(int position)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public double getDouble(int position)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public Slice getSlice(int position)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public BlockCursor cursor()
+    {
+        return new ColumnarBlockCursor(this);
+    }
+
+    @Override
+    public ColumnarBlockEncoding getEncoding()
+    {
+        return new ColumnarBlockEncoding(getTupleInfo());
+    }
+
+    @Override
+    public Block getRegion(int positionOffset, int length)
+    {
+        checkPositionIndexes(positionOffset, positionOffset + length, positionCount);
+        return createRegion(this.positionOffset + positionOffset, length);
+    }
+
+    /**
+     * Creates a block over the same arrays starting at the specified array index.
+     */
+    protected abstract Block createRegion(int positionOffset, int length);
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.block.columnar;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.base.Objects;
+import io.airlift.units.DataSize;
+import io.airlift.units.DataSize.Unit;
+
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_BOOLEAN;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.slice.SizeOf.SIZE_OF_BYTE;
+
+public final class BooleanArrayBlock
+        extends AbstractColumnarBlock
+{
+    private final boolean[] values;
+
+    public BooleanArrayBlock(int positionCount, boolean[] nulls, boolean[] values)
+    {
+        this(0, positionCount, nulls, values);
+    }
+
+    public BooleanArrayBlock(int positionOffset, int positionCount, boolean[] nulls, boolean[] values)
+    {
+        super(positionOffset, positionCount, nulls);
+        this.values = checkNotNull(values, "values is null");
+        checkArgument(values.length >= positionOffset + positionCount, "values is too small");
+    }
+
+    @Override
+    public TupleInfo getTupleInfo()
+    {
+        return SINGLE_BOOLEAN;
+    }
+
+    public boolean[] getValues()
+    {
+        return values;
+    }
+
+    @Override
+    public boolean getBoolean(int position)
+    {
+        return values[positionOffset + position];
+    }
+
+    @Override
+    public DataSize getDataSize()
+    {
+        return new DataSize(positionCount * (SIZE_OF_BYTE + SIZE_OF_BYTE), Unit.BYTE);
+    }
+
+    @Override
+    protected Block createRegion(int positionOffset, int length)
+    {
+        return new BooleanArrayBlock(positionOffset, length, nulls, values);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("positionOffset", positionOffset)
+                .add("positionCount", positionCount)
+                .toString();
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.block.columnar;
+
+import com.facebook.presto.block.BlockBuilder;
+import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.tuple.TupleInfo;
+import com.facebook.presto.tuple.TupleInfo.Type;
+import com.google.common.base.Objects;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.units.DataSize;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static io.airlift.slice.SizeOf.SIZE_OF_BYTE;
+import static io.airlift.slice.SizeOf.SIZE_OF_DOUBLE;
+import static io.airlift.slice.SizeOf.SIZE_OF_INT;
+import static io.airlift.slice.SizeOf.SIZE_OF_LONG;
+
+/**
+ * Builds columnar blocks for a single field tuple info.  Values are appended to
+ * growable primitive arrays that are handed to the block without copying, so a
+ * builder must not be used after {@link #build()} is called.
+ */
+public class ColumnarBlockBuilder
+{
+    private static final int DEFAULT_INITIAL_POSITIONS = 1024;
+
+    private final TupleInfo tupleInfo;
+    private final Type type;
+    private final int maxBlockSize;
+
+    private int positionCount;
+    private boolean[] nulls;
+    private boolean[] booleans;
+    private long[] longs;
+    private double[] doubles;
+    private int[] offsets;
+    private DynamicSliceOutput sliceOutput;
+
+    public ColumnarBlockBuilder(TupleInfo tupleInfo)
+    {
+        this(tupleInfo, BlockBuilder.DEFAULT_MAX_BLOCK_SIZE);
+    }
+
+    public ColumnarBlockBuilder(TupleInfo tupleInfo, DataSize maxBlockSize)
+    {
+        this.tupleInfo = checkNotNull(tupleInfo, "tupleInfo is null");
+        checkArgument(tupleInfo.getFieldCount() == 1, "Columnar blocks only support a single field: %s", tupleInfo);
+        checkNotNull(maxBlockSize, "maxBlockSize is null");
+
+        this.type = tupleInfo.getTypes().get(0);
+        this.maxBlockSize = (int) maxBlockSize.toBytes();
+
+        nulls = new boolean[DEFAULT_INITIAL_POSITIONS];
+        switch (type) {
+            case BOOLEAN:
+                booleans = new boolean[DEFAULT_INITIAL_POSITIONS];
+                break;
+            case FIXED_INT_64:
+                longs = new long[DEFAULT_INITIAL_POSITIONS];
+                break;
+            case DOUBLE:
+                doubles = new double[DEFAULT_INITIAL_POSITIONS];
+                break;
+            case VARIABLE_BINARY:
+                offsets = new int[DEFAULT_INITIAL_POSITIONS + 1];
+                sliceOutput = new DynamicSliceOutput(this.maxBlockSize);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported type " + type);
+        }
+    }
+
+    public TupleInfo getTupleInfo()
+    {
+        return tupleInfo;
+    }
+
+    public boolean isEmpty()
+    {
+        return positionCount == 0;
+    }
+
+    public boolean isFull()
+    {
+        return getSize() >= maxBlockSize;
+    }
+
+    public int getPositionCount()
+    {
+        return positionCount;
+    }
+
+    public int getSize()
+    {
+        switch (type) {
+            case BOOLEAN:
+                return positionCount * (SIZE_OF_BYTE + SIZE_OF_BYTE);
+            case FIXED_INT_64:
+                return positionCount * (SIZE_OF_LONG + SIZE_OF_BYTE);
+            case DOUBLE:
+                return positionCount * (SIZE_OF_DOUBLE + SIZE_OF_BYTE);
+            case VARIABLE_BINARY:
+                return sliceOutput.size() + positionCount * (SIZE_OF_INT + SIZE_OF_BYTE);
+            default:
+                throw new IllegalStateException("Unsupported type " + type);
+        }
+    }
+
+    public ColumnarBlockBuilder append(boolean value)
+    {
+        checkState(type == Type.BOOLEAN, "Cannot append boolean to %s", type);
+        ensureCapacity();
+        booleans[positionCount] = value;
+        positionCount++;
+        return this;
+    }
+
+    public ColumnarBlockBuilder append(long value)
+    {
+        checkState(type == Type.FIXED_INT_64, "Cannot append long to %s", type);
+        ensureCapacity();
+        longs[positionCount] = value;
+        positionCount++;
+        return this;
+    }
+
+    public ColumnarBlockBuilder append(double value)
+    {
+        checkState(type == Type.DOUBLE, "Cannot append double to %s", type);
+        ensureCapacity();
+        doubles[positionCount] = value;
+        positionCount++;
+        return this;
+    }
+
+    public ColumnarBlockBuilder append(Slice value)
+    {
+        checkState(type == Type.VARIABLE_BINARY, "Cannot append slice to %s", type);
+        ensureCapacity();
+        sliceOutput.writeBytes(value);
+        positionCount++;
+        offsets[positionCount] = sliceOutput.size();
+        return this;
+    }
+
+    public ColumnarBlockBuilder appendNull()
+    {
+        ensureCapacity();
+        nulls[positionCount] = true;
+        positionCount++;
+        if (type == Type.VARIABLE_BINARY) {
+            offsets[positionCount] = sliceOutput.size();
+        }
+        return this;
+    }
+
+    /**
+     * Appends the value of field 0 at the current position of the cursor.
+     */
+    public ColumnarBlockBuilder append(BlockCursor cursor)
+    {
+        if (cursor.isNull(0)) {
+            return appendNull();
+        }
+        switch (type) {
+            case BOOLEAN:
+                return append(cursor.getBoolean(0));
+            case FIXED_INT_64:
+                return append(cursor.getLong(0));
+            case DOUBLE:
+                return append(cursor.getDouble(0));
+            case VARIABLE_BINARY:
+                return append(cursor.getSlice(0));
+            default:
+                throw new IllegalStateException("Unsupported type " + type);
+        }
+    }
+
+    private void ensureCapacity()
+    {
+        if (positionCount < nulls.length) {
+            return;
+        }
+        int newCapacity = nulls.length * 2;
+        nulls = Arrays.copyOf(nulls, newCapacity);
+        switch (type) {
+            case BOOLEAN:
+                booleans = Arrays.copyOf(booleans, newCapacity);
+                break;
+            case FIXED_INT_64:
+                longs = Arrays.copyOf(longs, newCapacity);
+                break;
+            case DOUBLE:
+                doubles = Arrays.copyOf(doubles, newCapacity);
+                break;
+            case VARIABLE_BINARY:
+                offsets = Arrays.copyOf(offsets, newCapacity + 1);
+                break;
+        }
+    }
+
+    public AbstractColumnarBlock build()
+    {
+        checkState(!isEmpty(), "Cannot build an empty block");
+
+        switch (type) {
+            case BOOLEAN:
+                return new BooleanArrayBlock(positionCount, nulls, booleans);
+            case FIXED_INT_64:
+                return new LongArrayBlock(positionCount, nulls, longs);
+            case DOUBLE:
+                return new DoubleArrayBlock(positionCount, nulls, doubles);
+            case VARIABLE_BINARY:
+                return new SliceArrayBlock(positionCount, nulls, offsets, sliceOutput.slice());
+            default:
+                throw new IllegalStateException("Unsupported type " + type);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("tupleInfo", tupleInfo)
+                .add("positionCount", positionCount)
+                .add("size", getSize())
+                .toString();
+    }
+}
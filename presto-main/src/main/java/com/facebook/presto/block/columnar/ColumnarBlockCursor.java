@@ -0,0 +1,239 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.block.columnar;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.block.BlockBuilder;
+import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.tuple.Tuple;
+import com.facebook.presto.tuple.TupleInfo;
+import io.airlift.slice.Slice;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Cursor over a columnar block.  The tuple format is only materialized when a
+ * caller asks for the tuple or the raw slice of the current position.
+ */
+public final class ColumnarBlockCursor
+        implements BlockCursor
+{
+    private final AbstractColumnarBlock block;
+    private final TupleInfo tupleInfo;
+    private final int positionCount;
+
+    private int position = -1;
+    private Tuple tuple;
+
+    public ColumnarBlockCursor(AbstractColumnarBlock block)
+    {
+        this.block = checkNotNull(block, "block is null");
+        this.tupleInfo = block.getTupleInfo();
+        this.positionCount = block.getPositionCount();
+    }
+
+    @Override
+    public TupleInfo getTupleInfo()
+    {
+        return tupleInfo;
+    }
+
+    @Override
+    public int getRemainingPositions()
+    {
+        return positionCount - (position + 1);
+    }
+
+    @Override
+    public boolean isValid()
+    {
+        return 0 <= position && position < positionCount;
+    }
+
+    @Override
+    public boolean isFinished()
+    {
+        return position >= positionCount;
+    }
+
+    private void checkReadablePosition()
+    {
+        checkState(isValid(), "cursor is not valid");
+    }
+
+    @Override
+    public boolean advanceNextPosition()
+    {
+        tuple = null;
+        if (position >= positionCount - 1) {
+            position = positionCount;
+            return false;
+        }
+
+        position++;
+        return true;
+    }
+
+    @Override
+    public boolean advanceToPosition(int newPosition)
+    {
+        tuple = null;
+        if (newPosition >= positionCount) {
+            position = positionCount;
+            return false;
+        }
+
+        checkArgument(newPosition >= this.position, "Can't advance backwards");
+
+        this.position = newPosition;
+        return true;
+    }
+
+    @Override
+    public Block getRegionAndAdvance(int length)
+    {
+        tuple = null;
+        length = Math.min(length, getRemainingPositions());
+
+        Block region = block.getRegion(position + 1, length);
+        position += length;
+        return region;
+    }
+
+    @Override
+    public Tuple getTuple()
+    {
+        checkReadablePosition();
+        if (tuple == null) {
+            TupleInfo.Builder builder = tupleInfo.builder();
+            if (block.isNull(position)) {
+                builder.appendNull();
+            }
+            else {
+                switch (tupleInfo.getTypes().get(0)) {
+                    case BOOLEAN:
+                        builder.append(block.getBoolean(position));
+                        break;
+                    case FIXED_INT_64:
+                        builder.append(block.getLong(position));
+                        break;
+                    case DOUBLE:
+                        builder.append(block.getDouble(position));
+                        break;
+                    case VARIABLE_BINARY:
+                        builder.append(block.getSlice(position));
+                        break;
+                    default:
+                        throw new IllegalStateException("Unsupported type " + tupleInfo.getTypes().get(0));
+                }
+            }
+            tuple = builder.build();
+        }
+        return tuple;
+    }
+
+    @Override
+    public boolean getBoolean(int field)
+    {
+        checkReadablePosition();
+        checkElementIndex(field, 1, "field");
+        return block.getBoolean(position);
+    }
+
+    @Override
+    public long getLong(int field)
+    {
+        checkReadablePosition();
+        checkElementIndex(field, 1, "field");
+        return block.getLong(position);
+    }
+
+    @Override
+    public double getDouble(int field)
+    {
+        checkReadablePosition();
+        checkElementIndex(field, 1, "field");
+        return block.getDouble(position);
+    }
+
+    @Override
+    public Slice getSlice(int field)
+    {
+        checkReadablePosition();
+        checkElementIndex(field, 1, "field");
+        return block.getSlice(position);
+    }
+
+    @Override
+    public boolean isNull(int field)
+    {
+        checkReadablePosition();
+        checkElementIndex(field, 1, "field");
+        return block.isNull(position);
+    }
+
+    @Override
+    public int getPosition()
+    {
+        checkReadablePosition();
+        return position;
+    }
+
+    @Override
+    public boolean currentTupleEquals(Tuple value)
+    {
+        return getTuple().equals(value);
+    }
+
+    @Override
+    public int getRawOffset()
+    {
+        return 0;
+    }
+
+    @Override
+    public Slice getRawSlice()
+    {
+        return getTuple().getTupleSlice();
+    }
+
+    @Override
+    public void appendTupleTo(BlockBuilder blockBuilder)
+    {
+        checkReadablePosition();
+        if (block.isNull(position)) {
+            blockBuilder.appendNull();
+            return;
+        }
+        switch (tupleInfo.getTypes().get(0)) {
+            case BOOLEAN:
+                blockBuilder.append(block.getBoolean(position));
+                break;
+            case FIXED_INT_64:
+                blockBuilder.append(block.getLong(position));
+                break;
+            case DOUBLE:
+                blockBuilder.append(block.getDouble(position));
+                break;
+            case VARIABLE_BINARY:
+                blockBuilder.append(block.getSlice(position));
+                break;
+            default:
+                throw new IllegalStateException("Unsupported type " + tupleInfo.getTypes().get(0));
+        }
+    }
+}
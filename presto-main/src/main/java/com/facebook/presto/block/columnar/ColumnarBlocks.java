@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.block.columnar;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.block.uncompressed.UncompressedBlock;
+import com.facebook.presto.tuple.TupleInfo;
+import com.facebook.presto.tuple.TupleInfo.Type;
+import io.airlift.slice.Slice;
+
+import static io.airlift.slice.SizeOf.SIZE_OF_BYTE;
+import static io.airlift.slice.SizeOf.SIZE_OF_DOUBLE;
+import static io.airlift.slice.SizeOf.SIZE_OF_LONG;
+
+public final class ColumnarBlocks
+{
+    private ColumnarBlocks()
+    {
+    }
+
+    /**
+     * Returns a columnar block containing the first field of each position in the block.
+     */
+    public static AbstractColumnarBlock toColumnarBlock(Block block)
+    {
+        if (block instanceof AbstractColumnarBlock) {
+            return (AbstractColumnarBlock) block;
+        }
+
+        TupleInfo tupleInfo = block.getTupleInfo();
+        Type type = tupleInfo.getTypes().get(0);
+        if (block instanceof UncompressedBlock && tupleInfo.getFieldCount() == 1) {
+            // fixed width single field tuples are a null byte followed by the value
+            UncompressedBlock uncompressedBlock = (UncompressedBlock) block;
+            switch (type) {
+                case BOOLEAN:
+                    return toBooleanArrayBlock(uncompressedBlock);
+                case FIXED_INT_64:
+                    return toLongArrayBlock(uncompressedBlock);
+                case DOUBLE:
+                    return toDoubleArrayBlock(uncompressedBlock);
+                default:
+                    // variable width values are copied through the cursor below
+                    break;
+            }
+        }
+
+        ColumnarBlockBuilder builder = new ColumnarBlockBuilder(new TupleInfo(type));
+        BlockCursor cursor = block.cursor();
+        while (cursor.advanceNextPosition()) {
+            builder.append(cursor);
+        }
+        return builder.build();
+    }
+
+    private static BooleanArrayBlock toBooleanArrayBlock(UncompressedBlock block)
+    {
+        int positionCount = block.getPositionCount();
+        Slice slice = block.getSlice();
+        boolean[] nulls = new boolean[positionCount];
+        boolean[] values = new boolean[positionCount];
+
+        int offset = block.getSliceOffset();
+        for (int position = 0; position < positionCount; position++) {
+            nulls[position] = slice.getByte(offset) != 0;
+            values[position] = slice.getByte(offset + SIZE_OF_BYTE) != 0;
+            offset += SIZE_OF_BYTE + SIZE_OF_BYTE;
+        }
+        return new BooleanArrayBlock(positionCount, nulls, values);
+    }
+
+    private static LongArrayBlock toLongArrayBlock(UncompressedBlock block)
+    {
+        int positionCount = block.getPositionCount();
+        Slice slice = block.getSlice();
+        boolean[] nulls = new boolean[positionCount];
+        long[] values = new long[positionCount];
+
+        int offset = block.getSliceOffset();
+        for (int position = 0; position < positionCount; position++) {
+            nulls[position] = slice.getByte(offset) != 0;
+            values[position] = slice.getLong(offset + SIZE_OF_BYTE);
+            offset += SIZE_OF_BYTE + SIZE_OF_LONG;
+        }
+        return new LongArrayBlock(positionCount, nulls, values);
+    }
+
+    private static DoubleArrayBlock toDoubleArrayBlock(UncompressedBlock block)
+    {
+        int positionCount = block.getPositionCount();
+        Slice slice = block.getSlice();
+        boolean[] nulls = new boolean[positionCount];
+        double[] values = new double[positionCount];
+
+        int offset = block.getSliceOffset();
+        for (int position = 0; position < positionCount; position++) {
+            nulls[position] = slice.getByte(offset) != 0;
+            values[position] = slice.getDouble(offset + SIZE_OF_BYTE);
+            offset += SIZE_OF_BYTE + SIZE_OF_DOUBLE;
+        }
+        return new DoubleArrayBlock(positionCount, nulls, values);
+    }
+}
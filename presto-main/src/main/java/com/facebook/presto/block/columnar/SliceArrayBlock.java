@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.block.columnar;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.base.Objects;
+import io.airlift.slice.Slice;
+import io.airlift.units.DataSize;
+import io.airlift.units.DataSize.Unit;
+
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_VARBINARY;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.slice.SizeOf.SIZE_OF_BYTE;
+import static io.airlift.slice.SizeOf.SIZE_OF_INT;
+
+/**
+ * Variable width values packed into a single slice.  The value at array index i
+ * starts at offsets[i] and ends at offsets[i + 1].
+ */
+public final class SliceArrayBlock
+        extends AbstractColumnarBlock
+{
+    private final int[] offsets;
+    private final Slice data;
+
+    public SliceArrayBlock(int positionCount, boolean[] nulls, int[] offsets, Slice data)
+    {
+        this(0, positionCount, nulls, offsets, data);
+    }
+
+    public SliceArrayBlock(int positionOffset, int positionCount, boolean[] nulls, int[] offsets, Slice data)
+    {
+        super(positionOffset, positionCount, nulls);
+        this.offsets = checkNotNull(offsets, "offsets is null");
+        this.data = checkNotNull(data, "data is null");
+        checkArgument(offsets.length > positionOffset + positionCount, "offsets is too small");
+    }
+
+    @Override
+    public TupleInfo getTupleInfo()
+    {
+        return SINGLE_VARBINARY;
+    }
+
+    public int[] getOffsets()
+    {
+        return offsets;
+    }
+
+    public Slice getData()
+    {
+        return data;
+    }
+
+    @Override
+    public Slice getSlice(int position)
+    {
+        int index = positionOffset + position;
+        return data.slice(offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    @Override
+    public DataSize getDataSize()
+    {
+        long valuesSize = offsets[positionOffset + positionCount] - offsets[positionOffset];
+        return new DataSize(valuesSize + positionCount * (SIZE_OF_INT + SIZE_OF_BYTE), Unit.BYTE);
+    }
+
+    @Override
+    protected Block createRegion(int positionOffset, int length)
+    {
+        return new SliceArrayBlock(positionOffset, length, nulls, offsets, data);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("positionOffset", positionOffset)
+                .add("positionCount", positionCount)
+                .add("data", data)
+                .toString();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.units.DataSize;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.airlift.units.DataSize.Unit.BYTE;
+
+/**
+ * Tracks the memory reserved by the running queries on each node, from the task infos
+ * the coordinator polls.  When the queries on a node reserve more than the configured
+ * fraction of the memory pool of the node, the query using the most memory on the node
+ * is killed, so the other queries can continue instead of failing at random when the
+ * pool is exhausted.
+ */
+@ThreadSafe
+public class ClusterMemoryManager
+{
+    private static final Logger log = Logger.get(ClusterMemoryManager.class);
+
+    private final double maxMemoryPoolUsage;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong maxBytes = new AtomicLong();
+    private final CounterStat killedQueries = new CounterStat();
+
+    public ClusterMemoryManager(double maxMemoryPoolUsage)
+    {
+        checkArgument(maxMemoryPoolUsage >= 0 && maxMemoryPoolUsage <= 1, "maxMemoryPoolUsage must be between 0 and 1");
+        this.maxMemoryPoolUsage = maxMemoryPoolUsage;
+    }
+
+    public synchronized void process(Iterable<QueryExecution> queries)
+    {
+        checkNotNull(queries, "queries is null");
+
+        Map<URI, NodeMemory> nodes = new HashMap<>();
+        for (QueryExecution query : queries) {
+            QueryInfo queryInfo = query.getQueryInfo();
+            if (queryInfo.getState().isDone() || queryInfo.getOutputStage() == null) {
+                continue;
+            }
+
+            for (StageInfo stageInfo : StageInfo.getAllStages(queryInfo.getOutputStage())) {
+                for (TaskInfo taskInfo : stageInfo.getTasks()) {
+                    // the memory of finished tasks is returned to the pool
+                    if (taskInfo.getState().isDone()) {
+                        continue;
+                    }
+
+                    URI node = getNodeUri(taskInfo.getSelf());
+                    NodeMemory nodeMemory = nodes.get(node);
+                    if (nodeMemory == null) {
+                        nodeMemory = new NodeMemory(node);
+                        nodes.put(node, nodeMemory);
+                    }
+                    nodeMemory.addTask(query, taskInfo);
+                }
+            }
+        }
+
+        long clusterReservedBytes = 0;
+        long clusterMaxBytes = 0;
+        for (NodeMemory nodeMemory : nodes.values()) {
+            clusterReservedBytes += nodeMemory.getReservedBytes();
+            clusterMaxBytes += nodeMemory.getMaxBytes();
+
+            if (nodeMemory.getMaxBytes() > 0 && nodeMemory.getReservedBytes() > nodeMemory.getMaxBytes() * maxMemoryPoolUsage) {
+                killLargestQuery(nodeMemory);
+            }
+        }
+        reservedBytes.set(clusterReservedBytes);
+        maxBytes.set(clusterMaxBytes);
+    }
+
+    private void killLargestQuery(NodeMemory nodeMemory)
+    {
+        QueryExecution largestQuery = null;
+        long largestQueryBytes = -1;
+        for (Map.Entry<QueryExecution, Long> entry : nodeMemory.getQueryReservations().entrySet()) {
+            if (entry.getValue() > largestQueryBytes) {
+                largestQuery = entry.getKey();
+                largestQueryBytes = entry.getValue();
+            }
+        }
+        if (largestQuery == null) {
+            return;
+        }
+
+        QueryId queryId = largestQuery.getQueryInfo().getQueryId();
+        log.info("Killing query %s, which reserved %s of the %s reserved on %s",
+                queryId,
+                succinctBytes(largestQueryBytes),
+                succinctBytes(nodeMemory.getReservedBytes()),
+                nodeMemory.getNode());
+
+        largestQuery.fail(new ExceededClusterMemoryException(
+                queryId,
+                succinctBytes(largestQueryBytes),
+                nodeMemory.getNode(),
+                succinctBytes(nodeMemory.getMaxBytes())));
+        killedQueries.update(1);
+    }
+
+    @Managed
+    public long getReservedBytes()
+    {
+        return reservedBytes.get();
+    }
+
+    @Managed
+    public long getMaxBytes()
+    {
+        return maxBytes.get();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getKilledQueries()
+    {
+        return killedQueries;
+    }
+
+    private static URI getNodeUri(URI taskUri)
+    {
+        return URI.create(taskUri.getScheme() + "://" + taskUri.getRawAuthority());
+    }
+
+    private static DataSize succinctBytes(long bytes)
+    {
+        return new DataSize(bytes, BYTE).convertToMostSuccinctDataSize();
+    }
+
+    private static class NodeMemory
+    {
+        private final URI node;
+        private final Map<QueryExecution, Long> queryReservations = new HashMap<>();
+        private long reservedBytes;
+        private long maxBytes;
+
+        private NodeMemory(URI node)
+        {
+            this.node = node;
+        }
+
+        public void addTask(QueryExecution query, TaskInfo taskInfo)
+        {
+            long taskBytes = taskInfo.getStats().getMemoryReservation().toBytes();
+
+            Long queryBytes = queryReservations.get(query);
+            queryReservations.put(query, (queryBytes == null ? 0 : queryBytes) + taskBytes);
+            reservedBytes += taskBytes;
+
+            // the pool size is not known until the node reports it
+            MemoryPoolInfo memoryPool = taskInfo.getMemoryPool();
+            if (memoryPool != null) {
+                maxBytes = Math.max(maxBytes, memoryPool.getMaxBytes());
+            }
+        }
+
+        public URI getNode()
+        {
+            return node;
+        }
+
+        public Map<QueryExecution, Long> getQueryReservations()
+        {
+            return queryReservations;
+        }
+
+        public long getReservedBytes()
+        {
+            return reservedBytes;
+        }
+
+        public long getMaxBytes()
+        {
+            return maxBytes;
+        }
+    }
+}
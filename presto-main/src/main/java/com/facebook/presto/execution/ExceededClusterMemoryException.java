@@ -0,0 +1,27 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import io.airlift.units.DataSize;
+
+import java.net.URI;
+
+public class ExceededClusterMemoryException
+        extends RuntimeException
+{
+    public ExceededClusterMemoryException(QueryId queryId, DataSize queryMemory, URI node, DataSize memoryPoolSize)
+    {
+        super(String.format("Query %s was killed because it used the most memory (%s) on %s, whose memory pool of %s is exhausted", queryId, queryMemory, node, memoryPoolSize));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Memory shared by all tasks on a node.  Tasks reserve memory from the pool in addition
+ * to their own limit, so many tasks together can not exhaust the heap.  Operators that
+ * can not reserve memory from the pool may wait up to the max wait time for other tasks
+ * to return memory to the pool, after which they fail.
+ */
+@ThreadSafe
+public class MemoryPool
+{
+    private final long maxBytes;
+    private final Duration maxWait;
+    private final ScheduledExecutorService timeoutExecutor;
+
+    @GuardedBy("this")
+    private long reservedBytes;
+    @GuardedBy("this")
+    private SettableFuture<?> memoryFreedFuture;
+
+    /**
+     * Creates a pool that operators can not wait for.
+     */
+    public MemoryPool(DataSize maxSize)
+    {
+        this.maxBytes = checkNotNull(maxSize, "maxSize is null").toBytes();
+        checkArgument(maxBytes > 0, "maxSize must be positive");
+        this.maxWait = new Duration(0, MILLISECONDS);
+        this.timeoutExecutor = null;
+    }
+
+    public MemoryPool(DataSize maxSize, Duration maxWait, ScheduledExecutorService timeoutExecutor)
+    {
+        this.maxBytes = checkNotNull(maxSize, "maxSize is null").toBytes();
+        checkArgument(maxBytes > 0, "maxSize must be positive");
+        this.maxWait = checkNotNull(maxWait, "maxWait is null");
+        this.timeoutExecutor = checkNotNull(timeoutExecutor, "timeoutExecutor is null");
+    }
+
+    /**
+     * Reserves the memory if the pool has enough free memory.
+     */
+    public synchronized boolean tryReserve(long bytes)
+    {
+        checkArgument(bytes >= 0, "bytes is negative");
+
+        if (reservedBytes + bytes > maxBytes) {
+            return false;
+        }
+        reservedBytes += bytes;
+        return true;
+    }
+
+    public void free(long bytes)
+    {
+        checkArgument(bytes >= 0, "bytes is negative");
+
+        SettableFuture<?> future;
+        synchronized (this) {
+            checkArgument(bytes <= reservedBytes, "tried to free more memory than is reserved");
+            reservedBytes -= bytes;
+
+            future = memoryFreedFuture;
+            memoryFreedFuture = null;
+        }
+
+        // complete the future outside of the lock, since the listeners may reserve memory
+        if (future != null) {
+            future.set(null);
+        }
+    }
+
+    /**
+     * Returns a future that completes when memory is returned to the pool, or when the
+     * timeout runs out, whichever happens first.  Returns a completed future if the pool
+     * already has the specified bytes free.
+     */
+    public ListenableFuture<?> waitForFreeMemory(long bytes, Duration timeout)
+    {
+        checkNotNull(timeout, "timeout is null");
+
+        ListenableFuture<?> memoryFreed;
+        synchronized (this) {
+            if (reservedBytes + bytes <= maxBytes) {
+                return Futures.immediateFuture(null);
+            }
+            if (memoryFreedFuture == null) {
+                memoryFreedFuture = SettableFuture.create();
+            }
+            memoryFreed = memoryFreedFuture;
+        }
+        checkState(timeoutExecutor != null, "Memory pool does not allow waiting for memory");
+
+        final SettableFuture<?> future = SettableFuture.create();
+        Runnable complete = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                future.set(null);
+            }
+        };
+        memoryFreed.addListener(complete, sameThreadExecutor());
+        final ScheduledFuture<?> timeoutFuture = timeoutExecutor.schedule(complete, timeout.roundTo(NANOSECONDS), NANOSECONDS);
+        future.addListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                timeoutFuture.cancel(false);
+            }
+        }, sameThreadExecutor());
+        return future;
+    }
+
+    /**
+     * Returns how long an operator may wait for memory before it fails.
+     */
+    public Duration getMaxWait()
+    {
+        return maxWait;
+    }
+
+    @Managed
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    @Managed
+    public synchronized long getReservedBytes()
+    {
+        return reservedBytes;
+    }
+
+    @Managed
+    public synchronized long getFreeBytes()
+    {
+        return maxBytes - reservedBytes;
+    }
+
+    public synchronized MemoryPoolInfo getInfo()
+    {
+        return new MemoryPoolInfo(maxBytes, reservedBytes);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+@Immutable
+public class MemoryPoolInfo
+{
+    private final long maxBytes;
+    private final long reservedBytes;
+
+    @JsonCreator
+    public MemoryPoolInfo(
+            @JsonProperty("maxBytes") long maxBytes,
+            @JsonProperty("reservedBytes") long reservedBytes)
+    {
+        this.maxBytes = maxBytes;
+        this.reservedBytes = reservedBytes;
+    }
+
+    @JsonProperty
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    @JsonProperty
+    public long getReservedBytes()
+    {
+        return reservedBytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("maxBytes", maxBytes)
+                .add("reservedBytes", reservedBytes)
+                .toString();
+    }
+}
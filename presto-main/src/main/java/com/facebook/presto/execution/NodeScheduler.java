@@ -152,10 +152,17 @@ public class NodeScheduler
         public Node selectRandomNode()
         {
             // create a single partition on a random node for this fragment
+            return selectRandomNodes(1).get(0);
+        }
+
+        public List<Node> selectRandomNodes(int limit)
+        {
+            Preconditions.checkArgument(limit > 0, "limit must be at least 1");
+
             ArrayList<Node> nodes = new ArrayList<>(nodeMap.get().get().getNodesByHostAndPort().values());
             Preconditions.checkState(!nodes.isEmpty(), "Cluster does not have any active nodes");
             Collections.shuffle(nodes, ThreadLocalRandom.current());
-            return nodes.get(0);
+            return ImmutableList.copyOf(nodes.subList(0, Math.min(limit, nodes.size())));
         }
 
         public Node selectNode(Split split)
@@ -14,9 +14,12 @@
 package com.facebook.presto.execution;
 
 import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
 import io.airlift.units.Duration;
 import io.airlift.units.MinDuration;
 
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
@@ -25,8 +28,13 @@ import java.util.concurrent.TimeUnit;
 public class QueryManagerConfig
 {
     private int maxPendingSplitsPerNode = 100;
+    private int initialHashPartitions = 8;
+    private boolean distributedJoinsEnabled;
     private Duration maxQueryAge = new Duration(15, TimeUnit.MINUTES);
     private int maxQueryHistory = 100;
+    private int maxConcurrentQueries = 1000;
+    private int maxQueuedQueries = 5000;
+    private double maxMemoryPoolUsage = 0.9;
     private Duration clientTimeout = new Duration(5, TimeUnit.MINUTES);
 
     private int queryManagerExecutorPoolSize = 5;
@@ -47,6 +55,32 @@ public class QueryManagerConfig
         return this;
     }
 
+    @Min(1)
+    public int getInitialHashPartitions()
+    {
+        return initialHashPartitions;
+    }
+
+    @Config("query.initial-hash-partitions")
+    public QueryManagerConfig setInitialHashPartitions(int initialHashPartitions)
+    {
+        this.initialHashPartitions = initialHashPartitions;
+        return this;
+    }
+
+    public boolean isDistributedJoinsEnabled()
+    {
+        return distributedJoinsEnabled;
+    }
+
+    @Config("query.distributed-joins-enabled")
+    @ConfigDescription("Hash partition both sides of a join instead of broadcasting the build side")
+    public QueryManagerConfig setDistributedJoinsEnabled(boolean distributedJoinsEnabled)
+    {
+        this.distributedJoinsEnabled = distributedJoinsEnabled;
+        return this;
+    }
+
     @NotNull
     public Duration getMaxQueryAge()
     {
@@ -73,6 +107,49 @@ public class QueryManagerConfig
         return this;
     }
 
+    @Min(1)
+    public int getMaxConcurrentQueries()
+    {
+        return maxConcurrentQueries;
+    }
+
+    @Config("query.max-concurrent-queries")
+    @ConfigDescription("Maximum number of queries each user runs from each source at the same time")
+    public QueryManagerConfig setMaxConcurrentQueries(int maxConcurrentQueries)
+    {
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        return this;
+    }
+
+    @Min(0)
+    public int getMaxQueuedQueries()
+    {
+        return maxQueuedQueries;
+    }
+
+    @Config("query.max-queued-queries")
+    @ConfigDescription("Maximum number of queries of each user and source waiting to run, beyond which queries are rejected")
+    public QueryManagerConfig setMaxQueuedQueries(int maxQueuedQueries)
+    {
+        this.maxQueuedQueries = maxQueuedQueries;
+        return this;
+    }
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    public double getMaxMemoryPoolUsage()
+    {
+        return maxMemoryPoolUsage;
+    }
+
+    @Config("query.max-memory-pool-usage")
+    @ConfigDescription("Fraction of the memory pool of a node the running queries may reserve before the query using the most memory on the node is killed")
+    public QueryManagerConfig setMaxMemoryPoolUsage(double maxMemoryPoolUsage)
+    {
+        this.maxMemoryPoolUsage = maxMemoryPoolUsage;
+        return this;
+    }
+
     @MinDuration("5s")
     @NotNull
     public Duration getClientTimeout()
@@ -0,0 +1,286 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import com.facebook.presto.execution.StateMachine.StateChangeListener;
+import com.facebook.presto.sql.analyzer.Session;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import io.airlift.stats.CounterStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Limits the number of queries each user runs from each source.  Queries beyond the limit
+ * stay in the QUEUED state in a queue for the user and source, and are started in the
+ * order they were submitted as running queries finish.  Queries are rejected when the
+ * queue is full.
+ */
+@ThreadSafe
+public class QueryQueueManager
+{
+    private final int maxConcurrentQueries;
+    private final int maxQueuedQueries;
+    private final Executor executor;
+
+    private final ConcurrentMap<QueueKey, QueryQueue> queues = new ConcurrentHashMap<>();
+
+    private final CounterStat rejectedQueries = new CounterStat();
+
+    public QueryQueueManager(int maxConcurrentQueries, int maxQueuedQueries, Executor executor)
+    {
+        checkArgument(maxConcurrentQueries > 0, "maxConcurrentQueries must be at least 1");
+        checkArgument(maxQueuedQueries >= 0, "maxQueuedQueries is negative");
+
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.maxQueuedQueries = maxQueuedQueries;
+        this.executor = checkNotNull(executor, "executor is null");
+    }
+
+    /**
+     * Queues the query, and runs the query starter on the executor once the query can run.
+     * Returns false if the queue of the user and source of the query is full.
+     */
+    public boolean submit(QueryExecution queryExecution, Runnable queryStarter)
+    {
+        checkNotNull(queryExecution, "queryExecution is null");
+        checkNotNull(queryStarter, "queryStarter is null");
+
+        Session session = queryExecution.getQueryInfo().getSession();
+        QueueKey key = new QueueKey(session.getUser(), session.getSource());
+        QueuedQuery queuedQuery = new QueuedQuery(queryExecution, queryStarter);
+
+        while (true) {
+            QueryQueue queue = queues.get(key);
+            if (queue == null) {
+                queue = new QueryQueue(key);
+                QueryQueue existingQueue = queues.putIfAbsent(key, queue);
+                if (existingQueue != null) {
+                    queue = existingQueue;
+                }
+            }
+
+            switch (queue.enqueue(queuedQuery)) {
+                case QUEUED:
+                    finishWhenDone(queue, queuedQuery);
+                    return true;
+                case QUEUE_FULL:
+                    rejectedQueries.update(1);
+                    return false;
+                case QUEUE_REMOVED:
+                    // the queue was removed when it became idle, so try again with a new queue
+                    continue;
+            }
+        }
+    }
+
+    private static void finishWhenDone(final QueryQueue queue, final QueuedQuery queuedQuery)
+    {
+        QueryExecution queryExecution = queuedQuery.getQueryExecution();
+        queryExecution.addStateChangeListener(new StateChangeListener<QueryState>()
+        {
+            @Override
+            public void stateChanged(QueryState newValue)
+            {
+                if (newValue.isDone()) {
+                    queue.queryFinished(queuedQuery);
+                }
+            }
+        });
+
+        // the query may have finished before the listener was added
+        if (queryExecution.getQueryInfo().getState().isDone()) {
+            queue.queryFinished(queuedQuery);
+        }
+    }
+
+    @Managed
+    public int getMaxConcurrentQueries()
+    {
+        return maxConcurrentQueries;
+    }
+
+    @Managed
+    public int getMaxQueuedQueries()
+    {
+        return maxQueuedQueries;
+    }
+
+    @Managed
+    public int getQueuedQueries()
+    {
+        int queued = 0;
+        for (QueryQueue queue : queues.values()) {
+            queued += queue.getQueuedQueries();
+        }
+        return queued;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRejectedQueries()
+    {
+        return rejectedQueries;
+    }
+
+    @VisibleForTesting
+    int getQueueCount()
+    {
+        return queues.size();
+    }
+
+    private enum EnqueueResult
+    {
+        QUEUED, QUEUE_FULL, QUEUE_REMOVED
+    }
+
+    private class QueryQueue
+    {
+        private final QueueKey key;
+
+        @GuardedBy("this")
+        private final Queue<QueuedQuery> queuedQueries = new ArrayDeque<>();
+        @GuardedBy("this")
+        private int runningQueries;
+        @GuardedBy("this")
+        private boolean removed;
+
+        private QueryQueue(QueueKey key)
+        {
+            this.key = key;
+        }
+
+        public synchronized EnqueueResult enqueue(QueuedQuery queuedQuery)
+        {
+            if (removed) {
+                return EnqueueResult.QUEUE_REMOVED;
+            }
+            if (runningQueries >= maxConcurrentQueries && queuedQueries.size() >= maxQueuedQueries) {
+                return EnqueueResult.QUEUE_FULL;
+            }
+
+            queuedQueries.add(queuedQuery);
+            startQueries();
+            return EnqueueResult.QUEUED;
+        }
+
+        public synchronized void queryFinished(QueuedQuery queuedQuery)
+        {
+            if (queuedQuery.finished) {
+                return;
+            }
+            queuedQuery.finished = true;
+
+            if (queuedQuery.started) {
+                runningQueries--;
+            }
+            else {
+                // canceled or failed while queued
+                queuedQueries.remove(queuedQuery);
+            }
+            startQueries();
+
+            if (runningQueries == 0 && queuedQueries.isEmpty()) {
+                removed = true;
+                queues.remove(key, this);
+            }
+        }
+
+        public synchronized int getQueuedQueries()
+        {
+            return queuedQueries.size();
+        }
+
+        @GuardedBy("this")
+        private void startQueries()
+        {
+            while (runningQueries < maxConcurrentQueries && !queuedQueries.isEmpty()) {
+                QueuedQuery queuedQuery = queuedQueries.poll();
+                queuedQuery.started = true;
+                runningQueries++;
+                executor.execute(queuedQuery.getQueryStarter());
+            }
+        }
+    }
+
+    private static class QueuedQuery
+    {
+        private final QueryExecution queryExecution;
+        private final Runnable queryStarter;
+
+        // guarded by the queue of the query
+        private boolean started;
+        private boolean finished;
+
+        private QueuedQuery(QueryExecution queryExecution, Runnable queryStarter)
+        {
+            this.queryExecution = queryExecution;
+            this.queryStarter = queryStarter;
+        }
+
+        public QueryExecution getQueryExecution()
+        {
+            return queryExecution;
+        }
+
+        public Runnable getQueryStarter()
+        {
+            return queryStarter;
+        }
+    }
+
+    private static final class QueueKey
+    {
+        private final String user;
+        private final String source;
+
+        private QueueKey(String user, String source)
+        {
+            this.user = user;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            QueueKey other = (QueueKey) obj;
+            return Objects.equal(this.user, other.user) &&
+                    Objects.equal(this.source, other.source);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(user, source);
+        }
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.execution;
 
+import com.facebook.presto.PagePartitionFunction;
 import com.facebook.presto.execution.StateMachine.StateChangeListener;
 import com.facebook.presto.spi.Split;
 import com.facebook.presto.sql.planner.plan.PlanNodeId;
@@ -20,7 +21,8 @@ import com.google.common.collect.Multimap;
 import io.airlift.units.Duration;
 
 import java.net.URI;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
 
 public interface RemoteTask
 {
@@ -28,13 +30,13 @@ public interface RemoteTask
 
     void start();
 
-    void addSplit(Split split);
+    void addSplits(List<Split> splits);
 
     void noMoreSplits();
 
     void addExchangeLocations(Multimap<PlanNodeId, URI> exchangeLocations, boolean noMore);
 
-    void addOutputBuffers(Set<String> outputBuffers, boolean noMore);
+    void addOutputBuffers(Map<String, PagePartitionFunction> outputBuffers, boolean noMore);
 
     void addStateChangeListener(StateChangeListener<TaskInfo> stateChangeListener);
 
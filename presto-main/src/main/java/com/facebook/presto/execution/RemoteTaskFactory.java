@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.execution;
 
+import com.facebook.presto.PagePartitionFunction;
 import com.facebook.presto.metadata.Node;
 import com.facebook.presto.spi.Split;
 import com.facebook.presto.sql.analyzer.Session;
@@ -23,7 +24,6 @@ import com.google.common.collect.Multimap;
 
 import java.net.URI;
 import java.util.Map;
-import java.util.Set;
 
 public interface RemoteTaskFactory
 {
@@ -34,5 +34,5 @@ public interface RemoteTaskFactory
             Split initialSplit,
             Map<PlanNodeId, OutputReceiver> outputReceivers,
             Multimap<PlanNodeId, URI> initialExchangeLocations,
-            Set<String> initialOutputIds);
+            Map<String, PagePartitionFunction> initialOutputBuffers);
 }
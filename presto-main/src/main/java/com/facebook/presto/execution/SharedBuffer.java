@@ -13,11 +13,13 @@
  */
 package com.facebook.presto.execution;
 
+import com.facebook.presto.HashPagePartitionFunction;
+import com.facebook.presto.PagePartitionFunction;
+import com.facebook.presto.UnpartitionedPagePartitionFunction;
 import com.facebook.presto.operator.Page;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Ints;
@@ -33,18 +35,29 @@ import javax.annotation.concurrent.ThreadSafe;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.facebook.presto.execution.BufferResult.emptyResults;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+/**
+ * Buffers the output pages of a task for the consumers of the task.  All consumers read
+ * from a single list of pages, and each consumer only tracks the sequence id of the next
+ * page it will read.  Pages are dropped once every open consumer has acknowledged them.
+ * <p/>
+ * Readers wait on the buffer for pages to arrive, but pages are partitioned for the
+ * reader without holding the lock, and writers only notify the buffer when a reader is
+ * waiting.
+ * <p/>
+ * A hash partitioned buffer instead splits each page by partition when it is added, and
+ * every queue keeps only the pages of its own partition.  Pages are dropped as soon as
+ * the queue of the partition acknowledges them.  The partitions are not known until all
+ * queues are added, so until then added pages wait outside of the buffer.
+ */
 @ThreadSafe
 public class SharedBuffer
 {
@@ -65,12 +78,14 @@ public class SharedBuffer
     }
 
     private final long maxBufferedBytes;
+    private final boolean partitioned;
 
     @GuardedBy("this")
     private long bufferedBytes;
 
+    // pages that have not been acknowledged by every open queue; the first page has the master sequence id
     @GuardedBy("this")
-    private final LinkedList<Page> masterQueue = new LinkedList<>();
+    private final List<Page> masterQueue = new ArrayList<>();
     @GuardedBy("this")
     private final LinkedList<QueuedPage> queuedPages = new LinkedList<>();
     @GuardedBy("this")
@@ -78,9 +93,15 @@ public class SharedBuffer
     @GuardedBy("this")
     private Map<String, NamedQueue> namedQueues = new HashMap<>();
     @GuardedBy("this")
-    private final SortedSet<NamedQueue> openQueuesBySequenceId = new TreeSet<>();
+    private int waitingReaders;
+
+    // queues of a partitioned buffer by partition, set when there are no more queues
     @GuardedBy("this")
-    private QueueState state = QueueState.OPEN;
+    private NamedQueue[] partitions;
+    private volatile HashPagePartitionFunction partitionFunction;
+
+    // only modified while holding the lock, but can be read without it
+    private volatile QueueState state = QueueState.OPEN;
 
     private final AtomicLong pagesAdded = new AtomicLong();
 
@@ -90,12 +111,21 @@ public class SharedBuffer
     private final AtomicBoolean closed = new AtomicBoolean();
 
     public SharedBuffer(DataSize maxBufferSize)
+    {
+        this(maxBufferSize, false);
+    }
+
+    /**
+     * @param partitioned if true, all queues must be hash partitioned and pages are split by partition when they are added
+     */
+    public SharedBuffer(DataSize maxBufferSize, boolean partitioned)
     {
         Preconditions.checkArgument(maxBufferSize.toBytes() > 0, "maxBufferSize must be at least 1");
         this.maxBufferedBytes = maxBufferSize.toBytes();
+        this.partitioned = partitioned;
     }
 
-    public synchronized boolean isFinished()
+    public boolean isFinished()
     {
         return state == QueueState.FINISHED;
     }
@@ -106,21 +136,39 @@ public class SharedBuffer
         for (NamedQueue namedQueue : namedQueues.values()) {
             infos.add(new BufferInfo(namedQueue.getQueueId(), namedQueue.isFinished(), namedQueue.size(), namedQueue.pagesRemoved()));
         }
-        return new SharedBufferInfo(state, masterSequenceId, pagesAdded.get(), infos.build());
+        return new SharedBufferInfo(state, masterSequenceId, pagesAdded.get(), getBufferedPages(), bufferedBytes, queuedPages.size(), infos.build());
+    }
+
+    private synchronized int getBufferedPages()
+    {
+        if (!partitioned) {
+            return masterQueue.size();
+        }
+
+        int bufferedPages = 0;
+        for (NamedQueue namedQueue : namedQueues.values()) {
+            bufferedPages += namedQueue.size();
+        }
+        return bufferedPages;
     }
 
     public synchronized void addQueue(String queueId)
+    {
+        addQueue(queueId, new UnpartitionedPagePartitionFunction());
+    }
+
+    public synchronized void addQueue(String queueId, PagePartitionFunction partitionFunction)
     {
         Preconditions.checkNotNull(queueId, "queueId is null");
+        Preconditions.checkNotNull(partitionFunction, "partitionFunction is null");
         // ignore buffers added after query finishes, which can happen when a query is canceled
         // also ignore duplicates, which is normal
         if (state == QueueState.FINISHED || namedQueues.containsKey(queueId)) {
             return;
         }
         Preconditions.checkState(state == QueueState.OPEN, "%s is not OPEN", SharedBuffer.class.getSimpleName());
-        NamedQueue namedQueue = new NamedQueue(queueId);
-        namedQueues.put(queueId, namedQueue);
-        openQueuesBySequenceId.add(namedQueue);
+        Preconditions.checkArgument(!partitioned || partitionFunction instanceof HashPagePartitionFunction, "Queues of a partitioned buffer must be hash partitioned");
+        namedQueues.put(queueId, new NamedQueue(queueId, partitionFunction));
     }
 
     public synchronized void noMoreQueues()
@@ -130,40 +178,119 @@ public class SharedBuffer
             return;
         }
 
+        if (partitioned) {
+            createPartitions();
+        }
+
         state = QueueState.NO_MORE_QUEUES;
 
         updateState();
     }
 
-    public synchronized ListenableFuture<?> enqueue(Page page)
+    private synchronized void createPartitions()
+    {
+        if (namedQueues.isEmpty()) {
+            return;
+        }
+
+        HashPagePartitionFunction partitionFunction = null;
+        NamedQueue[] partitions = null;
+        for (NamedQueue namedQueue : namedQueues.values()) {
+            HashPagePartitionFunction queuePartitionFunction = (HashPagePartitionFunction) namedQueue.getPartitionFunction();
+            if (partitionFunction == null) {
+                partitionFunction = queuePartitionFunction;
+                partitions = new NamedQueue[partitionFunction.getPartitionCount()];
+            }
+            Preconditions.checkState(queuePartitionFunction.getPartitionCount() == partitions.length &&
+                    queuePartitionFunction.getPartitioningChannels().equals(partitionFunction.getPartitioningChannels()),
+                    "Queues of a partitioned buffer must use the same partitioning");
+            Preconditions.checkState(partitions[queuePartitionFunction.getPartition()] == null, "Partition %s has more than one queue", queuePartitionFunction.getPartition());
+            partitions[queuePartitionFunction.getPartition()] = namedQueue;
+        }
+        Preconditions.checkState(namedQueues.size() == partitions.length, "Partitioned buffer has %s queues for %s partitions", namedQueues.size(), partitions.length);
+
+        this.partitions = partitions;
+        this.partitionFunction = partitionFunction;
+    }
+
+    public ListenableFuture<?> enqueue(Page page)
     {
         Preconditions.checkNotNull(page, "page is null");
 
-        // is the output done
+        // is the output done (checked without the lock since a closed buffer never reopens)
         if (closed.get()) {
             return Futures.immediateFuture(true);
         }
 
-        // is there room in the buffer
-        if (bufferedBytes < maxBufferedBytes) {
-            addInternal(page);
-            return Futures.immediateFuture(true);
+        // split the page by partition before taking the lock
+        List<Page> partitionedPages = null;
+        HashPagePartitionFunction partitionFunction = this.partitionFunction;
+        if (partitionFunction != null) {
+            partitionedPages = partitionFunction.splitPage(page);
         }
 
-        QueuedPage queuedPage = new QueuedPage(page);
-        queuedPages.addLast(queuedPage);
-        return queuedPage.getFuture();
+        synchronized (this) {
+            if (closed.get()) {
+                return Futures.immediateFuture(true);
+            }
+
+            // a partitioned buffer without queues has no consumers for the page
+            if (partitioned && state != QueueState.OPEN && partitions == null) {
+                return Futures.immediateFuture(true);
+            }
+
+            // is there room in the buffer (pages of a partitioned buffer wait until the partitions are known)
+            if (bufferedBytes < maxBufferedBytes && (!partitioned || partitions != null)) {
+                if (partitionedPages != null) {
+                    addPartitionedPages(partitionedPages);
+                }
+                else {
+                    addInternal(page);
+                }
+                return Futures.immediateFuture(true);
+            }
+
+            QueuedPage queuedPage = new QueuedPage(page);
+            queuedPages.addLast(queuedPage);
+            return queuedPage.getFuture();
+        }
     }
 
     private synchronized void addInternal(Page page)
     {
+        if (partitioned) {
+            addPartitionedPages(partitionFunction.splitPage(page));
+            return;
+        }
+
         // add page
         masterQueue.add(page);
         pagesAdded.incrementAndGet();
         bufferedBytes += page.getDataSize().toBytes();
 
         // notify consumers an page has arrived
-        this.notifyAll();
+        notifyWaitingReaders();
+    }
+
+    private synchronized void addPartitionedPages(List<Page> partitionedPages)
+    {
+        pagesAdded.incrementAndGet();
+        for (int partition = 0; partition < partitions.length; partition++) {
+            Page page = partitionedPages.get(partition);
+            if (page.getPositionCount() > 0) {
+                partitions[partition].addPage(page);
+            }
+        }
+
+        // notify consumers an page has arrived
+        notifyWaitingReaders();
+    }
+
+    private synchronized void notifyWaitingReaders()
+    {
+        if (waitingReaders > 0) {
+            this.notifyAll();
+        }
     }
 
     @VisibleForTesting
@@ -180,71 +307,69 @@ public class SharedBuffer
             return;
         }
 
-        // remove queue from set before calling getPages because getPages changes
-        // the sequence number of the queue which is used for identity comparison in the
-        // sorted set
-        openQueuesBySequenceId.remove(namedQueue);
-
         // acknowledge the pages
         namedQueue.acknowledge(sequenceId);
 
-        // only add back the queue if it is still open
-        if (!closed.get()) {
-            openQueuesBySequenceId.add(namedQueue);
-        }
-        else {
+        // the queue is finished if the output is complete
+        if (closed.get()) {
             namedQueue.setFinished();
         }
 
         updateState();
     }
 
-    public synchronized BufferResult get(String outputId, long startingSequenceId, DataSize maxSize, Duration maxWait)
+    public BufferResult get(String outputId, long startingSequenceId, DataSize maxSize, Duration maxWait)
             throws InterruptedException
     {
         Preconditions.checkNotNull(outputId, "outputId is null");
         Preconditions.checkArgument(maxSize.toBytes() > 0, "maxSize must be at least 1 byte");
         Preconditions.checkNotNull(maxWait, "maxWait is null");
 
-        NamedQueue namedQueue = namedQueues.get(outputId);
-        if (namedQueue == null) {
-            throw new NoSuchBufferException(outputId, namedQueues.keySet());
-        }
+        NamedQueue namedQueue;
+        BufferResult results;
+        synchronized (this) {
+            namedQueue = namedQueues.get(outputId);
+            if (namedQueue == null) {
+                throw new NoSuchBufferException(outputId, namedQueues.keySet());
+            }
 
-        if (state == QueueState.FINISHED) {
-            return emptyResults(namedQueue.getSequenceId(), true);
-        }
+            if (state == QueueState.FINISHED) {
+                return emptyResults(namedQueue.getSequenceId(), true);
+            }
 
-        // wait for pages to arrive
-        if (namedQueue.isEmpty()) {
-            long remainingNanos = maxWait.roundTo(NANOSECONDS);
-            long end = System.nanoTime() + remainingNanos;
-            while (remainingNanos > 0 && namedQueue.isEmpty() && !namedQueue.isFinished()) {
-                // wait for timeout or notification
-                NANOSECONDS.timedWait(this, remainingNanos);
-                remainingNanos = end - System.nanoTime();
+            // wait for pages to arrive
+            if (namedQueue.isEmpty()) {
+                long remainingNanos = maxWait.roundTo(NANOSECONDS);
+                long end = System.nanoTime() + remainingNanos;
+                waitingReaders++;
+                try {
+                    while (remainingNanos > 0 && namedQueue.isEmpty() && !namedQueue.isFinished()) {
+                        // wait for timeout or notification
+                        NANOSECONDS.timedWait(this, remainingNanos);
+                        remainingNanos = end - System.nanoTime();
+                    }
+                }
+                finally {
+                    waitingReaders--;
+                }
             }
-        }
 
-        // remove queue from set before calling getPages because getPages changes
-        // the sequence number of the queue which is used for identity comparison in the
-        // sorted set
-        openQueuesBySequenceId.remove(namedQueue);
+            // get the pages
+            results = namedQueue.getPages(startingSequenceId, maxSize);
 
-        // get the pages
-        BufferResult results = namedQueue.getPages(startingSequenceId, maxSize);
+            // the queue is finished if the output is complete and all pages have been read
+            if (closed.get() && results.isBufferClosed()) {
+                namedQueue.setFinished();
+            }
 
-        // only add back the queue if it is still open
-        if (!closed.get() || !results.isBufferClosed()) {
-            openQueuesBySequenceId.add(namedQueue);
+            updateState();
         }
-        else {
-            namedQueue.setFinished();
-        }
-
-        updateState();
 
-        return results;
+        // the pages are never modified, so they can be partitioned without the lock
+        if (results.isEmpty()) {
+            return results;
+        }
+        return new BufferResult(results.getStartingSequenceId(), results.isBufferClosed(), namedQueue.partition(results.getElements()));
     }
 
     public synchronized void abort(String outputId)
@@ -255,7 +380,6 @@ public class SharedBuffer
             return;
         }
         namedQueue.setFinished();
-        openQueuesBySequenceId.remove(namedQueue);
 
         updateState();
     }
@@ -263,12 +387,10 @@ public class SharedBuffer
     private synchronized void updateState()
     {
         if (closed.get()) {
-            // remove all empty queues
-            for (Iterator<NamedQueue> iterator = openQueuesBySequenceId.iterator(); iterator.hasNext(); ) {
-                NamedQueue namedQueue = iterator.next();
-                if (namedQueue.isEmpty()) {
+            // finish all empty queues
+            for (NamedQueue namedQueue : namedQueues.values()) {
+                if (!namedQueue.isFinished() && namedQueue.isEmpty()) {
                     namedQueue.setFinished();
-                    iterator.remove();
                 }
             }
             // discard queued pages (not officially in the buffer) and waiters
@@ -278,21 +400,26 @@ public class SharedBuffer
             queuedPages.clear();
         }
 
-        if (state == QueueState.NO_MORE_QUEUES && !openQueuesBySequenceId.isEmpty()) {
-            // advance master sequence id
-            long oldMasterSequenceId = masterSequenceId;
-            masterSequenceId = openQueuesBySequenceId.iterator().next().getSequenceId();
-
-            // drop consumed pages
-            int pagesToRemove = Ints.checkedCast(masterSequenceId - oldMasterSequenceId);
-            Preconditions.checkState(pagesToRemove >= 0,
-                    "Master sequence id moved backwards: oldMasterSequenceId=%s, newMasterSequenceId=%s",
-                    oldMasterSequenceId,
-                    masterSequenceId);
-
-            for (int i = 0; i < pagesToRemove; i++) {
-                Page page = masterQueue.removeFirst();
-                bufferedBytes -= page.getDataSize().toBytes();
+        long minOpenSequenceId = getMinOpenSequenceId();
+        if (state == QueueState.NO_MORE_QUEUES && minOpenSequenceId >= 0) {
+            // the queues of a partitioned buffer drop their own pages when they are acknowledged
+            if (!partitioned) {
+                // advance master sequence id
+                long oldMasterSequenceId = masterSequenceId;
+                masterSequenceId = minOpenSequenceId;
+
+                // drop consumed pages
+                int pagesToRemove = Ints.checkedCast(masterSequenceId - oldMasterSequenceId);
+                Preconditions.checkState(pagesToRemove >= 0,
+                        "Master sequence id moved backwards: oldMasterSequenceId=%s, newMasterSequenceId=%s",
+                        oldMasterSequenceId,
+                        masterSequenceId);
+
+                List<Page> removedPages = masterQueue.subList(0, pagesToRemove);
+                for (Page page : removedPages) {
+                    bufferedBytes -= page.getDataSize().toBytes();
+                }
+                removedPages.clear();
             }
 
             // refill buffer from queued pages
@@ -303,11 +430,25 @@ public class SharedBuffer
             }
         }
 
-        if (state == QueueState.NO_MORE_QUEUES && closed.get() && openQueuesBySequenceId.isEmpty()) {
+        if (state == QueueState.NO_MORE_QUEUES && closed.get() && minOpenSequenceId < 0) {
             destroy();
         }
 
-        this.notifyAll();
+        notifyWaitingReaders();
+    }
+
+    /**
+     * Returns the lowest sequence id of the open queues, or -1 if all queues are finished.
+     */
+    private synchronized long getMinOpenSequenceId()
+    {
+        long minSequenceId = -1;
+        for (NamedQueue namedQueue : namedQueues.values()) {
+            if (!namedQueue.isFinished() && (minSequenceId < 0 || namedQueue.getSequenceId() < minSequenceId)) {
+                minSequenceId = namedQueue.getSequenceId();
+            }
+        }
+        return minSequenceId;
     }
 
     /**
@@ -330,10 +471,9 @@ public class SharedBuffer
         state = QueueState.FINISHED;
 
         // drop all of the queues
-        for (NamedQueue namedQueue : openQueuesBySequenceId) {
+        for (NamedQueue namedQueue : namedQueues.values()) {
             namedQueue.setFinished();
         }
-        openQueuesBySequenceId.clear();
 
         // clear the buffer
         masterQueue.clear();
@@ -351,16 +491,20 @@ public class SharedBuffer
 
     @NotThreadSafe
     private class NamedQueue
-            implements Comparable<NamedQueue>
     {
         private final String queueId;
+        private final PagePartitionFunction partitionFunction;
 
         private long sequenceId;
         private boolean finished;
 
-        private NamedQueue(String queueId)
+        // pages of the partition of this queue in a partitioned buffer; the first page has the sequence id of the queue
+        private final List<Page> partitionPages = new ArrayList<>();
+
+        private NamedQueue(String queueId, PagePartitionFunction partitionFunction)
         {
             this.queueId = queueId;
+            this.partitionFunction = partitionFunction;
         }
 
         public String getQueueId()
@@ -368,6 +512,31 @@ public class SharedBuffer
             return queueId;
         }
 
+        public PagePartitionFunction getPartitionFunction()
+        {
+            return partitionFunction;
+        }
+
+        public void addPage(Page page)
+        {
+            Preconditions.checkState(Thread.holdsLock(SharedBuffer.this), "Thread must hold a lock on the %s", SharedBuffer.class.getSimpleName());
+
+            if (finished) {
+                return;
+            }
+            partitionPages.add(page);
+            bufferedBytes += page.getDataSize().toBytes();
+        }
+
+        private void removePartitionPages(int pagesToRemove)
+        {
+            List<Page> removedPages = partitionPages.subList(0, pagesToRemove);
+            for (Page page : removedPages) {
+                bufferedBytes -= page.getDataSize().toBytes();
+            }
+            removedPages.clear();
+        }
+
         public boolean isFinished()
         {
             Preconditions.checkState(Thread.holdsLock(SharedBuffer.this), "Thread must hold a lock on the %s", SharedBuffer.class.getSimpleName());
@@ -380,6 +549,9 @@ public class SharedBuffer
             Preconditions.checkState(Thread.holdsLock(SharedBuffer.this), "Thread must hold a lock on the %s", SharedBuffer.class.getSimpleName());
 
             finished = true;
+
+            // no one will read the remaining pages of the partition
+            removePartitionPages(partitionPages.size());
         }
 
         public boolean isEmpty()
@@ -407,6 +579,10 @@ public class SharedBuffer
                 return 0;
             }
 
+            if (partitioned) {
+                return partitionPages.size();
+            }
+
             int listOffset = Ints.checkedCast(sequenceId - masterSequenceId);
             if (listOffset >= masterQueue.size()) {
                 return 0;
@@ -418,6 +594,10 @@ public class SharedBuffer
         public void acknowledge(long sequenceId)
         {
             if (this.sequenceId < sequenceId) {
+                if (partitioned) {
+                    // drop the acknowledged pages of the partition
+                    removePartitionPages(Math.min(Ints.checkedCast(sequenceId - this.sequenceId), partitionPages.size()));
+                }
                 this.sequenceId = sequenceId;
             }
         }
@@ -433,8 +613,13 @@ public class SharedBuffer
                 return emptyResults(sequenceId, true);
             }
 
+            List<Page> queue = masterQueue;
             int listOffset = Ints.checkedCast(sequenceId - masterSequenceId);
-            if (listOffset >= masterQueue.size()) {
+            if (partitioned) {
+                queue = partitionPages;
+                listOffset = 0;
+            }
+            if (listOffset >= queue.size()) {
                 return emptyResults(sequenceId, false);
             }
 
@@ -442,8 +627,8 @@ public class SharedBuffer
 
             List<Page> pages = new ArrayList<>();
             long bytes = 0;
-            while (listOffset < masterQueue.size()) {
-                Page page = masterQueue.get(listOffset++);
+            while (listOffset < queue.size()) {
+                Page page = queue.get(listOffset++);
                 bytes += page.getDataSize().toBytes();
                 // break (and don't add) if this page would exceed the limit
                 if (!pages.isEmpty() && bytes > maxBytes) {
@@ -452,18 +637,19 @@ public class SharedBuffer
                 pages.add(page);
             }
 
-            return new BufferResult(startingSequenceId, false, ImmutableList.copyOf(pages));
+            return new BufferResult(startingSequenceId, false, pages);
         }
 
-        @Override
-        public int compareTo(NamedQueue other)
+        /**
+         * Partitions pages returned by getPages.  This does not require the lock.
+         */
+        public List<Page> partition(List<Page> pages)
         {
-            Preconditions.checkState(Thread.holdsLock(SharedBuffer.this), "Thread must hold a lock on the %s", SharedBuffer.class.getSimpleName());
-
-            return ComparisonChain.start()
-                    .compare(this.sequenceId, other.sequenceId)
-                    .compare(this.queueId, other.queueId)
-                    .result();
+            if (partitioned) {
+                // the pages were partitioned when they were added
+                return pages;
+            }
+            return ImmutableList.copyOf(partitionFunction.partition(pages));
         }
 
         @Override
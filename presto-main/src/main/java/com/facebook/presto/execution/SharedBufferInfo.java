@@ -26,6 +26,9 @@ public class SharedBufferInfo
     private final QueueState state;
     private final long masterSequenceId;
     private final long pagesAdded;
+    private final int bufferedPages;
+    private final long bufferedBytes;
+    private final int queuedPages;
     private final List<BufferInfo> buffers;
 
     @JsonCreator
@@ -33,11 +36,17 @@ public class SharedBufferInfo
             @JsonProperty("state") QueueState state,
             @JsonProperty("masterSequenceId") long masterSequenceId,
             @JsonProperty("pagesAdded") long pagesAdded,
+            @JsonProperty("bufferedPages") int bufferedPages,
+            @JsonProperty("bufferedBytes") long bufferedBytes,
+            @JsonProperty("queuedPages") int queuedPages,
             @JsonProperty("buffers") List<BufferInfo> buffers)
     {
         this.state = state;
         this.masterSequenceId = masterSequenceId;
         this.pagesAdded = pagesAdded;
+        this.bufferedPages = bufferedPages;
+        this.bufferedBytes = bufferedBytes;
+        this.queuedPages = queuedPages;
         this.buffers = ImmutableList.copyOf(buffers);
     }
 
@@ -59,6 +68,30 @@ public class SharedBufferInfo
         return pagesAdded;
     }
 
+    /**
+     * Pages in the buffer that have not been acknowledged by every consumer.
+     */
+    @JsonProperty
+    public int getBufferedPages()
+    {
+        return bufferedPages;
+    }
+
+    @JsonProperty
+    public long getBufferedBytes()
+    {
+        return bufferedBytes;
+    }
+
+    /**
+     * Pages waiting for space in the full buffer.  The producers of these pages are blocked.
+     */
+    @JsonProperty
+    public int getQueuedPages()
+    {
+        return queuedPages;
+    }
+
     @JsonProperty
     public List<BufferInfo> getBuffers()
     {
@@ -68,7 +101,7 @@ public class SharedBufferInfo
     @Override
     public int hashCode()
     {
-        return Objects.hashCode(state, pagesAdded, buffers, masterSequenceId);
+        return Objects.hashCode(state, pagesAdded, bufferedPages, bufferedBytes, queuedPages, buffers, masterSequenceId);
     }
 
     @Override
@@ -83,6 +116,9 @@ public class SharedBufferInfo
         final SharedBufferInfo other = (SharedBufferInfo) obj;
         return Objects.equal(this.state, other.state) &&
                 Objects.equal(this.pagesAdded, other.pagesAdded) &&
+                Objects.equal(this.bufferedPages, other.bufferedPages) &&
+                Objects.equal(this.bufferedBytes, other.bufferedBytes) &&
+                Objects.equal(this.queuedPages, other.queuedPages) &&
                 Objects.equal(this.buffers, other.buffers) &&
                 Objects.equal(this.masterSequenceId, other.masterSequenceId);
     }
@@ -93,6 +129,9 @@ public class SharedBufferInfo
         return Objects.toStringHelper(this)
                 .add("state", state)
                 .add("pagesAdded", pagesAdded)
+                .add("bufferedPages", bufferedPages)
+                .add("bufferedBytes", bufferedBytes)
+                .add("queuedPages", queuedPages)
                 .add("buffers", buffers)
                 .add("masterSequenceId", masterSequenceId)
                 .toString();
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import io.airlift.stats.Distribution;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Split scheduling latencies of all stages on this coordinator.  Times are in nanoseconds.
+ */
+@ThreadSafe
+public class SplitSchedulerStats
+{
+    private final Distribution getSplitTime = new Distribution();
+    private final Distribution waitForCapacityTime = new Distribution();
+    private final Distribution assignSplitsTime = new Distribution();
+    private final Distribution splitsPerBatch = new Distribution();
+
+    public void recordGetSplitTime(long nanos)
+    {
+        getSplitTime.add(nanos);
+    }
+
+    public void recordWaitForCapacityTime(long nanos)
+    {
+        waitForCapacityTime.add(nanos);
+    }
+
+    public void recordBatchAssigned(long nanos, int splits)
+    {
+        assignSplitsTime.add(nanos);
+        splitsPerBatch.add(splits);
+    }
+
+    @Managed
+    @Nested
+    public Distribution getGetSplitTime()
+    {
+        return getSplitTime;
+    }
+
+    @Managed
+    @Nested
+    public Distribution getWaitForCapacityTime()
+    {
+        return waitForCapacityTime;
+    }
+
+    @Managed
+    @Nested
+    public Distribution getAssignSplitsTime()
+    {
+        return assignSplitsTime;
+    }
+
+    @Managed
+    @Nested
+    public Distribution getSplitsPerBatch()
+    {
+        return splitsPerBatch;
+    }
+}
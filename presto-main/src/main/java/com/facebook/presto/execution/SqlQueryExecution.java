@@ -75,7 +75,10 @@ public class SqlQueryExecution
     private final RemoteTaskFactory remoteTaskFactory;
     private final LocationFactory locationFactory;
     private final int maxPendingSplitsPerNode;
+    private final int initialHashPartitions;
+    private final boolean distributedJoinsEnabled;
     private final ExecutorService queryExecutor;
+    private final SplitSchedulerStats splitSchedulerStats;
     private final ShardManager shardManager;
     private final StorageManager storageManager;
     private final PeriodicImportManager periodicImportManager;
@@ -96,7 +99,10 @@ public class SqlQueryExecution
             RemoteTaskFactory remoteTaskFactory,
             LocationFactory locationFactory,
             int maxPendingSplitsPerNode,
+            int initialHashPartitions,
+            boolean distributedJoinsEnabled,
             ExecutorService queryExecutor,
+            SplitSchedulerStats splitSchedulerStats,
             ShardManager shardManager,
             StorageManager storageManager,
             PeriodicImportManager periodicImportManager)
@@ -110,6 +116,7 @@ public class SqlQueryExecution
             this.remoteTaskFactory = checkNotNull(remoteTaskFactory, "remoteTaskFactory is null");
             this.locationFactory = checkNotNull(locationFactory, "locationFactory is null");
             this.queryExecutor = checkNotNull(queryExecutor, "queryExecutor is null");
+            this.splitSchedulerStats = checkNotNull(splitSchedulerStats, "splitSchedulerStats is null");
             this.shardManager = checkNotNull(shardManager, "shardManager is null");
             this.storageManager = checkNotNull(storageManager, "storageManager is null");
             this.periodicImportManager = checkNotNull(periodicImportManager, "periodicImportManager is null");
@@ -117,13 +124,17 @@ public class SqlQueryExecution
             checkArgument(maxPendingSplitsPerNode > 0, "maxPendingSplitsPerNode must be greater than 0");
             this.maxPendingSplitsPerNode = maxPendingSplitsPerNode;
 
+            checkArgument(initialHashPartitions > 0, "initialHashPartitions must be greater than 0");
+            this.initialHashPartitions = initialHashPartitions;
+            this.distributedJoinsEnabled = distributedJoinsEnabled;
+
             checkNotNull(queryId, "queryId is null");
             checkNotNull(query, "query is null");
             checkNotNull(session, "session is null");
             checkNotNull(self, "self is null");
             this.stateMachine = new QueryStateMachine(queryId, query, session, self, queryExecutor);
 
-            this.queryExplainer = new QueryExplainer(session, planOptimizers, metadata, periodicImportManager, storageManager);
+            this.queryExplainer = new QueryExplainer(session, planOptimizers, metadata, periodicImportManager, storageManager, distributedJoinsEnabled);
         }
     }
 
@@ -205,7 +216,7 @@ public class SqlQueryExecution
         stateMachine.setInputs(inputs);
 
         // fragment the plan
-        SubPlan subplan = new DistributedLogicalPlanner(metadata, idAllocator).createSubplans(plan, false);
+        SubPlan subplan = new DistributedLogicalPlanner(metadata, idAllocator, distributedJoinsEnabled).createSubplans(plan, false);
 
         stateMachine.recordAnalysisTime(analysisStart);
         return subplan;
@@ -235,7 +246,9 @@ public class SqlQueryExecution
                 remoteTaskFactory,
                 stateMachine.getSession(),
                 maxPendingSplitsPerNode,
-                queryExecutor);
+                initialHashPartitions,
+                queryExecutor,
+                splitSchedulerStats);
         this.outputStage.set(outputStage);
         outputStage.addStateChangeListener(new StateChangeListener<StageInfo>()
         {
@@ -378,6 +391,8 @@ public class SqlQueryExecution
             implements QueryExecutionFactory<SqlQueryExecution>
     {
         private final int maxPendingSplitsPerNode;
+        private final int initialHashPartitions;
+        private final boolean distributedJoinsEnabled;
         private final Metadata metadata;
         private final SplitManager splitManager;
         private final NodeScheduler nodeScheduler;
@@ -390,6 +405,7 @@ public class SqlQueryExecution
 
         private final ExecutorService executor;
         private final ThreadPoolExecutorMBean executorMBean;
+        private final SplitSchedulerStats splitSchedulerStats = new SplitSchedulerStats();
 
         @Inject
         SqlQueryExecutionFactory(QueryManagerConfig config,
@@ -405,6 +421,8 @@ public class SqlQueryExecution
         {
             Preconditions.checkNotNull(config, "config is null");
             this.maxPendingSplitsPerNode = config.getMaxPendingSplitsPerNode();
+            this.initialHashPartitions = config.getInitialHashPartitions();
+            this.distributedJoinsEnabled = config.isDistributedJoinsEnabled();
             this.metadata = checkNotNull(metadata, "metadata is null");
             this.locationFactory = checkNotNull(locationFactory, "locationFactory is null");
             this.splitManager = checkNotNull(splitManager, "splitManager is null");
@@ -426,6 +444,13 @@ public class SqlQueryExecution
             return executorMBean;
         }
 
+        @Managed
+        @Nested
+        public SplitSchedulerStats getSplitSchedulerStats()
+        {
+            return splitSchedulerStats;
+        }
+
         @Override
         public SqlQueryExecution createQueryExecution(QueryId queryId, String query, Session session, Statement statement)
         {
@@ -441,7 +466,10 @@ public class SqlQueryExecution
                     remoteTaskFactory,
                     locationFactory,
                     maxPendingSplitsPerNode,
+                    initialHashPartitions,
+                    distributedJoinsEnabled,
                     executor,
+                    splitSchedulerStats,
                     shardManager,
                     storageManager,
                     periodicImportManager);
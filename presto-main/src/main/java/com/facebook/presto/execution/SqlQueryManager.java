@@ -67,6 +67,8 @@ public class SqlQueryManager
 
     private final ExecutorService queryExecutor;
     private final ThreadPoolExecutorMBean queryExecutorMBean;
+    private final QueryQueueManager queryQueueManager;
+    private final ClusterMemoryManager clusterMemoryManager;
 
     private final int maxQueryHistory;
     private final Duration maxQueryAge;
@@ -99,6 +101,8 @@ public class SqlQueryManager
 
         this.queryExecutor = Executors.newCachedThreadPool(threadsNamed("query-scheduler-%d"));
         this.queryExecutorMBean = new ThreadPoolExecutorMBean((ThreadPoolExecutor) queryExecutor);
+        this.queryQueueManager = new QueryQueueManager(config.getMaxConcurrentQueries(), config.getMaxQueuedQueries(), queryExecutor);
+        this.clusterMemoryManager = new ClusterMemoryManager(config.getMaxMemoryPoolUsage());
 
         this.queryMonitor = checkNotNull(queryMonitor, "queryMonitor is null");
         this.locationFactory = checkNotNull(locationFactory, "locationFactory is null");
@@ -127,6 +131,12 @@ public class SqlQueryManager
                 catch (Throwable e) {
                     log.warn(e, "Error removing old queries");
                 }
+                try {
+                    clusterMemoryManager.process(queries.values());
+                }
+                catch (Throwable e) {
+                    log.warn(e, "Error enforcing memory limits");
+                }
             }
         }, 200, 200, TimeUnit.MILLISECONDS);
     }
@@ -223,8 +233,10 @@ public class SqlQueryManager
 
         queries.put(queryId, queryExecution);
 
-        // start the query in the background
-        queryExecutor.submit(new QueryStarter(queryExecution, stats));
+        // start the query in the background once the queue of the user and source allows it
+        if (!queryQueueManager.submit(queryExecution, new QueryStarter(queryExecution, stats))) {
+            queryExecution.fail(new QueryQueueFullException(session.getUser(), session.getSource(), queryQueueManager.getMaxQueuedQueries()));
+        }
 
         return queryExecution.getQueryInfo();
     }
@@ -262,6 +274,20 @@ public class SqlQueryManager
         return stats;
     }
 
+    @Managed(description = "Query queues")
+    @Nested
+    public QueryQueueManager getQueryQueues()
+    {
+        return queryQueueManager;
+    }
+
+    @Managed(description = "Memory of running queries")
+    @Nested
+    public ClusterMemoryManager getClusterMemory()
+    {
+        return clusterMemoryManager;
+    }
+
     @Managed(description = "Query scheduler executor")
     @Nested
     public ThreadPoolExecutorMBean getExecutor()
@@ -13,6 +13,9 @@
  */
 package com.facebook.presto.execution;
 
+import com.facebook.presto.HashPagePartitionFunction;
+import com.facebook.presto.PagePartitionFunction;
+import com.facebook.presto.UnpartitionedPagePartitionFunction;
 import com.facebook.presto.execution.NodeScheduler.NodeSelector;
 import com.facebook.presto.execution.StateMachine.StateChangeListener;
 import com.facebook.presto.metadata.Node;
@@ -21,7 +24,10 @@ import com.facebook.presto.spi.Split;
 import com.facebook.presto.sql.analyzer.Session;
 import com.facebook.presto.sql.planner.OutputReceiver;
 import com.facebook.presto.sql.planner.PlanFragment;
+import com.facebook.presto.sql.planner.PlanFragment.OutputPartitioning;
+import com.facebook.presto.sql.planner.PlanFragment.PlanDistribution;
 import com.facebook.presto.sql.planner.StageExecutionPlan;
+import com.facebook.presto.sql.planner.Symbol;
 import com.facebook.presto.sql.planner.plan.ExchangeNode;
 import com.facebook.presto.sql.planner.plan.PlanFragmentId;
 import com.facebook.presto.sql.planner.plan.PlanNode;
@@ -38,7 +44,6 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
@@ -52,9 +57,13 @@ import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
@@ -101,6 +110,7 @@ public class SqlStageExecution
     private final RemoteTaskFactory remoteTaskFactory;
     private final Session session; // only used for remote task factory
     private final int maxPendingSplitsPerNode;
+    private final int initialHashPartitions;
 
     private final StateMachine<StageState> stageState;
 
@@ -116,9 +126,20 @@ public class SqlStageExecution
     private final Distribution getSplitDistribution = new Distribution();
     private final Distribution scheduleTaskDistribution = new Distribution();
     private final Distribution addSplitDistribution = new Distribution();
+    private final SplitSchedulerStats splitSchedulerStats;
 
     private final NodeSelector nodeSelector;
 
+    private final AtomicInteger nextTaskId = new AtomicInteger();
+
+    // the split scheduling state is only accessed by the split scheduling round, and only one round runs at a time
+    private final AtomicInteger splitSchedulingRequests = new AtomicInteger();
+    private volatile boolean schedulingSplits;
+    private Iterator<Split> splits;
+    private Split waitingSplit;
+    private long waitForCapacityStartNanos;
+    private final Map<Node, List<Split>> splitBatches = new HashMap<>();
+
     public SqlStageExecution(QueryId queryId,
             LocationFactory locationFactory,
             StageExecutionPlan plan,
@@ -126,9 +147,11 @@ public class SqlStageExecution
             RemoteTaskFactory remoteTaskFactory,
             Session session,
             int maxPendingSplitsPerNode,
-            ExecutorService executor)
+            int initialHashPartitions,
+            ExecutorService executor,
+            SplitSchedulerStats splitSchedulerStats)
     {
-        this(null, queryId, new AtomicInteger(), locationFactory, plan, nodeScheduler, remoteTaskFactory, session, maxPendingSplitsPerNode, executor);
+        this(null, queryId, new AtomicInteger(), locationFactory, plan, nodeScheduler, remoteTaskFactory, session, maxPendingSplitsPerNode, initialHashPartitions, executor, splitSchedulerStats);
     }
 
     private SqlStageExecution(@Nullable StageExecutionNode parent,
@@ -140,7 +163,9 @@ public class SqlStageExecution
             RemoteTaskFactory remoteTaskFactory,
             Session session,
             int maxPendingSplitsPerNode,
-            ExecutorService executor)
+            int initialHashPartitions,
+            ExecutorService executor,
+            SplitSchedulerStats splitSchedulerStats)
     {
         Preconditions.checkNotNull(queryId, "queryId is null");
         Preconditions.checkNotNull(nextStageId, "nextStageId is null");
@@ -150,7 +175,9 @@ public class SqlStageExecution
         Preconditions.checkNotNull(remoteTaskFactory, "remoteTaskFactory is null");
         Preconditions.checkNotNull(session, "session is null");
         Preconditions.checkArgument(maxPendingSplitsPerNode > 0, "maxPendingSplitsPerNode must be greater than 0");
+        Preconditions.checkArgument(initialHashPartitions > 0, "initialHashPartitions must be greater than 0");
         Preconditions.checkNotNull(executor, "executor is null");
+        Preconditions.checkNotNull(splitSchedulerStats, "splitSchedulerStats is null");
 
         this.stageId = new StageId(queryId, String.valueOf(nextStageId.getAndIncrement()));
         try (SetThreadName setThreadName = new SetThreadName("Stage-%s", stageId)) {
@@ -162,7 +189,9 @@ public class SqlStageExecution
             this.remoteTaskFactory = remoteTaskFactory;
             this.session = session;
             this.maxPendingSplitsPerNode = maxPendingSplitsPerNode;
+            this.initialHashPartitions = initialHashPartitions;
             this.executor = executor;
+            this.splitSchedulerStats = splitSchedulerStats;
 
             tupleInfos = fragment.getTupleInfos();
 
@@ -177,7 +206,10 @@ public class SqlStageExecution
                         nodeScheduler,
                         remoteTaskFactory,
                         session,
-                        maxPendingSplitsPerNode, executor);
+                        maxPendingSplitsPerNode,
+                        initialHashPartitions,
+                        executor,
+                        splitSchedulerStats);
 
                 subStage.addStateChangeListener(new StateChangeListener<StageInfo>()
                 {
@@ -199,7 +231,7 @@ public class SqlStageExecution
                 public Integer apply(Node input)
                 {
                     RemoteTask task = tasks.get(input);
-                    return task == null ? 0 : task.getQueuedSplits();
+                    return (task == null ? 0 : task.getQueuedSplits()) + getSplitBatchSize(input);
                 }
             }));
             stageState = new StateMachine<>("stage " + stageId, this.executor, StageState.PLANNED);
@@ -339,9 +371,42 @@ public class SqlStageExecution
         }
     }
 
-    private synchronized Set<String> getOutputBuffers()
+    private synchronized Map<String, PagePartitionFunction> getOutputBuffers()
+    {
+        if (fragment.getOutputPartitioning() == OutputPartitioning.NONE) {
+            ImmutableMap.Builder<String, PagePartitionFunction> buffers = ImmutableMap.builder();
+            for (String outputBuffer : outputBuffers) {
+                buffers.put(outputBuffer, new UnpartitionedPagePartitionFunction());
+            }
+            return buffers.build();
+        }
+
+        // the partition of a hash partitioned buffer depends on the total number of buffers,
+        // so the buffers can not be created until all of them are known
+        if (!noMoreOutputIds) {
+            return ImmutableMap.of();
+        }
+
+        List<Integer> partitioningChannels = getPartitioningChannels();
+        ImmutableMap.Builder<String, PagePartitionFunction> buffers = ImmutableMap.builder();
+        int partition = 0;
+        for (String outputBuffer : outputBuffers) {
+            buffers.put(outputBuffer, new HashPagePartitionFunction(partition, outputBuffers.size(), partitioningChannels));
+            partition++;
+        }
+        return buffers.build();
+    }
+
+    private List<Integer> getPartitioningChannels()
     {
-        return ImmutableSet.copyOf(outputBuffers);
+        List<Symbol> outputSymbols = fragment.getRoot().getOutputSymbols();
+        ImmutableList.Builder<Integer> partitioningChannels = ImmutableList.builder();
+        for (Symbol symbol : fragment.getPartitionBy()) {
+            int channel = outputSymbols.indexOf(symbol);
+            Preconditions.checkState(channel >= 0, "Partition by symbol %s is not an output of fragment %s", symbol, fragment.getId());
+            partitioningChannels.add(channel);
+        }
+        return partitioningChannels.build();
     }
 
     public synchronized void addOutputBuffer(String outputId)
@@ -453,121 +518,210 @@ public class SqlStageExecution
                 }
 
                 // determine partitions
-                AtomicInteger nextTaskId = new AtomicInteger(0);
-                if (!dataSource.isPresent()) {
+                if (fragment.getDistribution() == PlanDistribution.FIXED) {
+                    // create a fixed number of partitions on random nodes for this fragment
+                    for (Node node : nodeSelector.selectRandomNodes(initialHashPartitions)) {
+                        scheduleTask(node, null);
+                    }
+                }
+                else if (!dataSource.isPresent()) {
                     // create a single partition on a random node for this fragment
-                    scheduleTask(nextTaskId, nodeSelector.selectRandomNode(), null);
+                    scheduleTask(nodeSelector.selectRandomNode(), null);
                 }
                 else {
-                    long getSplitStart = System.nanoTime();
-                    for (Split split : dataSource.get().getSplits()) {
-                        getSplitDistribution.add(System.nanoTime() - getSplitStart);
+                    // splits are assigned in rounds, and a new round is started whenever a task
+                    // reports progress, so no thread waits while the nodes are at capacity
+                    splits = dataSource.get().getSplits().iterator();
+                    schedulingSplits = true;
+                    requestSplitScheduling();
+                    return;
+                }
 
-                        long scheduleSplitStart = System.nanoTime();
-                        Node chosen = chooseNode(nodeSelector, split, nextTaskId);
+                finishScheduling();
+            }
+            catch (Throwable e) {
+                schedulingFailed(e);
+            }
+            finally {
+                doUpdateState();
+            }
+        }
+    }
 
-                        // if query has been canceled, exit cleanly; query will never run regardless
-                        if (getState().isDone()) {
-                            break;
-                        }
+    private void requestSplitScheduling()
+    {
+        // only one round runs at a time, and requests made during a round start another round
+        if (splitSchedulingRequests.getAndIncrement() == 0) {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    scheduleSplits();
+                }
+            });
+        }
+    }
 
-                        RemoteTask task = tasks.get(chosen);
-                        if (task == null) {
-                            scheduleTask(nextTaskId, chosen, split);
-                            scheduleTaskDistribution.add(System.nanoTime() - scheduleSplitStart);
-                        }
-                        else {
-                            task.addSplit(split);
-                            addSplitDistribution.add(System.nanoTime() - scheduleSplitStart);
+    private void scheduleSplits()
+    {
+        try (SetThreadName setThreadName = new SetThreadName("Stage-%s", stageId)) {
+            int requests;
+            do {
+                requests = splitSchedulingRequests.get();
+                try {
+                    if (schedulingSplits && assignSplits()) {
+                        schedulingSplits = false;
+                        for (RemoteTask task : tasks.values()) {
+                            task.noMoreSplits();
                         }
-
-                        getSplitStart = System.nanoTime();
-                    }
-
-                    for (RemoteTask task : tasks.values()) {
-                        task.noMoreSplits();
+                        finishScheduling();
                     }
                 }
+                catch (Throwable e) {
+                    schedulingSplits = false;
+                    schedulingFailed(e);
+                }
+                finally {
+                    doUpdateState();
+                }
+            }
+            while (splitSchedulingRequests.addAndGet(-requests) > 0);
+        }
+    }
+
+    /**
+     * Assigns splits to the tasks until the node chosen for a split has no capacity.
+     *
+     * @return true if all splits have been assigned
+     */
+    private boolean assignSplits()
+    {
+        Preconditions.checkState(!Thread.holdsLock(this), "Can not assign splits while holding a lock on this");
 
-                stageState.set(StageState.SCHEDULED);
+        if (waitForCapacityStartNanos != 0) {
+            splitSchedulerStats.recordWaitForCapacityTime(System.nanoTime() - waitForCapacityStartNanos);
+            waitForCapacityStartNanos = 0;
+            addNewExchangesAndBuffers(false);
+        }
 
-                // tell sub stages there will be no more output buffers
-                for (StageExecutionNode subStage : subStages.values()) {
-                    subStage.noMoreOutputBuffers();
+        try {
+            while (true) {
+                // if query has been canceled, exit cleanly; query will never run regardless
+                if (getState().isDone()) {
+                    schedulingSplits = false;
+                    return false;
                 }
 
-                // add the missing exchanges output buffers
-                addNewExchangesAndBuffers(true);
-            }
-            catch (Throwable e) {
-                // some exceptions can occur when the query finishes early
-                if (!getState().isDone()) {
-                    synchronized (this) {
-                        failureCauses.add(e);
-                        stageState.set(StageState.FAILED);
+                Split split = waitingSplit;
+                if (split == null) {
+                    long getSplitStart = System.nanoTime();
+                    if (!splits.hasNext()) {
+                        return true;
                     }
-                    log.error(e, "Error while starting stage %s", stageId);
-                    cancel(true);
-                    throw e;
+                    split = splits.next();
+                    long getSplitNanos = System.nanoTime() - getSplitStart;
+                    getSplitDistribution.add(getSplitNanos);
+                    splitSchedulerStats.recordGetSplitTime(getSplitNanos);
                 }
-                Throwables.propagateIfInstanceOf(e, Error.class);
-                log.debug(e, "Error while starting stage in done query %s", stageId);
-            }
-            finally {
-                doUpdateState();
+
+                // for each split, pick the node with the smallest number of assignments
+                Node chosen = nodeSelector.selectNode(split);
+                RemoteTask task = tasks.get(chosen);
+                if (task == null) {
+                    long scheduleTaskStart = System.nanoTime();
+                    scheduleTask(chosen, split);
+                    scheduleTaskDistribution.add(System.nanoTime() - scheduleTaskStart);
+                }
+                else if (task.getQueuedSplits() + getSplitBatchSize(chosen) < maxPendingSplitsPerNode) {
+                    List<Split> batch = splitBatches.get(chosen);
+                    if (batch == null) {
+                        batch = new ArrayList<>();
+                        splitBatches.put(chosen, batch);
+                    }
+                    batch.add(split);
+                }
+                else {
+                    // the chosen node has too many splits queued already, so wait for a task to make progress
+                    waitingSplit = split;
+                    waitForCapacityStartNanos = System.nanoTime();
+                    prepareToWaitForCapacity();
+                    return false;
+                }
+                waitingSplit = null;
             }
         }
+        finally {
+            flushSplitBatches();
+        }
     }
 
-    private Node chooseNode(NodeSelector nodeSelector, Split split, AtomicInteger nextTaskId)
+    private int getSplitBatchSize(Node node)
     {
-        while (true) {
-            // if query has been canceled, exit
-            if (getState().isDone()) {
-                return null;
-            }
+        List<Split> batch = splitBatches.get(node);
+        return batch == null ? 0 : batch.size();
+    }
+
+    private void flushSplitBatches()
+    {
+        for (Entry<Node, List<Split>> entry : splitBatches.entrySet()) {
+            long addSplitsStart = System.nanoTime();
+            tasks.get(entry.getKey()).addSplits(entry.getValue());
+            long addSplitsNanos = System.nanoTime() - addSplitsStart;
+            addSplitDistribution.add(addSplitsNanos);
+            splitSchedulerStats.recordBatchAssigned(addSplitsNanos, entry.getValue().size());
+        }
+        splitBatches.clear();
+    }
 
-            // for each split, pick the node with the smallest number of assignments
-            Node chosen = nodeSelector.selectNode(split);
+    private void prepareToWaitForCapacity()
+    {
+        // if we have sub stages...
+        if (!subStages.isEmpty()) {
+            // before we wait, we need to create all possible output buffers on the sub stages, or they can deadlock
+            // waiting for the "noMoreBuffers" call
+            nodeSelector.lockDownNodes();
+            for (Node node : Sets.difference(new HashSet<>(nodeSelector.allNodes()), tasks.keySet())) {
+                scheduleTask(node, null);
+            }
 
-            // if the chosen node doesn't have too many tasks already, return
-            RemoteTask task = tasks.get(chosen);
-            if (task == null || task.getQueuedSplits() < maxPendingSplitsPerNode) {
-                return chosen;
+            // tell sub stages there will be no more output buffers
+            for (StageExecutionNode subStage : subStages.values()) {
+                subStage.noMoreOutputBuffers();
             }
+        }
+    }
 
-            // if we have sub stages...
-            if (!subStages.isEmpty()) {
-                // before we block, we need to create all possible output buffers on the sub stages, or they can deadlock
-                // waiting for the "noMoreBuffers" call
-                nodeSelector.lockDownNodes();
-                for (Node node : Sets.difference(new HashSet<>(nodeSelector.allNodes()), tasks.keySet())) {
-                    scheduleTask(nextTaskId, node, null);
-                }
+    private void finishScheduling()
+    {
+        stageState.set(StageState.SCHEDULED);
 
-                // tell sub stages there will be no more output buffers
-                for (StageExecutionNode subStage : subStages.values()) {
-                    subStage.noMoreOutputBuffers();
-                }
-            }
+        // tell sub stages there will be no more output buffers
+        for (StageExecutionNode subStage : subStages.values()) {
+            subStage.noMoreOutputBuffers();
+        }
+
+        // add the missing exchanges output buffers
+        addNewExchangesAndBuffers(true);
+    }
 
+    private void schedulingFailed(Throwable e)
+    {
+        // some exceptions can occur when the query finishes early
+        if (!getState().isDone()) {
             synchronized (this) {
-                // otherwise wait for some tasks to complete
-                try {
-                    // todo this adds latency: replace this wait with an event listener
-                    TimeUnit.SECONDS.timedWait(this, 1);
-                }
-                catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw Throwables.propagate(e);
-                }
+                failureCauses.add(e);
+                stageState.set(StageState.FAILED);
             }
-
-            addNewExchangesAndBuffers(false);
+            log.error(e, "Error while scheduling stage %s", stageId);
+            cancel(true);
+            throw Throwables.propagate(e);
         }
+        Throwables.propagateIfInstanceOf(e, Error.class);
+        log.debug(e, "Error while scheduling stage in done query %s", stageId);
     }
 
-    private RemoteTask scheduleTask(AtomicInteger nextTaskId, Node node, @Nullable Split initialSplit)
+    private RemoteTask scheduleTask(Node node, @Nullable Split initialSplit)
     {
         String nodeIdentifier = node.getNodeIdentifier();
         TaskId taskId = new TaskId(stageId, String.valueOf(nextTaskId.getAndIncrement()));
@@ -587,6 +741,11 @@ public class SqlStageExecution
             public void stateChanged(TaskInfo taskInfo)
             {
                 doUpdateState();
+
+                // the task may have capacity for more splits now
+                if (schedulingSplits) {
+                    requestSplitScheduling();
+                }
             }
         });
 
@@ -626,7 +785,7 @@ public class SqlStageExecution
 
             // update tasks
             Multimap<PlanNodeId, URI> exchangeLocations = getExchangeLocations();
-            Set<String> outputBuffers = getOutputBuffers();
+            Map<String, PagePartitionFunction> outputBuffers = getOutputBuffers();
             for (RemoteTask task : tasks.values()) {
                 task.addExchangeLocations(exchangeLocations, exchangesComplete);
                 task.addOutputBuffers(outputBuffers, outputComplete);
@@ -644,7 +803,7 @@ public class SqlStageExecution
 
     private synchronized void waitForMoreExchangesAndBuffers(Multimap<PlanNodeId, URI> exchangeLocations,
             boolean exchangesComplete,
-            Set<String> outputBuffers,
+            Map<String, PagePartitionFunction> outputBuffers,
             boolean outputComplete)
     {
         while (!getState().isDone()) {
@@ -14,6 +14,7 @@
 package com.facebook.presto.execution;
 
 import com.facebook.presto.OutputBuffers;
+import com.facebook.presto.PagePartitionFunction;
 import com.facebook.presto.ScheduledSplit;
 import com.facebook.presto.TaskSource;
 import com.facebook.presto.client.FailureInfo;
@@ -26,10 +27,12 @@ import com.facebook.presto.operator.DriverFactory;
 import com.facebook.presto.operator.PipelineContext;
 import com.facebook.presto.operator.TaskContext;
 import com.facebook.presto.operator.TaskOutputOperator.TaskOutputFactory;
+import com.facebook.presto.operator.TaskStats;
 import com.facebook.presto.sql.analyzer.Session;
 import com.facebook.presto.sql.planner.LocalExecutionPlanner;
 import com.facebook.presto.sql.planner.LocalExecutionPlanner.LocalExecutionPlan;
 import com.facebook.presto.sql.planner.PlanFragment;
+import com.facebook.presto.sql.planner.PlanFragment.OutputPartitioning;
 import com.facebook.presto.sql.planner.plan.PlanNodeId;
 import com.facebook.presto.util.SetThreadName;
 import com.google.common.base.Function;
@@ -53,6 +56,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -118,6 +122,7 @@ public class SqlTaskExecution
             ExecutorService notificationExecutor,
             DataSize maxTaskMemoryUsage,
             DataSize operatorPreAllocatedMemory,
+            MemoryPool memoryPool,
             QueryMonitor queryMonitor,
             boolean cpuTimerEnabled)
     {
@@ -130,6 +135,7 @@ public class SqlTaskExecution
                 taskExecutor,
                 maxTaskMemoryUsage,
                 operatorPreAllocatedMemory,
+                memoryPool,
                 queryMonitor,
                 notificationExecutor,
                 cpuTimerEnabled
@@ -150,6 +156,7 @@ public class SqlTaskExecution
             TaskExecutor taskExecutor,
             DataSize maxTaskMemoryUsage,
             DataSize operatorPreAllocatedMemory,
+            MemoryPool memoryPool,
             QueryMonitor queryMonitor,
             Executor notificationExecutor,
             boolean cpuTimerEnabled)
@@ -178,9 +185,11 @@ public class SqlTaskExecution
                     session,
                     checkNotNull(maxTaskMemoryUsage, "maxTaskMemoryUsage is null"),
                     checkNotNull(operatorPreAllocatedMemory, "operatorPreAllocatedMemory is null"),
+                    checkNotNull(memoryPool, "memoryPool is null"),
                     cpuTimerEnabled);
 
-            this.sharedBuffer = new SharedBuffer(checkNotNull(maxBufferSize, "maxBufferSize is null"));
+            // hash partitioned output is split by partition as it is added to the buffer
+            this.sharedBuffer = new SharedBuffer(checkNotNull(maxBufferSize, "maxBufferSize is null"), fragment.getOutputPartitioning() == OutputPartitioning.HASH);
 
             this.queryMonitor = checkNotNull(queryMonitor, "queryMonitor is null");
 
@@ -264,6 +273,13 @@ public class SqlTaskExecution
                 failures = toFailures(taskStateMachine.getFailureCauses());
             }
 
+            // the details of running tasks are only sent when requested, since they are polled
+            // continuously by the coordinator; the final info of a task is always complete
+            TaskStats taskStats = taskContext.getTaskStats();
+            if (!full && !state.isDone()) {
+                taskStats = taskStats.summarize();
+            }
+
             return new TaskInfo(
                     taskStateMachine.getTaskId(),
                     nextTaskInfoVersion.getAndIncrement(),
@@ -272,7 +288,8 @@ public class SqlTaskExecution
                     lastHeartbeat.get(),
                     sharedBuffer.getInfo(),
                     getNoMoreSplits(),
-                    taskContext.getTaskStats(),
+                    taskStats,
+                    taskContext.getMemoryPool().getInfo(),
                     failures,
                     taskContext.getOutputItems());
         }
@@ -379,8 +396,8 @@ public class SqlTaskExecution
         checkNotNull(outputIds, "outputIds is null");
 
         try (SetThreadName setThreadName = new SetThreadName("Task-%s", taskId)) {
-            for (String bufferId : outputIds.getBufferIds()) {
-                sharedBuffer.addQueue(bufferId);
+            for (Entry<String, PagePartitionFunction> entry : outputIds.getBuffers().entrySet()) {
+                sharedBuffer.addQueue(entry.getKey(), entry.getValue());
             }
             if (outputIds.isNoMoreBufferIds()) {
                 sharedBuffer.noMoreQueues();
@@ -37,6 +37,7 @@ import org.joda.time.DateTime;
 import org.weakref.jmx.Managed;
 import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
@@ -78,6 +79,7 @@ public class SqlTaskManager
     private final QueryMonitor queryMonitor;
     private final DataSize maxTaskMemoryUsage;
     private final DataSize operatorPreAllocatedMemory;
+    private final MemoryPool memoryPool;
     private final Duration infoCacheTime;
     private final Duration clientTimeout;
     private final boolean cpuTimerEnabled;
@@ -123,6 +125,9 @@ public class SqlTaskManager
 
         taskManagementExecutor = Executors.newScheduledThreadPool(5, threadsNamed("task-management-%d"));
         taskManagementExecutorMBean = new ThreadPoolExecutorMBean((ThreadPoolExecutor) taskManagementExecutor);
+
+        // operators waiting for memory are woken up by the task management executor when they time out
+        this.memoryPool = new MemoryPool(config.getMemoryPoolSize(), config.getMaxMemoryWait(), taskManagementExecutor);
     }
 
     @PostConstruct
@@ -198,6 +203,13 @@ public class SqlTaskManager
         return outputPositions;
     }
 
+    @Managed(description = "Memory shared by all tasks")
+    @Nested
+    public MemoryPool getMemoryPool()
+    {
+        return memoryPool;
+    }
+
     @Managed(description = "Task notification executor")
     @Nested
     public ThreadPoolExecutorMBean getTaskNotificationExecutor()
@@ -282,7 +294,7 @@ public class SqlTaskManager
     }
 
     @Override
-    public TaskInfo updateTask(Session session, TaskId taskId, PlanFragment fragment, List<TaskSource> sources, OutputBuffers outputIds)
+    public TaskInfo updateTask(Session session, TaskId taskId, @Nullable PlanFragment fragment, List<TaskSource> sources, OutputBuffers outputIds)
     {
         URI location = locationFactory.createLocalTaskLocation(taskId);
 
@@ -296,6 +308,9 @@ public class SqlTaskManager
                     return taskInfo;
                 }
 
+                // updates after the first one do not carry the fragment
+                Preconditions.checkState(fragment != null, "Task %s has not been created", taskId);
+
                 taskExecution = SqlTaskExecution.createSqlTaskExecution(session,
                         taskId,
                         location,
@@ -306,6 +321,7 @@ public class SqlTaskManager
                         taskNotificationExecutor,
                         maxTaskMemoryUsage,
                         operatorPreAllocatedMemory,
+                        memoryPool,
                         queryMonitor,
                         cpuTimerEnabled
                 );
@@ -399,9 +415,10 @@ public class SqlTaskManager
                         TaskState.CANCELED,
                         URI.create("unknown"),
                         DateTime.now(),
-                        new SharedBufferInfo(QueueState.FINISHED, 0, 0, ImmutableList.<BufferInfo>of()),
+                        new SharedBufferInfo(QueueState.FINISHED, 0, 0, 0, 0, 0, ImmutableList.<BufferInfo>of()),
                         ImmutableSet.<PlanNodeId>of(),
                         taskContext.getTaskStats(),
+                        memoryPool.getInfo(),
                         ImmutableList.<FailureInfo>of(),
                         ImmutableMap.<PlanNodeId, Set<?>>of());
                 TaskInfo existingTaskInfo = taskInfos.putIfAbsent(taskId, taskInfo);
@@ -17,9 +17,8 @@ import com.facebook.presto.util.SetThreadName;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.concurrent.ThreadPoolExecutorMBean;
@@ -39,16 +38,16 @@ import javax.inject.Inject;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -70,10 +69,17 @@ public class TaskExecutor
     private static final int GUARANTEED_SPLITS_PER_TASK = 3;
 
     // each time we run a split, run it for this length before returning to the pool
-    private static final Duration SPLIT_RUN_QUANTA = new Duration(1, TimeUnit.SECONDS);
+    // splits of tasks that have used little thread time run for shorter quanta, so other
+    // splits at the same level get a turn sooner
+    private static final Duration MIN_SPLIT_RUN_QUANTA = new Duration(100, TimeUnit.MILLISECONDS);
+    private static final Duration MAX_SPLIT_RUN_QUANTA = new Duration(1, TimeUnit.SECONDS);
+
+    private static final int PRIORITY_LEVELS = 5;
+
+    // when all levels have splits waiting, each level gets this many times the thread time of the next level
+    private static final int LEVEL_TIME_MULTIPLIER = 2;
 
     private static final AtomicLong NEXT_RUNNER_ID = new AtomicLong();
-    private static final AtomicLong NEXT_WORKER_ID = new AtomicLong();
 
     private final ExecutorService executor;
     private final ThreadPoolExecutorMBean executorMBean;
@@ -86,12 +92,16 @@ public class TaskExecutor
     @GuardedBy("this")
     private final List<TaskHandle> tasks;
 
+    // tasks with queued splits, in the order they get to start a split
+    @GuardedBy("this")
+    private final Queue<TaskHandle> tasksWithQueuedSplits = new ArrayDeque<>();
+
     private final Set<PrioritizedSplitRunner> allSplits = new HashSet<>();
-    private final PriorityBlockingQueue<PrioritizedSplitRunner> pendingSplits;
+    private final MultilevelSplitQueue<PrioritizedSplitRunner> pendingSplits = new MultilevelSplitQueue<>();
     private final Set<PrioritizedSplitRunner> runningSplits = Sets.newSetFromMap(new ConcurrentHashMap<PrioritizedSplitRunner, Boolean>());
     private final Set<PrioritizedSplitRunner> blockedSplits = Sets.newSetFromMap(new ConcurrentHashMap<PrioritizedSplitRunner, Boolean>());
 
-    private final AtomicLongArray completedTasksPerLevel = new AtomicLongArray(5);
+    private final AtomicLongArray completedTasksPerLevel = new AtomicLongArray(PRIORITY_LEVELS);
 
     private final DistributionStat queuedTime = new DistributionStat();
     private final DistributionStat wallTime = new DistributionStat();
@@ -123,7 +133,6 @@ public class TaskExecutor
 
         // we assume we need at least two tasks per runner thread to keep the system busy
         this.minimumNumberOfTasks = 2 * this.runnerThreads;
-        this.pendingSplits = new PriorityBlockingQueue<>(Runtime.getRuntime().availableProcessors() * 10);
         this.tasks = new LinkedList<>();
     }
 
@@ -175,6 +184,7 @@ public class TaskExecutor
     {
         taskHandle.destroy();
         tasks.remove(taskHandle);
+        tasksWithQueuedSplits.remove(taskHandle);
 
         // record completed stats
         long threadUsageNanos = taskHandle.getThreadUsageNanos();
@@ -186,6 +196,10 @@ public class TaskExecutor
     {
         PrioritizedSplitRunner prioritizedSplitRunner = new PrioritizedSplitRunner(taskHandle, taskSplit, ticker);
         taskHandle.addSplit(prioritizedSplitRunner);
+        if (!taskHandle.waitingToStartSplits) {
+            taskHandle.waitingToStartSplits = true;
+            tasksWithQueuedSplits.add(taskHandle);
+        }
 
         scheduleTaskIfNecessary(taskHandle);
 
@@ -208,7 +222,6 @@ public class TaskExecutor
     private synchronized void splitFinished(PrioritizedSplitRunner split)
     {
         allSplits.remove(split);
-        pendingSplits.remove(split);
 
         TaskHandle taskHandle = split.getTaskHandle();
         taskHandle.splitComplete(split);
@@ -252,24 +265,25 @@ public class TaskExecutor
     private synchronized void startSplit(PrioritizedSplitRunner split)
     {
         allSplits.add(split);
-        pendingSplits.put(split);
+        pendingSplits.offer(split, split.getPriorityLevel());
     }
 
     private synchronized PrioritizedSplitRunner pollNextSplitWorker()
     {
-        // todo find a better algorithm for this
-        // find the first task that produces a split, then move that task to the
-        // end of the task list, so we get round robin
-        for (Iterator<TaskHandle> iterator = tasks.iterator(); iterator.hasNext(); ) {
-            TaskHandle task = iterator.next();
+        // take a split from the first task with queued splits, then move that task
+        // to the end of the queue, so we get round robin
+        while (!tasksWithQueuedSplits.isEmpty()) {
+            TaskHandle task = tasksWithQueuedSplits.poll();
             PrioritizedSplitRunner split = task.pollNextSplit();
-            if (split != null) {
-                // move task to end of list
-                iterator.remove();
+            if (task.hasQueuedSplits()) {
+                tasksWithQueuedSplits.add(task);
+            }
+            else {
+                task.waitingToStartSplits = false;
+            }
 
-                // CAUTION: we are modifying the list in the loop which would normally
-                // cause a ConcurrentModificationException but we exit immediately
-                tasks.add(task);
+            // the splits of the task may have been started when other splits of the task finished
+            if (split != null) {
                 return split;
             }
         }
@@ -284,6 +298,9 @@ public class TaskExecutor
         private final List<PrioritizedSplitRunner> runningSplits = new ArrayList<>(10);
         private final AtomicLong taskThreadUsageNanos = new AtomicLong();
 
+        // true while the task is in the queue of tasks with splits waiting to start
+        private boolean waitingToStartSplits;
+
         private TaskHandle(TaskId taskId)
         {
             this.taskId = taskId;
@@ -317,6 +334,11 @@ public class TaskExecutor
             queuedSplits.add(split);
         }
 
+        private boolean hasQueuedSplits()
+        {
+            return !queuedSplits.isEmpty();
+        }
+
         private int getRunningSplits()
         {
             return runningSplits.size();
@@ -352,12 +374,10 @@ public class TaskExecutor
     }
 
     private static class PrioritizedSplitRunner
-            implements Comparable<PrioritizedSplitRunner>
     {
         private final long createdNanos = System.nanoTime();
 
         private final TaskHandle taskHandle;
-        private final long workerId;
         private final SplitRunner split;
 
         private final Ticker ticker;
@@ -369,14 +389,13 @@ public class TaskExecutor
 
         private final AtomicInteger priorityLevel = new AtomicInteger();
         private final AtomicLong threadUsageNanos = new AtomicLong();
-        private final AtomicLong lastRun = new AtomicLong();
+        private final AtomicLong lastRunNanos = new AtomicLong();
 
         private PrioritizedSplitRunner(TaskHandle taskHandle, SplitRunner split, Ticker ticker)
         {
             this.taskHandle = taskHandle;
             this.split = split;
             this.ticker = ticker;
-            this.workerId = NEXT_WORKER_ID.getAndIncrement();
         }
 
         private TaskHandle getTaskHandle()
@@ -421,7 +440,7 @@ public class TaskExecutor
         {
             try {
                 long start = ticker.read();
-                ListenableFuture<?> blocked = split.processFor(SPLIT_RUN_QUANTA);
+                ListenableFuture<?> blocked = split.processFor(getSplitRunQuanta(priorityLevel.get()));
                 long endTime = ticker.read();
 
                 // update priority level base on total thread usage of task
@@ -430,8 +449,8 @@ public class TaskExecutor
                 this.threadUsageNanos.set(threadUsageNanos);
                 priorityLevel.set(calculatePriorityLevel(threadUsageNanos));
 
-                // record last run for prioritization within a level
-                lastRun.set(endTime);
+                // record the run time for the level the split ran at
+                lastRunNanos.set(durationNanos);
 
                 return blocked;
             }
@@ -453,27 +472,14 @@ public class TaskExecutor
             return true;
         }
 
-        @Override
-        public int compareTo(PrioritizedSplitRunner o)
+        public int getPriorityLevel()
         {
-            int level = priorityLevel.get();
-
-            int result = Ints.compare(level, o.priorityLevel.get());
-            if (result != 0) {
-                return result;
-            }
-
-            if (level < 4) {
-                result = Long.compare(threadUsageNanos.get(), threadUsageNanos.get());
-            }
-            else {
-                result = Long.compare(lastRun.get(), o.lastRun.get());
-            }
-            if (result != 0) {
-                return result;
-            }
+            return priorityLevel.get();
+        }
 
-            return Longs.compare(workerId, o.workerId);
+        public long getLastRunNanos()
+        {
+            return lastRunNanos.get();
         }
 
         @Override
@@ -509,6 +515,224 @@ public class TaskExecutor
         return priorityLevel;
     }
 
+    @VisibleForTesting
+    static Duration getSplitRunQuanta(int priorityLevel)
+    {
+        long quantaNanos = MIN_SPLIT_RUN_QUANTA.roundTo(TimeUnit.NANOSECONDS) << priorityLevel;
+        return new Duration(Math.min(quantaNanos, MAX_SPLIT_RUN_QUANTA.roundTo(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Queues of the splits waiting to run, one for each priority level.  Splits are taken
+     * from the level that has used the least thread time relative to its share, where each
+     * level's share is {@link #LEVEL_TIME_MULTIPLIER} times the share of the next level, so
+     * splits of short tasks run ahead of long running tasks without starving them.  Within a
+     * level, splits run in the order they were queued.
+     */
+    @ThreadSafe
+    @VisibleForTesting
+    static class MultilevelSplitQueue<T>
+    {
+        private final List<SplitQueueLevel<T>> levels;
+        private final Semaphore queuedSplits = new Semaphore(0);
+
+        MultilevelSplitQueue()
+        {
+            ImmutableList.Builder<SplitQueueLevel<T>> levels = ImmutableList.builder();
+            for (int level = 0; level < PRIORITY_LEVELS; level++) {
+                levels.add(new SplitQueueLevel<T>(pow(LEVEL_TIME_MULTIPLIER, level)));
+            }
+            this.levels = levels.build();
+        }
+
+        public void offer(T split, int priorityLevel)
+        {
+            SplitQueueLevel<T> level = levels.get(priorityLevel);
+            if (level.isEmpty()) {
+                // a level that had no splits waiting does not get to catch up on the time it did not use
+                long minimumNormalizedNanos = getMinimumNormalizedScheduledNanos();
+                if (minimumNormalizedNanos != Long.MAX_VALUE) {
+                    level.raiseNormalizedScheduledNanos(minimumNormalizedNanos);
+                }
+            }
+            level.add(split);
+            queuedSplits.release();
+        }
+
+        public T take()
+                throws InterruptedException
+        {
+            queuedSplits.acquire();
+
+            // a permit guarantees a split is queued for this caller, but another caller may
+            // poll the selected level first, in which case a split is queued in another level
+            while (true) {
+                SplitQueueLevel<T> selected = null;
+                long minimumNormalizedNanos = Long.MAX_VALUE;
+                for (SplitQueueLevel<T> level : levels) {
+                    if (!level.isEmpty() && level.getNormalizedScheduledNanos() < minimumNormalizedNanos) {
+                        selected = level;
+                        minimumNormalizedNanos = level.getNormalizedScheduledNanos();
+                    }
+                }
+                if (selected != null) {
+                    T split = selected.poll();
+                    if (split != null) {
+                        return split;
+                    }
+                }
+            }
+        }
+
+        public void splitRan(int priorityLevel, long nanos)
+        {
+            levels.get(priorityLevel).addScheduledNanos(nanos);
+        }
+
+        public int size()
+        {
+            return queuedSplits.availablePermits();
+        }
+
+        public SplitQueueLevel<T> getLevel(int priorityLevel)
+        {
+            return levels.get(priorityLevel);
+        }
+
+        private long getMinimumNormalizedScheduledNanos()
+        {
+            long minimumNormalizedNanos = Long.MAX_VALUE;
+            for (SplitQueueLevel<T> level : levels) {
+                if (!level.isEmpty()) {
+                    minimumNormalizedNanos = Math.min(minimumNormalizedNanos, level.getNormalizedScheduledNanos());
+                }
+            }
+            return minimumNormalizedNanos;
+        }
+
+        private static long pow(int base, int exponent)
+        {
+            long result = 1;
+            for (int i = 0; i < exponent; i++) {
+                result *= base;
+            }
+            return result;
+        }
+    }
+
+    @ThreadSafe
+    public static class SplitQueueLevel<T>
+    {
+        private final long timeWeight;
+        private final Queue<QueuedSplit<T>> splits = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedSplits = new AtomicInteger();
+        private final AtomicLong scheduledNanos = new AtomicLong();
+
+        private final DistributionStat queuedTime = new DistributionStat();
+        private final DistributionStat runTime = new DistributionStat();
+
+        private SplitQueueLevel(long timeWeight)
+        {
+            this.timeWeight = timeWeight;
+        }
+
+        private void add(T split)
+        {
+            // insert before counting, so the count is never ahead of the queue
+            splits.add(new QueuedSplit<>(split, System.nanoTime()));
+            queuedSplits.incrementAndGet();
+        }
+
+        private T poll()
+        {
+            QueuedSplit<T> queuedSplit = splits.poll();
+            if (queuedSplit == null) {
+                return null;
+            }
+            queuedSplits.decrementAndGet();
+            queuedTime.add(System.nanoTime() - queuedSplit.getQueuedNanos());
+            return queuedSplit.getSplit();
+        }
+
+        private boolean isEmpty()
+        {
+            return splits.isEmpty();
+        }
+
+        private void addScheduledNanos(long nanos)
+        {
+            scheduledNanos.addAndGet(nanos);
+            runTime.add(nanos);
+        }
+
+        /**
+         * Returns the thread time used by the level scaled by its share of thread time.
+         */
+        private long getNormalizedScheduledNanos()
+        {
+            return scheduledNanos.get() * timeWeight;
+        }
+
+        private void raiseNormalizedScheduledNanos(long normalizedNanos)
+        {
+            long nanos = normalizedNanos / timeWeight;
+            while (true) {
+                long current = scheduledNanos.get();
+                if (current >= nanos || scheduledNanos.compareAndSet(current, nanos)) {
+                    return;
+                }
+            }
+        }
+
+        @Managed
+        public int getQueuedSplits()
+        {
+            return queuedSplits.get();
+        }
+
+        @Managed
+        public long getScheduledNanos()
+        {
+            return scheduledNanos.get();
+        }
+
+        @Managed
+        @Nested
+        public DistributionStat getQueuedTime()
+        {
+            return queuedTime;
+        }
+
+        @Managed
+        @Nested
+        public DistributionStat getRunTime()
+        {
+            return runTime;
+        }
+    }
+
+    private static class QueuedSplit<T>
+    {
+        private final T split;
+        private final long queuedNanos;
+
+        private QueuedSplit(T split, long queuedNanos)
+        {
+            this.split = split;
+            this.queuedNanos = queuedNanos;
+        }
+
+        public T getSplit()
+        {
+            return split;
+        }
+
+        public long getQueuedNanos()
+        {
+            return queuedNanos;
+        }
+    }
+
     private class Runner
             implements Runnable
     {
@@ -524,8 +748,8 @@ public class TaskExecutor
                     try {
                         split = pendingSplits.take();
                         if (split.updatePriorityLevel()) {
-                            // priority level changed, return split to queue for re-prioritization
-                            pendingSplits.put(split);
+                            // priority level changed, return split to queue of the new level
+                            pendingSplits.offer(split, split.getPriorityLevel());
                             continue;
                         }
                     }
@@ -540,8 +764,10 @@ public class TaskExecutor
                         boolean finished;
                         ListenableFuture<?> blocked;
                         try {
+                            int priorityLevel = split.getPriorityLevel();
                             split.initializeIfNecessary();
                             blocked = split.process();
+                            pendingSplits.splitRan(priorityLevel, split.getLastRunNanos());
                             finished = split.isFinished();
                         }
                         finally {
@@ -554,7 +780,7 @@ public class TaskExecutor
                         }
                         else {
                             if (blocked.isDone()) {
-                                pendingSplits.put(split);
+                                pendingSplits.offer(split, split.getPriorityLevel());
                             }
                             else {
                                 blockedSplits.add(split);
@@ -565,7 +791,7 @@ public class TaskExecutor
                                     {
                                         blockedSplits.remove(split);
                                         split.updatePriorityLevel();
-                                        pendingSplits.put(split);
+                                        pendingSplits.offer(split, split.getPriorityLevel());
                                     }
                                 }, executor);
                             }
@@ -706,6 +932,41 @@ public class TaskExecutor
         return wallTime;
     }
 
+    @Managed
+    @Nested
+    public SplitQueueLevel<?> getSplitQueueLevel0()
+    {
+        return pendingSplits.getLevel(0);
+    }
+
+    @Managed
+    @Nested
+    public SplitQueueLevel<?> getSplitQueueLevel1()
+    {
+        return pendingSplits.getLevel(1);
+    }
+
+    @Managed
+    @Nested
+    public SplitQueueLevel<?> getSplitQueueLevel2()
+    {
+        return pendingSplits.getLevel(2);
+    }
+
+    @Managed
+    @Nested
+    public SplitQueueLevel<?> getSplitQueueLevel3()
+    {
+        return pendingSplits.getLevel(3);
+    }
+
+    @Managed
+    @Nested
+    public SplitQueueLevel<?> getSplitQueueLevel4()
+    {
+        return pendingSplits.getLevel(4);
+    }
+
     private synchronized int calculateRunningTasksForLevel(int level)
     {
         int count = 0;
@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.joda.time.DateTime;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 import java.net.URI;
@@ -61,6 +62,7 @@ public class TaskInfo
     private final SharedBufferInfo outputBuffers;
     private final Set<PlanNodeId> noMoreSplits;
     private final TaskStats stats;
+    private final MemoryPoolInfo memoryPool;
     private final List<FailureInfo> failures;
     private final Map<PlanNodeId, Set<?>> outputs;
 
@@ -73,6 +75,7 @@ public class TaskInfo
             @JsonProperty("outputBuffers") SharedBufferInfo outputBuffers,
             @JsonProperty("noMoreSplits") Set<PlanNodeId> noMoreSplits,
             @JsonProperty("stats") TaskStats stats,
+            @JsonProperty("memoryPool") @Nullable MemoryPoolInfo memoryPool,
             @JsonProperty("failures") List<FailureInfo> failures,
             @JsonProperty("outputs") Map<PlanNodeId, Set<?>> outputs)
     {
@@ -84,6 +87,7 @@ public class TaskInfo
         this.outputBuffers = checkNotNull(outputBuffers, "outputBuffers is null");
         this.noMoreSplits = checkNotNull(noMoreSplits, "noMoreSplits is null");
         this.stats = checkNotNull(stats, "stats is null");
+        this.memoryPool = memoryPool;
 
         if (failures != null) {
             this.failures = ImmutableList.copyOf(failures);
@@ -143,6 +147,16 @@ public class TaskInfo
         return stats;
     }
 
+    /**
+     * Returns the memory pool of the node running the task, or null if it is not known yet.
+     */
+    @Nullable
+    @JsonProperty
+    public MemoryPoolInfo getMemoryPool()
+    {
+        return memoryPool;
+    }
+
     @JsonProperty
     public List<FailureInfo> getFailures()
     {
@@ -14,6 +14,7 @@
 package com.facebook.presto.execution;
 
 import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
 import io.airlift.units.Duration;
@@ -22,6 +23,7 @@ import io.airlift.units.MinDuration;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
+import java.io.File;
 import java.util.concurrent.TimeUnit;
 
 public class TaskManagerConfig
@@ -29,13 +31,20 @@ public class TaskManagerConfig
     private boolean taskCpuTimerEnabled = true;
     private DataSize maxTaskMemoryUsage = new DataSize(256, Unit.MEGABYTE);
     private DataSize operatorPreAllocatedMemory = new DataSize(16, Unit.MEGABYTE);
+    private DataSize memoryPoolSize = new DataSize(Runtime.getRuntime().maxMemory() * 0.4, Unit.BYTE);
+    private Duration maxMemoryWait = new Duration(1, TimeUnit.MINUTES);
     private int maxShardProcessorThreads = Runtime.getRuntime().availableProcessors() * 4;
+    private int hashBuildConcurrency = Runtime.getRuntime().availableProcessors();
+    private boolean dynamicFilteringEnabled = true;
 
     private DataSize sinkMaxBufferSize = new DataSize(32, Unit.MEGABYTE);
 
     private Duration clientTimeout = new Duration(5, TimeUnit.MINUTES);
     private Duration infoMaxAge = new Duration(15, TimeUnit.MINUTES);
 
+    private boolean spillEnabled;
+    private File spillPath = new File("var/spill");
+
     public boolean isTaskCpuTimerEnabled()
     {
         return taskCpuTimerEnabled;
@@ -74,6 +83,34 @@ public class TaskManagerConfig
         return this;
     }
 
+    @NotNull
+    public DataSize getMemoryPoolSize()
+    {
+        return memoryPoolSize;
+    }
+
+    @Config("task.memory-pool-size")
+    @ConfigDescription("Memory shared by all tasks on this node, in addition to the limit of each task")
+    public TaskManagerConfig setMemoryPoolSize(DataSize memoryPoolSize)
+    {
+        this.memoryPoolSize = memoryPoolSize;
+        return this;
+    }
+
+    @NotNull
+    public Duration getMaxMemoryWait()
+    {
+        return maxMemoryWait;
+    }
+
+    @Config("task.max-memory-wait")
+    @ConfigDescription("Time an operator waits for other tasks to return memory to the memory pool before it fails")
+    public TaskManagerConfig setMaxMemoryWait(Duration maxMemoryWait)
+    {
+        this.maxMemoryWait = maxMemoryWait;
+        return this;
+    }
+
     @Min(1)
     public int getMaxShardProcessorThreads()
     {
@@ -87,6 +124,33 @@ public class TaskManagerConfig
         return this;
     }
 
+    @Min(1)
+    public int getHashBuildConcurrency()
+    {
+        return hashBuildConcurrency;
+    }
+
+    @Config("task.hash-build-concurrency")
+    @ConfigDescription("Maximum number of threads used to build a large join hash table")
+    public TaskManagerConfig setHashBuildConcurrency(int hashBuildConcurrency)
+    {
+        this.hashBuildConcurrency = hashBuildConcurrency;
+        return this;
+    }
+
+    public boolean isDynamicFilteringEnabled()
+    {
+        return dynamicFilteringEnabled;
+    }
+
+    @Config("task.dynamic-filtering-enabled")
+    @ConfigDescription("Skip probe side rows of an inner join that can not match the keys of the build side")
+    public TaskManagerConfig setDynamicFilteringEnabled(boolean dynamicFilteringEnabled)
+    {
+        this.dynamicFilteringEnabled = dynamicFilteringEnabled;
+        return this;
+    }
+
     @NotNull
     public DataSize getSinkMaxBufferSize()
     {
@@ -126,4 +190,31 @@ public class TaskManagerConfig
         this.infoMaxAge = infoMaxAge;
         return this;
     }
+
+    public boolean isSpillEnabled()
+    {
+        return spillEnabled;
+    }
+
+    @Config("task.spill-enabled")
+    @ConfigDescription("Write operator state to disk when the task memory limit is reached")
+    public TaskManagerConfig setSpillEnabled(boolean spillEnabled)
+    {
+        this.spillEnabled = spillEnabled;
+        return this;
+    }
+
+    @NotNull
+    public File getSpillPath()
+    {
+        return spillPath;
+    }
+
+    @Config("task.spill-path")
+    @ConfigDescription("Directory for operator state spilled to disk")
+    public TaskManagerConfig setSpillPath(File spillPath)
+    {
+        this.spillPath = spillPath;
+        return this;
+    }
 }
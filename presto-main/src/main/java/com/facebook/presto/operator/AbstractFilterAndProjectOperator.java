@@ -30,6 +30,7 @@ public abstract class AbstractFilterAndProjectOperator
     private final List<TupleInfo> tupleInfos;
 
     private final PageBuilder pageBuilder;
+    private int[] selectedPositions = new int[0];
     private boolean finishing;
 
     public AbstractFilterAndProjectOperator(OperatorContext operatorContext, Iterable<TupleInfo> tupleInfos)
@@ -41,6 +42,27 @@ public abstract class AbstractFilterAndProjectOperator
 
     protected abstract void filterAndProjectRowOriented(Block[] blocks, PageBuilder pageBuilder);
 
+    /**
+     * Filters and projects a whole page at a time.  Generated operators override this
+     * when all inputs can be read from columnar blocks.
+     */
+    protected void filterAndProjectColumnar(Block[] blocks, PageBuilder pageBuilder)
+    {
+        filterAndProjectRowOriented(blocks, pageBuilder);
+    }
+
+    /**
+     * Gets a buffer for the positions selected by the filter.  The buffer is reused
+     * for each page, so it must not be retained.
+     */
+    protected final int[] getSelectedPositions(int positionCount)
+    {
+        if (selectedPositions.length < positionCount) {
+            selectedPositions = new int[positionCount];
+        }
+        return selectedPositions;
+    }
+
     @Override
     public OperatorContext getOperatorContext()
     {
@@ -85,7 +107,7 @@ public abstract class AbstractFilterAndProjectOperator
         checkState(!pageBuilder.isFull(), "Page buffer is full");
 
         Block[] blocks = page.getBlocks();
-        filterAndProjectRowOriented(blocks, pageBuilder);
+        filterAndProjectColumnar(blocks, pageBuilder);
     }
 
     @Override
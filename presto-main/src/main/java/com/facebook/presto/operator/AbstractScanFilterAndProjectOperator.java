@@ -43,6 +43,7 @@ public abstract class AbstractScanFilterAndProjectOperator
     private final List<TupleInfo> tupleInfos;
     private final List<ColumnHandle> columns;
     private final PageBuilder pageBuilder;
+    private int[] selectedPositions = new int[0];
 
     @GuardedBy("this")
     private RecordCursor cursor;
@@ -72,6 +73,27 @@ public abstract class AbstractScanFilterAndProjectOperator
 
     protected abstract void filterAndProjectRowOriented(Block[] blocks, PageBuilder pageBuilder);
 
+    /**
+     * Filters and projects a whole page at a time.  Generated operators override this
+     * when all inputs can be read from columnar blocks.
+     */
+    protected void filterAndProjectColumnar(Block[] blocks, PageBuilder pageBuilder)
+    {
+        filterAndProjectRowOriented(blocks, pageBuilder);
+    }
+
+    /**
+     * Gets a buffer for the positions selected by the filter.  The buffer is reused
+     * for each page, so it must not be retained.
+     */
+    protected final int[] getSelectedPositions(int positionCount)
+    {
+        if (selectedPositions.length < positionCount) {
+            selectedPositions = new int[positionCount];
+        }
+        return selectedPositions;
+    }
+
     protected abstract int filterAndProjectRowOriented(RecordCursor cursor, PageBuilder pageBuilder);
 
     @Override
@@ -187,7 +209,7 @@ public abstract class AbstractScanFilterAndProjectOperator
             else {
                 Page output = operator.getOutput();
                 if (output != null) {
-                    filterAndProjectRowOriented(output.getBlocks(), pageBuilder);
+                    filterAndProjectColumnar(output.getBlocks(), pageBuilder);
                 }
             }
         }
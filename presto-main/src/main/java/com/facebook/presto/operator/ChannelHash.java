@@ -15,20 +15,29 @@ package com.facebook.presto.operator;
 
 import com.facebook.presto.block.BlockCursor;
 import com.facebook.presto.tuple.TupleInfo;
+import com.facebook.presto.tuple.TupleInfo.Type;
 import io.airlift.slice.Slice;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
+import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2IntMap;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenCustomHashMap;
 import it.unimi.dsi.fastutil.longs.LongHash;
 import it.unimi.dsi.fastutil.longs.LongHash.Strategy;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.FutureTask;
 
+import static com.facebook.presto.operator.LongKeyHashMap.getLongKey;
+import static com.facebook.presto.operator.LongKeyHashMap.isLongKey;
 import static com.facebook.presto.operator.SyntheticAddress.decodeSliceIndex;
 import static com.facebook.presto.operator.SyntheticAddress.decodeSliceOffset;
 import static com.facebook.presto.operator.SyntheticAddress.encodeSyntheticAddress;
+import static com.facebook.presto.util.MoreFutures.getFutureValue;
+import static com.google.common.base.Preconditions.checkArgument;
 import static io.airlift.slice.SizeOf.sizeOf;
 
 public class ChannelHash
@@ -45,55 +54,227 @@ public class ChannelHash
     // in the channel index.  Then first position is retrieved from the main address to position map.
     // If a position was found, the remaining value positions are located using the position links array.
     //
+    // When the key is a single BIGINT or DOUBLE field, the key value itself is used as the map key
+    // instead of the synthetic address, so no lookup slice is needed.  Null keys never match in an
+    // equijoin, so they are not added to the map.
+    //
+    // The map can be split into a power of 2 number of partitions by key hash.  The partitions are
+    // independent maps, so a large hash can be built by several threads at once.  The position links
+    // array is shared, but each position is only ever written by the thread building its partition.
+    //
 
     private static final int LOOKUP_SLICE_INDEX = 0xFF_FF_FF_FF;
 
     private final SliceHashStrategy hashStrategy;
-    private final AddressToPositionMap addressToPositionMap;
+    private final AddressToPositionMap[] addressToPositionMaps;
+    private final LongKeyHashMap[] longKeyToPositionMaps;
+    private final Type longKeyType;
+    private final int partitionMask;
     private final IntArrayList positionLinks;
 
-    public ChannelHash(ChannelIndex channelIndex, OperatorContext operatorContext)
+    public ChannelHash(ChannelIndex channelIndex, OperatorContext operatorContext, boolean longKeyHashEnabled, int partitionCount)
     {
-        hashStrategy = new SliceHashStrategy(channelIndex.getTupleInfo(), channelIndex.getSlices().elements());
-        addressToPositionMap = new AddressToPositionMap(channelIndex.getPositionCount(), hashStrategy);
-        addressToPositionMap.defaultReturnValue(-1);
-        positionLinks = new IntArrayList(new int[channelIndex.getValueAddresses().size()]);
+        checkArgument(Integer.bitCount(partitionCount) == 1, "partitionCount must be a power of 2");
+
+        final TupleInfo tupleInfo = channelIndex.getTupleInfo();
+        final Slice[] slices = channelIndex.getSlices().elements();
+        final long[] valueAddresses = channelIndex.getValueAddresses().elements();
+        int positionCount = channelIndex.getValueAddresses().size();
+
+        positionLinks = new IntArrayList(new int[positionCount]);
         Arrays.fill(positionLinks.elements(), -1);
-        for (int position = 0; position < channelIndex.getValueAddresses().size(); position++) {
-            operatorContext.setMemoryReservation(getEstimatedSize());
-            long sliceAddress = channelIndex.getValueAddresses().elements()[position];
-            int oldPosition = addressToPositionMap.put(sliceAddress, position);
-            if (oldPosition >= 0) {
-                // link the new position to the old position
-                positionLinks.set(position, oldPosition);
+        partitionMask = partitionCount - 1;
+
+        if (longKeyHashEnabled && isLongKey(tupleInfo)) {
+            hashStrategy = null;
+            longKeyType = tupleInfo.getTypes().get(0);
+        }
+        else {
+            hashStrategy = new SliceHashStrategy(tupleInfo, slices);
+            longKeyType = null;
+        }
+
+        // group the positions by partition, keeping the positions within a partition in order
+        // so the position links are the same regardless of the number of partitions
+        int[] positionPartitions = new int[positionCount];
+        final int[] partitionStarts = new int[partitionCount + 1];
+        for (int position = 0; position < positionCount; position++) {
+            long sliceAddress = valueAddresses[position];
+            int partition;
+            if (longKeyType != null) {
+                Slice slice = slices[decodeSliceIndex(sliceAddress)];
+                int offset = decodeSliceOffset(sliceAddress);
+                if (tupleInfo.isNull(slice, offset, 0)) {
+                    partition = -1;
+                }
+                else {
+                    partition = getLongKeyPartition(getLongKey(tupleInfo, slice, offset));
+                }
             }
+            else {
+                partition = getAddressPartition(sliceAddress);
+            }
+            positionPartitions[position] = partition;
+            if (partition >= 0) {
+                partitionStarts[partition + 1]++;
+            }
+        }
+        for (int partition = 0; partition < partitionCount; partition++) {
+            partitionStarts[partition + 1] += partitionStarts[partition];
+        }
+        final int[] partitionPositions = new int[partitionStarts[partitionCount]];
+        int[] nextPartitionPosition = Arrays.copyOf(partitionStarts, partitionCount);
+        for (int position = 0; position < positionCount; position++) {
+            int partition = positionPartitions[position];
+            if (partition >= 0) {
+                partitionPositions[nextPartitionPosition[partition]++] = position;
+            }
+        }
+
+        // the maps are sized for the partition up front, so the memory can be reserved before the build
+        if (longKeyType != null) {
+            addressToPositionMaps = null;
+            longKeyToPositionMaps = new LongKeyHashMap[partitionCount];
+            for (int partition = 0; partition < partitionCount; partition++) {
+                longKeyToPositionMaps[partition] = new LongKeyHashMap(partitionStarts[partition + 1] - partitionStarts[partition]);
+            }
+        }
+        else {
+            addressToPositionMaps = new AddressToPositionMap[partitionCount];
+            longKeyToPositionMaps = null;
+            for (int partition = 0; partition < partitionCount; partition++) {
+                addressToPositionMaps[partition] = new AddressToPositionMap(partitionStarts[partition + 1] - partitionStarts[partition], hashStrategy);
+                addressToPositionMaps[partition].defaultReturnValue(-1);
+            }
+        }
+        operatorContext.setMemoryReservation(getEstimatedSize() + sizeOf(positionPartitions) + sizeOf(partitionPositions));
+
+        if (partitionCount == 1) {
+            buildPartition(0, partitionStarts, partitionPositions, valueAddresses, slices, tupleInfo);
+            return;
+        }
+
+        // each partition is only written by one thread and the hash strategy is not modified
+        // during the build, so the partitions can be built concurrently
+        //
+        // The other partitions are built on the task notification executor, which is an
+        // unbounded cached pool, not on the task executor.  The number of concurrent builds
+        // is still bounded: this thread is a task executor runner, and it blocks until its
+        // partitions are built, so each of the fixed number of runners has at most
+        // partitionCount - 1 partition builds in flight.
+        List<FutureTask<?>> partitionBuilds = new ArrayList<>();
+        for (int partition = 1; partition < partitionCount; partition++) {
+            final int buildPartition = partition;
+            FutureTask<?> partitionBuild = new FutureTask<>(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    buildPartition(buildPartition, partitionStarts, partitionPositions, valueAddresses, slices, tupleInfo);
+                }
+            }, null);
+            operatorContext.getExecutor().execute(partitionBuild);
+            partitionBuilds.add(partitionBuild);
+        }
+
+        // build the first partition in this thread while waiting for the others
+        buildPartition(0, partitionStarts, partitionPositions, valueAddresses, slices, tupleInfo);
+        for (FutureTask<?> partitionBuild : partitionBuilds) {
+            getFutureValue(partitionBuild);
         }
     }
 
     public ChannelHash(ChannelHash hash)
     {
         // hash strategy can not be shared across threads, but everything else can
-        this.hashStrategy = new SliceHashStrategy(hash.hashStrategy.tupleInfo, hash.hashStrategy.slices);
-        this.addressToPositionMap = new AddressToPositionMap(hash.addressToPositionMap, hashStrategy);
-        addressToPositionMap.defaultReturnValue(-1);
+        if (hash.longKeyToPositionMaps != null) {
+            this.hashStrategy = null;
+            this.addressToPositionMaps = null;
+        }
+        else {
+            this.hashStrategy = new SliceHashStrategy(hash.hashStrategy.tupleInfo, hash.hashStrategy.slices);
+            this.addressToPositionMaps = new AddressToPositionMap[hash.addressToPositionMaps.length];
+            for (int partition = 0; partition < addressToPositionMaps.length; partition++) {
+                addressToPositionMaps[partition] = new AddressToPositionMap(hash.addressToPositionMaps[partition], hashStrategy);
+                addressToPositionMaps[partition].defaultReturnValue(-1);
+            }
+        }
+        this.longKeyToPositionMaps = hash.longKeyToPositionMaps;
+        this.longKeyType = hash.longKeyType;
+        this.partitionMask = hash.partitionMask;
         this.positionLinks = hash.positionLinks;
     }
 
+    private void buildPartition(int partition, int[] partitionStarts, int[] partitionPositions, long[] valueAddresses, Slice[] slices, TupleInfo tupleInfo)
+    {
+        int[] links = positionLinks.elements();
+        for (int index = partitionStarts[partition]; index < partitionStarts[partition + 1]; index++) {
+            int position = partitionPositions[index];
+            long sliceAddress = valueAddresses[position];
+            int oldPosition;
+            if (longKeyType != null) {
+                Slice slice = slices[decodeSliceIndex(sliceAddress)];
+                oldPosition = longKeyToPositionMaps[partition].put(getLongKey(tupleInfo, slice, decodeSliceOffset(sliceAddress)), position);
+            }
+            else {
+                oldPosition = addressToPositionMaps[partition].put(sliceAddress, position);
+            }
+            if (oldPosition >= 0) {
+                // link the new position to the old position
+                links[position] = oldPosition;
+            }
+        }
+    }
+
     private long getEstimatedSize()
     {
-        long addressToPositionSize = addressToPositionMap.getEstimatedSize().toBytes();
+        long mapSize = 0;
+        if (longKeyToPositionMaps != null) {
+            for (LongKeyHashMap map : longKeyToPositionMaps) {
+                mapSize += map.getEstimatedSize().toBytes();
+            }
+        }
+        else {
+            for (AddressToPositionMap map : addressToPositionMaps) {
+                mapSize += map.getEstimatedSize().toBytes();
+            }
+        }
         long positionLinksSize = sizeOf(positionLinks.elements());
-        return addressToPositionSize + positionLinksSize;
+        return mapSize + positionLinksSize;
+    }
+
+    private int getLongKeyPartition(long key)
+    {
+        if (partitionMask == 0) {
+            return 0;
+        }
+        // the maps use the low bits of the same hash to select a bucket, so use the high bits here
+        return ((int) (HashCommon.murmurHash3(key) >>> 32)) & partitionMask;
+    }
+
+    private int getAddressPartition(long sliceAddress)
+    {
+        if (partitionMask == 0) {
+            return 0;
+        }
+        return hashStrategy.hashCode(sliceAddress) & partitionMask;
     }
 
     public void setLookupSlice(Slice lookupSlice)
     {
-        hashStrategy.setLookupSlice(lookupSlice);
+        if (hashStrategy != null) {
+            hashStrategy.setLookupSlice(lookupSlice);
+        }
     }
 
     public int get(BlockCursor cursor)
     {
-        int position = addressToPositionMap.get(encodeSyntheticAddress(LOOKUP_SLICE_INDEX, cursor.getRawOffset()));
+        if (longKeyType != null) {
+            long key = getLongKey(cursor, longKeyType);
+            return longKeyToPositionMaps[getLongKeyPartition(key)].get(key);
+        }
+        long lookupAddress = encodeSyntheticAddress(LOOKUP_SLICE_INDEX, cursor.getRawOffset());
+        int position = addressToPositionMaps[getAddressPartition(lookupAddress)].get(lookupAddress);
         return position;
     }
 
@@ -18,12 +18,18 @@ import com.facebook.presto.block.BlockBuilder;
 import com.facebook.presto.block.BlockCursor;
 import com.facebook.presto.block.uncompressed.UncompressedBlock;
 import com.facebook.presto.tuple.TupleInfo;
+import com.facebook.presto.tuple.TupleInfo.Type;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
 import io.airlift.units.DataSize;
 import it.unimi.dsi.fastutil.longs.LongHash;
 import it.unimi.dsi.fastutil.longs.LongOpenCustomHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 
+import static com.facebook.presto.operator.LongKeyHashMap.getLongKey;
+import static com.facebook.presto.operator.LongKeyHashMap.isLongKey;
+import static com.facebook.presto.operator.Operator.NOT_BLOCKED;
 import static com.facebook.presto.operator.SliceHashStrategy.LOOKUP_SLICE_INDEX;
 import static com.facebook.presto.operator.SyntheticAddress.encodeSyntheticAddress;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -34,22 +40,37 @@ import static io.airlift.units.DataSize.Unit.BYTE;
 
 public class ChannelSet
 {
+    // When the set channel is a single BIGINT or DOUBLE field, the values are stored directly in a
+    // primitive long set (see LongKeyHashMap) and the slice based strategy and address set are null.
     private final SliceHashStrategy strategy;
     private final AddressValueSet addressValueSet;
+    private final LongValueSet longValueSet;
+    private final Type longKeyType;
     private final boolean containsNull;
 
     public ChannelSet(ChannelSet channelSet)
     {
         checkNotNull(channelSet, "channelSet is null");
-        this.strategy = new SliceHashStrategy(channelSet.strategy);
-        this.addressValueSet = new AddressValueSet(channelSet.addressValueSet, strategy);
+        if (channelSet.longValueSet != null) {
+            // the long value set has no lookup state, so it can be shared across threads
+            this.strategy = null;
+            this.addressValueSet = null;
+        }
+        else {
+            this.strategy = new SliceHashStrategy(channelSet.strategy);
+            this.addressValueSet = new AddressValueSet(channelSet.addressValueSet, strategy);
+        }
+        this.longValueSet = channelSet.longValueSet;
+        this.longKeyType = channelSet.longKeyType;
         this.containsNull = channelSet.containsNull;
     }
 
-    private ChannelSet(SliceHashStrategy strategy, AddressValueSet addressValueSet, boolean containsNull)
+    private ChannelSet(SliceHashStrategy strategy, AddressValueSet addressValueSet, LongValueSet longValueSet, Type longKeyType, boolean containsNull)
     {
         this.strategy = strategy;
         this.addressValueSet = addressValueSet;
+        this.longValueSet = longValueSet;
+        this.longKeyType = longKeyType;
         this.containsNull = containsNull;
     }
 
@@ -60,21 +81,33 @@ public class ChannelSet
 
     public void setLookupSlice(Slice lookupSlice)
     {
-        strategy.setLookupSlice(lookupSlice);
+        if (strategy != null) {
+            strategy.setLookupSlice(lookupSlice);
+        }
     }
 
     public boolean contains(BlockCursor cursor)
     {
+        if (longValueSet != null) {
+            return longValueSet.contains(getLongKey(cursor, longKeyType));
+        }
         return addressValueSet.contains(SyntheticAddress.encodeSyntheticAddress(LOOKUP_SLICE_INDEX, cursor.getRawOffset()));
     }
 
     public int size()
     {
+        if (longValueSet != null) {
+            // null is not stored in the long value set
+            return longValueSet.size() + (containsNull ? 1 : 0);
+        }
         return addressValueSet.size();
     }
 
     public DataSize getEstimatedSize()
     {
+        if (longValueSet != null) {
+            return longValueSet.getEstimatedSize();
+        }
         return new DataSize(addressValueSet.getEstimatedSize().toBytes() + strategy.getEstimatedSize().toBytes(), BYTE);
     }
 
@@ -97,10 +130,26 @@ public class ChannelSet
         }
     }
 
+    private static class LongValueSet
+            extends LongOpenHashSet
+    {
+        private LongValueSet(int expected)
+        {
+            super(expected);
+        }
+
+        public DataSize getEstimatedSize()
+        {
+            return new DataSize(sizeOf(this.key) + sizeOf(this.used), BYTE);
+        }
+    }
+
     public static class ChannelSetBuilder
     {
         private final SliceHashStrategy strategy;
         private final AddressValueSet addressValueSet;
+        private final LongValueSet longValueSet;
+        private final Type longKeyType;
         private final OperatorContext operatorContext;
         private final TupleInfo tupleInfo;
 
@@ -108,6 +157,9 @@ public class ChannelSet
         private boolean containsNull;
         private BlockBuilder blockBuilder;
 
+        // not null while the memory for the set is waiting for the memory pool
+        private ListenableFuture<?> memoryFuture;
+
         public ChannelSetBuilder(TupleInfo tupleInfo, int expectedPositions, OperatorContext operatorContext)
         {
             this.tupleInfo = checkNotNull(tupleInfo, "tupleInfo is null");
@@ -117,21 +169,74 @@ public class ChannelSet
             checkArgument(tupleInfo.getFieldCount() == 1, "ChannelSet only supports single field set building channels");
             // Supporting multi-field channel sets (e.g. tuples) is much more difficult because of null handling, and hence is not supported by this class.
 
-            // Construct the set from the source
-            strategy = new SliceHashStrategy(tupleInfo);
-            addressValueSet = new AddressValueSet(expectedPositions, strategy);
+            if (isLongKey(tupleInfo)) {
+                // Single fixed width values are stored directly in a primitive set
+                strategy = null;
+                addressValueSet = null;
+                longValueSet = new LongValueSet(expectedPositions);
+                longKeyType = tupleInfo.getTypes().get(0);
+            }
+            else {
+                longValueSet = null;
+                longKeyType = null;
 
-            // allocate the first slice of the set
-            Slice slice = Slices.allocate((int) BlockBuilder.DEFAULT_MAX_BLOCK_SIZE.toBytes());
-            strategy.addSlice(slice);
-            blockBuilder = new BlockBuilder(tupleInfo, slice.length(), slice.getOutput());
+                // Construct the set from the source
+                strategy = new SliceHashStrategy(tupleInfo);
+                addressValueSet = new AddressValueSet(expectedPositions, strategy);
+
+                // allocate the first slice of the set
+                Slice slice = Slices.allocate((int) BlockBuilder.DEFAULT_MAX_BLOCK_SIZE.toBytes());
+                strategy.addSlice(slice);
+                blockBuilder = new BlockBuilder(tupleInfo, slice.length(), slice.getOutput());
+            }
         }
 
+        /**
+         * Adds the values of the block to the set.  If the memory pool does not have enough
+         * free memory for the set, the values are still added, and {@link #isBlocked} returns
+         * a future the operator must wait on before it adds more blocks.
+         */
         public void addBlock(Block sourceBlock)
         {
-            operatorContext.setMemoryReservation(getEstimatedSize());
+            checkState(memoryFuture == null, "Set is waiting for memory");
+            addValues(sourceBlock);
+            reserveMemory();
+        }
 
+        /**
+         * Returns a future that completes when the memory for the set is reserved.
+         */
+        public ListenableFuture<?> isBlocked()
+        {
+            if (memoryFuture != null && memoryFuture.isDone()) {
+                // memory was returned to the pool or the wait timed out, so try again
+                reserveMemory();
+            }
+            return memoryFuture == null ? NOT_BLOCKED : memoryFuture;
+        }
+
+        private void reserveMemory()
+        {
+            ListenableFuture<?> future = operatorContext.reserveMemoryOrWait(getEstimatedSize());
+            memoryFuture = future.isDone() ? null : future;
+        }
+
+        private void addValues(Block sourceBlock)
+        {
             BlockCursor sourceCursor = sourceBlock.cursor();
+            if (longValueSet != null) {
+                for (int position = 0; position < sourceBlock.getPositionCount(); position++) {
+                    checkState(sourceCursor.advanceNextPosition());
+                    if (sourceCursor.isNull(0)) {
+                        containsNull = true;
+                    }
+                    else {
+                        longValueSet.add(getLongKey(sourceCursor, longKeyType));
+                    }
+                }
+                return;
+            }
+
             Slice sourceSlice = ((UncompressedBlock) sourceBlock).getSlice();
             strategy.setLookupSlice(sourceSlice);
 
@@ -160,12 +265,15 @@ public class ChannelSet
 
         public long getEstimatedSize()
         {
+            if (longValueSet != null) {
+                return longValueSet.getEstimatedSize().toBytes();
+            }
             return addressValueSet.getEstimatedSize().toBytes() + strategy.getEstimatedSize().toBytes();
         }
 
         public ChannelSet build()
         {
-            return new ChannelSet(strategy, addressValueSet, containsNull);
+            return new ChannelSet(strategy, addressValueSet, longValueSet, longKeyType, containsNull);
         }
     }
 }
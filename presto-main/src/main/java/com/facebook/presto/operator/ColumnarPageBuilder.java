@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.block.columnar.ColumnarBlockBuilder;
+import com.facebook.presto.tuple.TupleInfo;
+import io.airlift.units.DataSize;
+import io.airlift.units.DataSize.Unit;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Page builder that produces columnar blocks backed by primitive arrays.  Only
+ * single field tuple infos are supported.
+ */
+public class ColumnarPageBuilder
+{
+    private final ColumnarBlockBuilder[] blockBuilders;
+    private final long maxSizeInBytes;
+    private final DataSize maxBlockSize;
+    private int declaredPositions;
+
+    public ColumnarPageBuilder(List<TupleInfo> tupleInfos)
+    {
+        this(tupleInfos, PageBuilder.DEFAULT_MAX_PAGE_SIZE);
+    }
+
+    public ColumnarPageBuilder(List<TupleInfo> tupleInfos, DataSize maxSize)
+    {
+        checkNotNull(tupleInfos, "tupleInfos is null");
+        checkNotNull(maxSize, "maxSize is null");
+
+        if (!tupleInfos.isEmpty()) {
+            maxBlockSize = new DataSize(maxSize.toBytes() / tupleInfos.size(), Unit.BYTE);
+        }
+        else {
+            maxBlockSize = new DataSize(0, Unit.BYTE);
+        }
+
+        blockBuilders = new ColumnarBlockBuilder[tupleInfos.size()];
+        for (int i = 0; i < blockBuilders.length; i++) {
+            blockBuilders[i] = new ColumnarBlockBuilder(tupleInfos.get(i), maxBlockSize);
+        }
+        this.maxSizeInBytes = maxSize.toBytes();
+    }
+
+    public void reset()
+    {
+        declaredPositions = 0;
+        if (isEmpty()) {
+            return;
+        }
+
+        for (int i = 0; i < blockBuilders.length; i++) {
+            blockBuilders[i] = new ColumnarBlockBuilder(blockBuilders[i].getTupleInfo(), maxBlockSize);
+        }
+    }
+
+    public ColumnarBlockBuilder getBlockBuilder(int channel)
+    {
+        return blockBuilders[channel];
+    }
+
+    /**
+     * Hack to declare positions when producing a page with no channels
+     */
+    public void declarePosition()
+    {
+        declaredPositions++;
+    }
+
+    public boolean isFull()
+    {
+        if (declaredPositions == Integer.MAX_VALUE) {
+            return true;
+        }
+
+        long sizeInBytes = 0;
+        for (ColumnarBlockBuilder blockBuilder : blockBuilders) {
+            if (blockBuilder.isFull()) {
+                return true;
+            }
+            sizeInBytes += blockBuilder.getSize();
+            if (sizeInBytes > maxSizeInBytes) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty()
+    {
+        return blockBuilders.length == 0 ? declaredPositions == 0 : blockBuilders[0].isEmpty();
+    }
+
+    public long getSize()
+    {
+        long sizeInBytes = 0;
+        for (ColumnarBlockBuilder blockBuilder : blockBuilders) {
+            sizeInBytes += blockBuilder.getSize();
+        }
+        return sizeInBytes;
+    }
+
+    public Page build()
+    {
+        if (blockBuilders.length == 0) {
+            return new Page(declaredPositions);
+        }
+
+        Block[] blocks = new Block[blockBuilders.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = blockBuilders[i].build();
+        }
+        return new Page(blocks);
+    }
+}
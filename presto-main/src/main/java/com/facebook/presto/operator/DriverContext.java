@@ -19,6 +19,7 @@ import com.facebook.presto.sql.planner.plan.PlanNodeId;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.stats.CounterStat;
 import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
@@ -138,6 +139,11 @@ public class DriverContext
         return pipelineContext.getMaxMemorySize();
     }
 
+    public ListenableFuture<?> waitForMemory(long bytes, Duration waitTime)
+    {
+        return pipelineContext.waitForMemory(bytes, waitTime);
+    }
+
     public boolean reserveMemory(long bytes)
     {
         boolean result = pipelineContext.reserveMemory(bytes);
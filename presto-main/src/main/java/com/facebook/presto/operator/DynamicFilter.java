@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import io.airlift.slice.Slice;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import javax.annotation.concurrent.Immutable;
+
+import static com.facebook.presto.operator.SyntheticAddress.decodeSliceIndex;
+import static com.facebook.presto.operator.SyntheticAddress.decodeSliceOffset;
+import static com.facebook.presto.tuple.TupleInfo.Type.FIXED_INT_64;
+import static it.unimi.dsi.fastutil.HashCommon.murmurHash3;
+
+/**
+ * Summary of the keys on the build side of a join, used to discard probe rows that can
+ * not match before they are decoded and projected.  The filter contains the range of the
+ * keys and a bloom filter over the keys, so it may accept keys that are not in the build,
+ * but it never rejects a key that is.  Null keys are always rejected since they never
+ * match in an equijoin.
+ * <p/>
+ * Only single BIGINT keys are supported.
+ */
+@Immutable
+public final class DynamicFilter
+{
+    private static final int BITS_PER_KEY = 8;
+
+    private final long min;
+    private final long max;
+    private final long[] bloomFilter;
+    private final int bloomFilterMask;
+
+    private DynamicFilter(long min, long max, long[] bloomFilter)
+    {
+        this.min = min;
+        this.max = max;
+        this.bloomFilter = bloomFilter;
+        this.bloomFilterMask = (bloomFilter.length * Long.SIZE) - 1;
+    }
+
+    /**
+     * Creates a filter for the keys in the index, or absent if the keys are not single
+     * BIGINT values or there are more than maxPositions keys.
+     */
+    public static Optional<DynamicFilter> create(ChannelIndex index, int maxPositions)
+    {
+        TupleInfo tupleInfo = index.getTupleInfo();
+        if (tupleInfo.getFieldCount() != 1 || tupleInfo.getTypes().get(0) != FIXED_INT_64 || index.getPositionCount() > maxPositions) {
+            return Optional.absent();
+        }
+
+        // size the bloom filter to a power of two number of bits
+        int bitCount = Integer.highestOneBit(Math.max(index.getPositionCount(), 1) * BITS_PER_KEY - 1) << 1;
+        long[] bloomFilter = new long[Math.max(bitCount / Long.SIZE, 1)];
+        int mask = (bloomFilter.length * Long.SIZE) - 1;
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        ObjectArrayList<Slice> slices = index.getSlices();
+        LongArrayList valueAddresses = index.getValueAddresses();
+        for (int position = 0; position < index.getPositionCount(); position++) {
+            long sliceAddress = valueAddresses.getLong(position);
+            Slice slice = slices.get(decodeSliceIndex(sliceAddress));
+            int offset = decodeSliceOffset(sliceAddress);
+            if (tupleInfo.isNull(slice, offset, 0)) {
+                continue;
+            }
+
+            long value = tupleInfo.getLong(slice, offset, 0);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+
+            long hash = murmurHash3(value);
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            setBit(bloomFilter, hash1 & mask);
+            setBit(bloomFilter, hash2 & mask);
+            setBit(bloomFilter, (hash1 + hash2) & mask);
+        }
+
+        return Optional.of(new DynamicFilter(min, max, bloomFilter));
+    }
+
+    public long getMin()
+    {
+        return min;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Returns false if the value is definitely not a build key.
+     */
+    public boolean mightContain(long value)
+    {
+        if (value < min || value > max) {
+            return false;
+        }
+
+        long hash = murmurHash3(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        return isBitSet(hash1 & bloomFilterMask) &&
+                isBitSet(hash2 & bloomFilterMask) &&
+                isBitSet((hash1 + hash2) & bloomFilterMask);
+    }
+
+    private boolean isBitSet(int bit)
+    {
+        return (bloomFilter[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private static void setBit(long[] bits, int bit)
+    {
+        bits[bit >>> 6] |= 1L << bit;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("min", min)
+                .add("max", max)
+                .add("bloomFilterBits", bloomFilter.length * Long.SIZE)
+                .toString();
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.operator;
 
+import com.facebook.presto.execution.TaskManager;
 import com.facebook.presto.operator.HttpPageBufferClient.ClientCallback;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
@@ -22,6 +23,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.http.client.AsyncHttpClient;
 import io.airlift.units.DataSize;
+import io.airlift.units.DataSize.Unit;
 import io.airlift.units.Duration;
 
 import javax.annotation.Nullable;
@@ -44,18 +46,35 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.facebook.presto.util.Threads.checkNotSameThreadExecutor;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+/**
+ * Fetches pages from a set of remote output buffers.  The number of concurrent requests
+ * and the maximum size of each response are derived from the free space in the buffer
+ * and the average size of the recent responses, so the in-flight responses can not
+ * overfill the buffer, and a buffer with space left is filled with few large requests
+ * rather than many small ones.
+ */
 @ThreadSafe
 public class ExchangeClient
         implements Closeable
 {
     private static final Page NO_MORE_PAGES = new Page(0);
 
+    // weight of the last response in the running averages
+    private static final double RESPONSE_WEIGHT = 0.2;
+    private static final DataSize MIN_RESPONSE_SIZE = new DataSize(1, Unit.MEGABYTE);
+
     private final long maxBufferedBytes;
     private final DataSize maxResponseSize;
     private final int concurrentRequestMultiplier;
+    private final boolean compressionEnabled;
+    @Nullable
+    private final TaskManager localTaskManager;
+    @Nullable
+    private final URI localUri;
     private final AsyncHttpClient httpClient;
     private final Executor executor;
 
@@ -79,9 +98,11 @@ public class ExchangeClient
     @GuardedBy("this")
     private long bufferBytes;
     @GuardedBy("this")
-    private long successfulRequests;
-    @GuardedBy("this")
     private long averageBytesPerRequest;
+    @GuardedBy("this")
+    private double averageResponseNanos;
+    @GuardedBy("this")
+    private DataSize requestMaxResponseSize;
 
     private final AtomicBoolean closed = new AtomicBoolean();
 
@@ -91,9 +112,29 @@ public class ExchangeClient
             AsyncHttpClient httpClient,
             Executor executor)
     {
+        this(maxBufferedBytes, maxResponseSize, concurrentRequestMultiplier, false, null, null, httpClient, executor);
+    }
+
+    /**
+     * @param localTaskManager if not null, results of tasks on the node with the localUri are read from this task manager
+     */
+    public ExchangeClient(DataSize maxBufferedBytes,
+            DataSize maxResponseSize,
+            int concurrentRequestMultiplier,
+            boolean compressionEnabled,
+            @Nullable TaskManager localTaskManager,
+            @Nullable URI localUri,
+            AsyncHttpClient httpClient,
+            Executor executor)
+    {
+        checkArgument((localTaskManager == null) == (localUri == null), "localTaskManager and localUri must both be set or both be null");
         this.maxBufferedBytes = maxBufferedBytes.toBytes();
         this.maxResponseSize = maxResponseSize;
+        this.requestMaxResponseSize = maxResponseSize;
         this.concurrentRequestMultiplier = concurrentRequestMultiplier;
+        this.compressionEnabled = compressionEnabled;
+        this.localTaskManager = localTaskManager;
+        this.localUri = localUri;
         this.httpClient = httpClient;
         this.executor = checkNotSameThreadExecutor(executor, "executor");
     }
@@ -105,11 +146,23 @@ public class ExchangeClient
             bufferedPages--;
         }
 
+        long bytesReceived = 0;
+        long uncompressedBytesReceived = 0;
         ImmutableList.Builder<PageBufferClientStatus> exchangeStatus = ImmutableList.builder();
         for (HttpPageBufferClient client : allClients.values()) {
             exchangeStatus.add(client.getStatus());
+            bytesReceived += client.getBytesReceived();
+            uncompressedBytesReceived += client.getUncompressedBytesReceived();
         }
-        return new ExchangeClientStatus(bufferBytes, averageBytesPerRequest, bufferedPages, exchangeStatus.build());
+        return new ExchangeClientStatus(bufferBytes,
+                averageBytesPerRequest,
+                bufferedPages,
+                bytesReceived,
+                uncompressedBytesReceived,
+                new Duration(averageResponseNanos, TimeUnit.NANOSECONDS).convertToMostSuccinctTimeUnit(),
+                getRunningClientCount(),
+                requestMaxResponseSize,
+                exchangeStatus.build());
     }
 
     public synchronized void addLocation(URI location)
@@ -234,7 +287,7 @@ public class ExchangeClient
         // add clients for new locations
         for (URI location : locations) {
             if (!allClients.containsKey(location)) {
-                HttpPageBufferClient client = new HttpPageBufferClient(httpClient, maxResponseSize, location, new ExchangeClientCallback(), executor);
+                HttpPageBufferClient client = createClient(location);
                 allClients.put(location, client);
                 queuedClients.add(client);
             }
@@ -249,22 +302,43 @@ public class ExchangeClient
             return;
         }
 
+        // until the first response arrives, request from all clients
         int clientCount = (int) ((1.0 * neededBytes / averageBytesPerRequest) * concurrentRequestMultiplier);
         clientCount = Math.max(clientCount, 1);
 
-        int pendingClients = allClients.size() - queuedClients.size() - completedClients.size();
+        int pendingClients = getRunningClientCount();
         clientCount -= pendingClients;
+        clientCount = Math.min(clientCount, queuedClients.size());
+        if (clientCount <= 0) {
+            return;
+        }
+
+        // split the free space between the running requests so they can not overfill the buffer
+        long responseBytes = neededBytes / (pendingClients + clientCount);
+        responseBytes = Math.max(responseBytes, Math.min(MIN_RESPONSE_SIZE.toBytes(), maxResponseSize.toBytes()));
+        responseBytes = Math.min(responseBytes, maxResponseSize.toBytes());
+        requestMaxResponseSize = new DataSize(responseBytes, Unit.BYTE).convertToMostSuccinctDataSize();
 
         for (int i = 0; i < clientCount; i++) {
             HttpPageBufferClient client = queuedClients.poll();
-            if (client == null) {
-                // no more clients available
-                return;
-            }
-            client.scheduleRequest();
+            client.scheduleRequest(requestMaxResponseSize);
         }
     }
 
+    private HttpPageBufferClient createClient(URI location)
+    {
+        // results of tasks in this process are read without serializing the pages
+        if (localTaskManager != null && LocalPageBufferClient.isLocalLocation(location, localUri)) {
+            return new LocalPageBufferClient(localTaskManager, httpClient, maxResponseSize, location, new ExchangeClientCallback(), executor);
+        }
+        return new HttpPageBufferClient(httpClient, maxResponseSize, location, new ExchangeClientCallback(), compressionEnabled, executor);
+    }
+
+    private synchronized int getRunningClientCount()
+    {
+        return allClients.size() - queuedClients.size() - completedClients.size();
+    }
+
     public synchronized ListenableFuture<?> isBlocked()
     {
         if (closed.get() || pageBuffer.peek() != null) {
@@ -281,16 +355,17 @@ public class ExchangeClient
             return;
         }
 
+        // partitioned buffers send empty pages to keep the page sequence ids aligned
+        if (page.getPositionCount() == 0) {
+            return;
+        }
+
         pageBuffer.add(page);
 
         // notify all blocked callers
         notifyBlockedCallers();
 
         bufferBytes += page.getDataSize().toBytes();
-        successfulRequests++;
-
-        // AVG_n = AVG_(n-1) * (n-1)/n + VALUE_n / n
-        averageBytesPerRequest = (long) (1.0 * averageBytesPerRequest * (successfulRequests - 1) / successfulRequests + page.getDataSize().toBytes() / successfulRequests);
 
         scheduleRequestIfNecessary();
     }
@@ -306,6 +381,19 @@ public class ExchangeClient
 
     private synchronized void requestComplete(HttpPageBufferClient client)
     {
+        // empty responses only show that the source has no data yet, so they are not averaged
+        long responseBytes = client.getLastResponseBytes();
+        if (responseBytes > 0) {
+            if (averageBytesPerRequest == 0) {
+                averageBytesPerRequest = responseBytes;
+                averageResponseNanos = client.getLastResponseNanos();
+            }
+            else {
+                averageBytesPerRequest = (long) (averageBytesPerRequest * (1 - RESPONSE_WEIGHT) + responseBytes * RESPONSE_WEIGHT);
+                averageResponseNanos = averageResponseNanos * (1 - RESPONSE_WEIGHT) + client.getLastResponseNanos() * RESPONSE_WEIGHT;
+            }
+        }
+
         if (!queuedClients.contains(client)) {
             queuedClients.add(client);
         }
@@ -14,6 +14,7 @@
 package com.facebook.presto.operator;
 
 import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
 
@@ -24,6 +25,8 @@ public class ExchangeClientConfig
 {
     private DataSize exchangeMaxBufferSize = new DataSize(32, Unit.MEGABYTE);
     private int exchangeConcurrentRequestMultiplier = 3;
+    private boolean exchangeCompressionEnabled;
+    private boolean localExchangeEnabled = true;
 
     @NotNull
     public DataSize getExchangeMaxBufferSize()
@@ -50,4 +53,30 @@ public class ExchangeClientConfig
         this.exchangeConcurrentRequestMultiplier = exchangeConcurrentRequestMultiplier;
         return this;
     }
+
+    public boolean isExchangeCompressionEnabled()
+    {
+        return exchangeCompressionEnabled;
+    }
+
+    @Config("exchange.compression-enabled")
+    @ConfigDescription("Request pages from other nodes compressed with Snappy")
+    public ExchangeClientConfig setExchangeCompressionEnabled(boolean exchangeCompressionEnabled)
+    {
+        this.exchangeCompressionEnabled = exchangeCompressionEnabled;
+        return this;
+    }
+
+    public boolean isLocalExchangeEnabled()
+    {
+        return localExchangeEnabled;
+    }
+
+    @Config("exchange.local-exchange-enabled")
+    @ConfigDescription("Read the results of tasks on the same node directly instead of over HTTP")
+    public ExchangeClientConfig setLocalExchangeEnabled(boolean localExchangeEnabled)
+    {
+        this.localExchangeEnabled = localExchangeEnabled;
+        return this;
+    }
 }
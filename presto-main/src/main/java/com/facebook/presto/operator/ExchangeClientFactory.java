@@ -13,12 +13,17 @@
  */
 package com.facebook.presto.operator;
 
+import com.facebook.presto.execution.TaskManager;
+import com.facebook.presto.metadata.Node;
+import com.facebook.presto.metadata.NodeManager;
 import com.google.common.base.Supplier;
 import io.airlift.http.client.AsyncHttpClient;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import java.util.concurrent.Executor;
 
@@ -30,16 +35,28 @@ public class ExchangeClientFactory
 {
     private final DataSize maxBufferedBytes;
     private final int concurrentRequestMultiplier;
+    private final boolean compressionEnabled;
+    @Nullable
+    private final Provider<TaskManager> localTaskManager;
+    @Nullable
+    private final NodeManager nodeManager;
     private final AsyncHttpClient httpClient;
     private final DataSize maxResponseSize;
     private final Executor executor;
 
     @Inject
-    public ExchangeClientFactory(ExchangeClientConfig config, @ForExchange AsyncHttpClient httpClient, @ForExchange Executor executor)
+    public ExchangeClientFactory(ExchangeClientConfig config,
+            @ForExchange AsyncHttpClient httpClient,
+            @ForExchange Executor executor,
+            Provider<TaskManager> taskManager,
+            NodeManager nodeManager)
     {
         this(config.getExchangeMaxBufferSize(),
                 new DataSize(10, Unit.MEGABYTE),
                 config.getExchangeConcurrentRequestMultiplier(),
+                config.isExchangeCompressionEnabled(),
+                config.isLocalExchangeEnabled() ? taskManager : null,
+                config.isLocalExchangeEnabled() ? nodeManager : null,
                 httpClient,
                 executor);
     }
@@ -50,8 +67,28 @@ public class ExchangeClientFactory
             AsyncHttpClient httpClient,
             Executor executor)
     {
+        this(maxBufferedBytes, maxResponseSize, concurrentRequestMultiplier, false, null, null, httpClient, executor);
+    }
+
+    /**
+     * @param localTaskManager if not null, results of tasks on the current node are read from this task manager
+     * instead of over HTTP
+     */
+    public ExchangeClientFactory(DataSize maxBufferedBytes,
+            DataSize maxResponseSize,
+            int concurrentRequestMultiplier,
+            boolean compressionEnabled,
+            @Nullable Provider<TaskManager> localTaskManager,
+            @Nullable NodeManager nodeManager,
+            AsyncHttpClient httpClient,
+            Executor executor)
+    {
+        checkArgument((localTaskManager == null) == (nodeManager == null), "localTaskManager and nodeManager must both be set or both be null");
         this.maxBufferedBytes = checkNotNull(maxBufferedBytes, "maxBufferedBytes is null");
         this.concurrentRequestMultiplier = concurrentRequestMultiplier;
+        this.compressionEnabled = compressionEnabled;
+        this.localTaskManager = localTaskManager;
+        this.nodeManager = nodeManager;
         this.httpClient = checkNotNull(httpClient, "httpClient is null");
         this.maxResponseSize = checkNotNull(maxResponseSize, "maxResponseSize is null");
         this.executor = checkNotNull(executor, "executor is null");
@@ -64,6 +101,20 @@ public class ExchangeClientFactory
     @Override
     public ExchangeClient get()
     {
-        return new ExchangeClient(maxBufferedBytes, maxResponseSize, concurrentRequestMultiplier, httpClient, executor);
+        // without the current node, local locations can not be recognized, so all pages are fetched over HTTP
+        Node currentNode = (nodeManager != null) ? nodeManager.getCurrentNode() : null;
+        if (localTaskManager == null || currentNode == null) {
+            return new ExchangeClient(maxBufferedBytes, maxResponseSize, concurrentRequestMultiplier, compressionEnabled, null, null, httpClient, executor);
+        }
+
+        // the task manager is resolved lazily since it depends on this factory through the local execution planner
+        return new ExchangeClient(maxBufferedBytes,
+                maxResponseSize,
+                concurrentRequestMultiplier,
+                compressionEnabled,
+                localTaskManager.get(),
+                currentNode.getHttpUri(),
+                httpClient,
+                executor);
     }
 }
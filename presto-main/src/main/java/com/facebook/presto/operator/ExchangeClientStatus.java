@@ -17,6 +17,8 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
 
 import java.util.List;
 
@@ -27,6 +29,11 @@ public class ExchangeClientStatus
     private final long bufferedBytes;
     private final long averageBytesPerRequest;
     private final int bufferedPages;
+    private final long bytesReceived;
+    private final long uncompressedBytesReceived;
+    private final Duration averageResponseTime;
+    private final int runningRequests;
+    private final DataSize maxResponseSize;
     private final List<PageBufferClientStatus> pageBufferClientStatuses;
 
     @JsonCreator
@@ -34,11 +41,21 @@ public class ExchangeClientStatus
             @JsonProperty("bufferedBytes") long bufferedBytes,
             @JsonProperty("averageBytesPerRequest") long averageBytesPerRequest,
             @JsonProperty("bufferedPages") int bufferedPages,
+            @JsonProperty("bytesReceived") long bytesReceived,
+            @JsonProperty("uncompressedBytesReceived") long uncompressedBytesReceived,
+            @JsonProperty("averageResponseTime") Duration averageResponseTime,
+            @JsonProperty("runningRequests") int runningRequests,
+            @JsonProperty("maxResponseSize") DataSize maxResponseSize,
             @JsonProperty("pageBufferClientStatuses") List<PageBufferClientStatus> pageBufferClientStatuses)
     {
         this.bufferedBytes = bufferedBytes;
         this.averageBytesPerRequest = averageBytesPerRequest;
         this.bufferedPages = bufferedPages;
+        this.bytesReceived = bytesReceived;
+        this.uncompressedBytesReceived = uncompressedBytesReceived;
+        this.averageResponseTime = checkNotNull(averageResponseTime, "averageResponseTime is null");
+        this.runningRequests = runningRequests;
+        this.maxResponseSize = checkNotNull(maxResponseSize, "maxResponseSize is null");
         this.pageBufferClientStatuses = ImmutableList.copyOf(checkNotNull(pageBufferClientStatuses, "pageBufferClientStatuses is null"));
     }
 
@@ -60,6 +77,39 @@ public class ExchangeClientStatus
         return bufferedPages;
     }
 
+    @JsonProperty
+    public long getBytesReceived()
+    {
+        return bytesReceived;
+    }
+
+    @JsonProperty
+    public long getUncompressedBytesReceived()
+    {
+        return uncompressedBytesReceived;
+    }
+
+    @JsonProperty
+    public Duration getAverageResponseTime()
+    {
+        return averageResponseTime;
+    }
+
+    @JsonProperty
+    public int getRunningRequests()
+    {
+        return runningRequests;
+    }
+
+    /**
+     * Maximum response size of the most recently scheduled requests.
+     */
+    @JsonProperty
+    public DataSize getMaxResponseSize()
+    {
+        return maxResponseSize;
+    }
+
     @JsonProperty
     public List<PageBufferClientStatus> getPageBufferClientStatuses()
     {
@@ -73,6 +123,11 @@ public class ExchangeClientStatus
                 .add("bufferBytes", bufferedBytes)
                 .add("averageBytesPerRequest", averageBytesPerRequest)
                 .add("bufferedPages", bufferedPages)
+                .add("bytesReceived", bytesReceived)
+                .add("uncompressedBytesReceived", uncompressedBytesReceived)
+                .add("averageResponseTime", averageResponseTime)
+                .add("runningRequests", runningRequests)
+                .add("maxResponseSize", maxResponseSize)
                 .add("pageBufferClientStatuses", pageBufferClientStatuses)
                 .toString();
     }
@@ -0,0 +1,261 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.operator.PagesIndex.MultiSliceFieldOrderedTupleComparator;
+import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Sorts pages in a {@link PagesIndex}.  If a spill path is provided, and the
+ * memory for the index can not be reserved, the index is sorted and written to
+ * disk as a run, and the runs are merged when the sorted rows are read.
+ * <p/>
+ * After all input has been added, either call {@link #sortPagesIndex} if the
+ * sorter has not spilled, or iterate over the merged rows using
+ * {@link #advanceNextPosition} and {@link #getCursor}.
+ */
+@NotThreadSafe
+public class ExternalSorter
+        implements Closeable
+{
+    private final List<TupleInfo> tupleInfos;
+    private final int expectedPositions;
+    private final int orderingChannel;
+    private final int[] sortFields;
+    private final boolean[] sortOrder;
+    private final OperatorContext operatorContext;
+    private final Optional<File> spillPath;
+    private final MultiSliceFieldOrderedTupleComparator comparator;
+
+    private final List<SpillFile> runs = new ArrayList<>();
+
+    private PagesIndex pagesIndex;
+
+    private PriorityQueue<RunCursor> mergeQueue;
+    private RunCursor currentRun;
+
+    public ExternalSorter(
+            List<TupleInfo> tupleInfos,
+            int expectedPositions,
+            int orderingChannel,
+            int[] sortFields,
+            boolean[] sortOrder,
+            OperatorContext operatorContext,
+            Optional<File> spillPath)
+    {
+        this.tupleInfos = ImmutableList.copyOf(checkNotNull(tupleInfos, "tupleInfos is null"));
+        this.expectedPositions = expectedPositions;
+        this.orderingChannel = orderingChannel;
+        this.sortFields = checkNotNull(sortFields, "sortFields is null").clone();
+        this.sortOrder = checkNotNull(sortOrder, "sortOrder is null").clone();
+        this.operatorContext = checkNotNull(operatorContext, "operatorContext is null");
+        this.spillPath = checkNotNull(spillPath, "spillPath is null");
+
+        this.comparator = new MultiSliceFieldOrderedTupleComparator(this.sortFields, this.sortOrder, tupleInfos.get(orderingChannel), new long[0]);
+        this.pagesIndex = new PagesIndex(tupleInfos, expectedPositions, operatorContext);
+    }
+
+    public void addPage(Page page)
+    {
+        checkNotNull(page, "page is null");
+        checkState(mergeQueue == null, "Sorted rows are already being read");
+
+        if (!spillPath.isPresent()) {
+            pagesIndex.addPageOrWait(page);
+            return;
+        }
+
+        if (!pagesIndex.tryAddPage(page)) {
+            spillPagesIndex();
+        }
+    }
+
+    /**
+     * Returns a future that completes when the memory for the in memory index is reserved.
+     */
+    public ListenableFuture<?> isBlocked()
+    {
+        return pagesIndex.isBlocked();
+    }
+
+    public boolean isSpilled()
+    {
+        return !runs.isEmpty();
+    }
+
+    /**
+     * Sorts and returns the in memory index.  Only valid if the sorter has not spilled.
+     */
+    public PagesIndex sortPagesIndex()
+    {
+        checkState(!isSpilled(), "Sorter has spilled");
+        pagesIndex.sort(orderingChannel, sortFields, sortOrder);
+        return pagesIndex;
+    }
+
+    /**
+     * Advances to the next row of the merged runs.  Only valid if the sorter has spilled.
+     */
+    public boolean advanceNextPosition()
+    {
+        checkState(isSpilled(), "Sorter has not spilled");
+        if (mergeQueue == null) {
+            startMerge();
+        }
+
+        if (currentRun != null && currentRun.advanceNextPosition()) {
+            mergeQueue.add(currentRun);
+        }
+        currentRun = mergeQueue.poll();
+        return currentRun != null;
+    }
+
+    /**
+     * Returns a cursor positioned at the current row of the merged runs for the specified channel.
+     */
+    public BlockCursor getCursor(int channel)
+    {
+        checkState(currentRun != null, "No current row");
+        return currentRun.getCursor(channel);
+    }
+
+    public MultiSliceFieldOrderedTupleComparator getComparator()
+    {
+        return comparator;
+    }
+
+    @Override
+    public void close()
+    {
+        for (SpillFile run : runs) {
+            run.close();
+        }
+        runs.clear();
+        mergeQueue = null;
+        currentRun = null;
+    }
+
+    private void spillPagesIndex()
+    {
+        pagesIndex.sort(orderingChannel, sortFields, sortOrder);
+
+        SpillFile run = new SpillFile(spillPath.get());
+        runs.add(run);
+
+        PageBuilder pageBuilder = new PageBuilder(tupleInfos);
+        for (int position = 0; position < pagesIndex.getPositionCount(); position++) {
+            for (int channel = 0; channel < tupleInfos.size(); channel++) {
+                pagesIndex.appendTupleTo(channel, position, pageBuilder.getBlockBuilder(channel));
+            }
+            if (pageBuilder.isFull()) {
+                run.writePage(pageBuilder.build());
+                pageBuilder.reset();
+            }
+        }
+        if (!pageBuilder.isEmpty()) {
+            run.writePage(pageBuilder.build());
+        }
+        run.finishWriting();
+        operatorContext.recordSpill(run.getSize());
+
+        // the new index reuses the memory reservation of the spilled index
+        pagesIndex = new PagesIndex(tupleInfos, expectedPositions, operatorContext);
+    }
+
+    private void startMerge()
+    {
+        // write the remaining rows so all runs are merged the same way
+        if (pagesIndex.getPositionCount() > 0) {
+            spillPagesIndex();
+        }
+        pagesIndex = null;
+
+        mergeQueue = new PriorityQueue<>(runs.size(), new Comparator<RunCursor>()
+        {
+            @Override
+            public int compare(RunCursor left, RunCursor right)
+            {
+                BlockCursor leftCursor = left.getCursor(orderingChannel);
+                BlockCursor rightCursor = right.getCursor(orderingChannel);
+                return comparator.compare(leftCursor.getRawSlice(), leftCursor.getRawOffset(), rightCursor.getRawSlice(), rightCursor.getRawOffset());
+            }
+        });
+
+        for (SpillFile run : runs) {
+            RunCursor runCursor = new RunCursor(run.readPages());
+            if (runCursor.advanceNextPosition()) {
+                mergeQueue.add(runCursor);
+            }
+        }
+    }
+
+    private static class RunCursor
+    {
+        private final Iterator<Page> pages;
+        private BlockCursor[] cursors;
+
+        private RunCursor(Iterator<Page> pages)
+        {
+            this.pages = pages;
+        }
+
+        public BlockCursor getCursor(int channel)
+        {
+            return cursors[channel];
+        }
+
+        public boolean advanceNextPosition()
+        {
+            if (cursors != null && cursors[0].advanceNextPosition()) {
+                for (int channel = 1; channel < cursors.length; channel++) {
+                    checkState(cursors[channel].advanceNextPosition());
+                }
+                return true;
+            }
+
+            // move to the next non-empty page
+            while (pages.hasNext()) {
+                Page page = pages.next();
+                cursors = new BlockCursor[page.getChannelCount()];
+                for (int channel = 0; channel < cursors.length; channel++) {
+                    cursors[channel] = page.getBlock(channel).cursor();
+                }
+                if (page.getPositionCount() > 0) {
+                    for (BlockCursor cursor : cursors) {
+                        checkState(cursor.advanceNextPosition());
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
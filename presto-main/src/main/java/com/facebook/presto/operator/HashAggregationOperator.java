@@ -23,7 +23,9 @@ import com.facebook.presto.operator.aggregation.VariableWidthAggregationFunction
 import com.facebook.presto.sql.planner.plan.AggregationNode.Step;
 import com.facebook.presto.sql.tree.Input;
 import com.facebook.presto.tuple.TupleInfo;
+import com.facebook.presto.tuple.TupleInfo.Type;
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -32,14 +34,19 @@ import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.slice.SizeOf;
 import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
+import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenCustomHashMap;
 import it.unimi.dsi.fastutil.longs.LongHash.Strategy;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
+import java.io.Closeable;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import static com.facebook.presto.operator.LongKeyHashMap.getLongKey;
+import static com.facebook.presto.operator.LongKeyHashMap.isLongKey;
 import static com.facebook.presto.operator.SyntheticAddress.decodeSliceIndex;
 import static com.facebook.presto.operator.SyntheticAddress.decodeSliceOffset;
 import static com.facebook.presto.operator.SyntheticAddress.encodeSyntheticAddress;
@@ -47,7 +54,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 public class HashAggregationOperator
-        implements Operator
+        implements Operator, Closeable
 {
     public static class HashAggregationOperatorFactory
             implements OperatorFactory
@@ -58,6 +65,7 @@ public class HashAggregationOperator
         private final Step step;
         private final List<AggregationFunctionDefinition> functionDefinitions;
         private final int expectedGroups;
+        private final Optional<File> spillPath;
         private final List<TupleInfo> tupleInfos;
         private boolean closed;
 
@@ -68,6 +76,18 @@ public class HashAggregationOperator
                 Step step,
                 List<AggregationFunctionDefinition> functionDefinitions,
                 int expectedGroups)
+        {
+            this(operatorId, groupByTupleInfo, groupByChannel, step, functionDefinitions, expectedGroups, Optional.<File>absent());
+        }
+
+        public HashAggregationOperatorFactory(
+                int operatorId,
+                TupleInfo groupByTupleInfo,
+                int groupByChannel,
+                Step step,
+                List<AggregationFunctionDefinition> functionDefinitions,
+                int expectedGroups,
+                Optional<File> spillPath)
         {
             this.operatorId = operatorId;
             this.groupByTupleInfo = groupByTupleInfo;
@@ -75,6 +95,7 @@ public class HashAggregationOperator
             this.step = step;
             this.functionDefinitions = functionDefinitions;
             this.expectedGroups = expectedGroups;
+            this.spillPath = checkNotNull(spillPath, "spillPath is null");
 
             this.tupleInfos = toTupleInfos(groupByTupleInfo, step, functionDefinitions);
         }
@@ -97,8 +118,8 @@ public class HashAggregationOperator
                     groupByChannel,
                     step,
                     functionDefinitions,
-                    expectedGroups
-            );
+                    expectedGroups,
+                    spillPath);
         }
 
         @Override
@@ -110,12 +131,16 @@ public class HashAggregationOperator
 
     private static final int LOOKUP_SLICE_INDEX = 0xFF_FF_FF_FF;
 
+    // must be a power of 2
+    private static final int SPILL_PARTITIONS = 16;
+
     private final OperatorContext operatorContext;
     private final TupleInfo groupByTupleInfo;
     private final int groupByChannel;
     private final Step step;
     private final List<AggregationFunctionDefinition> functionDefinitions;
     private final int expectedGroups;
+    private final Optional<File> spillPath;
 
     private final List<TupleInfo> tupleInfos;
     private final HashMemoryManager memoryManager;
@@ -124,6 +149,10 @@ public class HashAggregationOperator
     private Iterator<Page> outputIterator;
     private boolean finishing;
 
+    // hash partitioned runs of intermediate group state, created on the first spill
+    private List<SpillFile> spillFiles;
+    private int nextMergePartition;
+
     public HashAggregationOperator(
             OperatorContext operatorContext,
             TupleInfo groupByTupleInfo,
@@ -131,6 +160,18 @@ public class HashAggregationOperator
             Step step,
             List<AggregationFunctionDefinition> functionDefinitions,
             int expectedGroups)
+    {
+        this(operatorContext, groupByTupleInfo, groupByChannel, step, functionDefinitions, expectedGroups, Optional.<File>absent());
+    }
+
+    public HashAggregationOperator(
+            OperatorContext operatorContext,
+            TupleInfo groupByTupleInfo,
+            int groupByChannel,
+            Step step,
+            List<AggregationFunctionDefinition> functionDefinitions,
+            int expectedGroups,
+            Optional<File> spillPath)
     {
         this.operatorContext = checkNotNull(operatorContext, "operatorContext is null");
         Preconditions.checkArgument(groupByChannel >= 0, "groupByChannel is negative");
@@ -143,6 +184,7 @@ public class HashAggregationOperator
         this.functionDefinitions = ImmutableList.copyOf(functionDefinitions);
         this.step = step;
         this.expectedGroups = expectedGroups;
+        this.spillPath = checkNotNull(spillPath, "spillPath is null");
         this.memoryManager = new HashMemoryManager(operatorContext);
 
         this.tupleInfos = toTupleInfos(groupByTupleInfo, step, functionDefinitions);
@@ -169,7 +211,7 @@ public class HashAggregationOperator
     @Override
     public boolean isFinished()
     {
-        return finishing && aggregationBuilder == null && (outputIterator == null || !outputIterator.hasNext());
+        return finishing && aggregationBuilder == null && spillFiles == null && (outputIterator == null || !outputIterator.hasNext());
     }
 
     @Override
@@ -210,28 +252,139 @@ public class HashAggregationOperator
     public Page getOutput()
     {
         if (outputIterator == null || !outputIterator.hasNext()) {
-            // no data
-            if (aggregationBuilder == null) {
-                return null;
+            if (aggregationBuilder != null) {
+                // only flush if we are finishing or the aggregation builder is full
+                if (!finishing && !aggregationBuilder.isFull()) {
+                    return null;
+                }
+
+                if (step != Step.PARTIAL && spillPath.isPresent() && (!finishing || spillFiles != null)) {
+                    // write the group state to disk, and merge it back after all input has been processed
+                    spill();
+                    if (!finishing) {
+                        return null;
+                    }
+                }
+                else {
+                    // Only partial aggregation can flush early. Also, check that we are not flushing tiny bits at a time
+                    checkState(finishing || step == Step.PARTIAL, "Task exceeded max memory size of %s", memoryManager.getMaxMemorySize());
+
+                    outputIterator = aggregationBuilder.build();
+                    aggregationBuilder = null;
+                }
             }
 
-            // only flush if we are finishing or the aggregation builder is full
-            if (!finishing && !aggregationBuilder.isFull()) {
+            // merge the spilled runs one partition at a time
+            while (finishing && spillFiles != null && (outputIterator == null || !outputIterator.hasNext())) {
+                outputIterator = mergeNextSpilledPartition();
+            }
+
+            if (outputIterator == null || !outputIterator.hasNext()) {
                 return null;
             }
+        }
 
-            // Only partial aggregation can flush early. Also, check that we are not flushing tiny bits at a time
-            checkState(finishing || step == Step.PARTIAL, "Task exceeded max memory size of %s", memoryManager.getMaxMemorySize());
+        return outputIterator.next();
+    }
 
-            outputIterator = aggregationBuilder.build();
-            aggregationBuilder = null;
+    @Override
+    public void close()
+    {
+        if (spillFiles != null) {
+            for (SpillFile spillFile : spillFiles) {
+                spillFile.close();
+            }
+            spillFiles = null;
+        }
+    }
 
-            if (!outputIterator.hasNext()) {
-                return null;
+    private void spill()
+    {
+        if (spillFiles == null) {
+            ImmutableList.Builder<SpillFile> files = ImmutableList.builder();
+            for (int partition = 0; partition < SPILL_PARTITIONS; partition++) {
+                files.add(new SpillFile(spillPath.get()));
             }
+            spillFiles = files.build();
         }
 
-        return outputIterator.next();
+        List<TupleInfo> intermediateTupleInfos = toTupleInfos(groupByTupleInfo, Step.PARTIAL, functionDefinitions);
+        PageBuilder[] pageBuilders = new PageBuilder[SPILL_PARTITIONS];
+        for (int partition = 0; partition < SPILL_PARTITIONS; partition++) {
+            pageBuilders[partition] = new PageBuilder(intermediateTupleInfos);
+        }
+
+        Iterator<Page> pages = aggregationBuilder.buildIntermediate();
+        aggregationBuilder = null;
+        while (pages.hasNext()) {
+            Page page = pages.next();
+
+            BlockCursor[] cursors = new BlockCursor[page.getChannelCount()];
+            for (int channel = 0; channel < cursors.length; channel++) {
+                cursors[channel] = page.getBlock(channel).cursor();
+            }
+
+            for (int position = 0; position < page.getPositionCount(); position++) {
+                for (BlockCursor cursor : cursors) {
+                    checkState(cursor.advanceNextPosition());
+                }
+
+                // mix the hash, because the input may already be hash partitioned on the group by key
+                BlockCursor groupByCursor = cursors[0];
+                Slice slice = groupByCursor.getRawSlice();
+                int offset = groupByCursor.getRawOffset();
+                int hashCode = slice.hashCode(offset, groupByTupleInfo.size(slice, offset));
+                int partition = HashCommon.murmurHash3(hashCode) & (SPILL_PARTITIONS - 1);
+
+                PageBuilder pageBuilder = pageBuilders[partition];
+                for (int channel = 0; channel < cursors.length; channel++) {
+                    cursors[channel].appendTupleTo(pageBuilder.getBlockBuilder(channel));
+                }
+                if (pageBuilder.isFull()) {
+                    spillFiles.get(partition).writePage(pageBuilder.build());
+                    pageBuilder.reset();
+                }
+            }
+        }
+
+        for (int partition = 0; partition < SPILL_PARTITIONS; partition++) {
+            if (!pageBuilders[partition].isEmpty()) {
+                spillFiles.get(partition).writePage(pageBuilders[partition].build());
+            }
+        }
+    }
+
+    private Iterator<Page> mergeNextSpilledPartition()
+    {
+        SpillFile spillFile = spillFiles.get(nextMergePartition);
+        nextMergePartition++;
+
+        // the spilled pages contain the group by key followed by the intermediate value of each function
+        ImmutableList.Builder<AggregationFunctionDefinition> intermediateDefinitions = ImmutableList.builder();
+        for (int i = 0; i < functionDefinitions.size(); i++) {
+            intermediateDefinitions.add(AggregationFunctionDefinition.aggregation(functionDefinitions.get(i).getFunction(), new Input(i + 1, 0)));
+        }
+
+        GroupByHashAggregationBuilder mergeBuilder = new GroupByHashAggregationBuilder(
+                intermediateDefinitions.build(),
+                Step.FINAL,
+                expectedGroups,
+                0,
+                groupByTupleInfo,
+                memoryManager);
+
+        Iterator<Page> pages = spillFile.readPages();
+        while (pages.hasNext()) {
+            mergeBuilder.processPage(pages.next());
+            checkState(!mergeBuilder.isFull(), "Task exceeded max memory size of %s while merging spilled aggregation state", memoryManager.getMaxMemorySize());
+        }
+        spillFile.close();
+
+        if (nextMergePartition == spillFiles.size()) {
+            spillFiles = null;
+        }
+
+        return mergeBuilder.build();
     }
 
     private static List<TupleInfo> toTupleInfos(TupleInfo groupByTupleInfo, Step step, List<AggregationFunctionDefinition> functionDefinitions)
@@ -254,6 +407,8 @@ public class HashAggregationOperator
         private final List<Aggregator> aggregates;
         private final SliceHashStrategy hashStrategy;
         private final Long2IntOpenCustomHashMap addressToGroupId;
+        private final LongKeyHashMap longKeyToGroupId;
+        private final Type longKeyType;
         private final List<UncompressedBlock> groupByBlocks = new ArrayList<>();
         private final int groupByChannel;
         private final TupleInfo groupByTupleInfo;
@@ -261,6 +416,7 @@ public class HashAggregationOperator
 
         private BlockBuilder blockBuilder;
         private int nextGroupId;
+        private int nullGroupId = -1;
 
         private GroupByHashAggregationBuilder(
                 List<AggregationFunctionDefinition> functionDefinitions,
@@ -283,10 +439,20 @@ public class HashAggregationOperator
 
             // create hash table
             hashStrategy = new SliceHashStrategy(groupByTupleInfo);
-            addressToGroupId = new Long2IntOpenCustomHashMap(expectedGroups, hashStrategy);
+            if (isLongKey(groupByTupleInfo)) {
+                // single fixed width keys are hashed by value, and the key blocks are only used for output
+                addressToGroupId = null;
+                longKeyToGroupId = new LongKeyHashMap(expectedGroups);
+                longKeyType = groupByTupleInfo.getTypes().get(0);
+            }
+            else {
+                addressToGroupId = new Long2IntOpenCustomHashMap(expectedGroups, hashStrategy);
+                addressToGroupId.defaultReturnValue(-1);
+                longKeyToGroupId = null;
+                longKeyType = null;
+            }
 
             // initialize hash table
-            addressToGroupId.defaultReturnValue(-1);
             Slice slice = Slices.allocate((int) BlockBuilder.DEFAULT_MAX_BLOCK_SIZE.toBytes());
             hashStrategy.addSlice(slice);
 
@@ -327,6 +493,10 @@ public class HashAggregationOperator
 
         private int putIfAbsent(Slice groupBySlice, BlockCursor[] cursors)
         {
+            if (longKeyToGroupId != null) {
+                return putIfAbsentLongKey(groupBySlice, cursors[groupByChannel]);
+            }
+
             // lookup the group id (row number of the key)
             int rawOffset = cursors[groupByChannel].getRawOffset();
             int groupId = addressToGroupId.get(encodeSyntheticAddress(LOOKUP_SLICE_INDEX, rawOffset));
@@ -336,6 +506,25 @@ public class HashAggregationOperator
             return groupId;
         }
 
+        private int putIfAbsentLongKey(Slice groupBySlice, BlockCursor cursor)
+        {
+            // null is a group of its own, but it can not be stored in the long key map
+            if (cursor.isNull(0)) {
+                if (nullGroupId < 0) {
+                    nullGroupId = addNewGroup(groupBySlice, cursor.getRawOffset());
+                }
+                return nullGroupId;
+            }
+
+            long key = getLongKey(cursor, longKeyType);
+            int groupId = longKeyToGroupId.get(key);
+            if (groupId < 0) {
+                groupId = addNewGroup(groupBySlice, cursor.getRawOffset());
+                longKeyToGroupId.put(key, groupId);
+            }
+            return groupId;
+        }
+
         private int addNewGroup(Slice groupBySlice, int rawOffset)
         {
             // copy group by tuple (key) to hash
@@ -352,7 +541,9 @@ public class HashAggregationOperator
 
             // record group id in hash
             int groupId = nextGroupId++;
-            addressToGroupId.put(encodeSyntheticAddress(groupByBlocks.size(), groupByValueRawOffset), groupId);
+            if (addressToGroupId != null) {
+                addressToGroupId.put(encodeSyntheticAddress(groupByBlocks.size(), groupByValueRawOffset), groupId);
+            }
 
             // initialize the aggregates
             initializeRow(groupId);
@@ -384,6 +575,19 @@ public class HashAggregationOperator
         }
 
         public Iterator<Page> build()
+        {
+            return buildPages(false);
+        }
+
+        /**
+         * Builds pages containing the intermediate value of each aggregate, regardless of the step.
+         */
+        public Iterator<Page> buildIntermediate()
+        {
+            return buildPages(true);
+        }
+
+        private Iterator<Page> buildPages(final boolean intermediate)
         {
             // add the last block if it is not empty
             if (!blockBuilder.isEmpty()) {
@@ -405,9 +609,18 @@ public class HashAggregationOperator
                     for (int channel = 1; channel < aggregates.size() + 1; channel++) {
                         Aggregator aggregator = aggregates.get(channel - 1);
                         // todo there is no need to eval for intermediates since buffer is already in block form
-                        BlockBuilder blockBuilder = new BlockBuilder(aggregator.getTupleInfo());
-                        for (int position = 0; position < pagePositionCount; position++) {
-                            aggregator.evaluate(currentPosition + position, blockBuilder);
+                        BlockBuilder blockBuilder;
+                        if (intermediate) {
+                            blockBuilder = new BlockBuilder(aggregator.getIntermediateTupleInfo());
+                            for (int position = 0; position < pagePositionCount; position++) {
+                                aggregator.evaluateIntermediate(currentPosition + position, blockBuilder);
+                            }
+                        }
+                        else {
+                            blockBuilder = new BlockBuilder(aggregator.getTupleInfo());
+                            for (int position = 0; position < pagePositionCount; position++) {
+                                aggregator.evaluate(currentPosition + position, blockBuilder);
+                            }
                         }
                         blocks[channel] = blockBuilder.build();
                     }
@@ -478,11 +691,15 @@ public class HashAggregationOperator
 
         TupleInfo getTupleInfo();
 
+        TupleInfo getIntermediateTupleInfo();
+
         void initialize(int position);
 
         void addValue(BlockCursor[] cursors, int position);
 
         void evaluate(int position, BlockBuilder output);
+
+        void evaluateIntermediate(int position, BlockBuilder output);
     }
 
     private static class FixedWidthAggregator
@@ -526,6 +743,12 @@ public class HashAggregationOperator
             }
         }
 
+        @Override
+        public TupleInfo getIntermediateTupleInfo()
+        {
+            return function.getIntermediateTupleInfo();
+        }
+
         @Override
         public void initialize(int position)
         {
@@ -589,6 +812,18 @@ public class HashAggregationOperator
                 function.evaluateFinal(slice, sliceOffset, output);
             }
         }
+
+        @Override
+        public void evaluateIntermediate(int position, BlockBuilder output)
+        {
+            int offset = position * fixedWidthSize;
+
+            int sliceIndex = offset / sliceSize; // todo do this with shifts
+            Slice slice = slices.get(sliceIndex);
+            int sliceOffset = offset - (sliceIndex * sliceSize);
+
+            function.evaluateIntermediate(slice, sliceOffset, output);
+        }
     }
 
     private static class VariableWidthAggregator<T>
@@ -636,6 +871,12 @@ public class HashAggregationOperator
             }
         }
 
+        @Override
+        public TupleInfo getIntermediateTupleInfo()
+        {
+            return function.getIntermediateTupleInfo();
+        }
+
         @Override
         public void initialize(int position)
         {
@@ -685,6 +926,12 @@ public class HashAggregationOperator
                 function.evaluateFinal(value, output);
             }
         }
+
+        @Override
+        public void evaluateIntermediate(int position, BlockBuilder output)
+        {
+            function.evaluateIntermediate(intermediateValues.get(position), output);
+        }
     }
 
     public static class SliceHashStrategy
@@ -15,7 +15,10 @@ package com.facebook.presto.operator;
 
 import com.facebook.presto.tuple.TupleInfo;
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -59,11 +62,28 @@ public class HashBuilderOperator
             });
         }
 
-        void setHash(ChannelHash channelHash, PagesIndex pagesIndex)
+        /**
+         * Gets a filter over the build keys that probe side scans can use to skip rows that can not
+         * match.  The filter is only computed when it is first requested.
+         */
+        public ListenableFuture<Optional<DynamicFilter>> getDynamicFilter()
+        {
+            return Futures.transform(hashFuture, new Function<HashData, Optional<DynamicFilter>>()
+            {
+                @Override
+                public Optional<DynamicFilter> apply(HashData hashData)
+                {
+                    return hashData.dynamicFilter.get();
+                }
+            });
+        }
+
+        void setHash(ChannelHash channelHash, PagesIndex pagesIndex, int hashChannel)
         {
             HashData hashData = new HashData(
                     checkNotNull(channelHash, "channelHash is null"),
-                    checkNotNull(pagesIndex, "pagesIndex is null"));
+                    checkNotNull(pagesIndex, "pagesIndex is null"),
+                    hashChannel);
 
             boolean wasSet = hashFuture.set(hashData);
             checkState(wasSet, "Hash already set");
@@ -73,11 +93,20 @@ public class HashBuilderOperator
         {
             private final ChannelHash channelHash;
             private final PagesIndex pagesIndex;
+            private final Supplier<Optional<DynamicFilter>> dynamicFilter;
 
-            private HashData(ChannelHash channelHash, PagesIndex pagesIndex)
+            private HashData(ChannelHash channelHash, final PagesIndex pagesIndex, final int hashChannel)
             {
                 this.channelHash = channelHash;
                 this.pagesIndex = pagesIndex;
+                this.dynamicFilter = Suppliers.memoize(new Supplier<Optional<DynamicFilter>>()
+                {
+                    @Override
+                    public Optional<DynamicFilter> get()
+                    {
+                        return DynamicFilter.create(pagesIndex.getIndex(hashChannel), MAX_DYNAMIC_FILTER_POSITIONS);
+                    }
+                });
             }
         }
     }
@@ -89,6 +118,8 @@ public class HashBuilderOperator
         private final HashSupplier hashSupplier;
         private final int hashChannel;
         private final int expectedPositions;
+        private final boolean longKeyHashEnabled;
+        private final int buildConcurrency;
         private boolean closed;
 
         public HashBuilderOperatorFactory(
@@ -96,12 +127,36 @@ public class HashBuilderOperator
                 List<TupleInfo> tupleInfos,
                 int hashChannel,
                 int expectedPositions)
+        {
+            this(operatorId, tupleInfos, hashChannel, expectedPositions, true, 1);
+        }
+
+        public HashBuilderOperatorFactory(
+                int operatorId,
+                List<TupleInfo> tupleInfos,
+                int hashChannel,
+                int expectedPositions,
+                boolean longKeyHashEnabled)
+        {
+            this(operatorId, tupleInfos, hashChannel, expectedPositions, longKeyHashEnabled, 1);
+        }
+
+        public HashBuilderOperatorFactory(
+                int operatorId,
+                List<TupleInfo> tupleInfos,
+                int hashChannel,
+                int expectedPositions,
+                boolean longKeyHashEnabled,
+                int buildConcurrency)
         {
             this.operatorId = operatorId;
             this.hashSupplier = new HashSupplier(checkNotNull(tupleInfos, "tupleInfos is null"));
             Preconditions.checkArgument(hashChannel >= 0, "hashChannel is negative");
             this.hashChannel = hashChannel;
             this.expectedPositions = checkNotNull(expectedPositions, "expectedPositions is null");
+            this.longKeyHashEnabled = longKeyHashEnabled;
+            Preconditions.checkArgument(buildConcurrency > 0, "buildConcurrency must be at least 1");
+            this.buildConcurrency = buildConcurrency;
         }
 
         public HashSupplier getHashSupplier()
@@ -124,7 +179,9 @@ public class HashBuilderOperator
                     operatorContext,
                     hashSupplier,
                     hashChannel,
-                    expectedPositions);
+                    expectedPositions,
+                    longKeyHashEnabled,
+                    buildConcurrency);
         }
 
         @Override
@@ -134,9 +191,17 @@ public class HashBuilderOperator
         }
     }
 
+    // builds smaller than this are not worth the overhead of building in parallel
+    private static final int MIN_PARALLEL_BUILD_POSITIONS = 100_000;
+
+    // larger builds are unlikely to filter enough probe rows to be worth a dynamic filter
+    private static final int MAX_DYNAMIC_FILTER_POSITIONS = 1_000_000;
+
     private final OperatorContext operatorContext;
     private final HashSupplier hashSupplier;
     private final int hashChannel;
+    private final boolean longKeyHashEnabled;
+    private final int buildConcurrency;
 
     private final PagesIndex pagesIndex;
 
@@ -146,11 +211,15 @@ public class HashBuilderOperator
             OperatorContext operatorContext,
             HashSupplier hashSupplier,
             int hashChannel,
-            int expectedPositions)
+            int expectedPositions,
+            boolean longKeyHashEnabled,
+            int buildConcurrency)
     {
         this.operatorContext = checkNotNull(operatorContext, "operatorContext is null");
         this.hashSupplier = checkNotNull(hashSupplier, "hashSupplier is null");
         this.hashChannel = hashChannel;
+        this.longKeyHashEnabled = longKeyHashEnabled;
+        this.buildConcurrency = buildConcurrency;
         this.pagesIndex = new PagesIndex(hashSupplier.getTupleInfos(), expectedPositions, operatorContext);
     }
 
@@ -173,8 +242,14 @@ public class HashBuilderOperator
             return;
         }
 
-        ChannelHash channelHash = new ChannelHash(pagesIndex.getIndex(hashChannel), operatorContext);
-        hashSupplier.setHash(channelHash, pagesIndex);
+        // large hashes are split into one partition per build thread
+        int partitionCount = 1;
+        if (pagesIndex.getPositionCount() >= MIN_PARALLEL_BUILD_POSITIONS) {
+            partitionCount = Integer.highestOneBit(buildConcurrency);
+        }
+
+        ChannelHash channelHash = new ChannelHash(pagesIndex.getIndex(hashChannel), operatorContext, longKeyHashEnabled, partitionCount);
+        hashSupplier.setHash(channelHash, pagesIndex, hashChannel);
         finished = true;
     }
 
@@ -187,7 +262,7 @@ public class HashBuilderOperator
     @Override
     public ListenableFuture<?> isBlocked()
     {
-        return NOT_BLOCKED;
+        return pagesIndex.isBlocked();
     }
 
     @Override
@@ -202,7 +277,7 @@ public class HashBuilderOperator
         checkNotNull(page, "page is null");
         checkState(!isFinished(), "Operator is already finished");
 
-        pagesIndex.addPage(page);
+        pagesIndex.addPageOrWait(page);
         operatorContext.recordGeneratedOutput(page.getDataSize(), page.getPositionCount());
     }
 
@@ -17,10 +17,12 @@ import com.facebook.presto.serde.PagesSerde;
 import com.google.common.base.Objects;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingInputStream;
 import com.google.common.net.MediaType;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.http.client.AsyncHttpClient;
 import io.airlift.http.client.AsyncHttpClient.AsyncHttpResponseFuture;
 import io.airlift.http.client.HttpStatus;
@@ -31,6 +33,9 @@ import io.airlift.http.client.ResponseHandler;
 import io.airlift.log.Logger;
 import io.airlift.slice.InputStreamSliceInput;
 import io.airlift.units.DataSize;
+import io.airlift.units.DataSize.Unit;
+import io.airlift.units.Duration;
+import org.iq80.snappy.SnappyInputStream;
 import org.joda.time.DateTime;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -43,15 +48,21 @@ import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.facebook.presto.PrestoMediaTypes.PRESTO_PAGES;
+import static com.facebook.presto.PrestoMediaTypes.PRESTO_PAGES_SNAPPY;
+import static com.facebook.presto.PrestoMediaTypes.PRESTO_PAGES_SNAPPY_TYPE;
 import static com.facebook.presto.PrestoMediaTypes.PRESTO_PAGES_TYPE;
 import static com.facebook.presto.client.PrestoHeaders.PRESTO_MAX_SIZE;
 import static com.facebook.presto.client.PrestoHeaders.PRESTO_PAGE_SEQUENCE_ID;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.net.HttpHeaders.ACCEPT;
 import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 import static io.airlift.http.client.Request.Builder.prepareDelete;
 import static io.airlift.http.client.Request.Builder.prepareGet;
 import static io.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 @ThreadSafe
 public class HttpPageBufferClient
@@ -81,13 +92,22 @@ public class HttpPageBufferClient
     private final DataSize maxResponseSize;
     private final URI location;
     private final ClientCallback clientCallback;
+    private final boolean compressionEnabled;
     @GuardedBy("this")
     private boolean closed;
     @GuardedBy("this")
-    private AsyncHttpResponseFuture<PagesResponse> future;
+    private ListenableFuture<PagesResponse> future;
     @GuardedBy("this")
     private DateTime lastUpdate = DateTime.now();
     @GuardedBy("this")
+    private DataSize requestMaxResponseSize;
+    @GuardedBy("this")
+    private long requestStartNanos;
+    @GuardedBy("this")
+    private long lastResponseBytes;
+    @GuardedBy("this")
+    private long lastResponseNanos;
+    @GuardedBy("this")
     private long sequenceId;
 
     private final AtomicInteger pagesReceived = new AtomicInteger();
@@ -95,13 +115,26 @@ public class HttpPageBufferClient
     private final AtomicInteger requestsScheduled = new AtomicInteger();
     private final AtomicInteger requestsCompleted = new AtomicInteger();
 
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong uncompressedBytesReceived = new AtomicLong();
+
     public HttpPageBufferClient(AsyncHttpClient httpClient, DataSize maxResponseSize, URI location, ClientCallback clientCallback, Executor executor)
+    {
+        this(httpClient, maxResponseSize, location, clientCallback, false, executor);
+    }
+
+    /**
+     * @param compressionEnabled if true, the server is asked to compress the pages
+     */
+    public HttpPageBufferClient(AsyncHttpClient httpClient, DataSize maxResponseSize, URI location, ClientCallback clientCallback, boolean compressionEnabled, Executor executor)
     {
         this.httpClient = checkNotNull(httpClient, "httpClient is null");
         this.maxResponseSize = checkNotNull(maxResponseSize, "maxResponseSize is null");
         this.location = checkNotNull(location, "location is null");
         this.clientCallback = checkNotNull(clientCallback, "clientCallback is null");
+        this.compressionEnabled = compressionEnabled;
         this.executor = checkNotNull(executor, "executor is null");
+        this.requestMaxResponseSize = maxResponseSize;
     }
 
     public synchronized PageBufferClientStatus getStatus()
@@ -117,10 +150,48 @@ public class HttpPageBufferClient
             state = "queued";
         }
         String httpRequestState = "queued";
-        if (future != null) {
-            httpRequestState = future.getState();
+        if (future instanceof AsyncHttpResponseFuture) {
+            httpRequestState = ((AsyncHttpResponseFuture<?>) future).getState();
         }
-        return new PageBufferClientStatus(location, state, lastUpdate, pagesReceived.get(), requestsScheduled.get(), requestsCompleted.get(), httpRequestState);
+        else if (future != null) {
+            httpRequestState = "running";
+        }
+        return new PageBufferClientStatus(location,
+                state,
+                lastUpdate,
+                pagesReceived.get(),
+                requestsScheduled.get(),
+                requestsCompleted.get(),
+                httpRequestState,
+                requestMaxResponseSize,
+                new DataSize(lastResponseBytes, Unit.BYTE).convertToMostSuccinctDataSize(),
+                new Duration(lastResponseNanos, NANOSECONDS).convertToMostSuccinctTimeUnit());
+    }
+
+    /**
+     * Returns the size of the response bodies received, which are compressed if compression is enabled.
+     */
+    public long getBytesReceived()
+    {
+        return bytesReceived.get();
+    }
+
+    public long getUncompressedBytesReceived()
+    {
+        return uncompressedBytesReceived.get();
+    }
+
+    /**
+     * Returns the size of the pages in the last response, or zero if the request failed.
+     */
+    public synchronized long getLastResponseBytes()
+    {
+        return lastResponseBytes;
+    }
+
+    public synchronized long getLastResponseNanos()
+    {
+        return lastResponseNanos;
     }
 
     public synchronized boolean isRunning()
@@ -152,14 +223,47 @@ public class HttpPageBufferClient
             future.cancel(true);
         }
 
-        // abort the output buffer on the remote node; response of delete is ignored
         if (shouldSendDelete) {
-            httpClient.executeAsync(prepareDelete().setUri(location).build(), createStatusResponseHandler());
+            abortResults();
         }
     }
 
-    public synchronized void scheduleRequest()
+    /**
+     * Starts a request for the pages starting at the sequence id.  Called while holding the lock on this client.
+     */
+    protected ListenableFuture<PagesResponse> sendRequest(long sequenceId, DataSize maxResponseSize)
+    {
+        URI uri = HttpUriBuilder.uriBuilderFrom(location).appendPath(String.valueOf(sequenceId)).build();
+        Request.Builder request = prepareGet()
+                .setHeader(PRESTO_MAX_SIZE, maxResponseSize.toString())
+                .setUri(uri);
+        if (compressionEnabled) {
+            request.setHeader(ACCEPT, PRESTO_PAGES_SNAPPY + ", " + PRESTO_PAGES);
+        }
+        return httpClient.executeAsync(request.build(), new PageResponseHandler());
+    }
+
+    /**
+     * Aborts the output buffer, so the source can release the pages buffered for this client.
+     */
+    protected void abortResults()
+    {
+        // response of delete is ignored
+        httpClient.executeAsync(prepareDelete().setUri(location).build(), createStatusResponseHandler());
+    }
+
+    public void scheduleRequest()
+    {
+        scheduleRequest(maxResponseSize);
+    }
+
+    /**
+     * @param requestMaxResponseSize the maximum size of the response to this request, which is
+     * at most the size this client was created with
+     */
+    public synchronized void scheduleRequest(DataSize requestMaxResponseSize)
     {
+        checkNotNull(requestMaxResponseSize, "requestMaxResponseSize is null");
         if (closed) {
             log.debug("scheduleRequest() called, but client has been closed");
             return;
@@ -169,10 +273,13 @@ public class HttpPageBufferClient
             return;
         }
 
-        final URI uri = HttpUriBuilder.uriBuilderFrom(location).appendPath(String.valueOf(sequenceId)).build();
-        future = httpClient.executeAsync(prepareGet()
-                .setHeader(PRESTO_MAX_SIZE, maxResponseSize.toString())
-                .setUri(uri).build(), new PageResponseHandler());
+        if (requestMaxResponseSize.toBytes() > maxResponseSize.toBytes()) {
+            requestMaxResponseSize = maxResponseSize;
+        }
+        this.requestMaxResponseSize = requestMaxResponseSize;
+        final long requestSequenceId = sequenceId;
+        requestStartNanos = System.nanoTime();
+        future = sendRequest(requestSequenceId, requestMaxResponseSize);
 
         Futures.addCallback(future, new FutureCallback<PagesResponse>()
         {
@@ -184,11 +291,19 @@ public class HttpPageBufferClient
                 }
 
                 requestsCompleted.incrementAndGet();
+                bytesReceived.addAndGet(result.getResponseSize());
+                uncompressedBytesReceived.addAndGet(result.getUncompressedSize());
 
                 List<Page> pages;
                 synchronized (HttpPageBufferClient.this) {
                     pages = result.getPages(sequenceId);
                     sequenceId += pages.size();
+
+                    lastResponseBytes = 0;
+                    for (Page page : pages) {
+                        lastResponseBytes += page.getDataSize().toBytes();
+                    }
+                    lastResponseNanos = System.nanoTime() - requestStartNanos;
                 }
 
                 // add pages
@@ -218,7 +333,7 @@ public class HttpPageBufferClient
             @Override
             public void onFailure(Throwable t)
             {
-                log.debug("Request to %s failed %s", uri, t);
+                log.debug("Request to %s/%s failed %s", location, requestSequenceId, t);
 
                 if (Thread.holdsLock(HttpPageBufferClient.this)) {
                     log.error("Can not handle callback while holding a lock on this");
@@ -228,6 +343,8 @@ public class HttpPageBufferClient
                 synchronized (HttpPageBufferClient.this) {
                     future = null;
                     lastUpdate = DateTime.now();
+                    lastResponseBytes = 0;
+                    lastResponseNanos = System.nanoTime() - requestStartNanos;
                 }
                 clientCallback.requestComplete(HttpPageBufferClient.this);
             }
@@ -318,15 +435,21 @@ public class HttpPageBufferClient
             }
 
             String contentType = response.getHeader(CONTENT_TYPE);
-            if (contentType == null || !MediaType.parse(contentType).is(PRESTO_PAGES_TYPE)) {
+            boolean compressed = contentType != null && MediaType.parse(contentType).is(PRESTO_PAGES_SNAPPY_TYPE);
+            if (contentType == null || (!compressed && !MediaType.parse(contentType).is(PRESTO_PAGES_TYPE))) {
                 // this can happen when an error page is returned, but is unlikely given the above 200
                 log.debug("Expected %s response from server but got %s: uri=%s, response=%s", PRESTO_PAGES_TYPE, contentType, request.getUri(), response);
                 return PagesResponse.createEmptyPagesResponse(startingSequenceId);
             }
 
             try {
-                InputStreamSliceInput sliceInput = new InputStreamSliceInput(response.getInputStream());
-                return PagesResponse.createPagesResponse(startingSequenceId, ImmutableList.copyOf(PagesSerde.readPages(sliceInput)));
+                CountingInputStream responseInput = new CountingInputStream(response.getInputStream());
+                CountingInputStream pagesInput = responseInput;
+                if (compressed) {
+                    pagesInput = new CountingInputStream(new SnappyInputStream(responseInput));
+                }
+                List<Page> pages = ImmutableList.copyOf(PagesSerde.readPages(new InputStreamSliceInput(pagesInput)));
+                return PagesResponse.createPagesResponse(startingSequenceId, pages, responseInput.getCount(), pagesInput.getCount());
             }
             catch (IOException e) {
                 throw Throwables.propagate(e);
@@ -336,30 +459,34 @@ public class HttpPageBufferClient
 
     public static class PagesResponse
     {
-        public static PagesResponse createPagesResponse(long startingSequenceId, Iterable<Page> pages)
+        public static PagesResponse createPagesResponse(long startingSequenceId, Iterable<Page> pages, long responseSize, long uncompressedSize)
         {
-            return new PagesResponse(startingSequenceId, pages, false);
+            return new PagesResponse(startingSequenceId, pages, false, responseSize, uncompressedSize);
         }
 
         public static PagesResponse createEmptyPagesResponse(long startingSequenceId)
         {
-            return new PagesResponse(startingSequenceId, ImmutableList.<Page>of(), false);
+            return new PagesResponse(startingSequenceId, ImmutableList.<Page>of(), false, 0, 0);
         }
 
         public static PagesResponse createClosedResponse(long startingSequenceId)
         {
-            return new PagesResponse(startingSequenceId, ImmutableList.<Page>of(), true);
+            return new PagesResponse(startingSequenceId, ImmutableList.<Page>of(), true, 0, 0);
         }
 
         private final long startingSequenceId;
         private final List<Page> pages;
         private final boolean clientClosed;
+        private final long responseSize;
+        private final long uncompressedSize;
 
-        public PagesResponse(long startingSequenceId, Iterable<Page> pages, boolean clientClosed)
+        public PagesResponse(long startingSequenceId, Iterable<Page> pages, boolean clientClosed, long responseSize, long uncompressedSize)
         {
             this.startingSequenceId = startingSequenceId;
             this.pages = ImmutableList.copyOf(pages);
             this.clientClosed = clientClosed;
+            this.responseSize = responseSize;
+            this.uncompressedSize = uncompressedSize;
         }
 
         public List<Page> getPages(long sequenceId)
@@ -387,6 +514,16 @@ public class HttpPageBufferClient
             return clientClosed;
         }
 
+        public long getResponseSize()
+        {
+            return responseSize;
+        }
+
+        public long getUncompressedSize()
+        {
+            return uncompressedSize;
+        }
+
         @Override
         public String toString()
         {
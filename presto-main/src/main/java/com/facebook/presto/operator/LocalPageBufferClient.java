@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.execution.BufferResult;
+import com.facebook.presto.execution.NoSuchBufferException;
+import com.facebook.presto.execution.TaskId;
+import com.facebook.presto.execution.TaskManager;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import io.airlift.http.client.AsyncHttpClient;
+import io.airlift.log.Logger;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.net.URI;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import static com.facebook.presto.operator.HttpPageBufferClient.PagesResponse.createClosedResponse;
+import static com.facebook.presto.operator.HttpPageBufferClient.PagesResponse.createEmptyPagesResponse;
+import static com.facebook.presto.operator.HttpPageBufferClient.PagesResponse.createPagesResponse;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Reads the results of a task running in this process directly from the task manager,
+ * so the pages are handed over without being serialized and sent over HTTP.  Requests
+ * behave like the task results resource: they wait up to a second for pages, and wait
+ * for the task or buffer to be created if it does not exist yet.
+ */
+@ThreadSafe
+public class LocalPageBufferClient
+        extends HttpPageBufferClient
+{
+    private static final Logger log = Logger.get(LocalPageBufferClient.class);
+
+    private static final Duration MAX_WAIT_TIME = new Duration(1, SECONDS);
+
+    private final TaskManager taskManager;
+    private final TaskId taskId;
+    private final String outputId;
+    private final Executor executor;
+
+    public LocalPageBufferClient(TaskManager taskManager,
+            AsyncHttpClient httpClient,
+            DataSize maxResponseSize,
+            URI location,
+            ClientCallback clientCallback,
+            Executor executor)
+    {
+        super(httpClient, maxResponseSize, location, clientCallback, executor);
+        this.taskManager = checkNotNull(taskManager, "taskManager is null");
+        this.executor = checkNotNull(executor, "executor is null");
+
+        List<String> path = getResultsPath(location);
+        checkArgument(path != null, "%s is not a task results location", location);
+        this.taskId = TaskId.valueOf(path.get(0));
+        this.outputId = path.get(1);
+    }
+
+    /**
+     * Returns true if the location is the results of a task on the node with the specified URI.
+     */
+    public static boolean isLocalLocation(URI location, URI localUri)
+    {
+        return location.getScheme() != null &&
+                location.getScheme().equalsIgnoreCase(localUri.getScheme()) &&
+                location.getHost() != null &&
+                location.getHost().equalsIgnoreCase(localUri.getHost()) &&
+                location.getPort() == localUri.getPort() &&
+                getResultsPath(location) != null;
+    }
+
+    @Override
+    protected ListenableFuture<PagesResponse> sendRequest(final long sequenceId, final DataSize maxResponseSize)
+    {
+        ListenableFutureTask<PagesResponse> request = ListenableFutureTask.create(new Callable<PagesResponse>()
+        {
+            @Override
+            public PagesResponse call()
+                    throws Exception
+            {
+                return getResults(sequenceId, maxResponseSize);
+            }
+        });
+        executor.execute(request);
+        return request;
+    }
+
+    @Override
+    protected void abortResults()
+    {
+        try {
+            taskManager.abortTaskResults(taskId, outputId);
+        }
+        catch (NoSuchElementException e) {
+            log.debug("Task %s was removed before its results were aborted", taskId);
+        }
+    }
+
+    private PagesResponse getResults(long sequenceId, DataSize maxResponseSize)
+            throws InterruptedException
+    {
+        long remainingNanos = MAX_WAIT_TIME.roundTo(NANOSECONDS);
+        long end = System.nanoTime() + remainingNanos;
+        int maxSleepMillis = 1;
+
+        while (remainingNanos > 0) {
+            try {
+                BufferResult result = taskManager.getTaskResults(taskId, outputId, sequenceId, maxResponseSize, new Duration(remainingNanos, NANOSECONDS));
+                if (!result.isEmpty()) {
+                    // the pages are not transferred, so no bytes are received
+                    return createPagesResponse(result.getStartingSequenceId(), result.getElements(), 0, 0);
+                }
+                if (result.isBufferClosed()) {
+                    return createClosedResponse(result.getStartingSequenceId());
+                }
+                return createEmptyPagesResponse(result.getStartingSequenceId());
+            }
+            catch (NoSuchElementException | NoSuchBufferException ignored) {
+            }
+
+            // task or buffer has not been created yet
+            NANOSECONDS.sleep(Math.min(remainingNanos, MILLISECONDS.toNanos(maxSleepMillis)));
+            remainingNanos = end - System.nanoTime();
+            maxSleepMillis *= 2;
+        }
+        return createEmptyPagesResponse(sequenceId);
+    }
+
+    /**
+     * Returns the task id and output id of a location of the form .../task/{taskId}/results/{outputId},
+     * or null if the location is not a task results location.
+     */
+    private static List<String> getResultsPath(URI location)
+    {
+        if (location.getPath() == null) {
+            return null;
+        }
+        List<String> segments = ImmutableList.copyOf(Splitter.on('/').omitEmptyStrings().split(location.getPath()));
+        int size = segments.size();
+        if (size < 4 || !segments.get(size - 4).equals("task") || !segments.get(size - 2).equals("results")) {
+            return null;
+        }
+        try {
+            TaskId.valueOf(segments.get(size - 3));
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+        return ImmutableList.of(segments.get(size - 3), segments.get(size - 1));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.tuple.TupleInfo;
+import com.facebook.presto.tuple.TupleInfo.Type;
+import io.airlift.slice.Slice;
+import io.airlift.units.DataSize;
+import io.airlift.units.DataSize.Unit;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import static com.facebook.presto.tuple.TupleInfo.Type.DOUBLE;
+import static com.facebook.presto.tuple.TupleInfo.Type.FIXED_INT_64;
+import static io.airlift.slice.SizeOf.sizeOf;
+
+/**
+ * Open addressing map from a primitive long key to an int value (a position or a group id).
+ * This map is used in place of the synthetic address maps when the key is a single BIGINT
+ * or DOUBLE field.  The key values are stored inline in the table, so hashing and comparing
+ * keys never touches the key slices or recomputes the tuple size.
+ * <p/>
+ * DOUBLE keys are stored as their {@link Double#doubleToLongBits(double)} representation.
+ * Null keys can not be represented, so callers must handle nulls before using this map.
+ */
+public class LongKeyHashMap
+        extends Long2IntOpenHashMap
+{
+    public LongKeyHashMap(int expected)
+    {
+        super(expected);
+        defaultReturnValue(-1);
+    }
+
+    public DataSize getEstimatedSize()
+    {
+        return new DataSize(sizeOf(this.key) + sizeOf(this.value) + sizeOf(this.used), Unit.BYTE);
+    }
+
+    /**
+     * Can keys of the specified tuple info be stored in this map.
+     */
+    public static boolean isLongKey(TupleInfo tupleInfo)
+    {
+        if (tupleInfo.getFieldCount() != 1) {
+            return false;
+        }
+        Type type = tupleInfo.getTypes().get(0);
+        return type == FIXED_INT_64 || type == DOUBLE;
+    }
+
+    public static long getLongKey(BlockCursor cursor, Type keyType)
+    {
+        if (keyType == DOUBLE) {
+            return Double.doubleToLongBits(cursor.getDouble(0));
+        }
+        return cursor.getLong(0);
+    }
+
+    public static long getLongKey(TupleInfo tupleInfo, Slice slice, int offset)
+    {
+        if (tupleInfo.getTypes().get(0) == DOUBLE) {
+            return Double.doubleToLongBits(tupleInfo.getDouble(slice, offset, 0));
+        }
+        return tupleInfo.getLong(slice, offset, 0);
+    }
+}
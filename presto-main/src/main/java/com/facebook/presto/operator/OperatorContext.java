@@ -22,6 +22,7 @@ import io.airlift.stats.CounterStat;
 import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import java.lang.management.ManagementFactory;
@@ -73,6 +74,12 @@ public class OperatorContext
     private final AtomicLong finishUserNanos = new AtomicLong();
 
     private final AtomicLong memoryReservation = new AtomicLong();
+    private final AtomicLong memoryWaitNanos = new AtomicLong();
+    @GuardedBy("this")
+    private long memoryWaitStartNanos;
+
+    private final AtomicLong spilledDataSize = new AtomicLong();
+    private final AtomicLong spilledRuns = new AtomicLong();
 
     private final AtomicReference<Supplier<Object>> infoSupplier = new AtomicReference<>();
 
@@ -100,6 +107,11 @@ public class OperatorContext
         return driverContext.getSession();
     }
 
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+
     public boolean isDone()
     {
         return driverContext.isDone();
@@ -193,6 +205,17 @@ public class OperatorContext
     }
 
     public synchronized long setMemoryReservation(long newMemoryReservation)
+    {
+        checkState(trySetMemoryReservation(newMemoryReservation), "Task exceeded max memory size of %s", getMaxMemorySize());
+        return newMemoryReservation;
+    }
+
+    /**
+     * Attempts to grow the memory reservation of this operator to the specified size.
+     * Returns false, and leaves the reservation unchanged, if the task does not have
+     * enough memory available.
+     */
+    public synchronized boolean trySetMemoryReservation(long newMemoryReservation)
     {
         checkArgument(newMemoryReservation >= 0, "newMemoryReservation is negative");
 
@@ -200,10 +223,60 @@ public class OperatorContext
 
         // currently, operator memory is not be released
         if (delta > 0) {
-            checkState(reserveMemory(delta), "Task exceeded max memory size of %s", getMaxMemorySize());
+            return reserveMemory(delta);
         }
+        return true;
+    }
 
-        return newMemoryReservation;
+    /**
+     * Grows the memory reservation of this operator to the specified size.  If the task is
+     * within its limit, but the memory pool of the node does not have enough free memory,
+     * the reservation is left unchanged, and a future is returned that completes when
+     * memory is returned to the pool, so the operator can block and try again.  The
+     * returned future is only done if the memory was reserved.  Fails if the task exceeds
+     * its max memory size, or if the operator waited for memory longer than the pool allows.
+     */
+    public synchronized ListenableFuture<?> reserveMemoryOrWait(long newMemoryReservation)
+    {
+        while (!trySetMemoryReservation(newMemoryReservation)) {
+            long now = System.nanoTime();
+            if (memoryWaitStartNanos == 0) {
+                memoryWaitStartNanos = now;
+            }
+
+            long delta = newMemoryReservation - memoryReservation.get();
+            ListenableFuture<?> memoryFuture = driverContext.waitForMemory(delta, new Duration(now - memoryWaitStartNanos, NANOSECONDS));
+            checkState(memoryFuture != null, "Task exceeded max memory size of %s", getMaxMemorySize());
+
+            // if memory was returned to the pool in the meantime, try again right away
+            if (!memoryFuture.isDone()) {
+                recordMemoryWait(memoryFuture);
+                return memoryFuture;
+            }
+        }
+        memoryWaitStartNanos = 0;
+        return Operator.NOT_BLOCKED;
+    }
+
+    private void recordMemoryWait(ListenableFuture<?> memoryFuture)
+    {
+        memoryFuture.addListener(new Runnable()
+        {
+            private final long start = System.nanoTime();
+
+            @Override
+            public void run()
+            {
+                memoryWaitNanos.getAndAdd(nanosBetween(start, System.nanoTime()));
+            }
+        }, executor);
+    }
+
+    public void recordSpill(DataSize dataSize)
+    {
+        checkNotNull(dataSize, "dataSize is null");
+        spilledDataSize.getAndAdd(dataSize.toBytes());
+        spilledRuns.incrementAndGet();
     }
 
     public void setInfoSupplier(Supplier<Object> infoSupplier)
@@ -272,6 +345,11 @@ public class OperatorContext
                 new Duration(finishUserNanos.get(), NANOSECONDS).convertToMostSuccinctTimeUnit(),
 
                 new DataSize(memoryReservation.get(), BYTE).convertToMostSuccinctDataSize(),
+                new Duration(memoryWaitNanos.get(), NANOSECONDS).convertToMostSuccinctTimeUnit(),
+
+                new DataSize(spilledDataSize.get(), BYTE).convertToMostSuccinctDataSize(),
+                spilledRuns.get(),
+
                 info);
     }
 
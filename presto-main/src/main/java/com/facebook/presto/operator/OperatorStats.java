@@ -55,6 +55,10 @@ public class OperatorStats
     private final Duration finishUser;
 
     private final DataSize memoryReservation;
+    private final Duration memoryWait;
+
+    private final DataSize spilledDataSize;
+    private final long spilledRuns;
 
     private final Object info;
 
@@ -85,6 +89,10 @@ public class OperatorStats
             @JsonProperty("finishUser") Duration finishUser,
 
             @JsonProperty("memoryReservation") DataSize memoryReservation,
+            @JsonProperty("memoryWait") Duration memoryWait,
+
+            @JsonProperty("spilledDataSize") DataSize spilledDataSize,
+            @JsonProperty("spilledRuns") long spilledRuns,
 
             @JsonProperty("info") Object info)
     {
@@ -116,6 +124,11 @@ public class OperatorStats
         this.finishUser = checkNotNull(finishUser, "finishUser is null");
 
         this.memoryReservation = checkNotNull(memoryReservation, "memoryReservation is null");
+        this.memoryWait = checkNotNull(memoryWait, "memoryWait is null");
+
+        this.spilledDataSize = checkNotNull(spilledDataSize, "spilledDataSize is null");
+        checkArgument(spilledRuns >= 0, "spilledRuns is negative");
+        this.spilledRuns = spilledRuns;
 
         this.info = info;
     }
@@ -240,6 +253,24 @@ public class OperatorStats
         return memoryReservation;
     }
 
+    @JsonProperty
+    public Duration getMemoryWait()
+    {
+        return memoryWait;
+    }
+
+    @JsonProperty
+    public DataSize getSpilledDataSize()
+    {
+        return spilledDataSize;
+    }
+
+    @JsonProperty
+    public long getSpilledRuns()
+    {
+        return spilledRuns;
+    }
+
     @Nullable
     @JsonProperty
     public Object getInfo()
@@ -276,6 +307,10 @@ public class OperatorStats
         long finishUser = this.finishUser.roundTo(NANOSECONDS);
 
         long memoryReservation = this.memoryReservation.toBytes();
+        long memoryWait = this.memoryWait.roundTo(NANOSECONDS);
+
+        long spilledDataSize = this.spilledDataSize.toBytes();
+        long spilledRuns = this.spilledRuns;
 
         for (OperatorStats operator : operators) {
             checkArgument(operator.getOperatorId() == operatorId, "Expected operatorId to be %s but was %s", operatorId, operator.getOperatorId());
@@ -302,6 +337,10 @@ public class OperatorStats
             blockedWall += operator.getBlockedWall().roundTo(NANOSECONDS);
 
             memoryReservation += operator.getMemoryReservation().toBytes();
+            memoryWait += operator.getMemoryWait().roundTo(NANOSECONDS);
+
+            spilledDataSize += operator.getSpilledDataSize().toBytes();
+            spilledRuns += operator.getSpilledRuns();
         }
 
         return new OperatorStats(
@@ -330,6 +369,10 @@ public class OperatorStats
                 new Duration(finishUser, NANOSECONDS).convertToMostSuccinctTimeUnit(),
 
                 new DataSize(memoryReservation, BYTE).convertToMostSuccinctDataSize(),
+                new Duration(memoryWait, NANOSECONDS).convertToMostSuccinctTimeUnit(),
+
+                new DataSize(spilledDataSize, BYTE).convertToMostSuccinctDataSize(),
+                spilledRuns,
 
                 // todo merge operator info?
                 null);
@@ -14,17 +14,20 @@
 package com.facebook.presto.operator;
 
 import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListenableFuture;
 import it.unimi.dsi.fastutil.booleans.BooleanArrays;
 
+import java.io.Closeable;
+import java.io.File;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 public class OrderByOperator
-        implements Operator
+        implements Operator, Closeable
 {
     public static class InMemoryOrderByOperatorFactory
             implements OperatorFactory
@@ -36,6 +39,7 @@ public class OrderByOperator
         private final int expectedPositions;
         private final int[] sortFields;
         private final boolean[] sortOrder;
+        private final Optional<File> spillPath;
         private final List<TupleInfo> tupleInfos;
         private boolean closed;
 
@@ -64,6 +68,19 @@ public class OrderByOperator
                 int expectedPositions,
                 int[] sortFields,
                 boolean[] sortOrder)
+        {
+            this(operatorId, sourceTupleInfos, orderByChannel, outputChannels, expectedPositions, sortFields, sortOrder, Optional.<File>absent());
+        }
+
+        public InMemoryOrderByOperatorFactory(
+                int operatorId,
+                List<TupleInfo> sourceTupleInfos,
+                int orderByChannel,
+                int[] outputChannels,
+                int expectedPositions,
+                int[] sortFields,
+                boolean[] sortOrder,
+                Optional<File> spillPath)
         {
             this.operatorId = operatorId;
             this.sourceTupleInfos = ImmutableList.copyOf(checkNotNull(sourceTupleInfos, "sourceTupleInfos is null"));
@@ -72,6 +89,7 @@ public class OrderByOperator
             this.expectedPositions = expectedPositions;
             this.sortFields = checkNotNull(sortFields, "sortFields is null");
             this.sortOrder = checkNotNull(sortOrder, "sortOrder is null");
+            this.spillPath = checkNotNull(spillPath, "spillPath is null");
 
             this.tupleInfos = toTupleInfos(sourceTupleInfos, outputChannels);
         }
@@ -95,7 +113,8 @@ public class OrderByOperator
                     outputChannels,
                     expectedPositions,
                     sortFields,
-                    sortOrder);
+                    sortOrder,
+                    spillPath);
         }
 
         @Override
@@ -113,13 +132,11 @@ public class OrderByOperator
     }
 
     private final OperatorContext operatorContext;
-    private final int orderByChannel;
-    private final int[] sortFields;
-    private final boolean[] sortOrder;
     private final int[] outputChannels;
     private final List<TupleInfo> tupleInfos;
 
-    private final PagesIndex pageIndex;
+    private final ExternalSorter sorter;
+    private PagesIndex pageIndex;
 
     private final PageBuilder pageBuilder;
     private int currentPosition;
@@ -134,15 +151,25 @@ public class OrderByOperator
             int expectedPositions,
             int[] sortFields,
             boolean[] sortOrder)
+    {
+        this(operatorContext, sourceTupleInfos, orderByChannel, outputChannels, expectedPositions, sortFields, sortOrder, Optional.<File>absent());
+    }
+
+    public OrderByOperator(
+            OperatorContext operatorContext,
+            List<TupleInfo> sourceTupleInfos,
+            int orderByChannel,
+            int[] outputChannels,
+            int expectedPositions,
+            int[] sortFields,
+            boolean[] sortOrder,
+            Optional<File> spillPath)
     {
         this.operatorContext = checkNotNull(operatorContext, "operatorContext is null");
-        this.orderByChannel = orderByChannel;
         this.outputChannels = checkNotNull(outputChannels, "outputChannels is null");
         this.tupleInfos = toTupleInfos(sourceTupleInfos, outputChannels);
-        this.sortFields = checkNotNull(sortFields, "sortFields is null");
-        this.sortOrder = checkNotNull(sortOrder, "sortOrder is null");
 
-        this.pageIndex = new PagesIndex(sourceTupleInfos, expectedPositions, operatorContext);
+        this.sorter = new ExternalSorter(sourceTupleInfos, expectedPositions, orderByChannel, sortFields, sortOrder, operatorContext, spillPath);
 
         this.pageBuilder = new PageBuilder(this.tupleInfos);
     }
@@ -165,8 +192,10 @@ public class OrderByOperator
         if (state == State.NEEDS_INPUT) {
             state = State.HAS_OUTPUT;
 
-            // sort the index
-            pageIndex.sort(orderByChannel, sortFields, sortOrder);
+            // sort the index, unless the input was spilled in which case the runs are merged during output
+            if (!sorter.isSpilled()) {
+                pageIndex = sorter.sortPagesIndex();
+            }
         }
     }
 
@@ -179,7 +208,7 @@ public class OrderByOperator
     @Override
     public ListenableFuture<?> isBlocked()
     {
-        return NOT_BLOCKED;
+        return sorter.isBlocked();
     }
 
     @Override
@@ -194,7 +223,7 @@ public class OrderByOperator
         checkState(state == State.NEEDS_INPUT, "Operator is already finishing");
         checkNotNull(page, "page is null");
 
-        pageIndex.addPage(page);
+        sorter.addPage(page);
     }
 
     @Override
@@ -204,6 +233,10 @@ public class OrderByOperator
             return null;
         }
 
+        if (pageIndex == null) {
+            return getMergedOutput();
+        }
+
         if (currentPosition >= pageIndex.getPositionCount()) {
             state = State.FINISHED;
             return null;
@@ -228,6 +261,29 @@ public class OrderByOperator
         return page;
     }
 
+    private Page getMergedOutput()
+    {
+        pageBuilder.reset();
+        while (!pageBuilder.isFull() && sorter.advanceNextPosition()) {
+            for (int i = 0; i < outputChannels.length; i++) {
+                sorter.getCursor(outputChannels[i]).appendTupleTo(pageBuilder.getBlockBuilder(i));
+            }
+        }
+
+        if (pageBuilder.isEmpty()) {
+            state = State.FINISHED;
+            sorter.close();
+            return null;
+        }
+        return pageBuilder.build();
+    }
+
+    @Override
+    public void close()
+    {
+        sorter.close();
+    }
+
     private static boolean[] defaultSortOrder(List<TupleInfo> sourceTupleInfos, int orderByChannel)
     {
         TupleInfo orderByTupleInfo = sourceTupleInfos.get(orderByChannel);
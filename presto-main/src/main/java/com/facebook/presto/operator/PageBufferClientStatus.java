@@ -17,6 +17,8 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
 import org.joda.time.DateTime;
 
 import java.net.URI;
@@ -30,6 +32,9 @@ public class PageBufferClientStatus
     private final int requestsScheduled;
     private final int requestsCompleted;
     private final String httpRequestState;
+    private final DataSize maxResponseSize;
+    private final DataSize lastResponseSize;
+    private final Duration lastResponseTime;
 
     @JsonCreator
     public PageBufferClientStatus(@JsonProperty("uri") URI uri,
@@ -38,7 +43,10 @@ public class PageBufferClientStatus
             @JsonProperty("pagesReceived") int pagesReceived,
             @JsonProperty("requestsScheduled") int requestsScheduled,
             @JsonProperty("requestsCompleted") int requestsCompleted,
-            @JsonProperty("httpRequestState") String httpRequestState)
+            @JsonProperty("httpRequestState") String httpRequestState,
+            @JsonProperty("maxResponseSize") DataSize maxResponseSize,
+            @JsonProperty("lastResponseSize") DataSize lastResponseSize,
+            @JsonProperty("lastResponseTime") Duration lastResponseTime)
     {
         this.uri = uri;
         this.state = state;
@@ -47,6 +55,9 @@ public class PageBufferClientStatus
         this.requestsScheduled = requestsScheduled;
         this.requestsCompleted = requestsCompleted;
         this.httpRequestState = httpRequestState;
+        this.maxResponseSize = maxResponseSize;
+        this.lastResponseSize = lastResponseSize;
+        this.lastResponseTime = lastResponseTime;
     }
 
     @JsonProperty
@@ -91,6 +102,27 @@ public class PageBufferClientStatus
         return httpRequestState;
     }
 
+    /**
+     * Maximum response size of the last request, which the exchange client lowers as its buffer fills.
+     */
+    @JsonProperty
+    public DataSize getMaxResponseSize()
+    {
+        return maxResponseSize;
+    }
+
+    @JsonProperty
+    public DataSize getLastResponseSize()
+    {
+        return lastResponseSize;
+    }
+
+    @JsonProperty
+    public Duration getLastResponseTime()
+    {
+        return lastResponseTime;
+    }
+
     @Override
     public String toString()
     {
@@ -100,6 +132,9 @@ public class PageBufferClientStatus
                 .add("lastUpdate", lastUpdate)
                 .add("pagesReceived", pagesReceived)
                 .add("httpRequestState", httpRequestState)
+                .add("maxResponseSize", maxResponseSize)
+                .add("lastResponseSize", lastResponseSize)
+                .add("lastResponseTime", lastResponseTime)
                 .toString();
     }
 
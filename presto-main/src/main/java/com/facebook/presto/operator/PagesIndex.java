@@ -18,6 +18,7 @@ import com.facebook.presto.block.BlockBuilder;
 import com.facebook.presto.block.uncompressed.UncompressedBlock;
 import com.facebook.presto.tuple.TupleInfo;
 import com.facebook.presto.tuple.TupleInfo.Type;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.slice.Slice;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
@@ -27,6 +28,9 @@ import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
 
 import java.util.List;
 
+import static com.facebook.presto.operator.Operator.NOT_BLOCKED;
+import static com.google.common.base.Preconditions.checkState;
+
 /**
  * PagesIndex a low-level data structure which contains the address of every value position of every channel.
  * This data structure is not general purpose and is designed for a few specific uses:
@@ -46,6 +50,9 @@ public class PagesIndex
     private int positionCount;
     private long estimatedSize;
 
+    // not null while the memory for the index is waiting for the memory pool
+    private ListenableFuture<?> memoryFuture;
+
     public PagesIndex(List<TupleInfo> tupleInfos, int expectedPositions, OperatorContext operatorContext)
     {
         this.tupleInfos = tupleInfos;
@@ -67,14 +74,69 @@ public class PagesIndex
     }
 
     public void addPage(Page page)
+    {
+        checkState(tryAddPage(page), "Task exceeded max memory size of %s", operatorContext.getMaxMemorySize());
+    }
+
+    /**
+     * Adds the page to this index, and returns false if the memory for the
+     * index could not be reserved.  The page is added in either case.
+     */
+    public boolean tryAddPage(Page page)
+    {
+        indexPage(page);
+
+        long newEstimatedSize = calculateEstimatedSize();
+        if (!operatorContext.trySetMemoryReservation(newEstimatedSize)) {
+            return false;
+        }
+        estimatedSize = newEstimatedSize;
+        return true;
+    }
+
+    /**
+     * Adds the page to this index.  If the memory pool does not have enough free memory
+     * for the index, the page is still added, and {@link #isBlocked} returns a future
+     * the operator must wait on before it adds more pages or uses the index.
+     */
+    public void addPageOrWait(Page page)
+    {
+        checkState(memoryFuture == null, "Index is waiting for memory");
+        indexPage(page);
+        reserveMemory();
+    }
+
+    /**
+     * Returns a future that completes when the memory for the index is reserved.
+     */
+    public ListenableFuture<?> isBlocked()
+    {
+        if (memoryFuture != null && memoryFuture.isDone()) {
+            // memory was returned to the pool or the wait timed out, so try again
+            reserveMemory();
+        }
+        return memoryFuture == null ? NOT_BLOCKED : memoryFuture;
+    }
+
+    private void indexPage(Page page)
     {
         positionCount += page.getPositionCount();
         Block[] blocks = page.getBlocks();
         for (int channel = 0; channel < indexes.length; channel++) {
             indexes[channel].indexBlock((UncompressedBlock) blocks[channel]);
         }
+    }
 
-        estimatedSize = operatorContext.setMemoryReservation(calculateEstimatedSize());
+    private void reserveMemory()
+    {
+        long newEstimatedSize = calculateEstimatedSize();
+        ListenableFuture<?> future = operatorContext.reserveMemoryOrWait(newEstimatedSize);
+        if (!future.isDone()) {
+            memoryFuture = future;
+            return;
+        }
+        memoryFuture = null;
+        estimatedSize = newEstimatedSize;
     }
 
     public DataSize getEstimatedSize()
@@ -158,6 +220,11 @@ public class PagesIndex
             Slice rightSlice = slices[((int) (rightSliceAddress >> 32))];
             int rightOffset = (int) rightSliceAddress;
 
+            return compare(leftSlice, leftOffset, rightSlice, rightOffset);
+        }
+
+        public int compare(Slice leftSlice, int leftOffset, Slice rightSlice, int rightOffset)
+        {
             for (int i = 0; i < sortFields.length; i++) {
                 int field = sortFields[i];
                 Type type = types[field];
@@ -20,6 +20,7 @@ import com.google.common.base.Function;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.stats.CounterStat;
 import io.airlift.stats.Distribution;
 import io.airlift.units.DataSize;
@@ -190,6 +191,11 @@ public class PipelineContext
         return taskContext.getOperatorPreAllocatedMemory();
     }
 
+    public ListenableFuture<?> waitForMemory(long bytes, Duration waitTime)
+    {
+        return taskContext.waitForMemory(bytes, waitTime);
+    }
+
     public synchronized boolean reserveMemory(long bytes)
     {
         boolean result = taskContext.reserveMemory(bytes);
@@ -173,7 +173,7 @@ public class SetBuilderOperator
     @Override
     public ListenableFuture<?> isBlocked()
     {
-        return NOT_BLOCKED;
+        return channelSetBuilder.isBlocked();
     }
 
     @Override
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.serde.PagesSerde;
+import com.facebook.presto.serde.PagesWriter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closeables;
+import io.airlift.slice.InputStreamSliceInput;
+import io.airlift.slice.OutputStreamSliceOutput;
+import io.airlift.slice.SliceOutput;
+import io.airlift.units.DataSize;
+import io.airlift.units.DataSize.Unit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A temporary file holding pages that did not fit in memory.  Pages are
+ * written with the {@link PagesSerde} encoding, so all pages must have the
+ * same layout.  The file is deleted when the spill file is closed.
+ */
+@NotThreadSafe
+public class SpillFile
+        implements Closeable
+{
+    private final File file;
+    private final List<InputStream> openInputs = new ArrayList<>();
+    private SliceOutput sliceOutput;
+    private PagesWriter pagesWriter;
+    private long pageCount;
+    private boolean writeFinished;
+    private boolean closed;
+
+    public SpillFile(File spillPath)
+    {
+        checkNotNull(spillPath, "spillPath is null");
+        try {
+            if (!spillPath.isDirectory() && !spillPath.mkdirs() && !spillPath.isDirectory()) {
+                throw new IOException("Unable to create spill directory " + spillPath);
+            }
+            file = File.createTempFile("spill", ".pages", spillPath);
+            file.deleteOnExit();
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    public long getPageCount()
+    {
+        return pageCount;
+    }
+
+    /**
+     * Returns the number of bytes written to disk.  Only valid after writing is finished.
+     */
+    public DataSize getSize()
+    {
+        checkState(writeFinished, "Spill file is still being written");
+        return new DataSize(file.length(), Unit.BYTE);
+    }
+
+    public void writePage(Page page)
+    {
+        checkNotNull(page, "page is null");
+        checkState(!closed, "Spill file is closed");
+        checkState(!writeFinished, "Spill file can not be written after it has been read");
+        if (pagesWriter == null) {
+            try {
+                sliceOutput = new OutputStreamSliceOutput(new FileOutputStream(file, true));
+            }
+            catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            pagesWriter = PagesSerde.createPagesWriter(sliceOutput);
+        }
+        pagesWriter.append(page);
+        pageCount++;
+    }
+
+    /**
+     * Finishes writing and returns the spilled pages in the order they were written.
+     */
+    public Iterator<Page> readPages()
+    {
+        checkState(!closed, "Spill file is closed");
+        finishWriting();
+        if (pageCount == 0) {
+            return ImmutableList.<Page>of().iterator();
+        }
+
+        try {
+            InputStream inputStream = new FileInputStream(file);
+            openInputs.add(inputStream);
+            return PagesSerde.readPages(new InputStreamSliceInput(inputStream));
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Flushes and closes the output. No pages can be written after this call.
+     */
+    public void finishWriting()
+    {
+        writeFinished = true;
+        if (sliceOutput != null) {
+            try {
+                sliceOutput.close();
+            }
+            catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+            sliceOutput = null;
+        }
+        pagesWriter = null;
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        for (InputStream inputStream : openInputs) {
+            Closeables.closeQuietly(inputStream);
+        }
+        openInputs.clear();
+        if (sliceOutput != null) {
+            Closeables.closeQuietly(sliceOutput);
+        }
+        file.delete();
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.operator;
 
+import com.facebook.presto.execution.MemoryPool;
 import com.facebook.presto.execution.StateMachine.StateChangeListener;
 import com.facebook.presto.execution.TaskId;
 import com.facebook.presto.execution.TaskState;
@@ -24,11 +25,13 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.stats.CounterStat;
 import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
 import org.joda.time.DateTime;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import java.util.List;
@@ -43,6 +46,7 @@ import static com.facebook.presto.operator.PipelineContext.pipelineStatsGetter;
 import static com.facebook.presto.util.Threads.checkNotSameThreadExecutor;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Iterables.transform;
 import static io.airlift.units.DataSize.Unit.BYTE;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
@@ -57,8 +61,11 @@ public class TaskContext
 
     private final long maxMemory;
     private final DataSize operatorPreAllocatedMemory;
+    private final MemoryPool memoryPool;
 
     private final AtomicLong memoryReservation = new AtomicLong();
+    @GuardedBy("this")
+    private boolean memoryFreed;
 
     private final DateTime createdTime = DateTime.now();
     private final long createNanos = System.nanoTime();
@@ -96,12 +103,25 @@ public class TaskContext
     }
 
     public TaskContext(TaskStateMachine taskStateMachine, Executor executor, Session session, DataSize maxMemory, DataSize operatorPreAllocatedMemory, boolean cpuTimerEnabled)
+    {
+        // the task does not share memory with other tasks
+        this(taskStateMachine, executor, session, maxMemory, operatorPreAllocatedMemory, new MemoryPool(maxMemory), cpuTimerEnabled);
+    }
+
+    public TaskContext(TaskStateMachine taskStateMachine,
+            Executor executor,
+            Session session,
+            DataSize maxMemory,
+            DataSize operatorPreAllocatedMemory,
+            MemoryPool memoryPool,
+            boolean cpuTimerEnabled)
     {
         this.taskStateMachine = checkNotNull(taskStateMachine, "taskStateMachine is null");
         this.executor = checkNotNull(executor, "executor is null");
         this.session = session;
         this.maxMemory = checkNotNull(maxMemory, "maxMemory is null").toBytes();
         this.operatorPreAllocatedMemory = checkNotNull(operatorPreAllocatedMemory, "operatorPreAllocatedMemory is null");
+        this.memoryPool = checkNotNull(memoryPool, "memoryPool is null");
 
         taskStateMachine.addStateChangeListener(new StateChangeListener<TaskState>()
         {
@@ -111,6 +131,7 @@ public class TaskContext
                 if (newValue.isDone()) {
                     executionEndTime.set(DateTime.now());
                     endNanos.set(System.nanoTime());
+                    freeMemory();
                 }
             }
         });
@@ -169,17 +190,65 @@ public class TaskContext
         return operatorPreAllocatedMemory;
     }
 
+    public MemoryPool getMemoryPool()
+    {
+        return memoryPool;
+    }
+
     public synchronized boolean reserveMemory(long bytes)
     {
         checkArgument(bytes >= 0, "bytes is negative");
 
-        if (memoryReservation.get() + bytes > maxMemory) {
+        if (memoryFreed || memoryReservation.get() + bytes > maxMemory) {
+            return false;
+        }
+        if (!memoryPool.tryReserve(bytes)) {
             return false;
         }
         memoryReservation.getAndAdd(bytes);
         return true;
     }
 
+    /**
+     * Returns a future that completes when the memory pool may have the specified bytes
+     * free, or when the reservation has waited for the max wait time of the pool.  Returns
+     * null if waiting can not help, because the bytes exceed the limit of the task.  Fails
+     * if the reservation has already waited for the max wait time of the pool.
+     */
+    public synchronized ListenableFuture<?> waitForMemory(long bytes, Duration waitTime)
+    {
+        checkArgument(bytes >= 0, "bytes is negative");
+        checkNotNull(waitTime, "waitTime is null");
+
+        if (memoryFreed || memoryReservation.get() + bytes > maxMemory) {
+            return null;
+        }
+
+        Duration maxWait = memoryPool.getMaxWait();
+        long remainingNanos = maxWait.roundTo(NANOSECONDS) - waitTime.roundTo(NANOSECONDS);
+        checkState(remainingNanos > 0, "Timed out after %s waiting for memory from the memory pool of the node", maxWait);
+        return memoryPool.waitForFreeMemory(bytes, new Duration(remainingNanos, NANOSECONDS));
+    }
+
+    /**
+     * Returns the memory of the task to the memory pool.  Once the memory is freed,
+     * no more memory can be reserved.
+     */
+    private void freeMemory()
+    {
+        long bytes;
+        synchronized (this) {
+            if (memoryFreed) {
+                return;
+            }
+            memoryFreed = true;
+            bytes = memoryReservation.get();
+        }
+
+        // free outside of the lock, since freeing memory notifies the operators waiting for memory
+        memoryPool.free(bytes);
+    }
+
     public boolean isCpuTimerEnabled()
     {
         return cpuTimerEnabled;
@@ -254,4 +254,33 @@ public class TaskStats
     {
         return pipelines;
     }
+
+    /**
+     * Returns these stats without the per pipeline, driver and operator details.
+     */
+    public TaskStats summarize()
+    {
+        return new TaskStats(
+                createTime,
+                startTime,
+                endTime,
+                elapsedTime,
+                queuedTime,
+                totalDrivers,
+                queuedDrivers,
+                runningDrivers,
+                completedDrivers,
+                memoryReservation,
+                totalScheduledTime,
+                totalCpuTime,
+                totalUserTime,
+                totalBlockedTime,
+                rawInputDataSize,
+                rawInputPositions,
+                processedInputDataSize,
+                processedInputPositions,
+                outputDataSize,
+                outputPositions,
+                ImmutableList.<PipelineStats>of());
+    }
 }
@@ -14,23 +14,32 @@
 package com.facebook.presto.operator;
 
 import com.facebook.presto.block.Block;
+import com.facebook.presto.block.BlockBuilder;
 import com.facebook.presto.block.BlockCursor;
 import com.facebook.presto.tuple.Tuple;
 import com.facebook.presto.tuple.TupleInfo;
 import com.facebook.presto.tuple.TupleReadable;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Ordering;
 import com.google.common.util.concurrent.ListenableFuture;
-import io.airlift.units.DataSize;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
 
+import static com.facebook.presto.operator.SyntheticAddress.decodeSliceIndex;
+import static com.facebook.presto.operator.SyntheticAddress.decodeSliceOffset;
+import static com.facebook.presto.operator.SyntheticAddress.encodeSyntheticAddress;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static io.airlift.slice.SizeOf.sizeOf;
 
 /**
  * Returns the top N rows from the source sorted according to the specified ordering in the keyChannelIndex channel.
@@ -94,8 +103,9 @@ public class TopNOperator
         }
     }
 
-    private static final int MAX_INITIAL_PRIORITY_QUEUE_SIZE = 10000;
-    private static final DataSize OVERHEAD_PER_TUPLE = new DataSize(100, DataSize.Unit.BYTE); // for estimating in-memory size. This is a completely arbitrary number
+    private static final int MAX_INITIAL_HEAP_SIZE = 10000;
+    // the rejected rows are compacted once they outnumber the candidates, but never for fewer rows than this
+    private static final int MIN_ROWS_TO_COMPACT = 1024;
 
     private final OperatorContext operatorContext;
     private final int n;
@@ -111,7 +121,7 @@ public class TopNOperator
     private TopNBuilder topNBuilder;
     private boolean finishing;
 
-    private Iterator<KeyAndTuples> outputIterator;
+    private Iterator<TupleReadable[]> outputIterator;
 
     public TopNOperator(
             OperatorContext operatorContext,
@@ -132,7 +142,7 @@ public class TopNOperator
         this.projections = ImmutableList.copyOf(checkNotNull(projections, "projections is null"));
         checkArgument(!projections.isEmpty(), "projections is empty");
 
-        // the priority queue needs to sort in reverse order to be able to remove the least element in O(1)
+        // the heap needs to sort in reverse order to be able to remove the least element in O(1)
         this.ordering = checkNotNull(ordering, "ordering is null").reverse();
 
         this.partial = partial;
@@ -190,7 +200,8 @@ public class TopNOperator
                     n,
                     keyChannelIndex,
                     ordering,
-                    memoryManager);
+                    memoryManager,
+                    toTupleInfos(page));
         }
 
         checkState(!topNBuilder.isFull(), "Aggregation buffer is full");
@@ -220,9 +231,9 @@ public class TopNOperator
 
         pageBuilder.reset();
         while (!pageBuilder.isFull() && outputIterator.hasNext()) {
-            KeyAndTuples next = outputIterator.next();
+            TupleReadable[] next = outputIterator.next();
             for (int i = 0; i < projections.size(); i++) {
-                projections.get(i).project(next.getTuples(), pageBuilder.getBlockBuilder(i));
+                projections.get(i).project(next, pageBuilder.getBlockBuilder(i));
             }
         }
 
@@ -239,103 +250,150 @@ public class TopNOperator
         return tupleInfos.build();
     }
 
+    private static List<TupleInfo> toTupleInfos(Page page)
+    {
+        ImmutableList.Builder<TupleInfo> tupleInfos = ImmutableList.builder();
+        for (Block block : page.getBlocks()) {
+            tupleInfos.add(block.getTupleInfo());
+        }
+        return tupleInfos.build();
+    }
+
+    /**
+     * Keeps the best n rows in a binary heap of row ids, whose root is the least candidate.
+     * The rows themselves are copied into a {@link CandidateStore}, so no objects are allocated
+     * per row.  Rows removed from the heap stay in the store until it is compacted.
+     */
     private static class TopNBuilder
     {
         private final int n;
         private final int keyChannelIndex;
         private final Ordering<TupleReadable> ordering;
         private final TopNMemoryManager memoryManager;
-        private final PriorityQueue<KeyAndTuples> globalCandidates;
+        private final CandidateStore candidates;
+        private final CandidateTuple leftKey;
+        private final CandidateTuple rightKey;
+
+        private int[] heap;
+        private int heapSize;
 
         private long memorySize;
 
-        private TopNBuilder(int n, int keyChannelIndex, Ordering<TupleReadable> ordering, TopNMemoryManager memoryManager)
+        private TopNBuilder(int n, int keyChannelIndex, Ordering<TupleReadable> ordering, TopNMemoryManager memoryManager, List<TupleInfo> sourceTupleInfos)
         {
             this.n = n;
             this.keyChannelIndex = keyChannelIndex;
             this.ordering = ordering;
             this.memoryManager = memoryManager;
-            this.globalCandidates = new PriorityQueue<>(Math.min(n, MAX_INITIAL_PRIORITY_QUEUE_SIZE), KeyAndTuples.keyComparator(ordering));
+            this.candidates = new CandidateStore(sourceTupleInfos);
+            this.leftKey = new CandidateTuple(sourceTupleInfos.get(keyChannelIndex));
+            this.rightKey = new CandidateTuple(sourceTupleInfos.get(keyChannelIndex));
+            this.heap = new int[Math.min(n, MAX_INITIAL_HEAP_SIZE)];
         }
 
         public void processPage(Page page)
         {
-            Iterable<KeyAndPosition> keyAndPositions = computePageCandidatePositions(globalCandidates, page);
-            long sizeDelta = mergeWithGlobalCandidates(globalCandidates, page, keyAndPositions);
-            memorySize += sizeDelta;
-        }
-
-        private long mergeWithGlobalCandidates(PriorityQueue<KeyAndTuples> globalCandidates, Page page, Iterable<KeyAndPosition> pageValueAndPositions)
-        {
-            long sizeDelta = 0;
-
-            // Sort by positions so that we can advance through the values via cursors
-            List<KeyAndPosition> positionSorted = Ordering.from(KeyAndPosition.positionComparator()).sortedCopy(pageValueAndPositions);
-
             Block[] blocks = page.getBlocks();
             BlockCursor[] cursors = new BlockCursor[blocks.length];
             for (int i = 0; i < blocks.length; i++) {
                 cursors[i] = blocks[i].cursor();
             }
-            for (KeyAndPosition keyAndPosition : positionSorted) {
-                for (BlockCursor cursor : cursors) {
-                    checkState(cursor.advanceToPosition(keyAndPosition.getPosition()));
-                }
-                if (globalCandidates.size() < n) {
-                    Tuple[] tuples = getTuples(keyAndPosition, cursors);
-                    for (Tuple tuple : tuples) {
-                        sizeDelta += tuple.size();
+
+            BlockCursor keyCursor = cursors[keyChannelIndex];
+            for (int position = 0; position < page.getPositionCount(); position++) {
+                checkState(keyCursor.advanceNextPosition());
+                if (heapSize < n) {
+                    if (heapSize == heap.length) {
+                        heap = Arrays.copyOf(heap, Math.min(n, heap.length * 2));
                     }
-                    sizeDelta += OVERHEAD_PER_TUPLE.toBytes();
-                    globalCandidates.add(new KeyAndTuples(keyAndPosition.getKey(), tuples));
+                    heap[heapSize] = addRow(cursors, position);
+                    heapSize++;
+                    siftUp(heapSize - 1);
                 }
-                else if (ordering.compare(keyAndPosition.getKey(), globalCandidates.peek().getKey()) > 0) {
-                    KeyAndTuples previous = globalCandidates.remove();
-                    for (Tuple tuple : previous.getTuples()) {
-                        sizeDelta -= tuple.size();
-                    }
+                else if (ordering.compare(keyCursor, positionKey(leftKey, heap[0])) > 0) {
+                    heap[0] = addRow(cursors, position);
+                    siftDown(0);
+                }
+            }
 
-                    Tuple[] tuples = getTuples(keyAndPosition, cursors);
-                    globalCandidates.add(new KeyAndTuples(keyAndPosition.getKey(), tuples));
-                    for (Tuple tuple : tuples) {
-                        sizeDelta += tuple.size();
-                    }
-                    sizeDelta += keyAndPosition.getKey().size();
+            int rejectedRows = candidates.getRowCount() - heapSize;
+            if (rejectedRows >= Math.max(heapSize, MIN_ROWS_TO_COMPACT)) {
+                compact();
+            }
+
+            memorySize = candidates.getEstimatedSize() + sizeOf(heap);
+        }
+
+        private int addRow(BlockCursor[] cursors, int position)
+        {
+            for (int channel = 0; channel < cursors.length; channel++) {
+                if (channel != keyChannelIndex) {
+                    checkState(cursors[channel].advanceToPosition(position));
                 }
             }
+            return candidates.addRow(cursors);
+        }
 
-            return sizeDelta;
+        /**
+         * Copies the rows in the heap to a new store.  The heap keeps its shape, since row
+         * heap[i] is renumbered to i.
+         */
+        private void compact()
+        {
+            candidates.compact(heap, heapSize);
+            for (int i = 0; i < heapSize; i++) {
+                heap[i] = i;
+            }
         }
 
-        private Iterable<KeyAndPosition> computePageCandidatePositions(PriorityQueue<KeyAndTuples> globalCandidates, Page page)
+        private void siftUp(int index)
         {
-            PriorityQueue<KeyAndPosition> pageCandidates = new PriorityQueue<>(Math.min(n, MAX_INITIAL_PRIORITY_QUEUE_SIZE), KeyAndPosition.keyComparator(ordering));
-            KeyAndTuples smallestGlobalCandidate = globalCandidates.peek(); // This can be null if globalCandidates is empty
-            BlockCursor cursor = page.getBlock(keyChannelIndex).cursor();
-            while (cursor.advanceNextPosition()) {
-                // Only consider value if it would be a candidate when compared against the current global candidates
-                if (globalCandidates.size() < n || ordering.compare(cursor, smallestGlobalCandidate.getKey()) > 0) {
-                    if (pageCandidates.size() < n) {
-                        pageCandidates.add(new KeyAndPosition(cursor.getTuple(), cursor.getPosition()));
-                    }
-                    else if (ordering.compare(cursor, pageCandidates.peek().getKey()) > 0) {
-                        pageCandidates.remove();
-                        pageCandidates.add(new KeyAndPosition(cursor.getTuple(), cursor.getPosition()));
-                    }
+            int row = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (compareRows(row, heap[parent]) >= 0) {
+                    break;
                 }
+                heap[index] = heap[parent];
+                index = parent;
             }
-            return pageCandidates;
+            heap[index] = row;
         }
 
-        private Tuple[] getTuples(KeyAndPosition keyAndPosition, BlockCursor[] cursors)
+        private void siftDown(int index)
         {
-            // TODO: pre-project columns to minimize storage in global candidate set
-            Tuple[] tuples = new Tuple[cursors.length];
-            for (int channel = 0; channel < cursors.length; channel++) {
-                // Optimization since key channel already has a materialized Tuple
-                tuples[channel] = (channel == keyChannelIndex) ? keyAndPosition.getKey() : cursors[channel].getTuple();
+            siftDown(index, heapSize);
+        }
+
+        private void siftDown(int index, int size)
+        {
+            int row = heap[index];
+            while (true) {
+                int child = (index << 1) + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && compareRows(heap[child + 1], heap[child]) < 0) {
+                    child++;
+                }
+                if (compareRows(row, heap[child]) <= 0) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
             }
-            return tuples;
+            heap[index] = row;
+        }
+
+        private int compareRows(int leftRow, int rightRow)
+        {
+            return ordering.compare(positionKey(leftKey, leftRow), positionKey(rightKey, rightRow));
+        }
+
+        private CandidateTuple positionKey(CandidateTuple key, int row)
+        {
+            key.setPosition(candidates.getSlice(keyChannelIndex, row), candidates.getOffset(keyChannelIndex, row));
+            return key;
         }
 
         private boolean isFull()
@@ -343,13 +401,41 @@ public class TopNOperator
             return memoryManager.canUse(memorySize);
         }
 
-        public Iterator<KeyAndTuples> build()
+        /**
+         * Sorts the heap in place, so the best row comes first, and returns the rows in that order.
+         * The iterator returns the same tuples for every row, positioned at the current row.
+         */
+        public Iterator<TupleReadable[]> build()
         {
-            ImmutableList.Builder<KeyAndTuples> minSortedGlobalCandidates = ImmutableList.builder();
-            while (!globalCandidates.isEmpty()) {
-                minSortedGlobalCandidates.add(globalCandidates.remove());
+            for (int size = heapSize - 1; size > 0; size--) {
+                int least = heap[0];
+                heap[0] = heap[size];
+                heap[size] = least;
+                siftDown(0, size);
             }
-            return minSortedGlobalCandidates.build().reverse().iterator();
+
+            final TupleReadable[] tuples = new TupleReadable[candidates.getChannelCount()];
+            for (int channel = 0; channel < tuples.length; channel++) {
+                tuples[channel] = new CandidateTuple(candidates.getTupleInfo(channel));
+            }
+
+            return new AbstractIterator<TupleReadable[]>()
+            {
+                private int position;
+
+                @Override
+                protected TupleReadable[] computeNext()
+                {
+                    if (position == heapSize) {
+                        return endOfData();
+                    }
+                    int row = heap[position++];
+                    for (int channel = 0; channel < tuples.length; channel++) {
+                        ((CandidateTuple) tuples[channel]).setPosition(candidates.getSlice(channel, row), candidates.getOffset(channel, row));
+                    }
+                    return tuples;
+                }
+            };
         }
     }
 
@@ -388,83 +474,194 @@ public class TopNOperator
         }
     }
 
-    private static class KeyAndPosition
+    /**
+     * Copy of the candidate rows.  The values of each channel are appended to slices of the
+     * default block size, and the value of a row is found by its synthetic address.
+     */
+    private static class CandidateStore
     {
-        private final Tuple key;
-        private final int position;
+        private final List<TupleInfo> tupleInfos;
+        private final List<ObjectArrayList<Slice>> slices;
+        private final LongArrayList[] valueAddresses;
+        private final BlockBuilder[] blockBuilders;
+        private long slicesMemorySize;
+        private int rowCount;
 
-        private KeyAndPosition(Tuple key, int position)
+        private CandidateStore(List<TupleInfo> tupleInfos)
         {
-            this.key = key;
-            this.position = position;
+            this.tupleInfos = ImmutableList.copyOf(tupleInfos);
+
+            ImmutableList.Builder<ObjectArrayList<Slice>> slices = ImmutableList.builder();
+            for (int channel = 0; channel < tupleInfos.size(); channel++) {
+                slices.add(new ObjectArrayList<Slice>());
+            }
+            this.slices = slices.build();
+
+            this.valueAddresses = new LongArrayList[tupleInfos.size()];
+            this.blockBuilders = new BlockBuilder[tupleInfos.size()];
+            reset();
         }
 
-        public Tuple getKey()
+        public int getChannelCount()
         {
-            return key;
+            return tupleInfos.size();
         }
 
-        public int getPosition()
+        public TupleInfo getTupleInfo(int channel)
         {
-            return position;
+            return tupleInfos.get(channel);
         }
 
-        public static Comparator<KeyAndPosition> keyComparator(final Comparator<TupleReadable> tupleReadableComparator)
+        public int getRowCount()
         {
-            return new Comparator<KeyAndPosition>()
-            {
-                @Override
-                public int compare(KeyAndPosition o1, KeyAndPosition o2)
-                {
-                    return tupleReadableComparator.compare(o1.getKey(), o2.getKey());
-                }
-            };
+            return rowCount;
         }
 
-        public static Comparator<KeyAndPosition> positionComparator()
+        public long getEstimatedSize()
         {
-            return new Comparator<KeyAndPosition>()
-            {
-                @Override
-                public int compare(KeyAndPosition o1, KeyAndPosition o2)
-                {
-                    return Long.compare(o1.getPosition(), o2.getPosition());
+            long size = slicesMemorySize;
+            for (int channel = 0; channel < valueAddresses.length; channel++) {
+                size += sizeOf(valueAddresses[channel].elements()) + sizeOf(slices.get(channel).elements());
+            }
+            return size;
+        }
+
+        public Slice getSlice(int channel, int row)
+        {
+            return slices.get(channel).get(decodeSliceIndex(valueAddresses[channel].getLong(row)));
+        }
+
+        public int getOffset(int channel, int row)
+        {
+            return decodeSliceOffset(valueAddresses[channel].getLong(row));
+        }
+
+        /**
+         * Copies the row the cursors are positioned at, and returns its row id.
+         */
+        public int addRow(BlockCursor[] cursors)
+        {
+            for (int channel = 0; channel < cursors.length; channel++) {
+                BlockCursor cursor = cursors[channel];
+                appendValue(channel, cursor.getRawSlice(), cursor.getRawOffset());
+            }
+            return rowCount++;
+        }
+
+        /**
+         * Keeps only the specified rows, which are renumbered in the order they are listed.
+         */
+        public void compact(int[] rows, int count)
+        {
+            List<ObjectArrayList<Slice>> oldSlices = new ArrayList<>(slices.size());
+            for (ObjectArrayList<Slice> channelSlices : slices) {
+                oldSlices.add(channelSlices.clone());
+            }
+            LongArrayList[] oldValueAddresses = valueAddresses.clone();
+
+            reset();
+            for (int i = 0; i < count; i++) {
+                for (int channel = 0; channel < valueAddresses.length; channel++) {
+                    long address = oldValueAddresses[channel].getLong(rows[i]);
+                    appendValue(channel, oldSlices.get(channel).get(decodeSliceIndex(address)), decodeSliceOffset(address));
                 }
-            };
+                rowCount++;
+            }
+        }
+
+        private void appendValue(int channel, Slice slice, int offset)
+        {
+            TupleInfo tupleInfo = tupleInfos.get(channel);
+            int length = tupleInfo.size(slice, offset);
+
+            BlockBuilder blockBuilder = blockBuilders[channel];
+            if (blockBuilder == null || blockBuilder.writableBytes() < length) {
+                Slice newSlice = Slices.allocate(Math.max((int) BlockBuilder.DEFAULT_MAX_BLOCK_SIZE.toBytes(), length));
+                slices.get(channel).add(newSlice);
+                slicesMemorySize += newSlice.length();
+                blockBuilder = new BlockBuilder(tupleInfo, newSlice.length(), newSlice.getOutput());
+                blockBuilders[channel] = blockBuilder;
+            }
+
+            int valueOffset = blockBuilder.size();
+            blockBuilder.appendTuple(slice, offset, length);
+            valueAddresses[channel].add(encodeSyntheticAddress(slices.get(channel).size() - 1, valueOffset));
+        }
+
+        private void reset()
+        {
+            for (int channel = 0; channel < valueAddresses.length; channel++) {
+                slices.get(channel).clear();
+                valueAddresses[channel] = new LongArrayList();
+                blockBuilders[channel] = null;
+            }
+            slicesMemorySize = 0;
+            rowCount = 0;
         }
     }
 
-    private static class KeyAndTuples
+    /**
+     * Reads the value of one channel of a candidate row in place.  The tuple is repositioned
+     * instead of allocating a new tuple for each row.
+     */
+    private static class CandidateTuple
+            implements TupleReadable
     {
-        private final Tuple key;
-        private final Tuple[] tuples;
+        private final TupleInfo tupleInfo;
+        private Slice slice;
+        private int offset;
 
-        private KeyAndTuples(Tuple key, Tuple[] tuples)
+        private CandidateTuple(TupleInfo tupleInfo)
         {
-            this.key = key;
-            this.tuples = tuples;
+            this.tupleInfo = tupleInfo;
         }
 
-        public Tuple getKey()
+        public void setPosition(Slice slice, int offset)
         {
-            return key;
+            this.slice = slice;
+            this.offset = offset;
         }
 
-        public Tuple[] getTuples()
+        @Override
+        public TupleInfo getTupleInfo()
         {
-            return tuples;
+            return tupleInfo;
         }
 
-        public static Comparator<KeyAndTuples> keyComparator(final Comparator<TupleReadable> tupleReadableComparator)
+        @Override
+        public Tuple getTuple()
         {
-            return new Comparator<KeyAndTuples>()
-            {
-                @Override
-                public int compare(KeyAndTuples o1, KeyAndTuples o2)
-                {
-                    return tupleReadableComparator.compare(o1.getKey(), o2.getKey());
-                }
-            };
+            return new Tuple(slice.slice(offset, tupleInfo.size(slice, offset)), tupleInfo);
+        }
+
+        @Override
+        public boolean getBoolean(int field)
+        {
+            return tupleInfo.getBoolean(slice, offset, field);
+        }
+
+        @Override
+        public long getLong(int field)
+        {
+            return tupleInfo.getLong(slice, offset, field);
+        }
+
+        @Override
+        public double getDouble(int field)
+        {
+            return tupleInfo.getDouble(slice, offset, field);
+        }
+
+        @Override
+        public Slice getSlice(int field)
+        {
+            return tupleInfo.getSlice(slice, offset, field);
+        }
+
+        @Override
+        public boolean isNull(int field)
+        {
+            return tupleInfo.isNull(slice, offset, field);
         }
     }
 }
@@ -13,15 +13,20 @@
  */
 package com.facebook.presto.operator;
 
+import com.facebook.presto.block.BlockCursor;
 import com.facebook.presto.operator.PagesIndex.MultiSliceFieldOrderedTupleComparator;
 import com.facebook.presto.operator.window.WindowFunction;
+import com.facebook.presto.tuple.Tuple;
 import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Booleans;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ListenableFuture;
 import it.unimi.dsi.fastutil.ints.IntComparator;
 
+import java.io.Closeable;
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 
@@ -29,8 +34,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 public class WindowOperator
-        implements Operator
+        implements Operator, Closeable
 {
+    private static final int MIN_MERGED_BATCH_POSITIONS = 1024;
+
     public static class InMemoryWindowOperatorFactory
             implements OperatorFactory
     {
@@ -43,6 +50,7 @@ public class WindowOperator
         private final int[] sortFields;
         private final boolean[] sortOrder;
         private final int expectedPositions;
+        private final Optional<File> spillPath;
         private final List<TupleInfo> tupleInfos;
         private boolean closed;
 
@@ -56,6 +64,21 @@ public class WindowOperator
                 int[] sortFields,
                 boolean[] sortOrder,
                 int expectedPositions)
+        {
+            this(operatorId, sourceTupleInfos, orderingChannel, outputChannels, windowFunctions, partitionFields, sortFields, sortOrder, expectedPositions, Optional.<File>absent());
+        }
+
+        public InMemoryWindowOperatorFactory(
+                int operatorId,
+                List<TupleInfo> sourceTupleInfos,
+                int orderingChannel,
+                int[] outputChannels,
+                List<WindowFunction> windowFunctions,
+                int[] partitionFields,
+                int[] sortFields,
+                boolean[] sortOrder,
+                int expectedPositions,
+                Optional<File> spillPath)
         {
             this.operatorId = operatorId;
             this.sourceTupleInfos = sourceTupleInfos;
@@ -66,6 +89,7 @@ public class WindowOperator
             this.sortFields = sortFields;
             this.sortOrder = sortOrder;
             this.expectedPositions = expectedPositions;
+            this.spillPath = checkNotNull(spillPath, "spillPath is null");
 
             this.tupleInfos = toTupleInfos(sourceTupleInfos, outputChannels, windowFunctions);
         }
@@ -91,7 +115,8 @@ public class WindowOperator
                     partitionFields,
                     sortFields,
                     sortOrder,
-                    expectedPositions);
+                    expectedPositions,
+                    spillPath);
         }
 
         @Override
@@ -109,18 +134,25 @@ public class WindowOperator
     }
 
     private final OperatorContext operatorContext;
+    private final List<TupleInfo> sourceTupleInfos;
     private final int orderingChannel;
     private final int[] outputChannels;
     private final List<WindowFunction> windowFunctions;
     private final int[] partitionFields;
+    private final boolean[] partitionOrder;
     private final int[] sortFields;
     private final boolean[] sortOrder;
+    private final int expectedPositions;
     private final List<TupleInfo> tupleInfos;
 
-    private final PagesIndex pageIndex;
+    private final ExternalSorter sorter;
+    private PagesIndex pageIndex;
 
     private final PageBuilder pageBuilder;
 
+    // when the input was spilled, the merged rows are loaded into the index a few partitions at a time
+    private boolean mergeHasNextRow;
+
     private State state = State.NEEDS_INPUT;
 
     private int currentPosition;
@@ -142,18 +174,42 @@ public class WindowOperator
             int[] sortFields,
             boolean[] sortOrder,
             int expectedPositions)
+    {
+        this(operatorContext, sourceTupleInfos, orderingChannel, outputChannels, windowFunctions, partitionFields, sortFields, sortOrder, expectedPositions, Optional.<File>absent());
+    }
+
+    public WindowOperator(
+            OperatorContext operatorContext,
+            List<TupleInfo> sourceTupleInfos,
+            int orderingChannel,
+            int[] outputChannels,
+            List<WindowFunction> windowFunctions,
+            int[] partitionFields,
+            int[] sortFields,
+            boolean[] sortOrder,
+            int expectedPositions,
+            Optional<File> spillPath)
     {
         this.operatorContext = checkNotNull(operatorContext, "operatorContext is null");
+        this.sourceTupleInfos = ImmutableList.copyOf(checkNotNull(sourceTupleInfos, "sourceTupleInfos is null"));
         this.orderingChannel = orderingChannel;
         this.outputChannels = checkNotNull(outputChannels, "outputChannels is null").clone();
         this.windowFunctions = checkNotNull(windowFunctions, "windowFunctions is null");
         this.partitionFields = checkNotNull(partitionFields, "partitionFields is null").clone();
         this.sortFields = checkNotNull(sortFields, "sortFields is null").clone();
         this.sortOrder = checkNotNull(sortOrder, "sortOrder is null").clone();
+        this.expectedPositions = expectedPositions;
+
+        this.partitionOrder = new boolean[partitionFields.length];
+        Arrays.fill(partitionOrder, true);
 
         this.tupleInfos = toTupleInfos(sourceTupleInfos, outputChannels, windowFunctions);
 
-        this.pageIndex = new PagesIndex(sourceTupleInfos, expectedPositions, operatorContext);
+        // sort by partition fields, then sort fields
+        int[] orderFields = Ints.concat(this.partitionFields, this.sortFields);
+        boolean[] ordering = Booleans.concat(partitionOrder, this.sortOrder);
+        this.sorter = new ExternalSorter(sourceTupleInfos, expectedPositions, orderingChannel, orderFields, ordering, operatorContext, spillPath);
+
         this.pageBuilder = new PageBuilder(this.tupleInfos);
     }
 
@@ -175,23 +231,14 @@ public class WindowOperator
         if (state == State.NEEDS_INPUT) {
             state = State.HAS_OUTPUT;
 
-            // sort by partition fields, then sort fields
-            int[] orderFields = Ints.concat(partitionFields, sortFields);
-
-            boolean[] partitionOrder = new boolean[partitionFields.length];
-            Arrays.fill(partitionOrder, true);
-            boolean[] ordering = Booleans.concat(partitionOrder, sortOrder);
-
-            // sort the index
-            pageIndex.sort(orderingChannel, orderFields, ordering);
-
-            // create partition comparator
-            ChannelIndex index = pageIndex.getIndex(orderingChannel);
-            partitionComparator = new MultiSliceFieldOrderedTupleComparator(partitionFields, partitionOrder, index);
-
-            // create order comparator
-            index = pageIndex.getIndex(orderingChannel);
-            orderComparator = new MultiSliceFieldOrderedTupleComparator(sortFields, sortOrder, index);
+            if (sorter.isSpilled()) {
+                mergeHasNextRow = sorter.advanceNextPosition();
+                loadMergedPartitions();
+            }
+            else {
+                // sort the index
+                setPageIndex(sorter.sortPagesIndex());
+            }
         }
     }
 
@@ -204,7 +251,7 @@ public class WindowOperator
     @Override
     public ListenableFuture<?> isBlocked()
     {
-        return NOT_BLOCKED;
+        return sorter.isBlocked();
     }
 
     @Override
@@ -219,7 +266,7 @@ public class WindowOperator
         checkState(state == State.NEEDS_INPUT, "Operator is already finishing");
         checkNotNull(page, "page is null");
 
-        pageIndex.addPage(page);
+        sorter.addPage(page);
     }
 
     @Override
@@ -230,8 +277,12 @@ public class WindowOperator
         }
 
         if (currentPosition >= pageIndex.getPositionCount()) {
-            state = State.FINISHED;
-            return null;
+            if (!mergeHasNextRow) {
+                state = State.FINISHED;
+                sorter.close();
+                return null;
+            }
+            loadMergedPartitions();
         }
 
         // iterate through the positions sequentially until we have one full page
@@ -291,6 +342,75 @@ public class WindowOperator
         return page;
     }
 
+    @Override
+    public void close()
+    {
+        sorter.close();
+    }
+
+    private void setPageIndex(PagesIndex pageIndex)
+    {
+        this.pageIndex = pageIndex;
+        currentPosition = 0;
+        partitionEnd = 0;
+        peerGroupEnd = 0;
+
+        // create partition comparator
+        ChannelIndex index = pageIndex.getIndex(orderingChannel);
+        partitionComparator = new MultiSliceFieldOrderedTupleComparator(partitionFields, partitionOrder, index);
+
+        // create order comparator
+        orderComparator = new MultiSliceFieldOrderedTupleComparator(sortFields, sortOrder, index);
+    }
+
+    /**
+     * Loads whole partitions from the merged runs into a new index.  Small partitions
+     * are batched together, but each partition must fit in memory on its own.
+     */
+    private void loadMergedPartitions()
+    {
+        MultiSliceFieldOrderedTupleComparator comparator = new MultiSliceFieldOrderedTupleComparator(
+                partitionFields,
+                partitionOrder,
+                sourceTupleInfos.get(orderingChannel),
+                new long[0]);
+
+        ImmutableList.Builder<Page> pages = ImmutableList.builder();
+        PageBuilder partitionsBuilder = new PageBuilder(sourceTupleInfos);
+        int positionCount = 0;
+        Tuple previous = null;
+        while (mergeHasNextRow) {
+            BlockCursor orderingCursor = sorter.getCursor(orderingChannel);
+
+            // stop at a partition boundary once enough rows have been loaded
+            if (positionCount >= MIN_MERGED_BATCH_POSITIONS && comparator.compare(previous.getTupleSlice(), 0, orderingCursor.getRawSlice(), orderingCursor.getRawOffset()) != 0) {
+                break;
+            }
+
+            previous = orderingCursor.getTuple();
+            for (int channel = 0; channel < sourceTupleInfos.size(); channel++) {
+                sorter.getCursor(channel).appendTupleTo(partitionsBuilder.getBlockBuilder(channel));
+            }
+            positionCount++;
+            if (partitionsBuilder.isFull()) {
+                pages.add(partitionsBuilder.build());
+                partitionsBuilder.reset();
+            }
+
+            mergeHasNextRow = sorter.advanceNextPosition();
+        }
+        if (!partitionsBuilder.isEmpty()) {
+            pages.add(partitionsBuilder.build());
+        }
+
+        // the new index reuses the memory reservation of the previous index
+        PagesIndex partitionsIndex = new PagesIndex(sourceTupleInfos, positionCount, operatorContext);
+        for (Page page : pages.build()) {
+            partitionsIndex.addPage(page);
+        }
+        setPageIndex(partitionsIndex);
+    }
+
     private static List<TupleInfo> toTupleInfos(List<TupleInfo> sourceTupleInfos, int[] outputChannels, List<WindowFunction> windowFunctions)
     {
         ImmutableList.Builder<TupleInfo> tupleInfosBuilder = ImmutableList.builder();
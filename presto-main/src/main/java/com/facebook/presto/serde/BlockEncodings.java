@@ -30,6 +30,8 @@ public class BlockEncodings
                 return new DictionaryBlockEncoding(input);
             case 3:
                 return new SnappyBlockEncoding(input);
+            case 4:
+                return new ColumnarBlockEncoding(input);
             default:
                 throw new IllegalArgumentException("unknown encoding " + encoding);
         }
@@ -54,6 +56,10 @@ public class BlockEncodings
             output.writeByte(3);
             SnappyBlockEncoding.serialize(output, (SnappyBlockEncoding) encoding);
         }
+        else if (encoding instanceof ColumnarBlockEncoding) {
+            output.writeByte(4);
+            ColumnarBlockEncoding.serialize(output, (ColumnarBlockEncoding) encoding);
+        }
         else {
             throw new IllegalArgumentException("unknown encoding " + encoding);
         }
@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.serde;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.block.columnar.AbstractColumnarBlock;
+import com.facebook.presto.block.columnar.BooleanArrayBlock;
+import com.facebook.presto.block.columnar.DoubleArrayBlock;
+import com.facebook.presto.block.columnar.LongArrayBlock;
+import com.facebook.presto.block.columnar.SliceArrayBlock;
+import com.facebook.presto.tuple.TupleInfo;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes the null flags of a columnar block followed by its values.  Variable
+ * width values are written as a length per position followed by the packed data.
+ */
+public class ColumnarBlockEncoding
+        implements BlockEncoding
+{
+    private final TupleInfo tupleInfo;
+
+    public ColumnarBlockEncoding(TupleInfo tupleInfo)
+    {
+        this.tupleInfo = checkNotNull(tupleInfo, "tupleInfo is null");
+        checkArgument(tupleInfo.getFieldCount() == 1, "Columnar blocks only support a single field: %s", tupleInfo);
+    }
+
+    public ColumnarBlockEncoding(SliceInput input)
+    {
+        this(TupleInfoSerde.readTupleInfo(checkNotNull(input, "input is null")));
+    }
+
+    @Override
+    public TupleInfo getTupleInfo()
+    {
+        return tupleInfo;
+    }
+
+    @Override
+    public void writeBlock(SliceOutput sliceOutput, Block block)
+    {
+        checkArgument(block.getTupleInfo().equals(tupleInfo), "Invalid tuple info");
+        AbstractColumnarBlock columnarBlock = (AbstractColumnarBlock) block;
+
+        int positionCount = columnarBlock.getPositionCount();
+        sliceOutput.appendInt(positionCount);
+        for (int position = 0; position < positionCount; position++) {
+            sliceOutput.writeBoolean(columnarBlock.isNull(position));
+        }
+
+        switch (tupleInfo.getTypes().get(0)) {
+            case BOOLEAN:
+                for (int position = 0; position < positionCount; position++) {
+                    sliceOutput.writeBoolean(columnarBlock.getBoolean(position));
+                }
+                break;
+            case FIXED_INT_64:
+                for (int position = 0; position < positionCount; position++) {
+                    sliceOutput.writeLong(columnarBlock.getLong(position));
+                }
+                break;
+            case DOUBLE:
+                for (int position = 0; position < positionCount; position++) {
+                    sliceOutput.writeDouble(columnarBlock.getDouble(position));
+                }
+                break;
+            case VARIABLE_BINARY:
+                for (int position = 0; position < positionCount; position++) {
+                    sliceOutput.writeInt(columnarBlock.getSlice(position).length());
+                }
+                for (int position = 0; position < positionCount; position++) {
+                    sliceOutput.writeBytes(columnarBlock.getSlice(position));
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unsupported type " + tupleInfo.getTypes().get(0));
+        }
+    }
+
+    @Override
+    public Block readBlock(SliceInput sliceInput)
+    {
+        int positionCount = sliceInput.readInt();
+        boolean[] nulls = new boolean[positionCount];
+        for (int position = 0; position < positionCount; position++) {
+            nulls[position] = sliceInput.readBoolean();
+        }
+
+        switch (tupleInfo.getTypes().get(0)) {
+            case BOOLEAN: {
+                boolean[] values = new boolean[positionCount];
+                for (int position = 0; position < positionCount; position++) {
+                    values[position] = sliceInput.readBoolean();
+                }
+                return new BooleanArrayBlock(positionCount, nulls, values);
+            }
+            case FIXED_INT_64: {
+                long[] values = new long[positionCount];
+                for (int position = 0; position < positionCount; position++) {
+                    values[position] = sliceInput.readLong();
+                }
+                return new LongArrayBlock(positionCount, nulls, values);
+            }
+            case DOUBLE: {
+                double[] values = new double[positionCount];
+                for (int position = 0; position < positionCount; position++) {
+                    values[position] = sliceInput.readDouble();
+                }
+                return new DoubleArrayBlock(positionCount, nulls, values);
+            }
+            case VARIABLE_BINARY: {
+                int[] offsets = new int[positionCount + 1];
+                for (int position = 0; position < positionCount; position++) {
+                    offsets[position + 1] = offsets[position] + sliceInput.readInt();
+                }
+                Slice data = sliceInput.readSlice(offsets[positionCount]);
+                return new SliceArrayBlock(positionCount, nulls, offsets, data);
+            }
+            default:
+                throw new IllegalStateException("Unsupported type " + tupleInfo.getTypes().get(0));
+        }
+    }
+
+    public static void serialize(SliceOutput output, ColumnarBlockEncoding encoding)
+    {
+        TupleInfoSerde.writeTupleInfo(output, encoding.tupleInfo);
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.split;
+
+import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.operator.DynamicFilter;
+import com.facebook.presto.operator.Operator;
+import com.facebook.presto.operator.OperatorContext;
+import com.facebook.presto.operator.Page;
+import com.facebook.presto.operator.PageBuilder;
+import com.facebook.presto.operator.RecordProjectOperator;
+import com.facebook.presto.spi.ColumnHandle;
+import com.facebook.presto.spi.ColumnType;
+import com.facebook.presto.spi.RecordCursor;
+import com.facebook.presto.spi.Split;
+import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Applies the dynamic filters of joins to the data streams of a table scan, so rows
+ * that can not match the build side of the join are skipped before they are filtered
+ * and projected.  The filters are keyed by the index of the scanned column.
+ * <p/>
+ * The filters become available when the join hashes are built.  Rows read before then
+ * are not filtered, and a failed build is reported by the join, not the scan.
+ */
+public class DynamicFilterDataStreamProvider
+        implements DataStreamProvider
+{
+    private final DataStreamProvider delegate;
+    private final ListMultimap<Integer, ListenableFuture<Optional<DynamicFilter>>> dynamicFilters;
+
+    public DynamicFilterDataStreamProvider(DataStreamProvider delegate, ListMultimap<Integer, ListenableFuture<Optional<DynamicFilter>>> dynamicFilters)
+    {
+        this.delegate = checkNotNull(delegate, "delegate is null");
+        this.dynamicFilters = ImmutableListMultimap.copyOf(checkNotNull(dynamicFilters, "dynamicFilters is null"));
+    }
+
+    @Override
+    public Operator createNewDataStream(OperatorContext operatorContext, Split split, List<ColumnHandle> columns)
+    {
+        Operator dataStream = delegate.createNewDataStream(operatorContext, split, columns);
+        DynamicFilters filters = new DynamicFilters(dynamicFilters);
+        if (dataStream instanceof RecordProjectOperator) {
+            RecordCursor cursor = ((RecordProjectOperator) dataStream).getCursor();
+
+            ImmutableList.Builder<ColumnType> columnTypes = ImmutableList.builder();
+            for (int field = 0; field < columns.size(); field++) {
+                columnTypes.add(cursor.getType(field));
+            }
+            return new RecordProjectOperator(operatorContext, columnTypes.build(), new DynamicFilterRecordCursor(cursor, filters));
+        }
+        return new DynamicFilterOperator(dataStream, filters);
+    }
+
+    /**
+     * The filters of a single data stream, resolved once all of the join hashes are built.
+     */
+    private static class DynamicFilters
+    {
+        private final List<Entry<Integer, ListenableFuture<Optional<DynamicFilter>>>> futures;
+        private boolean resolved;
+        private int[] channels;
+        private DynamicFilter[] filters;
+
+        private DynamicFilters(ListMultimap<Integer, ListenableFuture<Optional<DynamicFilter>>> futures)
+        {
+            this.futures = ImmutableList.copyOf(futures.entries());
+        }
+
+        /**
+         * Returns false if the filters are not available yet.
+         */
+        public boolean isResolved()
+        {
+            if (resolved) {
+                return true;
+            }
+
+            for (Entry<Integer, ListenableFuture<Optional<DynamicFilter>>> entry : futures) {
+                if (!entry.getValue().isDone()) {
+                    return false;
+                }
+            }
+
+            List<Integer> channels = new ArrayList<>();
+            List<DynamicFilter> filters = new ArrayList<>();
+            for (Entry<Integer, ListenableFuture<Optional<DynamicFilter>>> entry : futures) {
+                Optional<DynamicFilter> filter = getFilter(entry.getValue());
+                if (filter.isPresent()) {
+                    channels.add(entry.getKey());
+                    filters.add(filter.get());
+                }
+            }
+
+            this.channels = new int[channels.size()];
+            for (int i = 0; i < this.channels.length; i++) {
+                this.channels[i] = channels.get(i);
+            }
+            this.filters = filters.toArray(new DynamicFilter[filters.size()]);
+            resolved = true;
+            return true;
+        }
+
+        public boolean accept(RecordCursor cursor)
+        {
+            for (int i = 0; i < channels.length; i++) {
+                int field = channels[i];
+                if (cursor.isNull(field) || !filters[i].mightContain(cursor.getLong(field))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean accept(BlockCursor[] cursors)
+        {
+            for (int i = 0; i < channels.length; i++) {
+                BlockCursor cursor = cursors[channels[i]];
+                if (cursor.isNull(0) || !filters[i].mightContain(cursor.getLong(0))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean isEmpty()
+        {
+            return channels.length == 0;
+        }
+
+        private static Optional<DynamicFilter> getFilter(ListenableFuture<Optional<DynamicFilter>> future)
+        {
+            try {
+                return future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.absent();
+            }
+            catch (ExecutionException e) {
+                // the join will fail the query
+                return Optional.absent();
+            }
+        }
+    }
+
+    private static class DynamicFilterRecordCursor
+            implements RecordCursor
+    {
+        private final RecordCursor delegate;
+        private final DynamicFilters filters;
+
+        private DynamicFilterRecordCursor(RecordCursor delegate, DynamicFilters filters)
+        {
+            this.delegate = delegate;
+            this.filters = filters;
+        }
+
+        @Override
+        public long getTotalBytes()
+        {
+            return delegate.getTotalBytes();
+        }
+
+        @Override
+        public long getCompletedBytes()
+        {
+            return delegate.getCompletedBytes();
+        }
+
+        @Override
+        public ColumnType getType(int field)
+        {
+            return delegate.getType(field);
+        }
+
+        @Override
+        public boolean advanceNextPosition()
+        {
+            while (delegate.advanceNextPosition()) {
+                if (!filters.isResolved() || filters.accept(delegate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean getBoolean(int field)
+        {
+            return delegate.getBoolean(field);
+        }
+
+        @Override
+        public long getLong(int field)
+        {
+            return delegate.getLong(field);
+        }
+
+        @Override
+        public double getDouble(int field)
+        {
+            return delegate.getDouble(field);
+        }
+
+        @Override
+        public byte[] getString(int field)
+        {
+            return delegate.getString(field);
+        }
+
+        @Override
+        public boolean isNull(int field)
+        {
+            return delegate.isNull(field);
+        }
+
+        @Override
+        public void close()
+        {
+            delegate.close();
+        }
+    }
+
+    private static class DynamicFilterOperator
+            implements Operator
+    {
+        private final Operator delegate;
+        private final DynamicFilters filters;
+
+        private DynamicFilterOperator(Operator delegate, DynamicFilters filters)
+        {
+            this.delegate = delegate;
+            this.filters = filters;
+        }
+
+        @Override
+        public OperatorContext getOperatorContext()
+        {
+            return delegate.getOperatorContext();
+        }
+
+        @Override
+        public List<TupleInfo> getTupleInfos()
+        {
+            return delegate.getTupleInfos();
+        }
+
+        @Override
+        public void finish()
+        {
+            delegate.finish();
+        }
+
+        @Override
+        public boolean isFinished()
+        {
+            return delegate.isFinished();
+        }
+
+        @Override
+        public ListenableFuture<?> isBlocked()
+        {
+            return delegate.isBlocked();
+        }
+
+        @Override
+        public boolean needsInput()
+        {
+            return delegate.needsInput();
+        }
+
+        @Override
+        public void addInput(Page page)
+        {
+            delegate.addInput(page);
+        }
+
+        @Override
+        public Page getOutput()
+        {
+            Page page = delegate.getOutput();
+            if (page == null || !filters.isResolved() || filters.isEmpty()) {
+                return page;
+            }
+
+            BlockCursor[] cursors = new BlockCursor[page.getChannelCount()];
+            for (int channel = 0; channel < cursors.length; channel++) {
+                cursors[channel] = page.getBlock(channel).cursor();
+            }
+
+            PageBuilder pageBuilder = new PageBuilder(getTupleInfos());
+            int positionCount = 0;
+            for (int position = 0; position < page.getPositionCount(); position++) {
+                for (BlockCursor cursor : cursors) {
+                    cursor.advanceNextPosition();
+                }
+                if (filters.accept(cursors)) {
+                    for (int channel = 0; channel < cursors.length; channel++) {
+                        cursors[channel].appendTupleTo(pageBuilder.getBlockBuilder(channel));
+                    }
+                    positionCount++;
+                }
+            }
+
+            if (positionCount == page.getPositionCount()) {
+                return page;
+            }
+            if (positionCount == 0) {
+                return null;
+            }
+            return pageBuilder.build();
+        }
+    }
+}
@@ -13,6 +13,11 @@
  */
 package com.facebook.presto.sql.gen;
 
+import com.facebook.presto.block.columnar.AbstractColumnarBlock;
+import com.facebook.presto.block.columnar.BooleanArrayBlock;
+import com.facebook.presto.block.columnar.DoubleArrayBlock;
+import com.facebook.presto.block.columnar.LongArrayBlock;
+import com.facebook.presto.block.columnar.SliceArrayBlock;
 import com.facebook.presto.byteCode.Block;
 import com.facebook.presto.byteCode.ByteCodeNode;
 import com.facebook.presto.byteCode.CompilerContext;
@@ -92,6 +97,7 @@ import static com.facebook.presto.byteCode.instruction.JumpInstruction.jump;
 import static com.facebook.presto.sql.gen.SliceConstant.sliceConstant;
 import static com.facebook.presto.sql.gen.TypedByteCodeNode.typedByteCodeNode;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Predicates.not;
 import static com.google.common.collect.Iterables.transform;
@@ -104,14 +110,48 @@ public class ByteCodeExpressionVisitor
     private final BootstrapFunctionBinder bootstrapFunctionBinder;
     private final Map<Input, Type> inputTypes;
     private final ByteCodeNode getSessionByteCode;
-    private final boolean sourceIsCursor;
+    private final SourceType sourceType;
 
-    public ByteCodeExpressionVisitor(BootstrapFunctionBinder bootstrapFunctionBinder, Map<Input, Type> inputTypes, ByteCodeNode getSessionByteCode, boolean sourceIsCursor)
+    public enum SourceType
+    {
+        /**
+         * Inputs are read from a RecordCursor named "cursor".
+         */
+        RECORD_CURSOR,
+
+        /**
+         * Inputs are read from TupleReadables named "channel_N".
+         */
+        TUPLE_READABLE,
+
+        /**
+         * Inputs are read at "position" from columnar blocks named "channel_N".
+         */
+        COLUMNAR_BLOCK
+    }
+
+    public ByteCodeExpressionVisitor(BootstrapFunctionBinder bootstrapFunctionBinder, Map<Input, Type> inputTypes, ByteCodeNode getSessionByteCode, SourceType sourceType)
     {
         this.bootstrapFunctionBinder = bootstrapFunctionBinder;
         this.inputTypes = inputTypes;
         this.getSessionByteCode = getSessionByteCode;
-        this.sourceIsCursor = sourceIsCursor;
+        this.sourceType = checkNotNull(sourceType, "sourceType is null");
+    }
+
+    public static Class<? extends AbstractColumnarBlock> getColumnarBlockType(Type type)
+    {
+        switch (type) {
+            case BOOLEAN:
+                return BooleanArrayBlock.class;
+            case BIGINT:
+                return LongArrayBlock.class;
+            case DOUBLE:
+                return DoubleArrayBlock.class;
+            case VARCHAR:
+                return SliceArrayBlock.class;
+            default:
+                throw new UnsupportedOperationException("not yet implemented: " + type);
+        }
     }
 
     @Override
@@ -153,7 +193,50 @@ public class ByteCodeExpressionVisitor
         Type type = inputTypes.get(input);
         checkState(type != null, "No type for input %s", input);
 
-        if (sourceIsCursor) {
+        if (sourceType == SourceType.COLUMNAR_BLOCK) {
+            checkState(input.getField() == 0, "Columnar blocks only have a single field: %s", input);
+            Class<? extends AbstractColumnarBlock> blockType = getColumnarBlockType(type);
+            Block isNullCheck = new Block(context)
+                    .setDescription(format("channel_%d.isNull(position)", channel))
+                    .getVariable("channel_" + channel)
+                    .getVariable("position")
+                    .invokeVirtual(blockType, "isNull", boolean.class, int.class);
+
+            Class<?> javaType;
+            String getter;
+            switch (type) {
+                case BOOLEAN:
+                    javaType = boolean.class;
+                    getter = "getBoolean";
+                    break;
+                case BIGINT:
+                    javaType = long.class;
+                    getter = "getLong";
+                    break;
+                case DOUBLE:
+                    javaType = double.class;
+                    getter = "getDouble";
+                    break;
+                case VARCHAR:
+                    javaType = Slice.class;
+                    getter = "getSlice";
+                    break;
+                default:
+                    throw new UnsupportedOperationException("not yet implemented: " + type);
+            }
+
+            Block isNull = new Block(context)
+                    .putVariable("wasNull", true)
+                    .pushJavaDefault(javaType);
+
+            Block isNotNull = new Block(context)
+                    .getVariable("channel_" + channel)
+                    .getVariable("position")
+                    .invokeVirtual(blockType, getter, javaType, int.class);
+
+            return typedByteCodeNode(new IfStatement(context, isNullCheck, isNull, isNotNull), javaType);
+        }
+        else if (sourceType == SourceType.RECORD_CURSOR) {
             Block isNullCheck = new Block(context)
                     .setDescription(format("cursor.get%s(%d)", type, channel))
                     .getVariable("cursor")
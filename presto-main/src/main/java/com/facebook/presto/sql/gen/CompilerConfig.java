@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.sql.gen;
+
+import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
+
+public class CompilerConfig
+{
+    private boolean columnarProcessingEnabled;
+
+    public boolean isColumnarProcessingEnabled()
+    {
+        return columnarProcessingEnabled;
+    }
+
+    @Config("compiler.columnar-processing-enabled")
+    @ConfigDescription("Generate filter and projection code that processes a page of columnar values at a time")
+    public CompilerConfig setColumnarProcessingEnabled(boolean columnarProcessingEnabled)
+    {
+        this.columnarProcessingEnabled = columnarProcessingEnabled;
+        return this;
+    }
+}
@@ -15,6 +15,8 @@ package com.facebook.presto.sql.gen;
 
 import com.facebook.presto.block.BlockBuilder;
 import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.block.columnar.AbstractColumnarBlock;
+import com.facebook.presto.block.columnar.ColumnarBlocks;
 import com.facebook.presto.byteCode.Block;
 import com.facebook.presto.byteCode.ClassDefinition;
 import com.facebook.presto.byteCode.ClassInfoLoader;
@@ -47,6 +49,7 @@ import com.facebook.presto.spi.RecordCursor;
 import com.facebook.presto.split.DataStreamProvider;
 import com.facebook.presto.sql.analyzer.Session;
 import com.facebook.presto.sql.analyzer.Type;
+import com.facebook.presto.sql.gen.ByteCodeExpressionVisitor.SourceType;
 import com.facebook.presto.sql.planner.plan.PlanNodeId;
 import com.facebook.presto.sql.tree.Expression;
 import com.facebook.presto.sql.tree.Input;
@@ -60,6 +63,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Ordering;
 import com.google.common.io.Files;
 import io.airlift.log.Logger;
@@ -85,6 +89,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.SortedMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -98,6 +103,10 @@ import static com.facebook.presto.byteCode.OpCodes.NOP;
 import static com.facebook.presto.byteCode.ParameterizedType.type;
 import static com.facebook.presto.byteCode.ParameterizedType.typeFromPathName;
 import static com.facebook.presto.byteCode.control.ForLoop.forLoopBuilder;
+import static com.facebook.presto.sql.gen.ByteCodeExpressionVisitor.SourceType.COLUMNAR_BLOCK;
+import static com.facebook.presto.sql.gen.ByteCodeExpressionVisitor.SourceType.RECORD_CURSOR;
+import static com.facebook.presto.sql.gen.ByteCodeExpressionVisitor.SourceType.TUPLE_READABLE;
+import static com.facebook.presto.sql.gen.ByteCodeExpressionVisitor.getColumnarBlockType;
 import static com.google.common.base.Objects.toStringHelper;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -117,6 +126,7 @@ public class ExpressionCompiler
 
     private final Method bootstrapMethod;
     private final BootstrapFunctionBinder bootstrapFunctionBinder;
+    private final boolean columnarProcessingEnabled;
 
     private final LoadingCache<OperatorCacheKey, FilterAndProjectOperatorFactoryFactory> operatorFactories = CacheBuilder.newBuilder().maximumSize(1000).build(
             new CacheLoader<OperatorCacheKey, FilterAndProjectOperatorFactoryFactory>()
@@ -140,10 +150,16 @@ public class ExpressionCompiler
                 }
             });
 
-    @Inject
     public ExpressionCompiler(Metadata metadata)
+    {
+        this(metadata, new CompilerConfig());
+    }
+
+    @Inject
+    public ExpressionCompiler(Metadata metadata, CompilerConfig config)
     {
         this.bootstrapFunctionBinder = new BootstrapFunctionBinder(checkNotNull(metadata, "metadata is null"));
+        this.columnarProcessingEnabled = checkNotNull(config, "config is null").isColumnarProcessingEnabled();
 
         // code gen a bootstrap class
         try {
@@ -256,11 +272,19 @@ public class ExpressionCompiler
 
         generateFilterAndProjectRowOriented(classDefinition, projections, inputTypes);
 
+        boolean columnar = columnarProcessingEnabled && isColumnarSupported(inputTypes);
+        if (columnar) {
+            generateFilterAndProjectColumnar(classDefinition, projections, inputTypes);
+        }
+
         //
         // filter method
         //
-        generateFilterMethod(classDefinition, filter, inputTypes, true);
-        generateFilterMethod(classDefinition, filter, inputTypes, false);
+        generateFilterMethod(classDefinition, filter, inputTypes, RECORD_CURSOR);
+        generateFilterMethod(classDefinition, filter, inputTypes, TUPLE_READABLE);
+        if (columnar) {
+            generateFilterMethod(classDefinition, filter, inputTypes, COLUMNAR_BLOCK);
+        }
 
         //
         // project methods
@@ -268,8 +292,11 @@ public class ExpressionCompiler
         List<TupleInfo> tupleInfos = new ArrayList<>();
         int projectionIndex = 0;
         for (Expression projection : projections) {
-            Class<?> type = generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, true);
-            generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, false);
+            Class<?> type = generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, RECORD_CURSOR);
+            generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, TUPLE_READABLE);
+            if (columnar) {
+                generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, COLUMNAR_BLOCK);
+            }
             if (type == boolean.class) {
                 tupleInfos.add(TupleInfo.SINGLE_BOOLEAN);
             }
@@ -390,11 +417,19 @@ public class ExpressionCompiler
         generateFilterAndProjectRowOriented(classDefinition, projections, inputTypes);
         generateFilterAndProjectCursorMethod(classDefinition, projections);
 
+        boolean columnar = columnarProcessingEnabled && isColumnarSupported(inputTypes);
+        if (columnar) {
+            generateFilterAndProjectColumnar(classDefinition, projections, inputTypes);
+        }
+
         //
         // filter method
         //
-        generateFilterMethod(classDefinition, filter, inputTypes, true);
-        generateFilterMethod(classDefinition, filter, inputTypes, false);
+        generateFilterMethod(classDefinition, filter, inputTypes, RECORD_CURSOR);
+        generateFilterMethod(classDefinition, filter, inputTypes, TUPLE_READABLE);
+        if (columnar) {
+            generateFilterMethod(classDefinition, filter, inputTypes, COLUMNAR_BLOCK);
+        }
 
         //
         // project methods
@@ -402,8 +437,11 @@ public class ExpressionCompiler
         List<TupleInfo> tupleInfos = new ArrayList<>();
         int projectionIndex = 0;
         for (Expression projection : projections) {
-            Class<?> type = generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, true);
-            generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, false);
+            Class<?> type = generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, RECORD_CURSOR);
+            generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, TUPLE_READABLE);
+            if (columnar) {
+                generateProjectMethod(classDefinition, "project_" + projectionIndex, projection, inputTypes, COLUMNAR_BLOCK);
+            }
             if (type == boolean.class) {
                 tupleInfos.add(TupleInfo.SINGLE_BOOLEAN);
             }
@@ -651,19 +689,165 @@ public class ExpressionCompiler
                 .retInt();
     }
 
+    private void generateFilterAndProjectColumnar(ClassDefinition classDefinition,
+            List<Expression> projections,
+            Map<Input, Type> inputTypes)
+    {
+        MethodDefinition filterAndProjectMethod = classDefinition.declareMethod(new CompilerContext(bootstrapMethod),
+                a(PUBLIC),
+                "filterAndProjectColumnar",
+                type(void.class),
+                arg("blocks", com.facebook.presto.block.Block[].class),
+                arg("pageBuilder", PageBuilder.class));
+
+        CompilerContext compilerContext = filterAndProjectMethod.getCompilerContext();
+        Block body = filterAndProjectMethod.getBody();
+
+        LocalVariableDefinition rowsVariable = compilerContext.declareVariable(int.class, "rows");
+        body.comment("int rows = blocks[0].getPositionCount();")
+                .getVariable("blocks")
+                .push(0)
+                .getObjectArrayElement()
+                .invokeInterface(com.facebook.presto.block.Block.class, "getPositionCount", int.class)
+                .putVariable(rowsVariable);
+
+        // convert each referenced channel to a columnar block once per page
+        SortedMap<Integer, Type> channels = getColumnarChannels(inputTypes);
+        for (Entry<Integer, Type> entry : channels.entrySet()) {
+            int channel = entry.getKey();
+            Class<? extends AbstractColumnarBlock> blockType = getColumnarBlockType(entry.getValue());
+            LocalVariableDefinition channelVariable = compilerContext.declareVariable(blockType, "channel_" + channel);
+            body.comment("%s channel_%s = (%s) ColumnarBlocks.toColumnarBlock(blocks[%s]);", blockType.getSimpleName(), channel, blockType.getSimpleName(), channel)
+                    .getVariable("blocks")
+                    .push(channel)
+                    .getObjectArrayElement()
+                    .invokeStatic(ColumnarBlocks.class, "toColumnarBlock", AbstractColumnarBlock.class, com.facebook.presto.block.Block.class)
+                    .checkCast(blockType)
+                    .putVariable(channelVariable);
+        }
+
+        LocalVariableDefinition selectedPositionsVariable = compilerContext.declareVariable(int[].class, "selectedPositions");
+        body.comment("int[] selectedPositions = getSelectedPositions(rows);")
+                .pushThis()
+                .getVariable(rowsVariable)
+                .invokeVirtual(classDefinition.getType(), "getSelectedPositions", type(int[].class), type(int.class))
+                .putVariable(selectedPositionsVariable);
+
+        LocalVariableDefinition selectedCountVariable = compilerContext.declareVariable(int.class, "selectedCount");
+        body.comment("int selectedCount = 0;")
+                .putVariable(selectedCountVariable, 0);
+
+        //
+        // filter loop: record the selected positions
+        //
+        LocalVariableDefinition positionVariable = compilerContext.declareVariable(int.class, "position");
+        ForLoopBuilder filterLoop = forLoopBuilder(compilerContext)
+                .comment("for (position = 0; position < rows; position++)")
+                .initialize(new Block(compilerContext).putVariable(positionVariable, 0))
+                .condition(new Block(compilerContext)
+                        .getVariable(positionVariable)
+                        .getVariable(rowsVariable)
+                        .invokeStatic(Operations.class, "lessThan", boolean.class, int.class, int.class))
+                .update(new Block(compilerContext).incrementVariable(positionVariable, (byte) 1));
+
+        Block condition = new Block(compilerContext)
+                .pushThis()
+                .getVariable(positionVariable);
+        for (int channel : channels.keySet()) {
+            condition.getVariable("channel_" + channel);
+        }
+        condition.invokeVirtual(classDefinition.getType(), "filter", type(boolean.class), toColumnarParameterTypes(channels));
+
+        IfStatementBuilder ifStatement = new IfStatementBuilder(compilerContext)
+                .comment("if (filter(position, channels...))")
+                .condition(condition)
+                .ifTrue(new Block(compilerContext)
+                        .comment("selectedPositions[selectedCount++] = position;")
+                        .getVariable(selectedPositionsVariable)
+                        .getVariable(selectedCountVariable)
+                        .getVariable(positionVariable)
+                        .putIntArrayElement()
+                        .incrementVariable(selectedCountVariable, (byte) 1));
+
+        body.append(filterLoop.body(ifStatement.build()).build());
+
+        //
+        // projection loops: one pass over the selected positions per output column
+        //
+        LocalVariableDefinition indexVariable = compilerContext.declareVariable(int.class, "index");
+        if (projections.isEmpty()) {
+            body.append(selectedPositionsLoop(compilerContext, indexVariable, selectedCountVariable)
+                    .body(new Block(compilerContext)
+                            .comment("pageBuilder.declarePosition()")
+                            .getVariable("pageBuilder")
+                            .invokeVirtual(PageBuilder.class, "declarePosition", void.class))
+                    .build());
+        }
+        else {
+            List<ParameterizedType> projectParameterTypes = ImmutableList.<ParameterizedType>builder()
+                    .addAll(toColumnarParameterTypes(channels))
+                    .add(type(BlockBuilder.class))
+                    .build();
+
+            for (int projectionIndex = 0; projectionIndex < projections.size(); projectionIndex++) {
+                LocalVariableDefinition outputVariable = compilerContext.declareVariable(BlockBuilder.class, "output_" + projectionIndex);
+                body.comment("BlockBuilder output_%s = pageBuilder.getBlockBuilder(%s);", projectionIndex, projectionIndex)
+                        .getVariable("pageBuilder")
+                        .push(projectionIndex)
+                        .invokeVirtual(PageBuilder.class, "getBlockBuilder", BlockBuilder.class, int.class)
+                        .putVariable(outputVariable);
+
+                Block project = new Block(compilerContext)
+                        .comment("project_%s(selectedPositions[index], channels..., output_%s)", projectionIndex, projectionIndex)
+                        .pushThis()
+                        .getVariable(selectedPositionsVariable)
+                        .getVariable(indexVariable)
+                        .getIntArrayElement();
+                for (int channel : channels.keySet()) {
+                    project.getVariable("channel_" + channel);
+                }
+                project.getVariable(outputVariable)
+                        .invokeVirtual(classDefinition.getType(), "project_" + projectionIndex, type(void.class), projectParameterTypes);
+
+                body.append(selectedPositionsLoop(compilerContext, indexVariable, selectedCountVariable).body(project).build());
+            }
+        }
+
+        body.ret();
+    }
+
+    private static ForLoopBuilder selectedPositionsLoop(CompilerContext compilerContext, LocalVariableDefinition indexVariable, LocalVariableDefinition selectedCountVariable)
+    {
+        return forLoopBuilder(compilerContext)
+                .comment("for (index = 0; index < selectedCount; index++)")
+                .initialize(new Block(compilerContext).putVariable(indexVariable, 0))
+                .condition(new Block(compilerContext)
+                        .getVariable(indexVariable)
+                        .getVariable(selectedCountVariable)
+                        .invokeStatic(Operations.class, "lessThan", boolean.class, int.class, int.class))
+                .update(new Block(compilerContext).incrementVariable(indexVariable, (byte) 1));
+    }
+
     private void generateFilterMethod(ClassDefinition classDefinition,
             Expression filter,
             Map<Input, Type> inputTypes,
-            boolean sourceIsCursor)
+            SourceType sourceType)
     {
         MethodDefinition filterMethod;
-        if (sourceIsCursor) {
+        if (sourceType == RECORD_CURSOR) {
             filterMethod = classDefinition.declareMethod(new CompilerContext(bootstrapMethod),
                     a(PUBLIC),
                     "filter",
                     type(boolean.class),
                     arg("cursor", RecordCursor.class));
         }
+        else if (sourceType == COLUMNAR_BLOCK) {
+            filterMethod = classDefinition.declareMethod(new CompilerContext(bootstrapMethod),
+                    a(PUBLIC),
+                    "filter",
+                    type(boolean.class),
+                    toColumnarParameters(inputTypes));
+        }
         else {
             filterMethod = classDefinition.declareMethod(new CompilerContext(bootstrapMethod),
                     a(PUBLIC),
@@ -676,7 +860,7 @@ public class ExpressionCompiler
 
         filterMethod.getCompilerContext().declareVariable(type(boolean.class), "wasNull");
         Block getSessionByteCode = new Block(filterMethod.getCompilerContext()).pushThis().getField(classDefinition.getType(), "session", type(Session.class));
-        TypedByteCodeNode body = new ByteCodeExpressionVisitor(bootstrapFunctionBinder, inputTypes, getSessionByteCode, sourceIsCursor).process(filter, filterMethod.getCompilerContext());
+        TypedByteCodeNode body = new ByteCodeExpressionVisitor(bootstrapFunctionBinder, inputTypes, getSessionByteCode, sourceType).process(filter, filterMethod.getCompilerContext());
 
         if (body.getType() == void.class) {
             filterMethod
@@ -704,10 +888,10 @@ public class ExpressionCompiler
             String methodName,
             Expression projection,
             Map<Input, Type> inputTypes,
-            boolean sourceIsCursor)
+            SourceType sourceType)
     {
         MethodDefinition projectionMethod;
-        if (sourceIsCursor) {
+        if (sourceType == RECORD_CURSOR) {
             projectionMethod = classDefinition.declareMethod(new CompilerContext(bootstrapMethod),
                     a(PUBLIC),
                     methodName,
@@ -715,6 +899,17 @@ public class ExpressionCompiler
                     arg("cursor", RecordCursor.class),
                     arg("output", BlockBuilder.class));
         }
+        else if (sourceType == COLUMNAR_BLOCK) {
+            ImmutableList.Builder<NamedParameterDefinition> parameters = ImmutableList.builder();
+            parameters.addAll(toColumnarParameters(inputTypes));
+            parameters.add(arg("output", BlockBuilder.class));
+
+            projectionMethod = classDefinition.declareMethod(new CompilerContext(bootstrapMethod),
+                    a(PUBLIC),
+                    methodName,
+                    type(void.class),
+                    parameters.build());
+        }
         else {
             ImmutableList.Builder<NamedParameterDefinition> parameters = ImmutableList.builder();
             parameters.addAll(toTupleReaderParameters(inputTypes));
@@ -733,7 +928,7 @@ public class ExpressionCompiler
         CompilerContext context = projectionMethod.getCompilerContext();
         context.declareVariable(type(boolean.class), "wasNull");
         Block getSessionByteCode = new Block(context).pushThis().getField(classDefinition.getType(), "session", type(Session.class));
-        TypedByteCodeNode body = new ByteCodeExpressionVisitor(bootstrapFunctionBinder, inputTypes, getSessionByteCode, sourceIsCursor).process(projection, context);
+        TypedByteCodeNode body = new ByteCodeExpressionVisitor(bootstrapFunctionBinder, inputTypes, getSessionByteCode, sourceType).process(projection, context);
 
         if (body.getType() != void.class) {
             projectionMethod
@@ -827,6 +1022,49 @@ public class ExpressionCompiler
         return parameters.build();
     }
 
+    private static boolean isColumnarSupported(Map<Input, Type> inputTypes)
+    {
+        if (inputTypes.isEmpty()) {
+            return false;
+        }
+        // columnar blocks only hold the first field of a channel
+        for (Entry<Input, Type> entry : inputTypes.entrySet()) {
+            if (entry.getKey().getField() != 0 || entry.getValue() == Type.NULL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static SortedMap<Integer, Type> getColumnarChannels(Map<Input, Type> inputTypes)
+    {
+        ImmutableSortedMap.Builder<Integer, Type> channels = ImmutableSortedMap.naturalOrder();
+        for (Entry<Input, Type> entry : inputTypes.entrySet()) {
+            channels.put(entry.getKey().getChannel(), entry.getValue());
+        }
+        return channels.build();
+    }
+
+    private static List<NamedParameterDefinition> toColumnarParameters(Map<Input, Type> inputTypes)
+    {
+        ImmutableList.Builder<NamedParameterDefinition> parameters = ImmutableList.builder();
+        parameters.add(arg("position", int.class));
+        for (Entry<Integer, Type> entry : getColumnarChannels(inputTypes).entrySet()) {
+            parameters.add(arg("channel_" + entry.getKey(), getColumnarBlockType(entry.getValue())));
+        }
+        return parameters.build();
+    }
+
+    private static List<ParameterizedType> toColumnarParameterTypes(SortedMap<Integer, Type> channels)
+    {
+        ImmutableList.Builder<ParameterizedType> parameterTypes = ImmutableList.builder();
+        parameterTypes.add(type(int.class));
+        for (Type type : channels.values()) {
+            parameterTypes.add(type(getColumnarBlockType(type)));
+        }
+        return parameterTypes.build();
+    }
+
     private static <T> Class<? extends T> defineClass(ClassDefinition classDefinition, Class<T> superType, DynamicClassLoader classLoader)
     {
         Class<?> clazz = defineClasses(ImmutableList.of(classDefinition), classLoader).values().iterator().next();
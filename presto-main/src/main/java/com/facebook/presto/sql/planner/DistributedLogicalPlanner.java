@@ -21,6 +21,7 @@ import com.facebook.presto.sql.planner.plan.AggregationNode;
 import com.facebook.presto.sql.planner.plan.ExchangeNode;
 import com.facebook.presto.sql.planner.plan.FilterNode;
 import com.facebook.presto.sql.planner.plan.JoinNode;
+import com.facebook.presto.sql.planner.plan.JoinNode.EquiJoinClause;
 import com.facebook.presto.sql.planner.plan.LimitNode;
 import com.facebook.presto.sql.planner.plan.OutputNode;
 import com.facebook.presto.sql.planner.plan.PlanFragmentId;
@@ -43,6 +44,7 @@ import com.facebook.presto.sql.tree.QualifiedNameReference;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 import java.util.HashMap;
 import java.util.List;
@@ -59,11 +61,18 @@ public class DistributedLogicalPlanner
 {
     private final Metadata metadata;
     private final PlanNodeIdAllocator idAllocator;
+    private final boolean distributedJoinsEnabled;
 
     public DistributedLogicalPlanner(Metadata metadata, PlanNodeIdAllocator idAllocator)
+    {
+        this(metadata, idAllocator, false);
+    }
+
+    public DistributedLogicalPlanner(Metadata metadata, PlanNodeIdAllocator idAllocator, boolean distributedJoinsEnabled)
     {
         this.metadata = metadata;
         this.idAllocator = idAllocator;
+        this.distributedJoinsEnabled = distributedJoinsEnabled;
     }
 
     public SubPlan createSubplans(Plan plan, boolean createSingleNodePlan)
@@ -96,7 +105,7 @@ public class DistributedLogicalPlanner
         {
             SubPlanBuilder current = node.getSource().accept(this, context);
 
-            if (!current.isPartitioned()) {
+            if (!current.isDistributed()) {
                 // add the aggregation node as the root of the current fragment
                 current.setRoot(new AggregationNode(node.getId(), current.getRoot(), node.getGroupBy(), node.getAggregations(), node.getFunctions(), SINGLE));
                 return current;
@@ -106,7 +115,7 @@ public class DistributedLogicalPlanner
             Map<Symbol, FunctionHandle> functions = node.getFunctions();
             List<Symbol> groupBy = node.getGroupBy();
 
-            // else, we need to "close" the current fragment and create an unpartitioned fragment for the final aggregation
+            // else, we need to "close" the current fragment and create a fragment for the final aggregation
             return addDistributedAggregation(current, aggregations, functions, groupBy);
         }
 
@@ -134,7 +143,18 @@ public class DistributedLogicalPlanner
             ExchangeNode source = new ExchangeNode(idAllocator.getNextId(), plan.getId(), plan.getRoot().getOutputSymbols());
             AggregationNode merged = new AggregationNode(idAllocator.getNextId(), source, groupBy, finalCalls, functions, FINAL);
 
+            if (groupBy.isEmpty()) {
+                // a global aggregation produces a single row, so gather the partial results on a single node
+                return newSubPlan(merged)
+                        .setUnpartitionedSource()
+                        .addChild(plan.build());
+            }
+
+            // hash partition the partial results on the group by keys, so the final aggregation can run on multiple nodes
+            plan.setHashOutputPartitioning(groupBy);
+
             return newSubPlan(merged)
+                    .setFixedDistribution()
                     .addChild(plan.build());
         }
 
@@ -143,7 +163,7 @@ public class DistributedLogicalPlanner
         {
             SubPlanBuilder current = node.getSource().accept(this, context);
 
-            if (current.isPartitioned()) {
+            if (current.isDistributed()) {
                 current.setRoot(new SinkNode(idAllocator.getNextId(), current.getRoot(), current.getRoot().getOutputSymbols()));
 
                 // create a new non-partitioned fragment
@@ -188,7 +208,7 @@ public class DistributedLogicalPlanner
 
             current.setRoot(new TopNNode(node.getId(), current.getRoot(), node.getCount(), node.getOrderBy(), node.getOrderings(), false));
 
-            if (current.isPartitioned()) {
+            if (current.isDistributed()) {
                 current.setRoot(new SinkNode(idAllocator.getNextId(), current.getRoot(), current.getRoot().getOutputSymbols()));
 
                 // create merge plan fragment
@@ -207,7 +227,7 @@ public class DistributedLogicalPlanner
         {
             SubPlanBuilder current = node.getSource().accept(this, context);
 
-            if (current.isPartitioned()) {
+            if (current.isDistributed()) {
                 current.setRoot(new SinkNode(idAllocator.getNextId(), current.getRoot(), current.getRoot().getOutputSymbols()));
 
                 // create a new non-partitioned fragment
@@ -226,7 +246,7 @@ public class DistributedLogicalPlanner
         {
             SubPlanBuilder current = node.getSource().accept(this, context);
 
-            if (current.isPartitioned()) {
+            if (current.isDistributed()) {
                 current.setRoot(new SinkNode(idAllocator.getNextId(), current.getRoot(), current.getRoot().getOutputSymbols()));
 
                 // create a new non-partitioned fragment
@@ -247,7 +267,7 @@ public class DistributedLogicalPlanner
 
             current.setRoot(new LimitNode(node.getId(), current.getRoot(), node.getCount()));
 
-            if (current.isPartitioned()) {
+            if (current.isDistributed()) {
                 current.setRoot(new SinkNode(idAllocator.getNextId(), current.getRoot(), current.getRoot().getOutputSymbols()));
 
                 // create merge plan fragment
@@ -316,7 +336,26 @@ public class DistributedLogicalPlanner
             SubPlanBuilder left = node.getLeft().accept(this, context);
             SubPlanBuilder right = node.getRight().accept(this, context);
 
-            if (left.isPartitioned() || right.isPartitioned()) {
+            if (distributedJoinsEnabled && left.isDistributed() && right.isDistributed() && !node.getCriteria().isEmpty()) {
+                // hash partition both sides on the join keys, so each task only builds a hash table for its partition
+                left.setRoot(new SinkNode(idAllocator.getNextId(), left.getRoot(), left.getRoot().getOutputSymbols()))
+                        .setHashOutputPartitioning(Lists.transform(node.getCriteria(), EquiJoinClause.leftGetter()));
+                right.setRoot(new SinkNode(idAllocator.getNextId(), right.getRoot(), right.getRoot().getOutputSymbols()))
+                        .setHashOutputPartitioning(Lists.transform(node.getCriteria(), EquiJoinClause.rightGetter()));
+
+                JoinNode join = new JoinNode(node.getId(),
+                        node.getType(),
+                        new ExchangeNode(idAllocator.getNextId(), left.getId(), left.getRoot().getOutputSymbols()),
+                        new ExchangeNode(idAllocator.getNextId(), right.getId(), right.getRoot().getOutputSymbols()),
+                        node.getCriteria());
+
+                return newSubPlan(join)
+                        .setFixedDistribution()
+                        .addChild(left.build())
+                        .addChild(right.build());
+            }
+
+            if (left.isDistributed() || right.isDistributed()) {
                 switch (node.getType()) {
                     case INNER:
                     case LEFT:
@@ -357,7 +396,7 @@ public class DistributedLogicalPlanner
             SubPlanBuilder source = node.getSource().accept(this, context);
             SubPlanBuilder filteringSource = node.getFilteringSource().accept(this, context);
 
-            if (source.isPartitioned() || filteringSource.isPartitioned()) {
+            if (source.isDistributed() || filteringSource.isDistributed()) {
                 filteringSource.setRoot(new SinkNode(idAllocator.getNextId(), filteringSource.getRoot(), filteringSource.getRoot().getOutputSymbols()));
                 source.setRoot(new SemiJoinNode(node.getId(),
                         source.getRoot(),
@@ -13,12 +13,14 @@
  */
 package com.facebook.presto.sql.planner;
 
+import com.facebook.presto.execution.TaskManagerConfig;
 import com.facebook.presto.metadata.FunctionHandle;
 import com.facebook.presto.metadata.LocalStorageManager;
 import com.facebook.presto.metadata.Metadata;
 import com.facebook.presto.operator.AggregationFunctionDefinition;
 import com.facebook.presto.operator.AggregationOperator.AggregationOperatorFactory;
 import com.facebook.presto.operator.DriverFactory;
+import com.facebook.presto.operator.DynamicFilter;
 import com.facebook.presto.operator.ExchangeClient;
 import com.facebook.presto.operator.ExchangeOperator.ExchangeOperatorFactory;
 import com.facebook.presto.operator.FilterAndProjectOperator.FilterAndProjectOperatorFactory;
@@ -49,6 +51,7 @@ import com.facebook.presto.operator.WindowOperator.InMemoryWindowOperatorFactory
 import com.facebook.presto.operator.window.WindowFunction;
 import com.facebook.presto.spi.ColumnHandle;
 import com.facebook.presto.split.DataStreamProvider;
+import com.facebook.presto.split.DynamicFilterDataStreamProvider;
 import com.facebook.presto.sql.analyzer.Session;
 import com.facebook.presto.sql.analyzer.Type;
 import com.facebook.presto.sql.gen.ExpressionCompiler;
@@ -59,6 +62,7 @@ import com.facebook.presto.sql.planner.plan.JoinNode;
 import com.facebook.presto.sql.planner.plan.LimitNode;
 import com.facebook.presto.sql.planner.plan.OutputNode;
 import com.facebook.presto.sql.planner.plan.PlanNode;
+import com.facebook.presto.sql.planner.plan.PlanNodeId;
 import com.facebook.presto.sql.planner.plan.PlanVisitor;
 import com.facebook.presto.sql.planner.plan.ProjectNode;
 import com.facebook.presto.sql.planner.plan.SampleNode;
@@ -84,7 +88,9 @@ import com.facebook.presto.util.IterableTransformer;
 import com.facebook.presto.util.MoreFunctions;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -92,18 +98,25 @@ import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.log.Logger;
 import io.airlift.node.NodeInfo;
 
 import javax.inject.Inject;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -128,6 +141,9 @@ public class LocalExecutionPlanner
     private final LocalStorageManager storageManager;
     private final Supplier<ExchangeClient> exchangeClientSupplier;
     private final ExpressionCompiler compiler;
+    private final Optional<File> spillPath;
+    private final int hashBuildConcurrency;
+    private final boolean dynamicFilteringEnabled;
 
     @Inject
     public LocalExecutionPlanner(NodeInfo nodeInfo,
@@ -135,7 +151,8 @@ public class LocalExecutionPlanner
             DataStreamProvider dataStreamProvider,
             LocalStorageManager storageManager,
             Supplier<ExchangeClient> exchangeClientSupplier,
-            ExpressionCompiler compiler)
+            ExpressionCompiler compiler,
+            TaskManagerConfig taskManagerConfig)
     {
         this.nodeInfo = checkNotNull(nodeInfo, "nodeInfo is null");
         this.dataStreamProvider = dataStreamProvider;
@@ -143,6 +160,11 @@ public class LocalExecutionPlanner
         this.metadata = checkNotNull(metadata, "metadata is null");
         this.storageManager = checkNotNull(storageManager, "storageManager is null");
         this.compiler = checkNotNull(compiler, "compiler is null");
+
+        checkNotNull(taskManagerConfig, "taskManagerConfig is null");
+        this.spillPath = taskManagerConfig.isSpillEnabled() ? Optional.of(taskManagerConfig.getSpillPath()) : Optional.<File>absent();
+        this.hashBuildConcurrency = taskManagerConfig.getHashBuildConcurrency();
+        this.dynamicFilteringEnabled = taskManagerConfig.isDynamicFilteringEnabled();
     }
 
     public LocalExecutionPlan plan(Session session,
@@ -171,20 +193,28 @@ public class LocalExecutionPlanner
         private final Map<Symbol, Type> types;
 
         private final List<DriverFactory> driverFactories;
+        private final Map<PlanNodeId, ListMultimap<Symbol, ListenableFuture<Optional<DynamicFilter>>>> dynamicFilters;
 
         private int nextOperatorId;
         private boolean inputDriver = true;
 
         public LocalExecutionPlanContext(Session session, Map<Symbol, Type> types)
         {
-            this(session, types, new ArrayList<DriverFactory>());
+            this(session,
+                    types,
+                    new ArrayList<DriverFactory>(),
+                    new HashMap<PlanNodeId, ListMultimap<Symbol, ListenableFuture<Optional<DynamicFilter>>>>());
         }
 
-        private LocalExecutionPlanContext(Session session, Map<Symbol, Type> types, List<DriverFactory> driverFactories)
+        private LocalExecutionPlanContext(Session session,
+                Map<Symbol, Type> types,
+                List<DriverFactory> driverFactories,
+                Map<PlanNodeId, ListMultimap<Symbol, ListenableFuture<Optional<DynamicFilter>>>> dynamicFilters)
         {
             this.session = session;
             this.types = types;
             this.driverFactories = driverFactories;
+            this.dynamicFilters = dynamicFilters;
         }
 
         public void addDriverFactory(DriverFactory driverFactory)
@@ -197,6 +227,31 @@ public class LocalExecutionPlanner
             return ImmutableList.copyOf(driverFactories);
         }
 
+        public void addDynamicFilter(PlanNodeId tableScanId, Symbol symbol, ListenableFuture<Optional<DynamicFilter>> dynamicFilter)
+        {
+            ListMultimap<Symbol, ListenableFuture<Optional<DynamicFilter>>> tableScanFilters = dynamicFilters.get(tableScanId);
+            if (tableScanFilters == null) {
+                tableScanFilters = ArrayListMultimap.create();
+                dynamicFilters.put(tableScanId, tableScanFilters);
+            }
+            tableScanFilters.put(symbol, dynamicFilter);
+        }
+
+        /**
+         * Gets the dynamic filters for the scan of the specified table, keyed by the index of the scanned column.
+         */
+        public ListMultimap<Integer, ListenableFuture<Optional<DynamicFilter>>> getDynamicFilters(TableScanNode tableScan)
+        {
+            ListMultimap<Integer, ListenableFuture<Optional<DynamicFilter>>> columnFilters = ArrayListMultimap.create();
+            ListMultimap<Symbol, ListenableFuture<Optional<DynamicFilter>>> tableScanFilters = dynamicFilters.get(tableScan.getId());
+            if (tableScanFilters != null) {
+                for (Map.Entry<Symbol, ListenableFuture<Optional<DynamicFilter>>> entry : tableScanFilters.entries()) {
+                    columnFilters.put(tableScan.getOutputSymbols().indexOf(entry.getKey()), entry.getValue());
+                }
+            }
+            return columnFilters;
+        }
+
         public Session getSession()
         {
             return session;
@@ -224,7 +279,7 @@ public class LocalExecutionPlanner
 
         public LocalExecutionPlanContext createSubContext()
         {
-            return new LocalExecutionPlanContext(session, types, driverFactories);
+            return new LocalExecutionPlanContext(session, types, driverFactories, dynamicFilters);
         }
     }
 
@@ -364,7 +419,8 @@ public class LocalExecutionPlanner
                     partitionFields,
                     sortFields,
                     sortOrder,
-                    1_000_000);
+                    1_000_000,
+                    spillPath);
 
             return new PhysicalOperation(operatorFactory, outputMappings.build(), source);
         }
@@ -436,7 +492,8 @@ public class LocalExecutionPlanner
                     outputChannels,
                     10_000,
                     sortFields,
-                    sortOrder);
+                    sortOrder,
+                    spillPath);
 
             return new PhysicalOperation(operator, source.getLayout(), source);
         }
@@ -573,7 +630,7 @@ public class LocalExecutionPlanner
                     SourceOperatorFactory operatorFactory = compiler.compileScanFilterAndProjectOperator(
                             context.getNextOperatorId(),
                             sourceNode.getId(),
-                            dataStreamProvider,
+                            getDataStreamProvider((TableScanNode) sourceNode, context),
                             columns,
                             rewrittenFilter,
                             rewrittenProjections,
@@ -626,7 +683,7 @@ public class LocalExecutionPlanner
                 OperatorFactory operatorFactory = new ScanFilterAndProjectOperatorFactory(
                         context.getNextOperatorId(),
                         sourceNode.getId(),
-                        dataStreamProvider,
+                        getDataStreamProvider((TableScanNode) sourceNode, context),
                         columns,
                         filterFunction,
                         projectionFunctions);
@@ -679,10 +736,19 @@ public class LocalExecutionPlanner
             }
 
             List<TupleInfo> tupleInfos = getSourceOperatorTupleInfos(node, context.getTypes());
-            OperatorFactory operatorFactory = new TableScanOperatorFactory(context.getNextOperatorId(), node.getId(), dataStreamProvider, tupleInfos, columns);
+            OperatorFactory operatorFactory = new TableScanOperatorFactory(context.getNextOperatorId(), node.getId(), getDataStreamProvider(node, context), tupleInfos, columns);
             return new PhysicalOperation(operatorFactory, outputMappings.build());
         }
 
+        private DataStreamProvider getDataStreamProvider(TableScanNode node, LocalExecutionPlanContext context)
+        {
+            ListMultimap<Integer, ListenableFuture<Optional<DynamicFilter>>> dynamicFilters = context.getDynamicFilters(node);
+            if (dynamicFilters.isEmpty()) {
+                return dataStreamProvider;
+            }
+            return new DynamicFilterDataStreamProvider(dataStreamProvider, dynamicFilters);
+        }
+
         @Override
         public PhysicalOperation visitJoin(JoinNode node, LocalExecutionPlanContext context)
         {
@@ -709,6 +775,18 @@ public class LocalExecutionPlanner
                 List<Symbol> buildSymbols,
                 LocalExecutionPlanContext context)
         {
+            // an inner join discards the probe rows that do not match a build key, so these rows
+            // can be skipped when the probe table is scanned once the hash is built
+            SettableFuture<Optional<DynamicFilter>> dynamicFilter = null;
+            if (dynamicFilteringEnabled && node.getType() == JoinNode.Type.INNER && probeSymbols.size() == 1) {
+                Symbol probeSymbol = Iterables.getOnlyElement(probeSymbols);
+                Optional<TableScanNode> tableScan = findDynamicFilterTableScan(probeNode, probeSymbol);
+                if (tableScan.isPresent() && context.getTypes().get(probeSymbol) == Type.BIGINT) {
+                    dynamicFilter = SettableFuture.create();
+                    context.addDynamicFilter(tableScan.get().getId(), probeSymbol, dynamicFilter);
+                }
+            }
+
             // Plan probe and introduce a projection to put all fields from the probe side into a single channel if necessary
             PhysicalOperation probeSource = probeNode.accept(this, context);
             probeSource = packIfNecessary(probeSymbols, probeSource, context.getTypes(), context);
@@ -725,8 +803,13 @@ public class LocalExecutionPlanner
                     buildContext.getNextOperatorId(),
                     buildSource.getTupleInfos(),
                     buildChannel,
-                    100_000);
+                    100_000,
+                    true,
+                    hashBuildConcurrency);
             HashSupplier hashSupplier = hashBuilderOperatorFactory.getHashSupplier();
+            if (dynamicFilter != null) {
+                setDynamicFilter(dynamicFilter, hashSupplier);
+            }
             DriverFactory buildDriverFactory = new DriverFactory(
                     buildContext.isInputDriver(),
                     false,
@@ -751,6 +834,46 @@ public class LocalExecutionPlanner
             return new PhysicalOperation(operator, outputMappings.build(), probeSource);
         }
 
+        /**
+         * Finds the scan of the table that produces the symbol, if the rows of the scan only pass
+         * through filters and projections on the way to the join.
+         */
+        private Optional<TableScanNode> findDynamicFilterTableScan(PlanNode node, Symbol symbol)
+        {
+            while (node instanceof FilterNode || node instanceof ProjectNode) {
+                if (node instanceof ProjectNode) {
+                    Expression expression = ((ProjectNode) node).getOutputMap().get(symbol);
+                    if (!new QualifiedNameReference(symbol.toQualifiedName()).equals(expression)) {
+                        return Optional.absent();
+                    }
+                }
+                node = Iterables.getOnlyElement(node.getSources());
+            }
+
+            if (node instanceof TableScanNode && node.getOutputSymbols().contains(symbol)) {
+                return Optional.of((TableScanNode) node);
+            }
+            return Optional.absent();
+        }
+
+        private void setDynamicFilter(final SettableFuture<Optional<DynamicFilter>> dynamicFilter, HashSupplier hashSupplier)
+        {
+            Futures.addCallback(hashSupplier.getDynamicFilter(), new FutureCallback<Optional<DynamicFilter>>()
+            {
+                @Override
+                public void onSuccess(Optional<DynamicFilter> result)
+                {
+                    dynamicFilter.set(result);
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    dynamicFilter.setException(t);
+                }
+            });
+        }
+
         private HashJoinOperatorFactory createJoinOperator(
                 JoinNode.Type type,
                 HashSupplier hashSupplier,
@@ -995,7 +1118,8 @@ public class LocalExecutionPlanner
                     groupByChannel,
                     node.getStep(),
                     functionDefinitions,
-                    10_000);
+                    10_000,
+                    spillPath);
 
             return new PhysicalOperation(operatorFactory, outputMappings.build(), source);
         }
@@ -35,22 +35,81 @@ import java.util.Map;
 @Immutable
 public class PlanFragment
 {
+    public static enum PlanDistribution
+    {
+        /**
+         * The fragment is executed by a single task.
+         */
+        NONE,
+        /**
+         * The fragment is executed by a fixed number of tasks, each consuming one hash partition of its inputs.
+         */
+        FIXED,
+        /**
+         * The fragment is executed by as many tasks as needed to process the splits of the partitioned source.
+         */
+        SOURCE
+    }
+
+    public static enum OutputPartitioning
+    {
+        /**
+         * Every consumer receives all of the output.
+         */
+        NONE,
+        /**
+         * Every consumer receives the rows that hash to its partition of the partitionBy symbols.
+         */
+        HASH
+    }
+
     private final PlanFragmentId id;
     private final PlanNode root;
+    private final PlanDistribution distribution;
     private final PlanNodeId partitionedSource;
     private final Map<Symbol, Type> symbols;
+    private final OutputPartitioning outputPartitioning;
+    private final List<Symbol> partitionBy;
+
+    public PlanFragment(PlanFragmentId id, PlanNodeId partitionedSource, Map<Symbol, Type> symbols, PlanNode root)
+    {
+        this(id,
+                partitionedSource == null ? PlanDistribution.NONE : PlanDistribution.SOURCE,
+                partitionedSource,
+                symbols,
+                root,
+                OutputPartitioning.NONE,
+                ImmutableList.<Symbol>of());
+    }
 
     @JsonCreator
-    public PlanFragment(@JsonProperty("id") PlanFragmentId id, @JsonProperty("partitionedSource") PlanNodeId partitionedSource, @JsonProperty("symbols") Map<Symbol, Type> symbols, @JsonProperty("root") PlanNode root)
+    public PlanFragment(
+            @JsonProperty("id") PlanFragmentId id,
+            @JsonProperty("distribution") PlanDistribution distribution,
+            @JsonProperty("partitionedSource") PlanNodeId partitionedSource,
+            @JsonProperty("symbols") Map<Symbol, Type> symbols,
+            @JsonProperty("root") PlanNode root,
+            @JsonProperty("outputPartitioning") OutputPartitioning outputPartitioning,
+            @JsonProperty("partitionBy") List<Symbol> partitionBy)
     {
         Preconditions.checkNotNull(id, "id is null");
+        Preconditions.checkNotNull(distribution, "distribution is null");
+        Preconditions.checkArgument((distribution == PlanDistribution.SOURCE) == (partitionedSource != null),
+                "partitionedSource must be set if and only if the distribution is SOURCE");
         Preconditions.checkNotNull(symbols, "symbols is null");
         Preconditions.checkNotNull(root, "root is null");
+        Preconditions.checkNotNull(outputPartitioning, "outputPartitioning is null");
+        Preconditions.checkNotNull(partitionBy, "partitionBy is null");
+        Preconditions.checkArgument((outputPartitioning == OutputPartitioning.HASH) == !partitionBy.isEmpty(),
+                "partitionBy must be set if and only if the output partitioning is HASH");
 
         this.id = id;
         this.root = root;
+        this.distribution = distribution;
         this.partitionedSource = partitionedSource;
         this.symbols = symbols;
+        this.outputPartitioning = outputPartitioning;
+        this.partitionBy = ImmutableList.copyOf(partitionBy);
     }
 
     @JsonProperty
@@ -59,6 +118,12 @@ public class PlanFragment
         return id;
     }
 
+    @JsonProperty
+    public PlanDistribution getDistribution()
+    {
+        return distribution;
+    }
+
     public boolean isPartitioned()
     {
         return partitionedSource != null;
@@ -82,6 +147,18 @@ public class PlanFragment
         return symbols;
     }
 
+    @JsonProperty
+    public OutputPartitioning getOutputPartitioning()
+    {
+        return outputPartitioning;
+    }
+
+    @JsonProperty
+    public List<Symbol> getPartitionBy()
+    {
+        return partitionBy;
+    }
+
     public List<TupleInfo> getTupleInfos()
     {
         return ImmutableList.copyOf(IterableTransformer.on(getRoot().getOutputSymbols())
@@ -121,7 +198,10 @@ public class PlanFragment
     {
         return Objects.toStringHelper(this)
                 .add("id", id)
+                .add("distribution", distribution)
                 .add("partitionedSource", partitionedSource)
+                .add("outputPartitioning", outputPartitioning)
+                .add("partitionBy", partitionBy)
                 .toString();
     }
 
@@ -13,10 +13,13 @@
  */
 package com.facebook.presto.sql.planner;
 
+import com.facebook.presto.sql.planner.PlanFragment.OutputPartitioning;
+import com.facebook.presto.sql.planner.PlanFragment.PlanDistribution;
 import com.facebook.presto.sql.planner.plan.PlanFragmentId;
 import com.facebook.presto.sql.planner.plan.PlanNode;
 import com.facebook.presto.sql.planner.plan.PlanNodeId;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -30,7 +33,10 @@ public class SubPlanBuilder
 {
     private final PlanFragmentId id;
     private PlanNode root;
+    private PlanDistribution distribution = PlanDistribution.NONE;
     private PlanNodeId partitionedSource;
+    private OutputPartitioning outputPartitioning = OutputPartitioning.NONE;
+    private List<Symbol> partitionBy = ImmutableList.of();
     private List<SubPlan> children = new ArrayList<>();
 
     private final SymbolAllocator allocator;
@@ -68,6 +74,19 @@ public class SubPlanBuilder
         return partitionedSource != null;
     }
 
+    /**
+     * Returns true if the fragment may be executed by more than one task.
+     */
+    public boolean isDistributed()
+    {
+        return distribution != PlanDistribution.NONE;
+    }
+
+    public PlanDistribution getDistribution()
+    {
+        return distribution;
+    }
+
     public PlanNodeId getPartitionedSource()
     {
         return partitionedSource;
@@ -75,16 +94,35 @@ public class SubPlanBuilder
 
     public SubPlanBuilder setPartitionedSource(PlanNodeId partitionedSource)
     {
+        Preconditions.checkNotNull(partitionedSource, "partitionedSource is null");
+        this.distribution = PlanDistribution.SOURCE;
         this.partitionedSource = partitionedSource;
         return this;
     }
 
     public SubPlanBuilder setUnpartitionedSource()
     {
+        this.distribution = PlanDistribution.NONE;
         this.partitionedSource = null;
         return this;
     }
 
+    public SubPlanBuilder setFixedDistribution()
+    {
+        this.distribution = PlanDistribution.FIXED;
+        this.partitionedSource = null;
+        return this;
+    }
+
+    public SubPlanBuilder setHashOutputPartitioning(List<Symbol> partitionBy)
+    {
+        Preconditions.checkNotNull(partitionBy, "partitionBy is null");
+        Preconditions.checkArgument(!partitionBy.isEmpty(), "partitionBy is empty");
+        this.outputPartitioning = OutputPartitioning.HASH;
+        this.partitionBy = ImmutableList.copyOf(partitionBy);
+        return this;
+    }
+
     public List<SubPlan> getChildren()
     {
         return children;
@@ -106,7 +144,7 @@ public class SubPlanBuilder
     {
         Set<Symbol> dependencies = SymbolExtractor.extract(root);
 
-        PlanFragment fragment = new PlanFragment(id, partitionedSource, Maps.filterKeys(allocator.getTypes(), in(dependencies)), root);
+        PlanFragment fragment = new PlanFragment(id, distribution, partitionedSource, Maps.filterKeys(allocator.getTypes(), in(dependencies)), root, outputPartitioning, partitionBy);
 
         return new SubPlan(fragment, children);
     }
@@ -158,7 +158,7 @@ public final class GraphvizPrinter
                 .append(" {")
                 .append('\n');
 
-        output.append(format("label = \"%s\"", fragment.isPartitioned() ? "Partitioned" : "Unpartitioned"))
+        output.append(format("label = \"%s\"", getFragmentLabel(fragment)))
                 .append('\n');
 
         PlanNode plan = fragment.getRoot();
@@ -168,6 +168,18 @@ public final class GraphvizPrinter
                 .append('\n');
     }
 
+    private static String getFragmentLabel(PlanFragment fragment)
+    {
+        switch (fragment.getDistribution()) {
+            case SOURCE:
+                return "Partitioned";
+            case FIXED:
+                return "Hash Partitioned";
+            default:
+                return "Unpartitioned";
+        }
+    }
+
     private static class NodePrinter
             extends PlanVisitor<Void, Void>
     {
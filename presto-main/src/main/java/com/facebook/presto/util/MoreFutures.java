@@ -28,6 +28,28 @@ public final class MoreFutures
     {
     }
 
+    /**
+     * Waits for the future to complete and returns the value, rethrowing the cause of a failure unchecked.
+     */
+    public static <T> T getFutureValue(Future<T> future)
+    {
+        checkNotNull(future, "future is null");
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause == null) {
+                cause = e;
+            }
+            throw Throwables.propagate(cause);
+        }
+    }
+
     public static <T> T tryGetUnchecked(Future<T> future)
     {
         checkNotNull(future, "future is null");
@@ -45,6 +45,11 @@ public abstract class AbstractSqlBenchmark
         this.tpchLocalQueryRunner = createTpchLocalQueryRunner(getTpchBlocksProvider(), executor);
     }
 
+    protected LocalQueryRunner getLocalQueryRunner()
+    {
+        return tpchLocalQueryRunner;
+    }
+
     @Override
     protected List<Driver> createDrivers(TaskContext taskContext)
     {
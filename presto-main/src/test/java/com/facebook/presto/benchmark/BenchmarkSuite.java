@@ -48,16 +48,19 @@ public class BenchmarkSuite
                 new HashBuildBenchmark(executor, tpchBlocksProvider),
                 new HashJoinBenchmark(executor, tpchBlocksProvider),
                 new HashBuildAndJoinBenchmark(executor, tpchBlocksProvider),
+                new SliceKeyHashBuildAndJoinBenchmark(executor, tpchBlocksProvider),
                 new HandTpchQuery1(executor, tpchBlocksProvider),
                 new HandTpchQuery6(executor, tpchBlocksProvider),
 
                 // sql benchmarks
                 new GroupBySumWithArithmeticSqlBenchmark(executor, tpchBlocksProvider),
+                new ColumnarGroupBySumWithArithmeticSqlBenchmark(executor, tpchBlocksProvider),
                 new CountAggregationSqlBenchmark(executor, tpchBlocksProvider),
                 new SqlDoubleSumAggregationBenchmark(executor, tpchBlocksProvider),
                 new CountWithFilterSqlBenchmark(executor, tpchBlocksProvider),
                 new GroupByAggregationSqlBenchmark(executor, tpchBlocksProvider),
                 new PredicateFilterSqlBenchmark(executor, tpchBlocksProvider),
+                new ColumnarPredicateFilterSqlBenchmark(executor, tpchBlocksProvider),
                 new RawStreamingSqlBenchmark(executor, tpchBlocksProvider),
                 new Top100SqlBenchmark(executor, tpchBlocksProvider),
                 new SqlHashJoinBenchmark(executor, tpchBlocksProvider),
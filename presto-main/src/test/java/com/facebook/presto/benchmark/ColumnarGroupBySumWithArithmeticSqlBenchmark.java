@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.benchmark;
+
+import com.facebook.presto.tpch.TpchBlocksProvider;
+
+import java.util.concurrent.ExecutorService;
+
+import static com.facebook.presto.util.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Same query as {@link GroupBySumWithArithmeticSqlBenchmark} using the columnar filter and projection code path.
+ */
+public class ColumnarGroupBySumWithArithmeticSqlBenchmark
+        extends AbstractSqlBenchmark
+{
+    public ColumnarGroupBySumWithArithmeticSqlBenchmark(ExecutorService executor, TpchBlocksProvider tpchBlocksProvider)
+    {
+        super(executor, tpchBlocksProvider, "sql_columnar_groupby_agg_with_arithmetic", 1, 4, "select linestatus, sum(orderkey - partkey) from lineitem group by linestatus");
+        getLocalQueryRunner().enableColumnarProcessing();
+    }
+
+    public static void main(String[] args)
+    {
+        ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test"));
+        new ColumnarGroupBySumWithArithmeticSqlBenchmark(executor, DEFAULT_TPCH_BLOCKS_PROVIDER).runBenchmark(new SimpleLineBenchmarkResultWriter(System.out));
+    }
+}
@@ -35,9 +35,17 @@ import static java.util.concurrent.Executors.newCachedThreadPool;
 public class HashBuildAndJoinBenchmark
         extends AbstractOperatorBenchmark
 {
+    private final boolean longKeyHashEnabled;
+
     public HashBuildAndJoinBenchmark(ExecutorService executor, TpchBlocksProvider tpchBlocksProvider)
     {
-        super(executor, tpchBlocksProvider, "hash_build_and_join", 4, 5);
+        this(executor, tpchBlocksProvider, "hash_build_and_join", true);
+    }
+
+    protected HashBuildAndJoinBenchmark(ExecutorService executor, TpchBlocksProvider tpchBlocksProvider, String benchmarkName, boolean longKeyHashEnabled)
+    {
+        super(executor, tpchBlocksProvider, benchmarkName, 4, 5);
+        this.longKeyHashEnabled = longKeyHashEnabled;
     }
 
     /*
@@ -52,7 +60,7 @@ public class HashBuildAndJoinBenchmark
         BlockIterable totalPrice = getBlockIterable("orders", "totalprice", BlocksFileEncoding.RAW);
 
         AlignmentOperatorFactory ordersTableScan = new AlignmentOperatorFactory(0, orderOrderKey, totalPrice);
-        HashBuilderOperatorFactory hashBuilder = new HashBuilderOperatorFactory(1, ordersTableScan.getTupleInfos(), 0, 1_500_000);
+        HashBuilderOperatorFactory hashBuilder = new HashBuilderOperatorFactory(1, ordersTableScan.getTupleInfos(), 0, 1_500_000, longKeyHashEnabled);
 
         DriverFactory hashBuildDriverFactory = new DriverFactory(true, false, ordersTableScan, hashBuilder);
         Driver hashBuildDriver = hashBuildDriverFactory.createDriver(taskContext.addPipelineContext(true, false).addDriverContext());
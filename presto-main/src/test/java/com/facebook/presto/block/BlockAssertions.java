@@ -13,6 +13,8 @@
  */
 package com.facebook.presto.block;
 
+import com.facebook.presto.block.columnar.AbstractColumnarBlock;
+import com.facebook.presto.block.columnar.ColumnarBlockBuilder;
 import com.facebook.presto.tuple.Tuple;
 import com.facebook.presto.tuple.TupleInfo;
 import com.facebook.presto.tuple.TupleInfo.Type;
@@ -239,6 +241,18 @@ public class BlockAssertions
         return builder.build();
     }
 
+    public static AbstractColumnarBlock createColumnarBlock(Block block)
+    {
+        ColumnarBlockBuilder builder = new ColumnarBlockBuilder(block.getTupleInfo());
+
+        BlockCursor cursor = block.cursor();
+        while (cursor.advanceNextPosition()) {
+            builder.append(cursor);
+        }
+
+        return builder.build();
+    }
+
     // This method makes it easy to create blocks without having to add an L to every value
     public static Block createLongsBlock(int... values)
     {
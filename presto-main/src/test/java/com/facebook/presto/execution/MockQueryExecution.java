@@ -0,0 +1,148 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import com.facebook.presto.client.FailureInfo;
+import com.facebook.presto.client.Input;
+import com.facebook.presto.execution.StateMachine.StateChangeListener;
+import com.facebook.presto.sql.analyzer.Session;
+import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.units.Duration;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Query whose state is set by the test, and which records the cause it is failed with.
+ */
+public class MockQueryExecution
+        implements QueryExecution
+{
+    private final QueryId queryId;
+    private final Session session;
+    private final List<TaskInfo> tasks;
+
+    @GuardedBy("this")
+    private final List<StateChangeListener<QueryState>> listeners = new ArrayList<>();
+    @GuardedBy("this")
+    private QueryState state;
+    @GuardedBy("this")
+    private Throwable failureCause;
+
+    public MockQueryExecution(String user, String queryId, QueryState state, TaskInfo... tasks)
+    {
+        this.queryId = new QueryId(checkNotNull(queryId, "queryId is null"));
+        this.session = new Session(checkNotNull(user, "user is null"), "source", "catalog", "schema", "address", "agent");
+        this.state = checkNotNull(state, "state is null");
+        this.tasks = ImmutableList.copyOf(checkNotNull(tasks, "tasks is null"));
+    }
+
+    public synchronized Throwable getFailureCause()
+    {
+        return failureCause;
+    }
+
+    public void setState(QueryState state)
+    {
+        checkNotNull(state, "state is null");
+
+        List<StateChangeListener<QueryState>> listeners;
+        synchronized (this) {
+            this.state = state;
+            listeners = ImmutableList.copyOf(this.listeners);
+        }
+        for (StateChangeListener<QueryState> listener : listeners) {
+            listener.stateChanged(state);
+        }
+    }
+
+    @Override
+    public synchronized QueryInfo getQueryInfo()
+    {
+        StageInfo outputStage = new StageInfo(
+                new StageId(queryId, "0"),
+                StageState.RUNNING,
+                URI.create("http://coordinator:8080/v1/stage/" + queryId + ".0"),
+                null,
+                ImmutableList.<TupleInfo>of(),
+                TestStageStats.EXPECTED,
+                tasks,
+                ImmutableList.<StageInfo>of(),
+                ImmutableList.<FailureInfo>of());
+
+        return new QueryInfo(
+                queryId,
+                session,
+                state,
+                URI.create("http://coordinator:8080/v1/query/" + queryId),
+                ImmutableList.<String>of(),
+                "SELECT 1",
+                TestQueryStats.EXPECTED,
+                outputStage,
+                null,
+                ImmutableSet.<Input>of());
+    }
+
+    @Override
+    public synchronized void addStateChangeListener(StateChangeListener<QueryState> stateChangeListener)
+    {
+        listeners.add(stateChangeListener);
+    }
+
+    @Override
+    public void fail(Throwable cause)
+    {
+        synchronized (this) {
+            failureCause = cause;
+        }
+        setState(QueryState.FAILED);
+    }
+
+    @Override
+    public Duration waitForStateChange(QueryState currentState, Duration maxWait)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void start()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void cancel()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void cancelStage(StageId stageId)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void recordHeartbeat()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
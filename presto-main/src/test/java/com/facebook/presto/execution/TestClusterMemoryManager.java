@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import com.facebook.presto.client.FailureInfo;
+import com.facebook.presto.execution.SharedBuffer.QueueState;
+import com.facebook.presto.operator.TaskContext;
+import com.facebook.presto.operator.TaskStats;
+import com.facebook.presto.sql.analyzer.Session;
+import com.facebook.presto.sql.planner.plan.PlanNodeId;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.units.DataSize;
+import org.joda.time.DateTime;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import static com.facebook.presto.util.Threads.daemonThreadsNamed;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestClusterMemoryManager
+{
+    private static final URI NODE1 = URI.create("http://node1:8080");
+    private static final URI NODE2 = URI.create("http://node2:8080");
+    private static final MemoryPoolInfo POOL = new MemoryPoolInfo(new DataSize(100, MEGABYTE).toBytes(), 0);
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Test
+    public void testKillLargestQueryOnOverloadedNode()
+    {
+        // node 1 has 95MB of its 100MB pool reserved, and query 1 reserved most of it in two tasks
+        MockQueryExecution query1 = new MockQueryExecution("user", "query1", QueryState.RUNNING,
+                createTaskInfo("query1", "0", NODE1, TaskState.RUNNING, 30, POOL),
+                createTaskInfo("query1", "1", NODE1, TaskState.RUNNING, 20, POOL));
+        MockQueryExecution query2 = new MockQueryExecution("user", "query2", QueryState.RUNNING,
+                createTaskInfo("query2", "0", NODE1, TaskState.RUNNING, 45, POOL),
+                createTaskInfo("query2", "1", NODE2, TaskState.RUNNING, 10, POOL));
+
+        // node 2 is within its pool, even though query 3 is the largest query on the cluster
+        MockQueryExecution query3 = new MockQueryExecution("user", "query3", QueryState.RUNNING,
+                createTaskInfo("query3", "0", NODE2, TaskState.RUNNING, 80, POOL));
+
+        ClusterMemoryManager memoryManager = new ClusterMemoryManager(0.9);
+        memoryManager.process(ImmutableList.<QueryExecution>of(query1, query2, query3));
+
+        assertTrue(query1.getFailureCause() instanceof ExceededClusterMemoryException);
+        assertNull(query2.getFailureCause());
+        assertNull(query3.getFailureCause());
+        assertEquals(memoryManager.getKilledQueries().getTotalCount(), 1);
+        assertEquals(memoryManager.getReservedBytes(), new DataSize(185, MEGABYTE).toBytes());
+        assertEquals(memoryManager.getMaxBytes(), new DataSize(200, MEGABYTE).toBytes());
+    }
+
+    @Test
+    public void testIgnoreDoneTasksAndQueries()
+    {
+        // the memory of the finished task and the finished query is returned to the pool
+        MockQueryExecution runningQuery = new MockQueryExecution("user", "running", QueryState.RUNNING,
+                createTaskInfo("running", "0", NODE1, TaskState.FINISHED, 80, POOL),
+                createTaskInfo("running", "1", NODE1, TaskState.RUNNING, 5, POOL));
+        MockQueryExecution finishedQuery = new MockQueryExecution("user", "finished", QueryState.FINISHED,
+                createTaskInfo("finished", "0", NODE1, TaskState.RUNNING, 80, POOL));
+
+        ClusterMemoryManager memoryManager = new ClusterMemoryManager(0.9);
+        memoryManager.process(ImmutableList.<QueryExecution>of(runningQuery, finishedQuery));
+
+        assertNull(runningQuery.getFailureCause());
+        assertNull(finishedQuery.getFailureCause());
+        assertEquals(memoryManager.getKilledQueries().getTotalCount(), 0);
+        assertEquals(memoryManager.getReservedBytes(), new DataSize(5, MEGABYTE).toBytes());
+    }
+
+    @Test
+    public void testSkipNodesWithUnknownPoolSize()
+    {
+        // the node has not reported the size of its pool yet
+        MockQueryExecution query = new MockQueryExecution("user", "query", QueryState.RUNNING,
+                createTaskInfo("query", "0", NODE1, TaskState.RUNNING, 200, null));
+
+        ClusterMemoryManager memoryManager = new ClusterMemoryManager(0.9);
+        memoryManager.process(ImmutableList.<QueryExecution>of(query));
+
+        assertNull(query.getFailureCause());
+        assertEquals(memoryManager.getKilledQueries().getTotalCount(), 0);
+        assertEquals(memoryManager.getMaxBytes(), 0);
+    }
+
+    private TaskInfo createTaskInfo(String queryId, String taskId, URI node, TaskState state, long reservedMegabytes, MemoryPoolInfo memoryPool)
+    {
+        TaskId id = new TaskId(queryId, "0", taskId);
+        TaskContext taskContext = new TaskContext(id, executor, new Session("user", "source", "catalog", "schema", "address", "agent"));
+        assertTrue(taskContext.reserveMemory(new DataSize(reservedMegabytes, MEGABYTE).toBytes()));
+        TaskStats taskStats = taskContext.getTaskStats();
+
+        return new TaskInfo(
+                id,
+                0,
+                state,
+                node.resolve("/v1/task/" + id),
+                DateTime.now(),
+                new SharedBufferInfo(QueueState.OPEN, 0, 0, 0, 0, 0, ImmutableList.<BufferInfo>of()),
+                ImmutableSet.<PlanNodeId>of(),
+                taskStats,
+                memoryPool,
+                ImmutableList.<FailureInfo>of(),
+                ImmutableMap.<PlanNodeId, Set<?>>of());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import com.facebook.presto.operator.OperatorContext;
+import com.facebook.presto.operator.OrderByOperator;
+import com.facebook.presto.operator.Page;
+import com.facebook.presto.operator.TaskContext;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.facebook.presto.operator.RowPagesBuilder.rowPagesBuilder;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_LONG;
+import static com.facebook.presto.util.Threads.daemonThreadsNamed;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestMemoryPool
+{
+    private ExecutorService executor;
+    private ScheduledExecutorService timeoutExecutor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+        timeoutExecutor = newScheduledThreadPool(1, daemonThreadsNamed("test-timeout-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (timeoutExecutor != null) {
+            timeoutExecutor.shutdownNow();
+            timeoutExecutor = null;
+        }
+    }
+
+    @Test
+    public void testReserve()
+    {
+        MemoryPool memoryPool = new MemoryPool(new DataSize(100, BYTE));
+        assertTrue(memoryPool.tryReserve(60));
+        assertFalse(memoryPool.tryReserve(41));
+        assertTrue(memoryPool.tryReserve(40));
+        assertEquals(memoryPool.getFreeBytes(), 0);
+
+        memoryPool.free(30);
+        assertEquals(memoryPool.getReservedBytes(), 70);
+        assertEquals(memoryPool.getInfo().getReservedBytes(), 70);
+        assertEquals(memoryPool.getInfo().getMaxBytes(), 100);
+    }
+
+    @Test
+    public void testTasksShareMemoryPool()
+            throws Exception
+    {
+        MemoryPool memoryPool = new MemoryPool(new DataSize(100, BYTE));
+        TaskStateMachine taskStateMachine = new TaskStateMachine(new TaskId("query", "stage", "task1"), executor);
+        TaskContext task1 = createTaskContext(taskStateMachine, memoryPool);
+        TaskContext task2 = createTaskContext(new TaskStateMachine(new TaskId("query", "stage", "task2"), executor), memoryPool);
+
+        // each task is within its own limit, but not within the pool
+        assertTrue(task1.reserveMemory(60));
+        assertFalse(task2.reserveMemory(60));
+        assertTrue(task2.reserveMemory(40));
+        assertEquals(memoryPool.getReservedBytes(), 100);
+
+        // the memory of a finished task is returned to the pool
+        taskStateMachine.finished();
+        for (int i = 0; i < 100 && memoryPool.getReservedBytes() != 40; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(memoryPool.getReservedBytes(), 40);
+        assertFalse(task1.reserveMemory(10));
+    }
+
+    @Test
+    public void testReserveMemoryOrWait()
+            throws Exception
+    {
+        MemoryPool memoryPool = new MemoryPool(new DataSize(100, BYTE), new Duration(1, MINUTES), timeoutExecutor);
+        TaskStateMachine taskStateMachine = new TaskStateMachine(new TaskId("query", "stage", "task1"), executor);
+        OperatorContext operator1 = createOperatorContext(createTaskContext(taskStateMachine, memoryPool));
+        OperatorContext operator2 = createOperatorContext(createTaskContext(new TaskStateMachine(new TaskId("query", "stage", "task2"), executor), memoryPool));
+
+        assertTrue(operator1.reserveMemoryOrWait(60).isDone());
+
+        // the pool is full, so the reservation waits for the first task to return its memory
+        ListenableFuture<?> memoryFuture = operator2.reserveMemoryOrWait(50);
+        assertFalse(memoryFuture.isDone());
+        assertEquals(memoryPool.getReservedBytes(), 60);
+
+        taskStateMachine.finished();
+        memoryFuture.get(1, SECONDS);
+        assertTrue(operator2.reserveMemoryOrWait(50).isDone());
+        assertEquals(memoryPool.getReservedBytes(), 50);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Task exceeded max memory size of 80B")
+    public void testReserveMemoryOrWaitExceedsTaskLimit()
+    {
+        MemoryPool memoryPool = new MemoryPool(new DataSize(100, BYTE), new Duration(1, MINUTES), timeoutExecutor);
+        OperatorContext operatorContext = createOperatorContext(createTaskContext(new TaskStateMachine(new TaskId("query", "stage", "task"), executor), memoryPool));
+
+        // waiting for the pool can not raise the limit of the task
+        operatorContext.reserveMemoryOrWait(81);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Timed out after .* waiting for memory from the memory pool of the node")
+    public void testReserveMemoryOrWaitTimeout()
+            throws Exception
+    {
+        MemoryPool memoryPool = new MemoryPool(new DataSize(100, BYTE), new Duration(10, MILLISECONDS), timeoutExecutor);
+        OperatorContext operator1 = createOperatorContext(createTaskContext(new TaskStateMachine(new TaskId("query", "stage", "task1"), executor), memoryPool));
+        OperatorContext operator2 = createOperatorContext(createTaskContext(new TaskStateMachine(new TaskId("query", "stage", "task2"), executor), memoryPool));
+
+        assertTrue(operator1.reserveMemoryOrWait(60).isDone());
+
+        // the memory is not returned to the pool, so the future completes when the max wait runs out
+        ListenableFuture<?> memoryFuture = operator2.reserveMemoryOrWait(50);
+        assertFalse(memoryFuture.isDone());
+        memoryFuture.get(1, SECONDS);
+        operator2.reserveMemoryOrWait(50);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Timed out after .* waiting for memory from the memory pool of the node")
+    public void testOperatorFailsAfterMemoryWaitTimeout()
+            throws Exception
+    {
+        MemoryPool memoryPool = new MemoryPool(new DataSize(1, MEGABYTE), new Duration(10, MILLISECONDS), timeoutExecutor);
+        TaskContext task1 = createTaskContext(new TaskStateMachine(new TaskId("query", "stage", "task1"), executor), memoryPool, new DataSize(1, MEGABYTE));
+        TaskContext task2 = createTaskContext(new TaskStateMachine(new TaskId("query", "stage", "task2"), executor), memoryPool, new DataSize(1, MEGABYTE));
+
+        // the first task holds all but a few bytes of the pool, and never returns them
+        assertTrue(createOperatorContext(task1).reserveMemoryOrWait(memoryPool.getMaxBytes() - 10).isDone());
+
+        OrderByOperator operator = new OrderByOperator(
+                createOperatorContext(task2),
+                ImmutableList.of(SINGLE_LONG),
+                0,
+                new int[] {0},
+                10,
+                new int[] {0},
+                new boolean[] {true});
+        for (Page page : rowPagesBuilder(SINGLE_LONG).addSequencePage(10, 0).build()) {
+            operator.addInput(page);
+        }
+
+        // the driver only waits on the operator, which must fail once the max wait runs out
+        ListenableFuture<?> blocked = operator.isBlocked();
+        assertFalse(blocked.isDone());
+        blocked.get(1, SECONDS);
+        operator.isBlocked();
+    }
+
+    private static OperatorContext createOperatorContext(TaskContext taskContext)
+    {
+        return taskContext.addPipelineContext(true, true)
+                .addDriverContext()
+                .addOperatorContext(0, "test");
+    }
+
+    private TaskContext createTaskContext(TaskStateMachine taskStateMachine, MemoryPool memoryPool)
+    {
+        return createTaskContext(taskStateMachine, memoryPool, new DataSize(80, BYTE));
+    }
+
+    private TaskContext createTaskContext(TaskStateMachine taskStateMachine, MemoryPool memoryPool, DataSize maxMemory)
+    {
+        return new TaskContext(taskStateMachine, executor, null, maxMemory, new DataSize(0, BYTE), memoryPool, true);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import com.facebook.presto.execution.TaskExecutor.MultilevelSplitQueue;
+import org.testng.annotations.Test;
+
+import static com.facebook.presto.execution.TaskExecutor.getSplitRunQuanta;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestMultilevelSplitQueue
+{
+    private static final long RUN_NANOS = MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testLowLevelRunsFirst()
+            throws Exception
+    {
+        MultilevelSplitQueue<Integer> queue = new MultilevelSplitQueue<>();
+        queue.offer(4, 4);
+        queue.offer(0, 0);
+
+        assertEquals(queue.take(), (Integer) 0);
+        assertEquals(queue.take(), (Integer) 4);
+        assertEquals(queue.size(), 0);
+    }
+
+    @Test
+    public void testLevelShares()
+            throws Exception
+    {
+        MultilevelSplitQueue<Integer> queue = new MultilevelSplitQueue<>();
+        for (int level = 0; level < 5; level++) {
+            queue.offer(level, level);
+        }
+
+        // every level has a split waiting, so each level gets twice the thread time of the next level
+        int[] runs = run(queue, 3100);
+        for (int level = 0; level < 4; level++) {
+            assertEquals((double) runs[level] / runs[level + 1], 2.0, 0.1);
+        }
+    }
+
+    @Test
+    public void testIdleLevelDoesNotBuildUpCredit()
+            throws Exception
+    {
+        MultilevelSplitQueue<Integer> queue = new MultilevelSplitQueue<>();
+        queue.offer(1, 1);
+        queue.offer(2, 2);
+        run(queue, 1000);
+
+        // level 0 was idle while the other levels ran, so it only gets its share from now on
+        queue.offer(0, 0);
+        int[] runs = run(queue, 70);
+        assertTrue(runs[0] >= 35 && runs[0] <= 45, "level 0 ran " + runs[0] + " times");
+        assertTrue(runs[1] >= 15, "level 1 ran " + runs[1] + " times");
+        assertTrue(runs[2] >= 5, "level 2 ran " + runs[2] + " times");
+    }
+
+    @Test
+    public void testSplitRunQuanta()
+    {
+        assertEquals(getSplitRunQuanta(0).roundTo(MILLISECONDS), 100);
+        assertEquals(getSplitRunQuanta(1).roundTo(MILLISECONDS), 200);
+        assertEquals(getSplitRunQuanta(2).roundTo(MILLISECONDS), 400);
+        assertEquals(getSplitRunQuanta(3).roundTo(MILLISECONDS), 800);
+
+        // the quanta are capped at a second
+        assertEquals(getSplitRunQuanta(4).roundTo(MILLISECONDS), 1000);
+    }
+
+    /**
+     * Takes a split the specified number of times, and returns it to its level after
+     * it ran for a millisecond.  The splits are their priority levels.
+     */
+    private static int[] run(MultilevelSplitQueue<Integer> queue, int count)
+            throws InterruptedException
+    {
+        int[] runs = new int[5];
+        for (int i = 0; i < count; i++) {
+            int level = queue.take();
+            runs[level]++;
+            queue.splitRan(level, RUN_NANOS);
+            queue.offer(level, level);
+        }
+        return runs;
+    }
+}
@@ -29,8 +29,13 @@ public class TestQueryManagerConfig
         ConfigAssertions.assertRecordedDefaults(ConfigAssertions.recordDefaults(QueryManagerConfig.class)
                 .setMaxQueryAge(new Duration(15, TimeUnit.MINUTES))
                 .setMaxQueryHistory(100)
+                .setMaxConcurrentQueries(1000)
+                .setMaxQueuedQueries(5000)
+                .setMaxMemoryPoolUsage(0.9)
                 .setClientTimeout(new Duration(5, TimeUnit.MINUTES))
                 .setMaxPendingSplitsPerNode(100)
+                .setInitialHashPartitions(8)
+                .setDistributedJoinsEnabled(false)
                 .setQueryManagerExecutorPoolSize(5)
                 .setRemoteTaskMaxConsecutiveErrorCount(10)
                 .setRemoteTaskMinErrorDuration(new Duration(2, TimeUnit.MINUTES)));
@@ -43,7 +48,12 @@ public class TestQueryManagerConfig
                 .put("query.client.timeout", "10s")
                 .put("query.max-age", "30s")
                 .put("query.max-history", "10")
+                .put("query.max-concurrent-queries", "10")
+                .put("query.max-queued-queries", "15")
+                .put("query.max-memory-pool-usage", "0.5")
                 .put("query.max-pending-splits-per-node", "33")
+                .put("query.initial-hash-partitions", "16")
+                .put("query.distributed-joins-enabled", "true")
                 .put("query.manager-executor-pool-size", "11")
                 .put("query.remote-task.max-consecutive-error-count", "300")
                 .put("query.remote-task.min-error-duration", "30s")
@@ -52,8 +62,13 @@ public class TestQueryManagerConfig
         QueryManagerConfig expected = new QueryManagerConfig()
                 .setMaxQueryAge(new Duration(30, TimeUnit.SECONDS))
                 .setMaxQueryHistory(10)
+                .setMaxConcurrentQueries(10)
+                .setMaxQueuedQueries(15)
+                .setMaxMemoryPoolUsage(0.5)
                 .setClientTimeout(new Duration(10, TimeUnit.SECONDS))
                 .setMaxPendingSplitsPerNode(33)
+                .setInitialHashPartitions(16)
+                .setDistributedJoinsEnabled(true)
                 .setQueryManagerExecutorPoolSize(11)
                 .setRemoteTaskMaxConsecutiveErrorCount(300)
                 .setRemoteTaskMinErrorDuration(new Duration(30, TimeUnit.SECONDS));
@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.execution;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.facebook.presto.util.Threads.daemonThreadsNamed;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestQueryQueueManager
+{
+    @Test
+    public void testQueriesStartInOrder()
+    {
+        QueryQueueManager queueManager = new QueryQueueManager(2, 10, sameThreadExecutor());
+        List<String> started = new ArrayList<>();
+
+        MockQueryExecution query1 = submit(queueManager, "user", "query1", started);
+        MockQueryExecution query2 = submit(queueManager, "user", "query2", started);
+        submit(queueManager, "user", "query3", started);
+        submit(queueManager, "user", "query4", started);
+        submit(queueManager, "user", "query5", started);
+        assertEquals(started, ImmutableList.of("query1", "query2"));
+        assertEquals(queueManager.getQueuedQueries(), 3);
+
+        // the queries of other users do not wait for this user
+        submit(queueManager, "other", "other1", started);
+        assertEquals(started, ImmutableList.of("query1", "query2", "other1"));
+
+        // the queued queries start in the order they were submitted as running queries finish
+        query2.setState(QueryState.FINISHED);
+        assertEquals(started, ImmutableList.of("query1", "query2", "other1", "query3"));
+        query1.setState(QueryState.FAILED);
+        assertEquals(started, ImmutableList.of("query1", "query2", "other1", "query3", "query4"));
+        assertEquals(queueManager.getQueuedQueries(), 1);
+    }
+
+    @Test
+    public void testCancelQueuedQuery()
+    {
+        QueryQueueManager queueManager = new QueryQueueManager(1, 10, sameThreadExecutor());
+        List<String> started = new ArrayList<>();
+
+        MockQueryExecution query1 = submit(queueManager, "user", "query1", started);
+        MockQueryExecution query2 = submit(queueManager, "user", "query2", started);
+        submit(queueManager, "user", "query3", started);
+        assertEquals(queueManager.getQueuedQueries(), 2);
+
+        // the canceled query leaves the queue, and is never started
+        query2.setState(QueryState.CANCELED);
+        assertEquals(queueManager.getQueuedQueries(), 1);
+        assertEquals(started, ImmutableList.of("query1"));
+
+        query1.setState(QueryState.FINISHED);
+        assertEquals(started, ImmutableList.of("query1", "query3"));
+        assertEquals(queueManager.getQueuedQueries(), 0);
+    }
+
+    @Test
+    public void testQueueFull()
+    {
+        QueryQueueManager queueManager = new QueryQueueManager(1, 1, sameThreadExecutor());
+        List<String> started = new ArrayList<>();
+
+        submit(queueManager, "user", "query1", started);
+        submit(queueManager, "user", "query2", started);
+
+        MockQueryExecution query3 = new MockQueryExecution("user", "query3", QueryState.QUEUED);
+        assertFalse(queueManager.submit(query3, new RecordStart("query3", started)));
+        assertEquals(queueManager.getRejectedQueries().getTotalCount(), 1);
+        assertEquals(started, ImmutableList.of("query1"));
+    }
+
+    @Test
+    public void testIdleQueueIsRemoved()
+    {
+        QueryQueueManager queueManager = new QueryQueueManager(1, 1, sameThreadExecutor());
+        List<String> started = new ArrayList<>();
+
+        MockQueryExecution query1 = submit(queueManager, "user", "query1", started);
+        assertEquals(queueManager.getQueueCount(), 1);
+        query1.setState(QueryState.FINISHED);
+        assertEquals(queueManager.getQueueCount(), 0);
+
+        // a new queue is created for the next query
+        submit(queueManager, "user", "query2", started);
+        assertEquals(queueManager.getQueueCount(), 1);
+        assertEquals(started, ImmutableList.of("query1", "query2"));
+    }
+
+    @Test
+    public void testSubmitWhileQueuesAreRemoved()
+            throws Exception
+    {
+        final ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+        try {
+            final QueryQueueManager queueManager = new QueryQueueManager(1, 10_000, executor);
+            final int queriesPerThread = 1000;
+            final CountDownLatch allStarted = new CountDownLatch(4 * queriesPerThread);
+            final AtomicInteger nextQueryId = new AtomicInteger();
+
+            // queries finish as soon as they start, so the queue keeps becoming idle and being
+            // removed while other threads submit queries to it
+            List<Future<?>> submitters = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                submitters.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        for (int i = 0; i < queriesPerThread; i++) {
+                            final MockQueryExecution query = new MockQueryExecution("user", "query" + nextQueryId.incrementAndGet(), QueryState.QUEUED);
+                            assertTrue(queueManager.submit(query, new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    allStarted.countDown();
+                                    query.setState(QueryState.FINISHED);
+                                }
+                            }));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> submitter : submitters) {
+                submitter.get(10, SECONDS);
+            }
+
+            assertTrue(allStarted.await(10, SECONDS), "not all queries were started");
+            assertEquals(queueManager.getQueuedQueries(), 0);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static MockQueryExecution submit(QueryQueueManager queueManager, String user, String queryId, List<String> started)
+    {
+        MockQueryExecution query = new MockQueryExecution(user, queryId, QueryState.QUEUED);
+        assertTrue(queueManager.submit(query, new RecordStart(queryId, started)));
+        return query;
+    }
+
+    private static class RecordStart
+            implements Runnable
+    {
+        private final String queryId;
+        private final List<String> started;
+
+        private RecordStart(String queryId, List<String> started)
+        {
+            this.queryId = queryId;
+            this.started = started;
+        }
+
+        @Override
+        public void run()
+        {
+            started.add(queryId);
+        }
+    }
+}
@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.execution;
 
+import com.facebook.presto.HashPagePartitionFunction;
 import com.facebook.presto.block.BlockAssertions;
 import com.facebook.presto.operator.Page;
 import com.google.common.base.Throwables;
@@ -204,6 +205,75 @@ public class TestSharedBuffer
         assertBufferResultEquals(sharedBuffer.get("second", 14, sizeOfPages(10), NO_WAIT), emptyResults(14, true));
     }
 
+    @Test
+    public void testHashPartitionedQueues()
+            throws Exception
+    {
+        SharedBuffer sharedBuffer = new SharedBuffer(new DataSize(1, Unit.MEGABYTE));
+        sharedBuffer.addQueue("first", new HashPagePartitionFunction(0, 2, ImmutableList.of(0)));
+        sharedBuffer.addQueue("second", new HashPagePartitionFunction(1, 2, ImmutableList.of(0)));
+        sharedBuffer.noMoreQueues();
+
+        addPage(sharedBuffer, new Page(BlockAssertions.createLongSequenceBlock(0, 100)));
+        addPage(sharedBuffer, new Page(BlockAssertions.createLongSequenceBlock(100, 200)));
+
+        // each queue receives one (possibly empty) page for every page in the buffer
+        BufferResult first = sharedBuffer.get("first", 0, new DataSize(1, Unit.MEGABYTE), NO_WAIT);
+        BufferResult second = sharedBuffer.get("second", 0, new DataSize(1, Unit.MEGABYTE), NO_WAIT);
+        assertEquals(first.getElements().size(), 2);
+        assertEquals(second.getElements().size(), 2);
+
+        // every row is sent to exactly one queue
+        for (int i = 0; i < 2; i++) {
+            assertEquals(first.getElements().get(i).getPositionCount() + second.getElements().get(i).getPositionCount(), 100);
+        }
+    }
+
+    @Test
+    public void testPartitionedBuffer()
+            throws Exception
+    {
+        SharedBuffer sharedBuffer = new SharedBuffer(new DataSize(1, Unit.MEGABYTE), true);
+
+        // pages wait until the partitions are known
+        ListenableFuture<?> future = enqueuePage(sharedBuffer, new Page(BlockAssertions.createLongSequenceBlock(0, 100)));
+        sharedBuffer.addQueue("first", new HashPagePartitionFunction(0, 2, ImmutableList.of(0)));
+        sharedBuffer.addQueue("second", new HashPagePartitionFunction(1, 2, ImmutableList.of(0)));
+        assertFalse(future.isDone());
+        sharedBuffer.noMoreQueues();
+        assertTrue(future.isDone());
+
+        addPage(sharedBuffer, new Page(BlockAssertions.createLongSequenceBlock(100, 200)));
+        assertEquals(sharedBuffer.getInfo().getPagesAdded(), 2);
+
+        // every row is sent to exactly one queue, and queues only receive pages with rows of their partition
+        BufferResult first = sharedBuffer.get("first", 0, new DataSize(1, Unit.MEGABYTE), NO_WAIT);
+        BufferResult second = sharedBuffer.get("second", 0, new DataSize(1, Unit.MEGABYTE), NO_WAIT);
+        int positionCount = 0;
+        for (Page page : first.getElements()) {
+            assertTrue(page.getPositionCount() > 0);
+            positionCount += page.getPositionCount();
+        }
+        for (Page page : second.getElements()) {
+            assertTrue(page.getPositionCount() > 0);
+            positionCount += page.getPositionCount();
+        }
+        assertEquals(positionCount, 200);
+
+        // acknowledged pages of a partition are dropped without waiting for the other partitions
+        sharedBuffer.acknowledge("first", first.size());
+        assertQueueState(sharedBuffer, "first", 0, first.size());
+        assertQueueState(sharedBuffer, "second", second.size(), 0);
+        assertEquals(sharedBuffer.getInfo().getBufferedPages(), second.size());
+
+        sharedBuffer.acknowledge("second", second.size());
+        assertEquals(sharedBuffer.getInfo().getBufferedPages(), 0);
+        assertEquals(sharedBuffer.getInfo().getBufferedBytes(), 0);
+
+        sharedBuffer.finish();
+        assertFinished(sharedBuffer);
+    }
+
     @Test
     public void testDuplicateRequests()
             throws Exception
@@ -343,6 +413,36 @@ public class TestSharedBuffer
         sharedBuffer.abort("unknown");
     }
 
+    @Test
+    public void testBufferInfo()
+            throws Exception
+    {
+        SharedBuffer sharedBuffer = new SharedBuffer(sizeOfPages(2));
+        sharedBuffer.addQueue("first");
+        sharedBuffer.noMoreQueues();
+
+        // fill the buffer and block the next page
+        addPage(sharedBuffer, createPage(0));
+        addPage(sharedBuffer, createPage(1));
+        ListenableFuture<?> future = enqueuePage(sharedBuffer, createPage(2));
+
+        SharedBufferInfo info = sharedBuffer.getInfo();
+        assertEquals(info.getBufferedPages(), 2);
+        assertEquals(info.getBufferedBytes(), sizeOfPages(2).toBytes());
+        assertEquals(info.getQueuedPages(), 1);
+
+        // acknowledge the buffered pages, which moves the queued page into the buffer
+        assertBufferResultEquals(sharedBuffer.get("first", 0, sizeOfPages(10), NO_WAIT), bufferResult(0, createPage(0), createPage(1)));
+        sharedBuffer.acknowledge("first", 2);
+        assertTrue(future.isDone());
+
+        info = sharedBuffer.getInfo();
+        assertEquals(info.getMasterSequenceId(), 2);
+        assertEquals(info.getBufferedPages(), 1);
+        assertEquals(info.getBufferedBytes(), sizeOfPages(1).toBytes());
+        assertEquals(info.getQueuedPages(), 0);
+    }
+
     @Test
     public void testAddStateMachine()
             throws Exception
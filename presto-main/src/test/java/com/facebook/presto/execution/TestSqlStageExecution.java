@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.execution;
 
+import com.facebook.presto.PagePartitionFunction;
 import com.facebook.presto.client.FailureInfo;
 import com.facebook.presto.connector.dual.DualMetadata;
 import com.facebook.presto.connector.dual.DualSplit;
@@ -54,14 +55,19 @@ import io.airlift.units.Duration;
 import org.joda.time.DateTime;
 import org.testng.annotations.Test;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -74,6 +80,7 @@ import static com.facebook.presto.util.Failures.toFailures;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.fail;
 
 public class TestSqlStageExecution
@@ -101,7 +108,9 @@ public class TestSqlStageExecution
                     new NodeScheduler(nodeManager, new NodeSchedulerConfig()), new MockRemoteTaskFactory(executor),
                     SESSION,
                     1,
-                    executor);
+                    8,
+                    executor,
+                    new SplitSchedulerStats());
 
             stageExecution.addOutputBuffer("out");
             stageExecution.noMoreOutputBuffers();
@@ -152,6 +161,91 @@ public class TestSqlStageExecution
         }
     }
 
+    @Test
+    public void testWaitingSplitScheduledAfterTaskProgress()
+            throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool(Threads.daemonThreadsNamed("test"));
+        SqlStageExecution stageExecution = null;
+        try {
+            MetadataManager metadata = new MetadataManager();
+            metadata.addInternalSchemaMetadata(MetadataManager.INTERNAL_CONNECTOR_ID, new DualMetadata());
+
+            StageExecutionPlan tableScanPlan = createTableScanPlan("scan", metadata, 10);
+            MockRemoteTaskFactory remoteTaskFactory = new MockRemoteTaskFactory(executor);
+
+            stageExecution = new SqlStageExecution(new QueryId("query"),
+                    new MockLocationFactory(),
+                    tableScanPlan,
+                    new NodeScheduler(new InMemoryNodeManager(), new NodeSchedulerConfig()),
+                    remoteTaskFactory,
+                    SESSION,
+                    4,
+                    1,
+                    executor,
+                    new SplitSchedulerStats());
+
+            stageExecution.addOutputBuffer("out");
+            stageExecution.noMoreOutputBuffers();
+            stageExecution.start();
+
+            // the first split starts the task and the next three fill the node, so the fifth split waits
+            MockRemoteTaskFactory.MockRemoteTask task = waitForTask(remoteTaskFactory);
+            assertSplitBatchSizes(task, 3);
+            assertEquals(stageExecution.getState(), StageState.SCHEDULING);
+
+            // the task info change starts a round that assigns the waiting split
+            task.splitsCompleted(2);
+            assertSplitBatchSizes(task, 3, 2);
+            assertEquals(stageExecution.getState(), StageState.SCHEDULING);
+
+            task.splitsCompleted(4);
+            assertSplitBatchSizes(task, 3, 2, 4);
+
+            long start = System.nanoTime();
+            while (stageExecution.getState() != StageState.FINISHED) {
+                assertFalse(stageExecution.getState().isDone(), "Unexpected state for stage " + stageExecution.getState());
+                if (TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) > 1) {
+                    fail("Expected stage to finish within 1 second");
+                }
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+        }
+        finally {
+            if (stageExecution != null) {
+                stageExecution.cancel(false);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private static MockRemoteTaskFactory.MockRemoteTask waitForTask(MockRemoteTaskFactory remoteTaskFactory)
+            throws InterruptedException
+    {
+        long start = System.nanoTime();
+        while (remoteTaskFactory.getTasks().isEmpty()) {
+            if (TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) > 1) {
+                fail("Expected task to be created within 1 second");
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(remoteTaskFactory.getTasks().size(), 1);
+        return remoteTaskFactory.getTasks().get(0);
+    }
+
+    private static void assertSplitBatchSizes(MockRemoteTaskFactory.MockRemoteTask task, Integer... expected)
+            throws InterruptedException
+    {
+        long start = System.nanoTime();
+        while (task.getSplitBatchSizes().size() < expected.length) {
+            if (TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) > 1) {
+                fail("Expected split batches " + Arrays.asList(expected) + " within 1 second, but got " + task.getSplitBatchSizes());
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(task.getSplitBatchSizes(), Arrays.asList(expected));
+    }
+
     private StageExecutionPlan createJoinPlan(String planId, MetadataManager metadata)
     {
         // create table scan for build data with a single split, so it is only waiting on the no-more buffers call
@@ -206,12 +300,18 @@ public class TestSqlStageExecution
             implements RemoteTaskFactory
     {
         private final Executor executor;
+        private final List<MockRemoteTask> tasks = new CopyOnWriteArrayList<>();
 
         private MockRemoteTaskFactory(Executor executor)
         {
             this.executor = executor;
         }
 
+        public List<MockRemoteTask> getTasks()
+        {
+            return tasks;
+        }
+
         public RemoteTask createRemoteTask(Session session,
                 TaskId taskId,
                 Node node,
@@ -219,9 +319,11 @@ public class TestSqlStageExecution
                 Split initialSplit,
                 Map<PlanNodeId, OutputReceiver> outputReceivers,
                 Multimap<PlanNodeId, URI> initialExchangeLocations,
-                Set<String> initialOutputIds)
+                Map<String, PagePartitionFunction> initialOutputBuffers)
         {
-            return new MockRemoteTask(taskId, fragment, executor);
+            MockRemoteTask task = new MockRemoteTask(taskId, fragment, initialSplit, executor);
+            tasks.add(task);
+            return task;
         }
 
         private static class MockRemoteTask
@@ -236,14 +338,20 @@ public class TestSqlStageExecution
 
             private final PlanFragment fragment;
 
+            private final List<StateChangeListener<TaskInfo>> taskInfoListeners = new CopyOnWriteArrayList<>();
+
             @GuardedBy("this")
             private final Set<PlanNodeId> noMoreSplits = new HashSet<>();
 
             @GuardedBy("this")
             private int splits;
 
+            @GuardedBy("this")
+            private final List<Integer> splitBatchSizes = new ArrayList<>();
+
             public MockRemoteTask(TaskId taskId,
                     PlanFragment fragment,
+                    @Nullable Split initialSplit,
                     Executor executor)
             {
                 this.taskStateMachine = new TaskStateMachine(checkNotNull(taskId, "taskId is null"), checkNotNull(executor, "executor is null"));
@@ -255,6 +363,7 @@ public class TestSqlStageExecution
 
                 this.sharedBuffer = new SharedBuffer(checkNotNull(new DataSize(1, Unit.BYTE), "maxBufferSize is null"));
                 this.fragment = checkNotNull(fragment, "fragment is null");
+                this.splits = (initialSplit != null) ? 1 : 0;
             }
 
             @Override
@@ -275,6 +384,7 @@ public class TestSqlStageExecution
                         sharedBuffer.getInfo(),
                         ImmutableSet.<PlanNodeId>of(),
                         taskContext.getTaskStats(),
+                        taskContext.getMemoryPool().getInfo(),
                         failures,
                         taskContext.getOutputItems());
             }
@@ -285,10 +395,30 @@ public class TestSqlStageExecution
             }
 
             @Override
-            public void addSplit(Split split)
+            public synchronized void addSplits(List<Split> splits)
+            {
+                checkNotNull(splits, "splits is null");
+                this.splits += splits.size();
+                splitBatchSizes.add(splits.size());
+            }
+
+            public synchronized List<Integer> getSplitBatchSizes()
             {
-                checkNotNull(split, "split is null");
-                splits++;
+                return ImmutableList.copyOf(splitBatchSizes);
+            }
+
+            /**
+             * Removes completed splits from the queued splits and reports the progress to the listeners.
+             */
+            public void splitsCompleted(int count)
+            {
+                synchronized (this) {
+                    splits -= count;
+                }
+                TaskInfo taskInfo = getTaskInfo();
+                for (StateChangeListener<TaskInfo> listener : taskInfoListeners) {
+                    listener.stateChanged(taskInfo);
+                }
             }
 
             @Override
@@ -314,10 +444,10 @@ public class TestSqlStageExecution
             }
 
             @Override
-            public void addOutputBuffers(Set<String> outputBuffers, boolean noMore)
+            public void addOutputBuffers(Map<String, PagePartitionFunction> outputBuffers, boolean noMore)
             {
-                for (String bufferId : outputBuffers) {
-                    sharedBuffer.addQueue(bufferId);
+                for (Entry<String, PagePartitionFunction> entry : outputBuffers.entrySet()) {
+                    sharedBuffer.addQueue(entry.getKey(), entry.getValue());
                 }
                 if (noMore) {
                     sharedBuffer.noMoreQueues();
@@ -327,6 +457,7 @@ public class TestSqlStageExecution
             @Override
             public void addStateChangeListener(final StateChangeListener<TaskInfo> stateChangeListener)
             {
+                taskInfoListeners.add(stateChangeListener);
                 taskStateMachine.addStateChangeListener(new StateChangeListener<TaskState>()
                 {
                     @Override
@@ -357,7 +488,7 @@ public class TestSqlStageExecution
             }
 
             @Override
-            public int getQueuedSplits()
+            public synchronized int getQueuedSplits()
             {
                 if (taskStateMachine.getState().isDone()) {
                     return 0;
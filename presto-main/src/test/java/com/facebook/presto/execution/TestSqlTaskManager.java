@@ -14,8 +14,10 @@
 package com.facebook.presto.execution;
 
 import com.facebook.presto.OutputBuffers;
+import com.facebook.presto.PagePartitionFunction;
 import com.facebook.presto.ScheduledSplit;
 import com.facebook.presto.TaskSource;
+import com.facebook.presto.UnpartitionedPagePartitionFunction;
 import com.facebook.presto.connector.dual.DualDataStreamProvider;
 import com.facebook.presto.connector.dual.DualMetadata;
 import com.facebook.presto.connector.dual.DualSplitManager;
@@ -103,7 +105,8 @@ public class TestSqlTaskManager
                 new DataStreamManager(new DualDataStreamProvider()),
                 new MockLocalStorageManager(new File("target/temp")),
                 new MockExchangeClientSupplier(),
-                new ExpressionCompiler(metadata));
+                new ExpressionCompiler(metadata),
+                new TaskManagerConfig());
 
         taskExecutor = new TaskExecutor(8);
         taskExecutor.start();
@@ -141,7 +144,7 @@ public class TestSqlTaskManager
                 taskId,
                 testFragment,
                 ImmutableList.<TaskSource>of(),
-                new OutputBuffers(ImmutableSet.<String>of(), false));
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of(), false));
         assertEquals(taskInfo.getState(), TaskState.RUNNING);
 
         taskInfo = sqlTaskManager.getTaskInfo(taskInfo.getTaskId(), false);
@@ -151,13 +154,44 @@ public class TestSqlTaskManager
                 taskId,
                 testFragment,
                 ImmutableList.<TaskSource>of(new TaskSource(tableScanNodeId, ImmutableSet.<ScheduledSplit>of(), true)),
-                new OutputBuffers(ImmutableSet.<String>of(), true));
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of(), true));
         assertEquals(taskInfo.getState(), TaskState.FINISHED);
 
         taskInfo = sqlTaskManager.getTaskInfo(taskInfo.getTaskId(), false);
         assertEquals(taskInfo.getState(), TaskState.FINISHED);
     }
 
+    @Test
+    public void testUpdateWithoutFragment()
+            throws Exception
+    {
+        TaskInfo taskInfo = sqlTaskManager.updateTask(session,
+                taskId,
+                testFragment,
+                ImmutableList.<TaskSource>of(),
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of(), false));
+        assertEquals(taskInfo.getState(), TaskState.RUNNING);
+
+        // once the task exists the fragment is not needed
+        taskInfo = sqlTaskManager.updateTask(session,
+                taskId,
+                null,
+                ImmutableList.<TaskSource>of(new TaskSource(tableScanNodeId, ImmutableSet.<ScheduledSplit>of(), true)),
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of(), true));
+        assertEquals(taskInfo.getState(), TaskState.FINISHED);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testUpdateWithoutFragmentBeforeCreate()
+            throws Exception
+    {
+        sqlTaskManager.updateTask(session,
+                taskId,
+                null,
+                ImmutableList.<TaskSource>of(),
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of(), false));
+    }
+
     @Test
     public void testSimpleQuery()
             throws Exception
@@ -166,7 +200,7 @@ public class TestSqlTaskManager
                 taskId,
                 testFragment,
                 ImmutableList.<TaskSource>of(new TaskSource(tableScanNodeId, ImmutableSet.of(new ScheduledSplit(0, split)), true)),
-                new OutputBuffers(ImmutableSet.of("out"), true));
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of("out", new UnpartitionedPagePartitionFunction()), true));
         assertEquals(taskInfo.getState(), TaskState.RUNNING);
 
         taskInfo = sqlTaskManager.getTaskInfo(taskInfo.getTaskId(), false);
@@ -197,7 +231,7 @@ public class TestSqlTaskManager
                 taskId,
                 testFragment,
                 ImmutableList.<TaskSource>of(),
-                new OutputBuffers(ImmutableSet.<String>of(), false));
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of(), false));
         assertEquals(taskInfo.getState(), TaskState.RUNNING);
         assertNull(taskInfo.getStats().getEndTime());
 
@@ -222,7 +256,7 @@ public class TestSqlTaskManager
                 taskId,
                 testFragment,
                 ImmutableList.<TaskSource>of(new TaskSource(tableScanNodeId, ImmutableSet.of(new ScheduledSplit(0, split)), true)),
-                new OutputBuffers(ImmutableSet.of("out"), true));
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of("out", new UnpartitionedPagePartitionFunction()), true));
         assertEquals(taskInfo.getState(), TaskState.RUNNING);
 
         taskInfo = sqlTaskManager.getTaskInfo(taskInfo.getTaskId(), false);
@@ -253,7 +287,7 @@ public class TestSqlTaskManager
                 taskId,
                 testFragment,
                 ImmutableList.<TaskSource>of(),
-                new OutputBuffers(ImmutableSet.<String>of(), false));
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of(), false));
         assertEquals(taskInfo.getState(), TaskState.RUNNING);
 
         taskInfo = sqlTaskManager.cancelTask(taskId);
@@ -18,6 +18,7 @@ import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
 import org.testng.annotations.Test;
 
+import java.io.File;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -34,11 +35,17 @@ public class TestTaskManagerConfig
         assertRecordedDefaults(recordDefaults(TaskManagerConfig.class)
                 .setTaskCpuTimerEnabled(true)
                 .setMaxShardProcessorThreads(Runtime.getRuntime().availableProcessors() * 4)
+                .setHashBuildConcurrency(Runtime.getRuntime().availableProcessors())
+                .setDynamicFilteringEnabled(true)
                 .setInfoMaxAge(new Duration(15, TimeUnit.MINUTES))
                 .setClientTimeout(new Duration(5, TimeUnit.MINUTES))
                 .setMaxTaskMemoryUsage(new DataSize(256, Unit.MEGABYTE))
                 .setOperatorPreAllocatedMemory(new DataSize(16, Unit.MEGABYTE))
-                .setSinkMaxBufferSize(new DataSize(32, Unit.MEGABYTE)));
+                .setMemoryPoolSize(new DataSize(Runtime.getRuntime().maxMemory() * 0.4, Unit.BYTE))
+                .setMaxMemoryWait(new Duration(1, TimeUnit.MINUTES))
+                .setSinkMaxBufferSize(new DataSize(32, Unit.MEGABYTE))
+                .setSpillEnabled(false)
+                .setSpillPath(new File("var/spill")));
     }
 
     @Test
@@ -48,20 +55,32 @@ public class TestTaskManagerConfig
                 .put("task.cpu-timer-enabled", "false")
                 .put("task.max-memory", "2GB")
                 .put("task.operator-pre-allocated-memory", "2MB")
+                .put("task.memory-pool-size", "10GB")
+                .put("task.max-memory-wait", "10s")
                 .put("task.shard.max-threads", "3")
+                .put("task.hash-build-concurrency", "5")
+                .put("task.dynamic-filtering-enabled", "false")
                 .put("task.info.max-age", "22m")
                 .put("task.client.timeout", "10s")
                 .put("sink.max-buffer-size", "42MB")
+                .put("task.spill-enabled", "true")
+                .put("task.spill-path", "/tmp/spill")
                 .build();
 
         TaskManagerConfig expected = new TaskManagerConfig()
                 .setTaskCpuTimerEnabled(false)
                 .setMaxTaskMemoryUsage(new DataSize(2, Unit.GIGABYTE))
                 .setOperatorPreAllocatedMemory(new DataSize(2, Unit.MEGABYTE))
+                .setMemoryPoolSize(new DataSize(10, Unit.GIGABYTE))
+                .setMaxMemoryWait(new Duration(10, TimeUnit.SECONDS))
                 .setMaxShardProcessorThreads(3)
+                .setHashBuildConcurrency(5)
+                .setDynamicFilteringEnabled(false)
                 .setInfoMaxAge(new Duration(22, TimeUnit.MINUTES))
                 .setClientTimeout(new Duration(10, TimeUnit.SECONDS))
-                .setSinkMaxBufferSize(new DataSize(42, Unit.MEGABYTE));
+                .setSinkMaxBufferSize(new DataSize(42, Unit.MEGABYTE))
+                .setSpillEnabled(true)
+                .setSpillPath(new File("/tmp/spill"));
 
         assertFullMapping(properties, expected);
     }
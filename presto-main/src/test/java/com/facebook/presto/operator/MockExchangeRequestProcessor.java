@@ -81,7 +81,8 @@ public class MockExchangeRequestProcessor
         // verify we got a data size and it parses correctly
         assertTrue(!request.getHeaders().get(PrestoHeaders.PRESTO_MAX_SIZE).isEmpty());
         DataSize maxSize = DataSize.valueOf(request.getHeader(PrestoHeaders.PRESTO_MAX_SIZE));
-        assertEquals(maxSize, expectedMaxSize);
+        assertTrue(maxSize.toBytes() > 0, "maxSize is empty");
+        assertTrue(maxSize.toBytes() <= expectedMaxSize.toBytes(), "maxSize exceeds " + expectedMaxSize);
 
         RequestLocation requestLocation = new RequestLocation(request.getUri());
         URI location = requestLocation.getLocation();
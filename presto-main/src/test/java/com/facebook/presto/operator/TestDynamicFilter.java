@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.block.uncompressed.UncompressedBlock;
+import com.google.common.base.Optional;
+import org.testng.annotations.Test;
+
+import static com.facebook.presto.block.BlockAssertions.createDoubleSequenceBlock;
+import static com.facebook.presto.block.BlockAssertions.createLongSequenceBlock;
+import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_DOUBLE;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_LONG;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestDynamicFilter
+{
+    @Test
+    public void testBuildKeys()
+    {
+        ChannelIndex index = new ChannelIndex(10, SINGLE_LONG);
+        index.indexBlock((UncompressedBlock) createLongSequenceBlock(0, 1000));
+        index.indexBlock((UncompressedBlock) createLongsBlock(5000L, null, -7L));
+
+        DynamicFilter filter = DynamicFilter.create(index, 10_000).get();
+        assertEquals(filter.getMin(), -7);
+        assertEquals(filter.getMax(), 5000);
+
+        // every build key is accepted
+        for (long value = 0; value < 1000; value++) {
+            assertTrue(filter.mightContain(value));
+        }
+        assertTrue(filter.mightContain(5000));
+        assertTrue(filter.mightContain(-7));
+
+        // keys out of the range are rejected
+        assertFalse(filter.mightContain(-8));
+        assertFalse(filter.mightContain(5001));
+        assertFalse(filter.mightContain(Long.MAX_VALUE));
+
+        // most keys in the range that are not build keys are rejected
+        int accepted = 0;
+        for (long value = 1001; value < 5000; value++) {
+            if (filter.mightContain(value)) {
+                accepted++;
+            }
+        }
+        assertTrue(accepted < 400, "bloom filter accepted " + accepted + " of 3999 missing keys");
+    }
+
+    @Test
+    public void testEmptyBuild()
+    {
+        ChannelIndex index = new ChannelIndex(10, SINGLE_LONG);
+        index.indexBlock((UncompressedBlock) createLongsBlock((Long) null));
+
+        DynamicFilter filter = DynamicFilter.create(index, 10_000).get();
+        assertFalse(filter.mightContain(0));
+        assertFalse(filter.mightContain(Long.MIN_VALUE));
+        assertFalse(filter.mightContain(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testUnsupportedBuild()
+    {
+        ChannelIndex index = new ChannelIndex(10, SINGLE_DOUBLE);
+        index.indexBlock((UncompressedBlock) createDoubleSequenceBlock(0, 10));
+        assertEquals(DynamicFilter.create(index, 10_000), Optional.absent());
+
+        // too many keys
+        index = new ChannelIndex(10, SINGLE_LONG);
+        index.indexBlock((UncompressedBlock) createLongSequenceBlock(0, 100));
+        assertEquals(DynamicFilter.create(index, 99), Optional.absent());
+    }
+}
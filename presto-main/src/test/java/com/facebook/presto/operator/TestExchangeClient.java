@@ -94,6 +94,9 @@ public class TestExchangeClient
 
         // client should have sent only 2 requests: one to get all pages and once to get the done signal
         assertStatus(exchangeClient.getStatus().getPageBufferClientStatuses().get(0), location, "closed", 3, 2, 2, "queued");
+
+        // the buffer has room for the largest response
+        assertEquals(exchangeClient.getStatus().getMaxResponseSize().toBytes(), maxResponseSize.toBytes());
     }
 
     @Test
@@ -151,6 +154,41 @@ public class TestExchangeClient
         assertStatus(statuses.get(location2), location2, "closed", 3, 2, 2, "queued");
     }
 
+    @Test
+    public void testResponseSizeLimitedByBuffer()
+            throws Exception
+    {
+        DataSize maxResponseSize = new DataSize(10, Unit.MEGABYTE);
+        MockExchangeRequestProcessor processor = new MockExchangeRequestProcessor(maxResponseSize);
+
+        URI location = URI.create("http://localhost:8080");
+        processor.addPage(location, createPage(1));
+        processor.addPage(location, createPage(2));
+        processor.setComplete(location);
+
+        ExchangeClient exchangeClient = new ExchangeClient(new DataSize(2, Unit.MEGABYTE),
+                maxResponseSize,
+                1,
+                new TestingHttpClient(processor, executor),
+                executor);
+
+        exchangeClient.addLocation(location);
+        exchangeClient.noMoreLocations();
+
+        assertPageEquals(exchangeClient.getNextPage(new Duration(1, TimeUnit.SECONDS)), createPage(1));
+        assertPageEquals(exchangeClient.getNextPage(new Duration(1, TimeUnit.SECONDS)), createPage(2));
+        assertNull(exchangeClient.getNextPage(new Duration(1, TimeUnit.SECONDS)));
+
+        // a request may not ask for more than the free space in the buffer, but asks for at least 1MB
+        ExchangeClientStatus status = exchangeClient.getStatus();
+        assertTrue(status.getMaxResponseSize().toBytes() <= new DataSize(2, Unit.MEGABYTE).toBytes());
+        assertTrue(status.getMaxResponseSize().toBytes() >= new DataSize(1, Unit.MEGABYTE).toBytes());
+        assertTrue(status.getAverageBytesPerRequest() > 0);
+        assertEquals(status.getRunningRequests(), 0);
+        PageBufferClientStatus clientStatus = status.getPageBufferClientStatuses().get(0);
+        assertEquals(clientStatus.getMaxResponseSize().toBytes(), status.getMaxResponseSize().toBytes());
+    }
+
     @Test
     public void testBufferLimit()
             throws Exception
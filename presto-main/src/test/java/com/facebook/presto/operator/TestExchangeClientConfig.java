@@ -31,7 +31,9 @@ public class TestExchangeClientConfig
     {
         assertRecordedDefaults(recordDefaults(ExchangeClientConfig.class)
                 .setExchangeMaxBufferSize(new DataSize(32, Unit.MEGABYTE))
-                .setExchangeConcurrentRequestMultiplier(3));
+                .setExchangeConcurrentRequestMultiplier(3)
+                .setExchangeCompressionEnabled(false)
+                .setLocalExchangeEnabled(true));
     }
 
     @Test
@@ -40,11 +42,15 @@ public class TestExchangeClientConfig
         Map<String, String> properties = new ImmutableMap.Builder<String, String>()
                 .put("exchange.max-buffer-size", "1GB")
                 .put("exchange.concurrent-request-multiplier", "13")
+                .put("exchange.compression-enabled", "true")
+                .put("exchange.local-exchange-enabled", "false")
                 .build();
 
         ExchangeClientConfig expected = new ExchangeClientConfig()
                 .setExchangeMaxBufferSize(new DataSize(1, Unit.GIGABYTE))
-                .setExchangeConcurrentRequestMultiplier(13);
+                .setExchangeConcurrentRequestMultiplier(13)
+                .setExchangeCompressionEnabled(true)
+                .setLocalExchangeEnabled(false);
 
         assertFullMapping(properties, expected);
     }
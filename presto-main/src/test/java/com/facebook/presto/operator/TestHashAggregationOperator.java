@@ -14,6 +14,7 @@
 package com.facebook.presto.operator;
 
 import com.facebook.presto.block.BlockBuilder;
+import com.facebook.presto.block.BlockCursor;
 import com.facebook.presto.execution.TaskId;
 import com.facebook.presto.operator.HashAggregationOperator.HashAggregationOperatorFactory;
 import com.facebook.presto.sql.analyzer.Session;
@@ -21,6 +22,7 @@ import com.facebook.presto.sql.planner.plan.AggregationNode.Step;
 import com.facebook.presto.sql.tree.Input;
 import com.facebook.presto.tuple.TupleInfo;
 import com.facebook.presto.util.MaterializedResult;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
@@ -28,6 +30,8 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
@@ -42,6 +46,7 @@ import static com.facebook.presto.operator.aggregation.DoubleSumAggregation.DOUB
 import static com.facebook.presto.operator.aggregation.LongAverageAggregation.LONG_AVERAGE;
 import static com.facebook.presto.operator.aggregation.LongSumAggregation.LONG_SUM;
 import static com.facebook.presto.operator.aggregation.VarBinaryMaxAggregation.VAR_BINARY_MAX;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_DOUBLE;
 import static com.facebook.presto.tuple.TupleInfo.SINGLE_LONG;
 import static com.facebook.presto.tuple.TupleInfo.SINGLE_VARBINARY;
 import static com.facebook.presto.tuple.TupleInfo.Type.DOUBLE;
@@ -51,6 +56,8 @@ import static com.facebook.presto.util.MaterializedResult.resultBuilder;
 import static com.facebook.presto.util.Threads.daemonThreadsNamed;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestHashAggregationOperator
 {
@@ -116,6 +123,39 @@ public class TestHashAggregationOperator
         assertOperatorEquals(operator, input, expected);
     }
 
+    @Test
+    public void testHashAggregationWithDoubleKey()
+            throws Exception
+    {
+        List<Page> input = rowPagesBuilder(SINGLE_DOUBLE, SINGLE_LONG)
+                .row(1.0, 1)
+                .row(null, 2)
+                .row(2.5, 3)
+                .pageBreak()
+                .row(1.0, 4)
+                .row(null, 5)
+                .build();
+
+        HashAggregationOperatorFactory operatorFactory = new HashAggregationOperatorFactory(
+                0,
+                SINGLE_DOUBLE,
+                0,
+                Step.SINGLE,
+                ImmutableList.of(aggregation(COUNT, new Input(1, 0)),
+                        aggregation(LONG_SUM, new Input(1, 0))),
+                100_000);
+
+        Operator operator = operatorFactory.createOperator(driverContext);
+
+        MaterializedResult expected = resultBuilder(DOUBLE, FIXED_INT_64, FIXED_INT_64)
+                .row(1.0, 2, 5)
+                .row(null, 2, 7)
+                .row(2.5, 1, 3)
+                .build();
+
+        assertOperatorEquals(operator, input, expected);
+    }
+
     @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Task exceeded max memory size of 10B")
     public void testMemoryLimit()
     {
@@ -146,6 +186,57 @@ public class TestHashAggregationOperator
         toPages(operator, input);
     }
 
+    @Test
+    public void testSpillToDisk()
+    {
+        // each page contains enough groups to exceed the memory limit
+        List<Page> input = rowPagesBuilder(SINGLE_LONG, SINGLE_LONG)
+                .addSequencePage(100_000, 0, 0)
+                .addSequencePage(100_000, 100_000, 100_000)
+                .addSequencePage(100_000, 0, 0)
+                .addSequencePage(100_000, 100_000, 100_000)
+                .build();
+
+        Session session = new Session("user", "source", "catalog", "schema", "address", "agent");
+        DriverContext driverContext = new TaskContext(new TaskId("query", "stage", "task"), executor, session, new DataSize(1, Unit.MEGABYTE))
+                .addPipelineContext(true, true)
+                .addDriverContext();
+
+        HashAggregationOperatorFactory operatorFactory = new HashAggregationOperatorFactory(
+                0,
+                SINGLE_LONG,
+                0,
+                Step.SINGLE,
+                ImmutableList.of(aggregation(COUNT, new Input(0, 0)),
+                        aggregation(LONG_SUM, new Input(1, 0))),
+                10_000,
+                Optional.of(new File("target/spill")));
+
+        HashAggregationOperator operator = (HashAggregationOperator) operatorFactory.createOperator(driverContext);
+
+        BitSet groups = new BitSet();
+        for (Page page : toPages(operator, input)) {
+            BlockCursor groupCursor = page.getBlock(0).cursor();
+            BlockCursor countCursor = page.getBlock(1).cursor();
+            BlockCursor sumCursor = page.getBlock(2).cursor();
+            while (groupCursor.advanceNextPosition()) {
+                assertTrue(countCursor.advanceNextPosition());
+                assertTrue(sumCursor.advanceNextPosition());
+
+                int group = (int) groupCursor.getLong(0);
+                assertFalse(groups.get(group), "duplicate group " + group);
+                groups.set(group);
+
+                assertEquals(countCursor.getLong(0), 2);
+                assertEquals(sumCursor.getLong(0), 2L * group);
+            }
+        }
+        assertEquals(groups.cardinality(), 200_000);
+        assertEquals(groups.nextClearBit(0), 200_000);
+
+        operator.close();
+    }
+
     @Test
     public void testMultiSliceAggregationOutput()
     {
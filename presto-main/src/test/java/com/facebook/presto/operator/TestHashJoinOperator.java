@@ -106,6 +106,144 @@ public class TestHashJoinOperator
         assertOperatorEquals(joinOperator, probeInput, expected);
     }
 
+    @Test
+    public void testInnerJoinWithLongKey()
+            throws Exception
+    {
+        DriverContext driverContext = taskContext.addPipelineContext(true, true).addDriverContext();
+
+        // build
+        OperatorContext operatorContext = driverContext.addOperatorContext(0, StaticOperator.class.getSimpleName());
+        Operator buildOperator = new StaticOperator(operatorContext, rowPagesBuilder(SINGLE_LONG, SINGLE_VARBINARY)
+                .row(1, "a")
+                .row(2, "b")
+                .row(null, "c")
+                .row(2, "d")
+                .build());
+        HashBuilderOperatorFactory hashBuilderOperatorFactory = new HashBuilderOperatorFactory(1, buildOperator.getTupleInfos(), 0, 100);
+        Operator sourceHashProvider = hashBuilderOperatorFactory.createOperator(driverContext);
+
+        Driver driver = new Driver(driverContext, buildOperator, sourceHashProvider);
+        while (!driver.isFinished()) {
+            driver.process();
+        }
+
+        // probe
+        List<Page> probeInput = rowPagesBuilder(SINGLE_LONG)
+                .row(1)
+                .row((Object) null)
+                .row(2)
+                .row(3)
+                .build();
+        HashJoinOperatorFactory joinOperatorFactory = HashJoinOperator.innerJoin(
+                0,
+                hashBuilderOperatorFactory.getHashSupplier(),
+                ImmutableList.of(SINGLE_LONG),
+                0);
+        Operator joinOperator = joinOperatorFactory.createOperator(taskContext.addPipelineContext(true, true).addDriverContext());
+
+        // expected
+        MaterializedResult expected = resultBuilder(new TupleInfo(FIXED_INT_64, FIXED_INT_64, VARIABLE_BINARY))
+                .row(1, 1, "a")
+                .row(2, 2, "d")
+                .row(2, 2, "b")
+                .build();
+
+        assertOperatorEquals(joinOperator, probeInput, expected);
+    }
+
+    @Test
+    public void testInnerJoinWithParallelBuild()
+            throws Exception
+    {
+        DriverContext driverContext = taskContext.addPipelineContext(true, true).addDriverContext();
+
+        // build enough positions for the hash to be partitioned
+        OperatorContext operatorContext = driverContext.addOperatorContext(0, StaticOperator.class.getSimpleName());
+        Operator buildOperator = new StaticOperator(operatorContext, rowPagesBuilder(SINGLE_VARBINARY, SINGLE_LONG)
+                .addSequencePage(200_000, 0, 1_000_000)
+                .addSequencePage(10, 20, 2_000_000)
+                .build());
+        HashBuilderOperatorFactory hashBuilderOperatorFactory = new HashBuilderOperatorFactory(1, buildOperator.getTupleInfos(), 0, 100, true, 4);
+        Operator sourceHashProvider = hashBuilderOperatorFactory.createOperator(driverContext);
+
+        Driver driver = new Driver(driverContext, buildOperator, sourceHashProvider);
+        while (!driver.isFinished()) {
+            driver.process();
+        }
+
+        // probe
+        List<Page> probeInput = rowPagesBuilder(SINGLE_VARBINARY)
+                .addSequencePage(3, 20)
+                .addSequencePage(2, 199_999)
+                .build();
+        HashJoinOperatorFactory joinOperatorFactory = HashJoinOperator.innerJoin(
+                0,
+                hashBuilderOperatorFactory.getHashSupplier(),
+                ImmutableList.of(SINGLE_VARBINARY),
+                0);
+        Operator joinOperator = joinOperatorFactory.createOperator(taskContext.addPipelineContext(true, true).addDriverContext());
+
+        // expected
+        MaterializedResult expected = resultBuilder(new TupleInfo(VARIABLE_BINARY, VARIABLE_BINARY, FIXED_INT_64))
+                .row("20", "20", 2_000_000)
+                .row("20", "20", 1_000_020)
+                .row("21", "21", 2_000_001)
+                .row("21", "21", 1_000_021)
+                .row("22", "22", 2_000_002)
+                .row("22", "22", 1_000_022)
+                .row("199999", "199999", 1_199_999)
+                .build();
+
+        assertOperatorEquals(joinOperator, probeInput, expected);
+    }
+
+    @Test
+    public void testInnerJoinWithParallelBuildAndLongKey()
+            throws Exception
+    {
+        DriverContext driverContext = taskContext.addPipelineContext(true, true).addDriverContext();
+
+        // build enough positions for the hash to be partitioned
+        OperatorContext operatorContext = driverContext.addOperatorContext(0, StaticOperator.class.getSimpleName());
+        Operator buildOperator = new StaticOperator(operatorContext, rowPagesBuilder(SINGLE_LONG, SINGLE_LONG)
+                .addSequencePage(200_000, 0, 1_000_000)
+                .addSequencePage(10, 20, 2_000_000)
+                .build());
+        HashBuilderOperatorFactory hashBuilderOperatorFactory = new HashBuilderOperatorFactory(1, buildOperator.getTupleInfos(), 0, 100, true, 4);
+        Operator sourceHashProvider = hashBuilderOperatorFactory.createOperator(driverContext);
+
+        Driver driver = new Driver(driverContext, buildOperator, sourceHashProvider);
+        while (!driver.isFinished()) {
+            driver.process();
+        }
+
+        // probe
+        List<Page> probeInput = rowPagesBuilder(SINGLE_LONG)
+                .addSequencePage(3, 20)
+                .addSequencePage(2, 199_999)
+                .build();
+        HashJoinOperatorFactory joinOperatorFactory = HashJoinOperator.innerJoin(
+                0,
+                hashBuilderOperatorFactory.getHashSupplier(),
+                ImmutableList.of(SINGLE_LONG),
+                0);
+        Operator joinOperator = joinOperatorFactory.createOperator(taskContext.addPipelineContext(true, true).addDriverContext());
+
+        // expected
+        MaterializedResult expected = resultBuilder(new TupleInfo(FIXED_INT_64, FIXED_INT_64, FIXED_INT_64))
+                .row(20, 20, 2_000_000)
+                .row(20, 20, 1_000_020)
+                .row(21, 21, 2_000_001)
+                .row(21, 21, 1_000_021)
+                .row(22, 22, 2_000_002)
+                .row(22, 22, 1_000_022)
+                .row(199_999, 199_999, 1_199_999)
+                .build();
+
+        assertOperatorEquals(joinOperator, probeInput, expected);
+    }
+
     @Test
     public void testInnerJoinWithNullProbe()
             throws Exception
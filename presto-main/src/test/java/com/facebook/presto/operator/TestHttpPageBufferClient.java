@@ -14,22 +14,27 @@
 package com.facebook.presto.operator;
 
 import com.facebook.presto.operator.HttpPageBufferClient.ClientCallback;
+import com.facebook.presto.serde.PagesSerde;
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import io.airlift.http.client.HttpStatus;
 import io.airlift.http.client.Request;
 import io.airlift.http.client.Response;
 import io.airlift.http.client.testing.TestingHttpClient;
 import io.airlift.http.client.testing.TestingResponse;
+import io.airlift.slice.DynamicSliceOutput;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
+import org.iq80.snappy.SnappyOutputStream;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import javax.annotation.Nullable;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -43,10 +48,14 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.facebook.presto.PrestoMediaTypes.PRESTO_PAGES;
+import static com.facebook.presto.PrestoMediaTypes.PRESTO_PAGES_SNAPPY;
+import static com.facebook.presto.block.BlockAssertions.createLongSequenceBlock;
+import static com.facebook.presto.client.PrestoHeaders.PRESTO_PAGE_SEQUENCE_ID;
 import static com.facebook.presto.util.Threads.daemonThreadsNamed;
 import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 public class TestHttpPageBufferClient
 {
@@ -226,6 +235,51 @@ public class TestHttpPageBufferClient
         assertStatus(client, location, "closed", 0, 3, 3, "queued");
     }
 
+    @Test
+    public void testCompressedResponse()
+            throws Exception
+    {
+        CyclicBarrier beforeRequest = new CyclicBarrier(1);
+        CyclicBarrier afterRequest = new CyclicBarrier(1);
+        StaticRequestProcessor processor = new StaticRequestProcessor(beforeRequest, afterRequest);
+
+        Page expectedPage = new Page(createLongSequenceBlock(0, 1000));
+        DynamicSliceOutput sliceOutput = new DynamicSliceOutput(64);
+        PagesSerde.writePages(sliceOutput, ImmutableList.of(expectedPage));
+        byte[] uncompressed = sliceOutput.slice().getBytes();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (SnappyOutputStream output = new SnappyOutputStream(compressed)) {
+            output.write(uncompressed);
+        }
+        processor.setResponse(new TestingResponse(HttpStatus.OK,
+                ImmutableListMultimap.of(CONTENT_TYPE, PRESTO_PAGES_SNAPPY, PRESTO_PAGE_SEQUENCE_ID, "0"),
+                compressed.toByteArray()));
+
+        CyclicBarrier requestComplete = new CyclicBarrier(2);
+        TestingClientCallback callback = new TestingClientCallback(requestComplete);
+
+        URI location = URI.create("http://localhost:8080");
+        HttpPageBufferClient client = new HttpPageBufferClient(new TestingHttpClient(processor, executor),
+                new DataSize(10, Unit.MEGABYTE),
+                location,
+                callback,
+                true,
+                executor);
+
+        client.scheduleRequest();
+        requestComplete.await(1, TimeUnit.SECONDS);
+        assertEquals(callback.getPages().size(), 1);
+        assertPageEquals(expectedPage, callback.getPages().get(0));
+        assertStatus(client, location, "queued", 1, 1, 1, "queued");
+
+        assertEquals(client.getBytesReceived(), compressed.size());
+        assertEquals(client.getUncompressedBytesReceived(), uncompressed.length);
+        assertTrue(client.getBytesReceived() < client.getUncompressedBytesReceived());
+
+        client.close();
+    }
+
     @Test
     public void testCloseDuringPendingRequest()
             throws Exception
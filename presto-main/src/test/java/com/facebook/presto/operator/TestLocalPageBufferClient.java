@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.operator;
+
+import com.facebook.presto.OutputBuffers;
+import com.facebook.presto.TaskSource;
+import com.facebook.presto.block.BlockAssertions;
+import com.facebook.presto.execution.BufferResult;
+import com.facebook.presto.execution.SharedBuffer;
+import com.facebook.presto.execution.TaskId;
+import com.facebook.presto.execution.TaskInfo;
+import com.facebook.presto.execution.TaskManager;
+import com.facebook.presto.execution.TaskState;
+import com.facebook.presto.sql.analyzer.Session;
+import com.facebook.presto.sql.planner.PlanFragment;
+import io.airlift.http.client.testing.TestingHttpClient;
+import io.airlift.units.DataSize;
+import io.airlift.units.DataSize.Unit;
+import io.airlift.units.Duration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.facebook.presto.util.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestLocalPageBufferClient
+{
+    private static final URI LOCAL_URI = URI.create("http://localhost:8080");
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Test
+    public void testIsLocalLocation()
+    {
+        assertTrue(LocalPageBufferClient.isLocalLocation(URI.create("http://localhost:8080/v1/task/query.1.2/results/out"), LOCAL_URI));
+        assertTrue(LocalPageBufferClient.isLocalLocation(URI.create("http://LOCALHOST:8080/v1/task/query.1.2/results/out"), LOCAL_URI));
+
+        // other nodes
+        assertFalse(LocalPageBufferClient.isLocalLocation(URI.create("http://localhost:8081/v1/task/query.1.2/results/out"), LOCAL_URI));
+        assertFalse(LocalPageBufferClient.isLocalLocation(URI.create("http://remote:8080/v1/task/query.1.2/results/out"), LOCAL_URI));
+        assertFalse(LocalPageBufferClient.isLocalLocation(URI.create("https://localhost:8080/v1/task/query.1.2/results/out"), LOCAL_URI));
+
+        // not task results
+        assertFalse(LocalPageBufferClient.isLocalLocation(URI.create("http://localhost:8080/v1/task/query.1.2"), LOCAL_URI));
+        assertFalse(LocalPageBufferClient.isLocalLocation(URI.create("http://localhost:8080/v1/task/invalid/results/out"), LOCAL_URI));
+    }
+
+    @Test
+    public void testReadLocalTask()
+            throws Exception
+    {
+        TaskId taskId = TaskId.valueOf("query.1.2");
+        SharedBuffer sharedBuffer = new SharedBuffer(new DataSize(1, Unit.MEGABYTE));
+        sharedBuffer.addQueue("out");
+        sharedBuffer.noMoreQueues();
+
+        Page page1 = createPage(1);
+        Page page2 = createPage(2);
+        sharedBuffer.enqueue(page1);
+        sharedBuffer.enqueue(page2);
+        sharedBuffer.finish();
+
+        ExchangeClient exchangeClient = new ExchangeClient(new DataSize(32, Unit.MEGABYTE),
+                new DataSize(10, Unit.MEGABYTE),
+                1,
+                false,
+                new SharedBufferTaskManager(taskId, sharedBuffer),
+                LOCAL_URI,
+                new TestingHttpClient(new MockExchangeRequestProcessor(new DataSize(10, Unit.MEGABYTE)), executor),
+                executor);
+
+        exchangeClient.addLocation(URI.create("http://localhost:8080/v1/task/query.1.2/results/out"));
+        exchangeClient.noMoreLocations();
+
+        // the pages are handed over without being copied
+        assertSame(exchangeClient.getNextPage(new Duration(1, TimeUnit.SECONDS)), page1);
+        assertSame(exchangeClient.getNextPage(new Duration(1, TimeUnit.SECONDS)), page2);
+        assertNull(exchangeClient.getNextPage(new Duration(1, TimeUnit.SECONDS)));
+        assertTrue(exchangeClient.isClosed());
+
+        PageBufferClientStatus status = exchangeClient.getStatus().getPageBufferClientStatuses().get(0);
+        assertEquals(status.getState(), "closed");
+        assertEquals(status.getPagesReceived(), 2);
+        assertEquals(exchangeClient.getStatus().getBytesReceived(), 0);
+        assertTrue(sharedBuffer.isFinished());
+    }
+
+    private static Page createPage(int size)
+    {
+        return new Page(BlockAssertions.createLongSequenceBlock(0, size));
+    }
+
+    private static class SharedBufferTaskManager
+            implements TaskManager
+    {
+        private final TaskId taskId;
+        private final SharedBuffer sharedBuffer;
+
+        private SharedBufferTaskManager(TaskId taskId, SharedBuffer sharedBuffer)
+        {
+            this.taskId = taskId;
+            this.sharedBuffer = sharedBuffer;
+        }
+
+        @Override
+        public BufferResult getTaskResults(TaskId taskId, String outputName, long startingSequenceId, DataSize maxSize, Duration maxWaitTime)
+                throws InterruptedException
+        {
+            assertEquals(taskId, this.taskId);
+            return sharedBuffer.get(outputName, startingSequenceId, maxSize, maxWaitTime);
+        }
+
+        @Override
+        public TaskInfo abortTaskResults(TaskId taskId, String outputId)
+        {
+            assertEquals(taskId, this.taskId);
+            sharedBuffer.abort(outputId);
+            return null;
+        }
+
+        @Override
+        public List<TaskInfo> getAllTaskInfo(boolean full)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void waitForStateChange(TaskId taskId, TaskState currentState, Duration maxWait)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TaskInfo getTaskInfo(TaskId taskId, boolean full)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TaskInfo updateTask(Session session, TaskId taskId, PlanFragment fragment, List<TaskSource> sources, OutputBuffers outputIds)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TaskInfo cancelTask(TaskId taskId)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -50,7 +50,12 @@ public class TestOperatorStats
             new Duration(17, NANOSECONDS),
 
             new DataSize(18, BYTE),
-            "19");
+            new Duration(19, NANOSECONDS),
+
+            new DataSize(20, BYTE),
+            21,
+
+            "22");
 
     @Test
     public void testJson()
@@ -90,7 +95,12 @@ public class TestOperatorStats
         Assert.assertEquals(actual.getFinishUser(), new Duration(17, NANOSECONDS));
 
         Assert.assertEquals(actual.getMemoryReservation(), new DataSize(18, BYTE));
-        Assert.assertEquals(actual.getInfo(), "19");
+        Assert.assertEquals(actual.getMemoryWait(), new Duration(19, NANOSECONDS));
+
+        Assert.assertEquals(actual.getSpilledDataSize(), new DataSize(20, BYTE));
+        Assert.assertEquals(actual.getSpilledRuns(), 21);
+
+        Assert.assertEquals(actual.getInfo(), "22");
     }
 
     @Test
@@ -122,6 +132,11 @@ public class TestOperatorStats
         Assert.assertEquals(actual.getFinishCpu(), new Duration(3 * 16, NANOSECONDS));
         Assert.assertEquals(actual.getFinishUser(), new Duration(3 * 17, NANOSECONDS));
         Assert.assertEquals(actual.getMemoryReservation(), new DataSize(3 * 18, BYTE));
+        Assert.assertEquals(actual.getMemoryWait(), new Duration(3 * 19, NANOSECONDS));
+
+        Assert.assertEquals(actual.getSpilledDataSize(), new DataSize(3 * 20, BYTE));
+        Assert.assertEquals(actual.getSpilledRuns(), 3 * 21);
+
         Assert.assertEquals(actual.getInfo(), null);
     }
 }
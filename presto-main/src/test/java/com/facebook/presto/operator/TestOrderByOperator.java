@@ -18,6 +18,7 @@ import com.facebook.presto.operator.OrderByOperator.InMemoryOrderByOperatorFacto
 import com.facebook.presto.sql.analyzer.Session;
 import com.facebook.presto.tuple.TupleInfo;
 import com.facebook.presto.util.MaterializedResult;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
@@ -25,6 +26,7 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.File;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
@@ -39,6 +41,7 @@ import static com.facebook.presto.tuple.TupleInfo.Type.VARIABLE_BINARY;
 import static com.facebook.presto.util.MaterializedResult.resultBuilder;
 import static com.facebook.presto.util.Threads.daemonThreadsNamed;
 import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
 
 public class TestOrderByOperator
 {
@@ -157,6 +160,52 @@ public class TestOrderByOperator
         assertOperatorEquals(operator, input, expected);
     }
 
+    @Test
+    public void testSpillToDisk()
+            throws Exception
+    {
+        List<Page> input = rowPagesBuilder(SINGLE_LONG, SINGLE_DOUBLE)
+                .row(1, 0.1)
+                .row(2, 0.2)
+                .pageBreak()
+                .row(-1, -0.1)
+                .row(4, 0.4)
+                .pageBreak()
+                .row(3, 0.3)
+                .row(0, 0.0)
+                .build();
+
+        // the memory limit is too small for any page, so each page is written as a run
+        Session session = new Session("user", "source", "catalog", "schema", "address", "agent");
+        DriverContext driverContext = new TaskContext(new TaskId("query", "stage", "task"), executor, session, new DataSize(10, Unit.BYTE))
+                .addPipelineContext(true, true)
+                .addDriverContext();
+
+        InMemoryOrderByOperatorFactory operatorFactory = new InMemoryOrderByOperatorFactory(
+                0,
+                ImmutableList.of(SINGLE_LONG, SINGLE_DOUBLE),
+                0,
+                new int[] {1},
+                10,
+                new int[] {0},
+                new boolean[] {true},
+                Optional.of(new File("target/spill")));
+
+        Operator operator = operatorFactory.createOperator(driverContext);
+
+        MaterializedResult expected = resultBuilder(DOUBLE)
+                .row(-0.1)
+                .row(0.0)
+                .row(0.1)
+                .row(0.2)
+                .row(0.3)
+                .row(0.4)
+                .build();
+
+        assertOperatorEquals(operator, input, expected);
+        assertEquals(operator.getOperatorContext().getOperatorStats().getSpilledRuns(), 3);
+    }
+
     @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Task exceeded max memory size of 10B")
     public void testMemoryLimit()
             throws Exception
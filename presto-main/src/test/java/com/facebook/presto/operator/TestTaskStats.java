@@ -68,6 +68,19 @@ public class TestTaskStats
         assertExpectedTaskStats(actual);
     }
 
+    @Test
+    public void testSummarize()
+    {
+        TaskStats actual = EXPECTED.summarize();
+
+        assertEquals(actual.getTotalDrivers(), 6);
+        assertEquals(actual.getMemoryReservation(), new DataSize(11, BYTE));
+        assertEquals(actual.getTotalCpuTime(), new Duration(13, NANOSECONDS));
+        assertEquals(actual.getRawInputPositions(), 17);
+        assertEquals(actual.getOutputPositions(), 21);
+        assertEquals(actual.getPipelines().size(), 0);
+    }
+
     public static void assertExpectedTaskStats(TaskStats actual)
     {
         assertEquals(actual.getCreateTime(), new DateTime(1, UTC));
@@ -133,6 +133,35 @@ public class TestTopNOperator
         assertOperatorEquals(operator, input, expected);
     }
 
+    @Test
+    public void testReplaceEveryCandidate()
+            throws Exception
+    {
+        // every row is better than the current candidates, so the rejected rows must be compacted
+        List<Page> input = rowPagesBuilder(SINGLE_LONG, SINGLE_LONG)
+                .addSequencePage(10000, 0, 100)
+                .addSequencePage(10000, 10000, 10100)
+                .build();
+
+        TopNOperatorFactory operatorFactory = new TopNOperatorFactory(
+                0,
+                3,
+                0,
+                ImmutableList.of(singleColumn(FIXED_INT_64, 0, 0), singleColumn(FIXED_INT_64, 1, 0)),
+                Ordering.from(new FieldOrderedTupleComparator(ImmutableList.of(0), ImmutableList.of(SortItem.Ordering.DESCENDING))),
+                false);
+
+        Operator operator = operatorFactory.createOperator(driverContext);
+
+        MaterializedResult expected = resultBuilder(FIXED_INT_64, FIXED_INT_64)
+                .row(19999, 20099)
+                .row(19998, 20098)
+                .row(19997, 20097)
+                .build();
+
+        assertOperatorEquals(operator, input, expected);
+    }
+
     @Test
     public void testReverseOrder()
             throws Exception
@@ -20,6 +20,7 @@ import com.facebook.presto.operator.window.WindowFunction;
 import com.facebook.presto.sql.analyzer.Session;
 import com.facebook.presto.tuple.TupleInfo;
 import com.facebook.presto.util.MaterializedResult;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
@@ -27,6 +28,7 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.File;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
@@ -42,6 +44,7 @@ import static com.facebook.presto.tuple.TupleInfo.Type.VARIABLE_BINARY;
 import static com.facebook.presto.util.MaterializedResult.resultBuilder;
 import static com.facebook.presto.util.Threads.daemonThreadsNamed;
 import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertTrue;
 
 public class TestWindowOperator
 {
@@ -184,6 +187,52 @@ public class TestWindowOperator
         assertOperatorEquals(operator, input, expected);
     }
 
+    @Test
+    public void testRowNumberPartitionSpillToDisk()
+            throws Exception
+    {
+        TupleInfo sourceTupleInfo = new TupleInfo(FIXED_INT_64, FIXED_INT_64);
+
+        // 100 partitions of 100 rows, spread over all pages
+        RowPagesBuilder rowPagesBuilder = rowPagesBuilder(sourceTupleInfo);
+        for (int i = 0; i < 10_000; i++) {
+            if (i > 0 && i % 500 == 0) {
+                rowPagesBuilder.pageBreak();
+            }
+            rowPagesBuilder.row(i % 100, i);
+        }
+        List<Page> input = rowPagesBuilder.build();
+
+        Session session = new Session("user", "source", "catalog", "schema", "address", "agent");
+        DriverContext driverContext = new TaskContext(new TaskId("query", "stage", "task"), executor, session, new DataSize(64, Unit.KILOBYTE))
+                .addPipelineContext(true, true)
+                .addDriverContext();
+
+        InMemoryWindowOperatorFactory operatorFactory = new InMemoryWindowOperatorFactory(
+                0,
+                ImmutableList.of(sourceTupleInfo),
+                0,
+                ints(0),
+                ROW_NUMBER,
+                ints(0),
+                ints(1),
+                bools(true),
+                10,
+                Optional.of(new File("target/spill")));
+
+        Operator operator = operatorFactory.createOperator(driverContext);
+
+        MaterializedResult.Builder expected = resultBuilder(FIXED_INT_64, FIXED_INT_64, FIXED_INT_64);
+        for (int partition = 0; partition < 100; partition++) {
+            for (int row = 0; row < 100; row++) {
+                expected.row(partition, partition + (row * 100), row + 1);
+            }
+        }
+
+        assertOperatorEquals(operator, input, expected.build());
+        assertTrue(operator.getOperatorContext().getOperatorStats().getSpilledRuns() > 1);
+    }
+
     @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Task exceeded max memory size of 10B")
     public void testMemoryLimit()
             throws Exception
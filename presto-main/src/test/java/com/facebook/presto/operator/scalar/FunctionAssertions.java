@@ -39,6 +39,7 @@ import com.facebook.presto.split.DataStreamProvider;
 import com.facebook.presto.sql.analyzer.SemanticException;
 import com.facebook.presto.sql.analyzer.Session;
 import com.facebook.presto.sql.analyzer.Type;
+import com.facebook.presto.sql.gen.CompilerConfig;
 import com.facebook.presto.sql.gen.ExpressionCompiler;
 import com.facebook.presto.sql.planner.InterpretedFilterFunction;
 import com.facebook.presto.sql.planner.InterpretedProjectionFunction;
@@ -98,6 +99,7 @@ public final class FunctionAssertions
     private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(Threads.daemonThreadsNamed("test-%s"));
 
     private static final ExpressionCompiler COMPILER = new ExpressionCompiler(new MetadataManager());
+    private static final ExpressionCompiler COLUMNAR_COMPILER = new ExpressionCompiler(new MetadataManager(), new CompilerConfig().setColumnarProcessingEnabled(true));
 
     private static final Page SOURCE_PAGE = new Page(
             createLongsBlock(1234L),
@@ -179,6 +181,10 @@ public final class FunctionAssertions
         Object directOperatorValue = selectSingleValue(operatorFactory, session);
         results.add(directOperatorValue);
 
+        // execute as standalone columnar operator
+        Object columnarOperatorValue = selectSingleValue(compileFilterProject(COLUMNAR_COMPILER, TRUE_LITERAL, projectionExpression), session);
+        results.add(columnarOperatorValue);
+
         // interpret
         Object interpretedValue = selectSingleValue(interpretedFilterProject(TRUE_LITERAL, projectionExpression, expressionType, session));
         results.add(interpretedValue);
@@ -271,6 +277,9 @@ public final class FunctionAssertions
         Type expressionType = Type.fromRaw(operatorFactory.getTupleInfos().get(0).getTypes().get(0));
         results.add(executeFilter(operatorFactory, session));
 
+        // execute as standalone columnar operator
+        results.add(executeFilter(compileFilterProject(COLUMNAR_COMPILER, filterExpression, TRUE_LITERAL), session));
+
         // interpret
         boolean interpretedValue = executeFilter(interpretedFilterProject(filterExpression, TRUE_LITERAL, expressionType, session));
         results.add(interpretedValue);
@@ -380,12 +389,17 @@ public final class FunctionAssertions
     }
 
     private static OperatorFactory compileFilterProject(Expression filter, Expression projection)
+    {
+        return compileFilterProject(COMPILER, filter, projection);
+    }
+
+    private static OperatorFactory compileFilterProject(ExpressionCompiler compiler, Expression filter, Expression projection)
     {
         filter = ExpressionTreeRewriter.rewriteWith(new SymbolToInputRewriter(INPUT_MAPPING), filter);
         projection = ExpressionTreeRewriter.rewriteWith(new SymbolToInputRewriter(INPUT_MAPPING), projection);
 
         try {
-            return COMPILER.compileFilterAndProjectOperator(0, filter, ImmutableList.of(projection), INPUT_TYPES);
+            return compiler.compileFilterAndProjectOperator(0, filter, ImmutableList.of(projection), INPUT_TYPES);
         }
         catch (Throwable e) {
             if (e instanceof UncheckedExecutionException) {
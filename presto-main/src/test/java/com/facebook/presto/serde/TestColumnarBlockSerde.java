@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.serde;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.block.BlockAssertions;
+import com.facebook.presto.block.columnar.ColumnarBlockBuilder;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slices;
+import org.testng.annotations.Test;
+
+import static com.facebook.presto.block.BlockAssertions.createColumnarBlock;
+import static com.facebook.presto.block.BlockAssertions.createLongsBlock;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_LONG;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_VARBINARY;
+import static io.airlift.testing.Assertions.assertInstanceOf;
+import static org.testng.Assert.assertEquals;
+
+public class TestColumnarBlockSerde
+{
+    @Test
+    public void testRoundTrip()
+    {
+        Block expectedBlock = new ColumnarBlockBuilder(SINGLE_VARBINARY)
+                .append(Slices.utf8Slice("alice"))
+                .appendNull()
+                .append(Slices.utf8Slice("charlie"))
+                .append(Slices.utf8Slice("dave"))
+                .build();
+
+        assertRoundTrip(expectedBlock);
+    }
+
+    @Test
+    public void testRegionRoundTrip()
+    {
+        Block block = createColumnarBlock(createLongsBlock(1L, null, 3L, 4L, null, 6L));
+        assertRoundTrip(block.getRegion(1, 4));
+    }
+
+    @Test
+    public void testBlockEncodings()
+    {
+        DynamicSliceOutput sliceOutput = new DynamicSliceOutput(1024);
+        BlockEncodings.writeBlockEncoding(sliceOutput, new ColumnarBlockEncoding(SINGLE_LONG));
+        BlockEncoding blockEncoding = BlockEncodings.readBlockEncoding(sliceOutput.slice().getInput());
+        assertInstanceOf(blockEncoding, ColumnarBlockEncoding.class);
+        assertEquals(blockEncoding.getTupleInfo(), SINGLE_LONG);
+    }
+
+    private static void assertRoundTrip(Block expectedBlock)
+    {
+        DynamicSliceOutput sliceOutput = new DynamicSliceOutput(1024);
+        BlockEncoding blockEncoding = expectedBlock.getEncoding();
+        blockEncoding.writeBlock(sliceOutput, expectedBlock);
+        Block actualBlock = blockEncoding.readBlock(sliceOutput.slice().getInput());
+        BlockAssertions.assertBlockEquals(actualBlock, expectedBlock);
+    }
+}
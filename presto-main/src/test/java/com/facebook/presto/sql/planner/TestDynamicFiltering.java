@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.sql.planner;
+
+import com.facebook.presto.operator.HashJoinOperator;
+import com.facebook.presto.operator.OperatorStats;
+import com.facebook.presto.operator.PipelineStats;
+import com.facebook.presto.operator.TaskContext;
+import com.facebook.presto.util.LocalQueryRunner;
+import com.facebook.presto.util.MaterializedResult;
+import com.google.common.collect.ImmutableMultiset;
+import org.intellij.lang.annotations.Language;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+
+import static com.facebook.presto.util.LocalQueryRunner.createTpchLocalQueryRunner;
+import static com.facebook.presto.util.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestDynamicFiltering
+{
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+    }
+
+    @AfterClass
+    public void tearDown()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Test
+    public void testFilterProbeScanThroughFilterAndProject()
+    {
+        // the probe rows pass through a filter and a projection on the way from the scan to
+        // the join, and the build side keeps about one percent of the orders by a column
+        // that is not the join key, so the planner can not infer a predicate on the probe
+        @Language("SQL") String sql = "" +
+                "SELECT lineitem.orderkey, lineitem.quantity2, orders.custkey " +
+                "FROM (SELECT orderkey, quantity * 2 quantity2 FROM lineitem WHERE linenumber > 1) lineitem " +
+                "JOIN (SELECT orderkey, custkey FROM orders WHERE custkey % 100 = 0) orders " +
+                "ON lineitem.orderkey = orders.orderkey";
+        ProbeResult unfiltered = execute(false, sql);
+        ProbeResult filtered = execute(true, sql);
+
+        assertFalse(unfiltered.getResult().getMaterializedTuples().isEmpty());
+        assertEquals(ImmutableMultiset.copyOf(filtered.getResult().getMaterializedTuples()), ImmutableMultiset.copyOf(unfiltered.getResult().getMaterializedTuples()));
+        assertTrue(filtered.getProbeInputPositions() < unfiltered.getProbeInputPositions() / 2,
+                "probe input positions " + filtered.getProbeInputPositions() + " not reduced from " + unfiltered.getProbeInputPositions());
+    }
+
+    @Test
+    public void testNoFilterForComputedProbeKey()
+    {
+        // the probe key is computed by the projection, so the scan can not be filtered
+        @Language("SQL") String sql = "" +
+                "SELECT lineitem.orderkey, orders.custkey " +
+                "FROM (SELECT orderkey, orderkey + 0 joinkey FROM lineitem) lineitem " +
+                "JOIN (SELECT orderkey, custkey FROM orders WHERE custkey % 100 = 0) orders " +
+                "ON lineitem.joinkey = orders.orderkey";
+        ProbeResult unfiltered = execute(false, sql);
+        ProbeResult filtered = execute(true, sql);
+
+        assertFalse(unfiltered.getResult().getMaterializedTuples().isEmpty());
+        assertEquals(ImmutableMultiset.copyOf(filtered.getResult().getMaterializedTuples()), ImmutableMultiset.copyOf(unfiltered.getResult().getMaterializedTuples()));
+        assertEquals(filtered.getProbeInputPositions(), unfiltered.getProbeInputPositions());
+    }
+
+    private ProbeResult execute(boolean dynamicFilteringEnabled, @Language("SQL") String sql)
+    {
+        LocalQueryRunner queryRunner = createTpchLocalQueryRunner(executor);
+        if (!dynamicFilteringEnabled) {
+            queryRunner.disableDynamicFiltering();
+        }
+
+        TaskContext taskContext = queryRunner.createTaskContext();
+        MaterializedResult result = queryRunner.execute(sql, taskContext);
+
+        for (PipelineStats pipeline : taskContext.getTaskStats().getPipelines()) {
+            for (OperatorStats operator : pipeline.getOperatorSummaries()) {
+                if (operator.getOperatorType().equals(HashJoinOperator.class.getSimpleName())) {
+                    return new ProbeResult(result, operator.getInputPositions());
+                }
+            }
+        }
+        fail("query has no join: " + sql);
+        return null;
+    }
+
+    private static class ProbeResult
+    {
+        private final MaterializedResult result;
+        private final long probeInputPositions;
+
+        private ProbeResult(MaterializedResult result, long probeInputPositions)
+        {
+            this.result = result;
+            this.probeInputPositions = probeInputPositions;
+        }
+
+        public MaterializedResult getResult()
+        {
+            return result;
+        }
+
+        public long getProbeInputPositions()
+        {
+            return probeInputPositions;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import com.facebook.presto.connector.system.SystemTablesManager;
 import com.facebook.presto.connector.system.SystemTablesMetadata;
 import com.facebook.presto.execution.DataSource;
 import com.facebook.presto.execution.TaskId;
+import com.facebook.presto.execution.TaskManagerConfig;
 import com.facebook.presto.importer.MockPeriodicImportManager;
 import com.facebook.presto.metadata.InMemoryNodeManager;
 import com.facebook.presto.metadata.LocalStorageManager;
@@ -53,6 +54,7 @@ import com.facebook.presto.sql.analyzer.Analysis;
 import com.facebook.presto.sql.analyzer.Analyzer;
 import com.facebook.presto.sql.analyzer.QueryExplainer;
 import com.facebook.presto.sql.analyzer.Session;
+import com.facebook.presto.sql.gen.CompilerConfig;
 import com.facebook.presto.sql.gen.ExpressionCompiler;
 import com.facebook.presto.sql.parser.SqlParser;
 import com.facebook.presto.sql.planner.DistributedLogicalPlanner;
@@ -105,7 +107,8 @@ public class LocalQueryRunner
     private final LocalStorageManager storageManager;
     private final Session session;
     private final ExecutorService executor;
-    private final ExpressionCompiler compiler;
+    private final TaskManagerConfig taskManagerConfig = new TaskManagerConfig();
+    private ExpressionCompiler compiler;
     private boolean printPlan;
 
     public LocalQueryRunner(Metadata metadata,
@@ -130,6 +133,18 @@ public class LocalQueryRunner
         return this;
     }
 
+    public LocalQueryRunner enableColumnarProcessing()
+    {
+        compiler = new ExpressionCompiler(metadata, new CompilerConfig().setColumnarProcessingEnabled(true));
+        return this;
+    }
+
+    public LocalQueryRunner disableDynamicFiltering()
+    {
+        taskManagerConfig.setDynamicFilteringEnabled(false);
+        return this;
+    }
+
     private static class MaterializedOutputFactory
             implements OutputFactory
     {
@@ -172,9 +187,14 @@ public class LocalQueryRunner
     }
 
     public MaterializedResult execute(@Language("SQL") String sql)
+    {
+        return execute(sql, createTaskContext());
+    }
+
+    public MaterializedResult execute(@Language("SQL") String sql, TaskContext taskContext)
     {
         MaterializedOutputFactory outputFactory = new MaterializedOutputFactory();
-        List<Driver> drivers = createDrivers(sql, outputFactory);
+        List<Driver> drivers = createDrivers(sql, outputFactory, taskContext);
 
         boolean done = false;
         while (!done) {
@@ -193,7 +213,12 @@ public class LocalQueryRunner
 
     public List<Driver> createDrivers(@Language("SQL") String sql, OutputFactory outputFactory)
     {
-        return createDrivers(sql, outputFactory, new TaskContext(new TaskId("query", "stage", "task"), executor, session));
+        return createDrivers(sql, outputFactory, createTaskContext());
+    }
+
+    public TaskContext createTaskContext()
+    {
+        return new TaskContext(new TaskId("query", "stage", "task"), executor, session);
     }
 
     public List<Driver> createDrivers(@Language("SQL") String sql, OutputFactory outputFactory, TaskContext taskContext)
@@ -228,7 +253,8 @@ public class LocalQueryRunner
                 dataStreamProvider,
                 storageManager,
                 null,
-                compiler);
+                compiler,
+                taskManagerConfig);
 
         // plan query
         LocalExecutionPlan localExecutionPlan = executionPlanner.plan(session,
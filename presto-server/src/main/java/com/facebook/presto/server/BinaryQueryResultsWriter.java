@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.server;
+
+import com.facebook.presto.block.BlockCursor;
+import com.facebook.presto.client.BinaryQueryResults;
+import com.facebook.presto.client.QueryResults;
+import com.facebook.presto.operator.Page;
+import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.io.LittleEndianDataOutputStream;
+import io.airlift.json.JsonCodec;
+import io.airlift.slice.Slice;
+
+import javax.inject.Inject;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import static com.facebook.presto.client.BinaryQueryResults.MEDIA_TYPE;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes query results in the binary encoding described in {@link BinaryQueryResults}.
+ * The values are copied column by column from the pages, without creating rows.
+ */
+@Provider
+@Produces(MEDIA_TYPE)
+public class BinaryQueryResultsWriter
+        implements MessageBodyWriter<PagedQueryResults>
+{
+    private static final MediaType BINARY_TYPE = MediaType.valueOf(MEDIA_TYPE);
+
+    private final JsonCodec<QueryResults> codec;
+
+    @Inject
+    public BinaryQueryResultsWriter(JsonCodec<QueryResults> codec)
+    {
+        this.codec = checkNotNull(codec, "codec is null");
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+        return PagedQueryResults.class.isAssignableFrom(type) && mediaType.isCompatible(BINARY_TYPE);
+    }
+
+    @Override
+    public long getSize(PagedQueryResults results, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(PagedQueryResults pagedResults,
+            Class<?> type,
+            Type genericType,
+            Annotation[] annotations,
+            MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders,
+            OutputStream output)
+            throws IOException, WebApplicationException
+    {
+        LittleEndianDataOutputStream out = new LittleEndianDataOutputStream(output);
+
+        QueryResults results = pagedResults.getResults();
+        BinaryQueryResults.writeHeader(out, codec, results);
+        if (results.getData() == null) {
+            out.flush();
+            return;
+        }
+
+        if (pagedResults.getPages() != null) {
+            for (Page page : pagedResults.getPages()) {
+                writePage(out, page);
+            }
+        }
+        else {
+            BinaryQueryResults.writeRows(out, results.getColumns(), results.getData());
+        }
+        BinaryQueryResults.writeEnd(out);
+        out.flush();
+    }
+
+    private static void writePage(LittleEndianDataOutputStream out, Page page)
+            throws IOException
+    {
+        int positionCount = page.getPositionCount();
+        if (positionCount == 0) {
+            return;
+        }
+
+        out.writeInt(positionCount);
+        for (int channel = 0; channel < page.getChannelCount(); channel++) {
+            TupleInfo tupleInfo = page.getBlock(channel).getTupleInfo();
+            for (int field = 0; field < tupleInfo.getFieldCount(); field++) {
+                writeField(out, page.getBlock(channel).cursor(), tupleInfo.getTypes().get(field), field);
+            }
+        }
+    }
+
+    private static void writeField(LittleEndianDataOutputStream out, BlockCursor cursor, TupleInfo.Type type, int field)
+            throws IOException
+    {
+        while (cursor.advanceNextPosition()) {
+            boolean isNull = cursor.isNull(field);
+            out.writeBoolean(isNull);
+            if (isNull) {
+                continue;
+            }
+            switch (type) {
+                case FIXED_INT_64:
+                    out.writeLong(cursor.getLong(field));
+                    break;
+                case DOUBLE:
+                    out.writeDouble(cursor.getDouble(field));
+                    break;
+                case BOOLEAN:
+                    out.writeBoolean(cursor.getBoolean(field));
+                    break;
+                case VARIABLE_BINARY:
+                    Slice slice = cursor.getSlice(field);
+                    out.writeInt(slice.length());
+                    slice.getBytes(0, out, slice.length());
+                    break;
+                default:
+                    throw new IllegalArgumentException("unhandled type: " + type);
+            }
+        }
+    }
+}
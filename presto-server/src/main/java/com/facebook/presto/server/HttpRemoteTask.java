@@ -14,6 +14,7 @@
 package com.facebook.presto.server;
 
 import com.facebook.presto.OutputBuffers;
+import com.facebook.presto.PagePartitionFunction;
 import com.facebook.presto.ScheduledSplit;
 import com.facebook.presto.TaskSource;
 import com.facebook.presto.client.FailureInfo;
@@ -75,7 +76,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.TreeMap;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
@@ -128,10 +129,14 @@ public class HttpRemoteTask
     @GuardedBy("this")
     private boolean noMoreExchangeLocations;
     @GuardedBy("this")
-    private final Set<String> outputIds = new TreeSet<>();
+    private final Map<String, PagePartitionFunction> outputBuffers = new TreeMap<>();
     @GuardedBy("this")
     private boolean noMoreOutputIds;
 
+    // the fragment is sent until the worker has created the task
+    @GuardedBy("this")
+    private boolean sendPlan = true;
+
     @GuardedBy("this")
     private ContinuousTaskInfoFetcher continuousTaskInfoFetcher;
 
@@ -158,7 +163,7 @@ public class HttpRemoteTask
             Split initialSplit,
             Map<PlanNodeId, OutputReceiver> outputReceivers,
             Multimap<PlanNodeId, URI> initialExchangeLocations,
-            Set<String> initialOutputIds,
+            Map<String, PagePartitionFunction> initialOutputBuffers,
             AsyncHttpClient httpClient,
             Executor executor,
             int maxConsecutiveErrorCount,
@@ -171,7 +176,7 @@ public class HttpRemoteTask
         checkNotNull(location, "location is null");
         checkNotNull(planFragment, "planFragment1 is null");
         checkNotNull(outputReceivers, "outputReceivers is null");
-        checkNotNull(initialOutputIds, "initialOutputIds is null");
+        checkNotNull(initialOutputBuffers, "initialOutputBuffers is null");
         checkNotNull(httpClient, "httpClient is null");
         checkNotNull(executor, "executor is null");
         checkNotNull(taskInfoCodec, "taskInfoCodec is null");
@@ -183,7 +188,7 @@ public class HttpRemoteTask
             this.nodeId = node.getNodeIdentifier();
             this.planFragment = planFragment;
             this.outputReceivers = ImmutableMap.copyOf(outputReceivers);
-            this.outputIds.addAll(initialOutputIds);
+            this.outputBuffers.putAll(initialOutputBuffers);
             this.httpClient = httpClient;
             this.executor = executor;
             this.taskInfoCodec = taskInfoCodec;
@@ -199,7 +204,7 @@ public class HttpRemoteTask
 
             this.exchangeLocations.putAll(initialExchangeLocations);
 
-            List<BufferInfo> bufferStates = ImmutableList.copyOf(transform(initialOutputIds, new Function<String, BufferInfo>()
+            List<BufferInfo> bufferStates = ImmutableList.copyOf(transform(initialOutputBuffers.keySet(), new Function<String, BufferInfo>()
             {
                 @Override
                 public BufferInfo apply(String outputId)
@@ -221,9 +226,10 @@ public class HttpRemoteTask
                     TaskState.PLANNED,
                     location,
                     DateTime.now(),
-                    new SharedBufferInfo(QueueState.OPEN, 0, 0, bufferStates),
+                    new SharedBufferInfo(QueueState.OPEN, 0, 0, 0, 0, 0, bufferStates),
                     ImmutableSet.<PlanNodeId>of(),
                     taskStats,
+                    null,
                     ImmutableList.<FailureInfo>of(),
                     ImmutableMap.<PlanNodeId, Set<?>>of()));
         }
@@ -245,16 +251,18 @@ public class HttpRemoteTask
     }
 
     @Override
-    public synchronized void addSplit(Split split)
+    public synchronized void addSplits(List<Split> splits)
     {
         try (SetThreadName setThreadName = new SetThreadName("HttpRemoteTask-%s", taskId)) {
-            checkNotNull(split, "split is null");
+            checkNotNull(splits, "splits is null");
             checkState(!noMoreSplits, "noMoreSplits has already been set");
             checkState(planFragment.isPartitioned(), "Plan is not partitioned");
 
             // only add pending split if not done
             if (!getTaskInfo().getState().isDone()) {
-                pendingSplits.put(planFragment.getPartitionedSource(), new ScheduledSplit(nextSplitId.getAndIncrement(), split));
+                for (Split split : splits) {
+                    pendingSplits.put(planFragment.getPartitionedSource(), new ScheduledSplit(nextSplitId.getAndIncrement(), split));
+                }
                 needsUpdate.set(true);
             }
 
@@ -306,20 +314,20 @@ public class HttpRemoteTask
     }
 
     @Override
-    public synchronized void addOutputBuffers(Set<String> outputBuffers, boolean noMore)
+    public synchronized void addOutputBuffers(Map<String, PagePartitionFunction> outputBuffers, boolean noMore)
     {
         try (SetThreadName setThreadName = new SetThreadName("HttpRemoteTask-%s", taskId)) {
             if (getTaskInfo().getState().isDone()) {
                 return;
             }
 
-            if (noMoreOutputIds == noMore && this.outputIds.containsAll(outputBuffers)) {
+            if (noMoreOutputIds == noMore && this.outputBuffers.entrySet().containsAll(outputBuffers.entrySet())) {
                 // duplicate request
                 return;
             }
             Preconditions.checkState(!noMoreOutputIds, "New buffers can not be added after noMoreOutputIds has been set");
 
-            outputIds.addAll(outputBuffers);
+            this.outputBuffers.putAll(outputBuffers);
             noMoreOutputIds = noMore;
             needsUpdate.set(true);
 
@@ -422,9 +430,9 @@ public class HttpRemoteTask
 
         List<TaskSource> sources = getSources();
         TaskUpdateRequest updateRequest = new TaskUpdateRequest(session,
-                planFragment,
+                sendPlan ? planFragment : null,
                 sources,
-                new OutputBuffers(outputIds, noMoreOutputIds));
+                new OutputBuffers(outputBuffers, noMoreOutputIds));
 
         Request request = preparePost()
                 .setUri(uriBuilderFrom(taskInfo.get().getSelf()).build())
@@ -436,7 +444,7 @@ public class HttpRemoteTask
         currentRequest = future;
         currentRequestStartNanos = System.nanoTime();
 
-        Futures.addCallback(future, new SimpleHttpResponseHandler<>(new UpdateResponseHandler(sources), request.getUri()), executor);
+        Futures.addCallback(future, new SimpleHttpResponseHandler<>(new UpdateResponseHandler(sources, sendPlan), request.getUri()), executor);
 
         needsUpdate.set(false);
     }
@@ -486,6 +494,7 @@ public class HttpRemoteTask
                     taskInfo.getOutputBuffers(),
                     taskInfo.getNoMoreSplits(),
                     taskInfo.getStats(),
+                    taskInfo.getMemoryPool(),
                     ImmutableList.<FailureInfo>of(),
                     ImmutableMap.<PlanNodeId, Set<?>>of()));
 
@@ -545,6 +554,12 @@ public class HttpRemoteTask
         }
     }
 
+    private synchronized void planAcknowledged()
+    {
+        // the task exists on the worker, so later updates only carry new splits and buffers
+        sendPlan = false;
+    }
+
     private synchronized void requestFailed(Throwable reason)
     {
         // cancellation is not a failure
@@ -601,6 +616,7 @@ public class HttpRemoteTask
                 taskInfo.getOutputBuffers(),
                 taskInfo.getNoMoreSplits(),
                 taskInfo.getStats(),
+                taskInfo.getMemoryPool(),
                 ImmutableList.of(toFailure(cause)),
                 taskInfo.getOutputs()));
     }
@@ -623,10 +639,12 @@ public class HttpRemoteTask
             implements SimpleHttpResponseCallback<TaskInfo>
     {
         private final List<TaskSource> sources;
+        private final boolean planSent;
 
-        private UpdateResponseHandler(List<TaskSource> sources)
+        private UpdateResponseHandler(List<TaskSource> sources, boolean planSent)
         {
             this.sources = ImmutableList.copyOf(checkNotNull(sources, "sources is null"));
+            this.planSent = planSent;
         }
 
         @Override
@@ -635,6 +653,9 @@ public class HttpRemoteTask
             try (SetThreadName setThreadName = new SetThreadName("UpdateResponseHandler-%s", taskId)) {
                 try {
                     requestSucceeded(value, sources);
+                    if (planSent) {
+                        planAcknowledged();
+                    }
                 }
                 finally {
                     scheduleUpdate();
@@ -13,6 +13,7 @@
  */
 package com.facebook.presto.server;
 
+import com.facebook.presto.PagePartitionFunction;
 import com.facebook.presto.execution.LocationFactory;
 import com.facebook.presto.execution.QueryManagerConfig;
 import com.facebook.presto.execution.RemoteTask;
@@ -38,7 +39,6 @@ import javax.inject.Inject;
 
 import java.net.URI;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -87,7 +87,7 @@ public class HttpRemoteTaskFactory
             Split initialSplit,
             Map<PlanNodeId, OutputReceiver> outputReceivers,
             Multimap<PlanNodeId, URI> initialExchangeLocations,
-            Set<String> initialOutputIds)
+            Map<String, PagePartitionFunction> initialOutputBuffers)
     {
         return new HttpRemoteTask(session,
                 taskId,
@@ -97,7 +97,7 @@ public class HttpRemoteTaskFactory
                 initialSplit,
                 outputReceivers,
                 initialExchangeLocations,
-                initialOutputIds,
+                initialOutputBuffers,
                 httpClient,
                 executor,
                 maxConsecutiveErrorCount,
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.server;
+
+import com.facebook.presto.client.QueryResults;
+import com.facebook.presto.operator.Page;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Query results along with the pages their data was read from, so the data can be
+ * written in the binary encoding without converting the pages to rows.
+ */
+@Immutable
+public class PagedQueryResults
+{
+    private final QueryResults results;
+    private final List<Page> pages;
+
+    public PagedQueryResults(QueryResults results, @Nullable List<Page> pages)
+    {
+        this.results = checkNotNull(results, "results is null");
+        this.pages = (pages != null) ? ImmutableList.copyOf(pages) : null;
+    }
+
+    public QueryResults getResults()
+    {
+        return results;
+    }
+
+    /**
+     * Returns the pages of the data, or null if the data of the results was not read from pages.
+     */
+    @Nullable
+    public List<Page> getPages()
+    {
+        return pages;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Objects.toStringHelper(this)
+                .add("results", results)
+                .add("pages", (pages != null) ? pages.size() : null)
+                .toString();
+    }
+}
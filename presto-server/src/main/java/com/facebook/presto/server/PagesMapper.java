@@ -20,6 +20,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.reflect.TypeToken;
 import io.airlift.slice.InputStreamSliceInput;
 import io.airlift.slice.OutputStreamSliceOutput;
+import org.iq80.snappy.SnappyInputStream;
+import org.iq80.snappy.SnappyOutputStream;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
@@ -38,14 +40,16 @@ import java.lang.reflect.Type;
 import java.util.List;
 
 import static com.facebook.presto.PrestoMediaTypes.PRESTO_PAGES;
+import static com.facebook.presto.PrestoMediaTypes.PRESTO_PAGES_SNAPPY;
 
 @Provider
-@Consumes(PRESTO_PAGES)
-@Produces(PRESTO_PAGES)
+@Consumes({PRESTO_PAGES, PRESTO_PAGES_SNAPPY})
+@Produces({PRESTO_PAGES, PRESTO_PAGES_SNAPPY})
 public class PagesMapper
         implements MessageBodyReader<List<Page>>, MessageBodyWriter<List<Page>>
 {
     private static final MediaType PRESTO_PAGES_TYPE = MediaType.valueOf(PRESTO_PAGES);
+    private static final MediaType PRESTO_PAGES_SNAPPY_TYPE = MediaType.valueOf(PRESTO_PAGES_SNAPPY);
     private static final Type LIST_GENERIC_TOKEN;
 
     static {
@@ -62,7 +66,7 @@ public class PagesMapper
     {
         return List.class.isAssignableFrom(type) &&
                 TypeToken.of(genericType).resolveType(LIST_GENERIC_TOKEN).getRawType().equals(Page.class) &&
-                mediaType.isCompatible(PRESTO_PAGES_TYPE);
+                (mediaType.isCompatible(PRESTO_PAGES_TYPE) || mediaType.isCompatible(PRESTO_PAGES_SNAPPY_TYPE));
     }
 
     @Override
@@ -74,6 +78,9 @@ public class PagesMapper
             InputStream input)
             throws IOException, WebApplicationException
     {
+        if (isSnappy(mediaType)) {
+            input = new SnappyInputStream(input);
+        }
         return ImmutableList.copyOf(PagesSerde.readPages(new InputStreamSliceInput(input)));
     }
 
@@ -82,7 +89,7 @@ public class PagesMapper
     {
         return List.class.isAssignableFrom(type) &&
                 TypeToken.of(genericType).resolveType(LIST_GENERIC_TOKEN).getRawType().equals(Page.class) &&
-                mediaType.isCompatible(PRESTO_PAGES_TYPE);
+                (mediaType.isCompatible(PRESTO_PAGES_TYPE) || mediaType.isCompatible(PRESTO_PAGES_SNAPPY_TYPE));
     }
 
     @Override
@@ -101,6 +108,20 @@ public class PagesMapper
             OutputStream output)
             throws IOException, WebApplicationException
     {
-        PagesSerde.writePages(new OutputStreamSliceOutput(output), pages);
+        if (isSnappy(mediaType)) {
+            // the compressed stream buffers a block, so it must be flushed
+            OutputStreamSliceOutput sliceOutput = new OutputStreamSliceOutput(new SnappyOutputStream(output));
+            PagesSerde.writePages(sliceOutput, pages);
+            sliceOutput.flush();
+        }
+        else {
+            PagesSerde.writePages(new OutputStreamSliceOutput(output), pages);
+        }
+    }
+
+    private static boolean isSnappy(MediaType mediaType)
+    {
+        return mediaType.getType().equalsIgnoreCase(PRESTO_PAGES_SNAPPY_TYPE.getType()) &&
+                mediaType.getSubtype().equalsIgnoreCase(PRESTO_PAGES_SNAPPY_TYPE.getSubtype());
     }
 }
@@ -56,6 +56,7 @@ import com.facebook.presto.spi.ConnectorFactory;
 import com.facebook.presto.spi.Split;
 import com.facebook.presto.split.DataStreamManager;
 import com.facebook.presto.split.DataStreamProvider;
+import com.facebook.presto.sql.gen.CompilerConfig;
 import com.facebook.presto.sql.gen.ExpressionCompiler;
 import com.facebook.presto.sql.planner.LocalExecutionPlanner;
 import com.facebook.presto.sql.planner.PlanOptimizersFactory;
@@ -130,6 +131,7 @@ public class ServerMainModule
         newExporter(binder).export(TaskExecutor.class).withGeneratedName();
         binder.bind(LocalExecutionPlanner.class).in(Scopes.SINGLETON);
         binder.bind(ExpressionCompiler.class).in(Scopes.SINGLETON);
+        bindConfig(binder).to(CompilerConfig.class);
         bindConfig(binder).to(TaskManagerConfig.class);
 
         jsonCodecBinder(binder).bindJsonCodec(TaskInfo.class);
@@ -220,6 +222,7 @@ public class ServerMainModule
         jsonCodecBinder(binder).bindJsonCodec(TaskInfo.class);
         jsonCodecBinder(binder).bindJsonCodec(QueryResults.class);
         binder.bind(StatementResource.class).in(Scopes.SINGLETON);
+        binder.bind(BinaryQueryResultsWriter.class).in(Scopes.SINGLETON);
 
         // execute resource
         binder.bind(ExecuteResource.class).in(Scopes.SINGLETON);
@@ -64,6 +64,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -83,6 +84,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static com.facebook.presto.client.BinaryQueryResults.MEDIA_TYPE;
 import static com.facebook.presto.client.PrestoHeaders.PRESTO_CATALOG;
 import static com.facebook.presto.client.PrestoHeaders.PRESTO_SCHEMA;
 import static com.facebook.presto.client.PrestoHeaders.PRESTO_SOURCE;
@@ -109,6 +111,7 @@ public class StatementResource
     private static final Duration MAX_WAIT_TIME = new Duration(1, TimeUnit.SECONDS);
     private static final Ordering<Comparable<Duration>> WAIT_ORDERING = Ordering.natural().nullsLast();
     private static final long DESIRED_RESULT_BYTES = new DataSize(1, MEGABYTE).toBytes();
+    private static final MediaType BINARY_TYPE = MediaType.valueOf(MEDIA_TYPE);
 
     private final QueryManager queryManager;
     private final Supplier<ExchangeClient> exchangeClientSupplier;
@@ -132,7 +135,7 @@ public class StatementResource
     }
 
     @POST
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, MEDIA_TYPE})
     public Response createQuery(
             String statement,
             @HeaderParam(PRESTO_USER) String user,
@@ -141,7 +144,8 @@ public class StatementResource
             @HeaderParam(PRESTO_SCHEMA) String schema,
             @HeaderParam(USER_AGENT) String userAgent,
             @Context HttpServletRequest requestContext,
-            @Context UriInfo uriInfo)
+            @Context UriInfo uriInfo,
+            @Context HttpHeaders httpHeaders)
             throws InterruptedException
     {
         assertRequest(!isNullOrEmpty(statement), "SQL statement is empty");
@@ -155,7 +159,7 @@ public class StatementResource
         ExchangeClient exchangeClient = exchangeClientSupplier.get();
         Query query = new Query(session, statement, queryManager, exchangeClient);
         queries.put(query.getQueryId(), query);
-        return Response.ok(query.getNextResults(uriInfo, new Duration(1, TimeUnit.MILLISECONDS))).build();
+        return createResponse(query.getNextResults(uriInfo, new Duration(1, TimeUnit.MILLISECONDS)), httpHeaders);
     }
 
     static void assertRequest(boolean expression, String format, Object... args)
@@ -172,12 +176,13 @@ public class StatementResource
 
     @GET
     @Path("{queryId}/{token}")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, MEDIA_TYPE})
     public Response getQueryResults(
             @PathParam("queryId") QueryId queryId,
             @PathParam("token") long token,
             @QueryParam("maxWait") Duration maxWait,
-            @Context UriInfo uriInfo)
+            @Context UriInfo uriInfo,
+            @Context HttpHeaders httpHeaders)
             throws InterruptedException
     {
         Query query = queries.get(queryId);
@@ -186,7 +191,20 @@ public class StatementResource
         }
 
         Duration wait = WAIT_ORDERING.min(MAX_WAIT_TIME, maxWait);
-        return Response.ok(query.getResults(token, uriInfo, wait)).build();
+        return createResponse(query.getResults(token, uriInfo, wait), httpHeaders);
+    }
+
+    /**
+     * Responds with the binary encoding of the results if the client accepts it, and with JSON otherwise.
+     */
+    private static Response createResponse(PagedQueryResults results, HttpHeaders httpHeaders)
+    {
+        for (MediaType mediaType : httpHeaders.getAcceptableMediaTypes()) {
+            if (mediaType.getType().equalsIgnoreCase(BINARY_TYPE.getType()) && mediaType.getSubtype().equalsIgnoreCase(BINARY_TYPE.getSubtype())) {
+                return Response.ok(results, BINARY_TYPE).build();
+            }
+        }
+        return Response.ok(results.getResults(), MediaType.APPLICATION_JSON_TYPE).build();
     }
 
     @DELETE
@@ -214,7 +232,7 @@ public class StatementResource
         private final AtomicLong resultId = new AtomicLong();
 
         @GuardedBy("this")
-        private QueryResults lastResult;
+        private PagedQueryResults lastResult;
 
         @GuardedBy("this")
         private String lastResultPath;
@@ -250,7 +268,7 @@ public class StatementResource
             return queryId;
         }
 
-        public synchronized QueryResults getResults(long token, UriInfo uriInfo, Duration maxWaitTime)
+        public synchronized PagedQueryResults getResults(long token, UriInfo uriInfo, Duration maxWaitTime)
                 throws InterruptedException
         {
             // is the a repeated request for the last results?
@@ -266,7 +284,8 @@ public class StatementResource
             }
 
             // if this is not a request for the next results, return not found
-            if (lastResult.getNextUri() == null || !requestedPath.equals(lastResult.getNextUri().getPath())) {
+            URI nextUri = lastResult.getResults().getNextUri();
+            if (nextUri == null || !requestedPath.equals(nextUri.getPath())) {
                 // unknown token
                 throw new WebApplicationException(Status.NOT_FOUND);
             }
@@ -274,10 +293,18 @@ public class StatementResource
             return getNextResults(uriInfo, maxWaitTime);
         }
 
-        public synchronized QueryResults getNextResults(UriInfo uriInfo, Duration maxWaitTime)
+        public synchronized PagedQueryResults getNextResults(UriInfo uriInfo, Duration maxWaitTime)
                 throws InterruptedException
         {
-            Iterable<List<Object>> data = getData(maxWaitTime);
+            List<Page> pages = getData(maxWaitTime);
+            Iterable<List<Object>> data = null;
+            if (pages != null) {
+                ImmutableList.Builder<RowIterable> rows = ImmutableList.builder();
+                for (Page page : pages) {
+                    rows.add(new RowIterable(page));
+                }
+                data = Iterables.concat(rows.build());
+            }
 
             // get the query info before returning
             // force update if query manager is closed
@@ -306,6 +333,7 @@ public class StatementResource
                     // TODO: add support to the API for non-query statements.
                     columns = ImmutableList.of(new Column("result", "varchar"));
                     data = ImmutableSet.<List<Object>>of(ImmutableList.<Object>of("true"));
+                    pages = null;
                 }
             }
 
@@ -328,16 +356,16 @@ public class StatementResource
 
             // cache the last results
             if (lastResult != null) {
-                lastResultPath = lastResult.getNextUri().getPath();
+                lastResultPath = lastResult.getResults().getNextUri().getPath();
             }
             else {
                 lastResultPath = null;
             }
-            lastResult = queryResults;
-            return queryResults;
+            lastResult = new PagedQueryResults(queryResults, pages);
+            return lastResult;
         }
 
-        private synchronized Iterable<List<Object>> getData(Duration maxWait)
+        private synchronized List<Page> getData(Duration maxWait)
                 throws InterruptedException
         {
             // wait for query to start
@@ -358,7 +386,7 @@ public class StatementResource
 
             updateExchangeClient(queryInfo.getOutputStage());
 
-            ImmutableList.Builder<RowIterable> pages = ImmutableList.builder();
+            ImmutableList.Builder<Page> pages = ImmutableList.builder();
             // wait up to max wait for data to arrive; then try to return at least DESIRED_RESULT_BYTES
             int bytes = 0;
             while (bytes < DESIRED_RESULT_BYTES) {
@@ -367,7 +395,7 @@ public class StatementResource
                     break;
                 }
                 bytes += page.getDataSize().toBytes();
-                pages.add(new RowIterable(page));
+                pages.add(page);
 
                 // only wait on first call
                 maxWait = new Duration(0, TimeUnit.MILLISECONDS);
@@ -377,7 +405,7 @@ public class StatementResource
                 return null;
             }
 
-            return Iterables.concat(pages.build());
+            return pages.build();
         }
 
         private static boolean isQueryStarted(QueryInfo queryInfo)
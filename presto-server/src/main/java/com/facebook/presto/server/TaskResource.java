@@ -39,6 +39,7 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -47,7 +48,9 @@ import javax.ws.rs.core.UriInfo;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+import static com.facebook.presto.PrestoMediaTypes.PRESTO_PAGES_SNAPPY_TYPE;
 import static com.facebook.presto.client.PrestoHeaders.PRESTO_CURRENT_STATE;
+import static com.facebook.presto.client.PrestoHeaders.PRESTO_MAX_SIZE;
 import static com.facebook.presto.client.PrestoHeaders.PRESTO_MAX_WAIT;
 import static com.facebook.presto.client.PrestoHeaders.PRESTO_PAGE_SEQUENCE_ID;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -143,15 +146,28 @@ public class TaskResource
 
     @GET
     @Path("{taskId}/results/{outputId}/{pageSequenceId}")
-    @Produces(PrestoMediaTypes.PRESTO_PAGES)
+    @Produces({PrestoMediaTypes.PRESTO_PAGES, PrestoMediaTypes.PRESTO_PAGES_SNAPPY})
     public Response getResults(@PathParam("taskId") TaskId taskId,
             @PathParam("outputId") String outputId,
-            @PathParam("pageSequenceId") long pageSequenceId)
+            @PathParam("pageSequenceId") long pageSequenceId,
+            @HeaderParam(PRESTO_MAX_SIZE) DataSize maxSize,
+            @Context HttpHeaders httpHeaders)
             throws InterruptedException
     {
         checkNotNull(taskId, "taskId is null");
         checkNotNull(outputId, "outputId is null");
 
+        // the exchange client lowers the response size as its buffer fills
+        if (maxSize == null || maxSize.toBytes() > DEFAULT_MAX_SIZE.toBytes()) {
+            maxSize = DEFAULT_MAX_SIZE;
+        }
+
+        // pages are only compressed for clients that explicitly accept compressed pages
+        String responseType = PrestoMediaTypes.PRESTO_PAGES;
+        if (isCompressionAccepted(httpHeaders)) {
+            responseType = PrestoMediaTypes.PRESTO_PAGES_SNAPPY;
+        }
+
         long remainingNanos = DEFAULT_MAX_WAIT_TIME.roundTo(NANOSECONDS);
         long start = System.nanoTime();
         long end = start + remainingNanos;
@@ -160,10 +176,10 @@ public class TaskResource
         while (remainingNanos > 0) {
             // todo we need a much better way to determine if a task is unknown (e.g. not scheduled yet), done, or there is current no more data
             try {
-                BufferResult result = taskManager.getTaskResults(taskId, outputId, pageSequenceId, DEFAULT_MAX_SIZE, new Duration(remainingNanos, NANOSECONDS));
+                BufferResult result = taskManager.getTaskResults(taskId, outputId, pageSequenceId, maxSize, new Duration(remainingNanos, NANOSECONDS));
                 if (!result.isEmpty()) {
                     GenericEntity<?> entity = new GenericEntity<>(result.getElements(), new TypeToken<List<Page>>() {}.getType());
-                    return Response.ok(entity).header(PRESTO_PAGE_SEQUENCE_ID, result.getStartingSequenceId()).build();
+                    return Response.ok(entity, responseType).header(PRESTO_PAGE_SEQUENCE_ID, result.getStartingSequenceId()).build();
                 }
                 else if (result.isBufferClosed()) {
                     return Response.status(Status.GONE).header(PRESTO_PAGE_SEQUENCE_ID, result.getStartingSequenceId()).build();
@@ -203,6 +219,16 @@ public class TaskResource
         }
     }
 
+    private static boolean isCompressionAccepted(HttpHeaders httpHeaders)
+    {
+        for (MediaType mediaType : httpHeaders.getAcceptableMediaTypes()) {
+            if (mediaType.getType().equalsIgnoreCase(PRESTO_PAGES_SNAPPY_TYPE.type()) && mediaType.getSubtype().equalsIgnoreCase(PRESTO_PAGES_SNAPPY_TYPE.subtype())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean isFullTaskInfoRequested(UriInfo uriInfo)
     {
         return uriInfo.getQueryParameters().containsKey("full");
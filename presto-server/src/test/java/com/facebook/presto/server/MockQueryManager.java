@@ -14,7 +14,9 @@
 package com.facebook.presto.server;
 
 import com.facebook.presto.OutputBuffers;
+import com.facebook.presto.PagePartitionFunction;
 import com.facebook.presto.TaskSource;
+import com.facebook.presto.UnpartitionedPagePartitionFunction;
 import com.facebook.presto.client.FailureInfo;
 import com.facebook.presto.execution.LocationFactory;
 import com.facebook.presto.execution.QueryId;
@@ -34,7 +36,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableMap;
 import io.airlift.units.Duration;
 
 import javax.annotation.concurrent.ThreadSafe;
@@ -119,7 +121,7 @@ public class MockQueryManager
                 outputTaskId,
                 null,
                 ImmutableList.<TaskSource>of(),
-                new OutputBuffers(ImmutableSet.<String>of("out"), true));
+                new OutputBuffers(ImmutableMap.<String, PagePartitionFunction>of("out", new UnpartitionedPagePartitionFunction()), true));
 
         SimpleQuery simpleQuery = new SimpleQuery(outputTaskId, locationFactory.createQueryLocation(outputTaskId.getQueryId()), mockTaskManager, locationFactory);
         queries.put(outputTaskId.getQueryId(), simpleQuery);
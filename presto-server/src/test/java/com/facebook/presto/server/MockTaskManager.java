@@ -14,6 +14,7 @@
 package com.facebook.presto.server;
 
 import com.facebook.presto.OutputBuffers;
+import com.facebook.presto.PagePartitionFunction;
 import com.facebook.presto.TaskSource;
 import com.facebook.presto.client.FailureInfo;
 import com.facebook.presto.execution.BufferResult;
@@ -44,6 +45,7 @@ import javax.inject.Inject;
 import java.net.URI;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -219,8 +221,8 @@ public class MockTaskManager
 
         public void addOutputBuffers(OutputBuffers outputBuffers)
         {
-            for (String outputId : outputBuffers.getBufferIds()) {
-                sharedBuffer.addQueue(outputId);
+            for (Entry<String, PagePartitionFunction> entry : outputBuffers.getBuffers().entrySet()) {
+                sharedBuffer.addQueue(entry.getKey(), entry.getValue());
             }
             if (outputBuffers.isNoMoreBufferIds()) {
                 sharedBuffer.noMoreQueues();
@@ -255,6 +257,7 @@ public class MockTaskManager
                     sharedBuffer.getInfo(),
                     ImmutableSet.<PlanNodeId>of(),
                     taskContext.getTaskStats(),
+                    taskContext.getMemoryPool().getInfo(),
                     failures,
                     taskContext.getOutputItems());
         }
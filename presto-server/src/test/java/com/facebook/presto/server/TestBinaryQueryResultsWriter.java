@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.server;
+
+import com.facebook.presto.block.Block;
+import com.facebook.presto.block.uncompressed.UncompressedBlock;
+import com.facebook.presto.client.BinaryQueryResults;
+import com.facebook.presto.client.Column;
+import com.facebook.presto.client.QueryResults;
+import com.facebook.presto.client.StatementStats;
+import com.facebook.presto.operator.Page;
+import com.facebook.presto.tuple.TupleInfo;
+import com.google.common.collect.ImmutableList;
+import io.airlift.json.JsonCodec;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.facebook.presto.operator.RowPagesBuilder.rowPagesBuilder;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_BOOLEAN;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_DOUBLE;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_LONG;
+import static com.facebook.presto.tuple.TupleInfo.SINGLE_VARBINARY;
+import static com.facebook.presto.tuple.TupleInfo.Type.FIXED_INT_64;
+import static com.facebook.presto.tuple.TupleInfo.Type.VARIABLE_BINARY;
+import static io.airlift.json.JsonCodec.jsonCodec;
+import static io.airlift.slice.Slices.EMPTY_SLICE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TestBinaryQueryResultsWriter
+{
+    private static final JsonCodec<QueryResults> CODEC = jsonCodec(QueryResults.class);
+
+    // the last channel has two fields, which are written as two columns
+    private static final List<TupleInfo> TUPLE_INFOS = ImmutableList.of(
+            SINGLE_LONG,
+            SINGLE_DOUBLE,
+            SINGLE_BOOLEAN,
+            SINGLE_VARBINARY,
+            new TupleInfo(FIXED_INT_64, VARIABLE_BINARY));
+
+    private static final List<Column> COLUMNS = ImmutableList.of(
+            new Column("a", "bigint"),
+            new Column("b", "double"),
+            new Column("c", "boolean"),
+            new Column("d", "varchar"),
+            new Column("e", "bigint"),
+            new Column("f", "varchar"));
+
+    @Test
+    public void testWritePages()
+            throws Exception
+    {
+        List<List<Object>> rows = ImmutableList.of(
+                Arrays.<Object>asList(1L, 2.5, true, "hello", 10L, "x"),
+                Arrays.<Object>asList(null, null, null, null, null, null),
+                Arrays.<Object>asList(-3L, -0.5, false, "", 20L, null),
+                Arrays.<Object>asList(4L, Double.NaN, true, "\u00fcnicode", null, "y"));
+
+        List<Page> pages = ImmutableList.<Page>builder()
+                .addAll(rowPagesBuilder(TUPLE_INFOS)
+                        .row(rows.get(0).toArray())
+                        .row(rows.get(1).toArray())
+                        .build())
+                .add(createEmptyPage())
+                .addAll(rowPagesBuilder(TUPLE_INFOS)
+                        .row(rows.get(2).toArray())
+                        .row(rows.get(3).toArray())
+                        .build())
+                .build();
+
+        QueryResults actual = roundTrip(new PagedQueryResults(createResults(COLUMNS, rows), pages));
+
+        assertEquals(actual.getId(), "query");
+        assertEquals(actual.getNextUri(), URI.create("http://localhost/v1/statement/query/2"));
+        assertEquals(actual.getColumns(), COLUMNS);
+        assertEquals(ImmutableList.copyOf(actual.getData()), rows);
+    }
+
+    @Test
+    public void testOnlyEmptyPages()
+            throws Exception
+    {
+        QueryResults actual = roundTrip(new PagedQueryResults(
+                createResults(COLUMNS, ImmutableList.<List<Object>>of()),
+                ImmutableList.of(createEmptyPage())));
+
+        assertEquals(actual.getColumns(), COLUMNS);
+        assertEquals(ImmutableList.copyOf(actual.getData()), ImmutableList.of());
+    }
+
+    @Test
+    public void testNoData()
+            throws Exception
+    {
+        QueryResults actual = roundTrip(new PagedQueryResults(createResults(null, null), null));
+
+        assertEquals(actual.getId(), "query");
+        assertNull(actual.getColumns());
+        assertNull(actual.getData());
+    }
+
+    private static QueryResults roundTrip(PagedQueryResults results)
+            throws Exception
+    {
+        BinaryQueryResultsWriter writer = new BinaryQueryResultsWriter(CODEC);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.writeTo(
+                results,
+                PagedQueryResults.class,
+                PagedQueryResults.class,
+                new Annotation[0],
+                MediaType.valueOf(BinaryQueryResults.MEDIA_TYPE),
+                null,
+                output);
+
+        return BinaryQueryResults.read(new ByteArrayInputStream(output.toByteArray()), CODEC);
+    }
+
+    private static Page createEmptyPage()
+    {
+        Block[] blocks = new Block[TUPLE_INFOS.size()];
+        for (int channel = 0; channel < blocks.length; channel++) {
+            blocks[channel] = new UncompressedBlock(0, TUPLE_INFOS.get(channel), EMPTY_SLICE);
+        }
+        return new Page(blocks);
+    }
+
+    private static QueryResults createResults(List<Column> columns, List<List<Object>> data)
+    {
+        return new QueryResults(
+                "query",
+                URI.create("http://localhost/v1/query/query"),
+                null,
+                URI.create("http://localhost/v1/statement/query/2"),
+                columns,
+                (Iterable<List<Object>>) data,
+                StatementStats.builder().setState("RUNNING").build(),
+                null);
+    }
+}
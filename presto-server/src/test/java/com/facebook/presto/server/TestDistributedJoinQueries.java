@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.facebook.presto.server;
+
+import com.facebook.presto.util.MaterializedResult;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs the distributed queries with hash partitioned joins, so the joins of distributed
+ * tables are executed by tasks that each build the hash table for a single partition.
+ */
+public class TestDistributedJoinQueries
+        extends TestDistributedQueries
+{
+    @Override
+    protected Map<String, String> getServerProperties()
+    {
+        return ImmutableMap.<String, String>builder()
+                .putAll(super.getServerProperties())
+                .put("query.distributed-joins-enabled", "true")
+                .build();
+    }
+
+    @Test
+    public void testJoinIsPartitioned()
+            throws Exception
+    {
+        MaterializedResult result = computeActual("EXPLAIN (TYPE DISTRIBUTED) SELECT count(*) FROM orders JOIN lineitem ON orders.orderkey = lineitem.orderkey");
+        String plan = (String) getOnlyElement(result.getMaterializedTuples()).getField(0);
+
+        // both sides of a partitioned join are read from exchanges
+        List<String> lines = ImmutableList.copyOf(Splitter.on('\n').trimResults().split(plan));
+        int join = -1;
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).startsWith("- InnerJoin[")) {
+                join = i;
+            }
+        }
+        assertTrue(join >= 0, "No join in plan:\n" + plan);
+        assertTrue(lines.get(join + 1).startsWith("- Exchange["), "Probe side of join is not an exchange:\n" + plan);
+    }
+
+    @Test
+    public void testPartitionedJoinResults()
+            throws Exception
+    {
+        assertQuery("SELECT count(*) FROM orders JOIN lineitem ON orders.orderkey = lineitem.orderkey");
+        assertQuery("SELECT orders.orderkey, lineitem.linenumber FROM orders JOIN lineitem ON orders.orderkey = lineitem.orderkey AND orders.custkey = lineitem.partkey");
+    }
+}